@@ -41,5 +41,19 @@ public enum PoolingPolicy {
      * fragmentation in the allocator and that threads will keep a portion of
      * memory as thread-local to avoid contention when possible.
      */
-    PooledDirect
+    PooledDirect,
+
+    /**
+     * Use Direct memory for all buffers and pool the memory in slabs of fixed
+     * size classes.
+     *
+     * <p>Buffers up to a few MB are rounded up to the next size class, with at
+     * most 25% of wasted space, and are recycled in a per-thread cache and in a
+     * free list per size class. Since a buffer of a size class can be reused for
+     * any other buffer of the same class, the pool does not fragment when the
+     * size of the buffers varies widely, as with the entries of different
+     * ledgers. Larger buffers, and the heap buffers, are allocated as with
+     * {@link #PooledDirect}.
+     */
+    SlabDirect
 }
@@ -45,6 +45,7 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
     private static final int DEFAULT_MAX_CAPACITY = Integer.MAX_VALUE;
 
     private final ByteBufAllocator pooledAllocator;
+    private final SlabByteBufAllocator slabAllocator;
     private final ByteBufAllocator unpooledAllocator;
     private final PoolingPolicy poolingPolicy;
     private final OutOfMemoryPolicy outOfMemoryPolicy;
@@ -63,7 +64,7 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
             PoolingPolicy poolingPolicy, int poolingConcurrency, OutOfMemoryPolicy outOfMemoryPolicy,
             Consumer<OutOfMemoryError> outOfMemoryListener,
             LeakDetectionPolicy leakDetectionPolicy, boolean exitOnOutOfMemory) {
-        super(poolingPolicy == PoolingPolicy.PooledDirect /* preferDirect */);
+        super(poolingPolicy != PoolingPolicy.UnpooledHeap /* preferDirect */);
         this.poolingPolicy = poolingPolicy;
         this.outOfMemoryPolicy = outOfMemoryPolicy;
         this.exitOnOutOfMemory = exitOnOutOfMemory;
@@ -75,7 +76,7 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
             this.outOfMemoryListener = outOfMemoryListener;
         }
 
-        if (poolingPolicy == PoolingPolicy.PooledDirect) {
+        if (poolingPolicy != PoolingPolicy.UnpooledHeap) {
             if (pooledAllocator == null) {
                 if (poolingConcurrency == PooledByteBufAllocator.defaultNumDirectArena()) {
                     // If all the parameters are the same as in the default Netty pool,
@@ -95,7 +96,14 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
             } else {
                 this.pooledAllocator = pooledAllocator;
             }
+            if (poolingPolicy == PoolingPolicy.SlabDirect) {
+                // The Netty pool still serves the heap buffers and the buffers larger than the size classes
+                this.slabAllocator = new SlabByteBufAllocator(this.pooledAllocator);
+            } else {
+                this.slabAllocator = null;
+            }
         } else {
+            this.slabAllocator = null;
             this.pooledAllocator = null;
         }
 
@@ -140,7 +148,7 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
 
     @Override
     public ByteBuf buffer(int initialCapacity, int maxCapacity) {
-        if (poolingPolicy == PoolingPolicy.PooledDirect) {
+        if (poolingPolicy != PoolingPolicy.UnpooledHeap) {
             return newDirectBuffer(initialCapacity, maxCapacity, true /* can fallback to heap if needed */);
         } else {
             return newHeapBuffer(initialCapacity, maxCapacity);
@@ -152,7 +160,7 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
         try {
             // There are few cases in which we ask explicitly for a pooled
             // heap buffer.
-            ByteBufAllocator alloc = (poolingPolicy == PoolingPolicy.PooledDirect) ? pooledAllocator
+            ByteBufAllocator alloc = (poolingPolicy != PoolingPolicy.UnpooledHeap) ? pooledAllocator
                     : unpooledAllocator;
             return alloc.heapBuffer(initialCapacity, maxCapacity);
         } catch (OutOfMemoryError e) {
@@ -168,9 +176,10 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
     }
 
     private ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity, boolean canFallbackToHeap) {
-        if (poolingPolicy == PoolingPolicy.PooledDirect) {
+        if (poolingPolicy != PoolingPolicy.UnpooledHeap) {
             try {
-                return pooledAllocator.directBuffer(initialCapacity, maxCapacity);
+                ByteBufAllocator alloc = slabAllocator != null ? slabAllocator : pooledAllocator;
+                return alloc.directBuffer(initialCapacity, maxCapacity);
             } catch (OutOfMemoryError e) {
                 if (canFallbackToHeap && outOfMemoryPolicy == OutOfMemoryPolicy.FallbackToHeap) {
                     try {
@@ -214,6 +223,14 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
         return pooledAllocator != null && pooledAllocator.isDirectBufferPooled();
     }
 
+    /**
+     * @return the allocator of the direct buffers if the pooling policy is {@link PoolingPolicy#SlabDirect},
+     *         null otherwise
+     */
+    public SlabByteBufAllocator getSlabAllocator() {
+        return slabAllocator;
+    }
+
     @Override
     public void setOomHandler(Consumer<OutOfMemoryError> handler) {
         this.outOfMemoryListener = handler;
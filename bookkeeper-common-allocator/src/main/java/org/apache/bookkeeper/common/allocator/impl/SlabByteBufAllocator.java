@@ -0,0 +1,474 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.common.allocator.impl;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.buffer.UnpooledUnsafeDirectByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.internal.PlatformDependent;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A direct buffer allocator that pools the memory in slabs of fixed size classes.
+ *
+ * <p>The size classes go from {@value #MIN_SIZE_CLASS} bytes to {@value #MAX_SIZE_CLASS} bytes, with 4 classes
+ * for each power of 2, so that rounding up a buffer to its size class wastes at most 25% of its memory. The
+ * memory of the small classes is allocated in slabs holding several buffers, while the buffers of the large
+ * classes are allocated one by one, and freed when too many of them are pooled.
+ *
+ * <p>The buffers released by a thread are kept in a small per-thread cache, to be reused by the next allocations
+ * of the thread without contention, and the cache overflows to a free list per size class shared by all the
+ * threads. Only the Netty threads, which release their cache when they terminate, have a cache.
+ *
+ * <p>The buffers of size 0, the buffers larger than the largest size class and the heap buffers are allocated by
+ * the fallback allocator.
+ */
+public class SlabByteBufAllocator extends AbstractByteBufAllocator {
+
+    static final int MIN_SIZE_CLASS = 64;
+    static final int MAX_SIZE_CLASS = 8 * 1024 * 1024;
+
+    private static final int MIN_SIZE_CLASS_SHIFT = 6;
+    // 2^2 size classes for each power of 2
+    private static final int SUB_CLASSES_SHIFT = 2;
+
+    // the memory of the small size classes is allocated in slabs of up to 1 MB holding up to 32 buffers
+    private static final int SLAB_SIZE = 1024 * 1024;
+    private static final int MAX_BUFFERS_PER_SLAB = 32;
+
+    private static final int THREAD_CACHE_BYTES_PER_CLASS = 256 * 1024;
+    private static final int MAX_THREAD_CACHE_BUFFERS_PER_CLASS = 64;
+
+    // the buffers of a size class allocated one by one are freed when more than this are pooled
+    private static final long MAX_FREE_BYTES_PER_CLASS = 32 * 1024 * 1024;
+
+    /**
+     * The metrics of a size class.
+     */
+    public interface SizeClassMetric {
+        /**
+         * @return the size of the buffers of the class
+         */
+        int size();
+
+        /**
+         * @return the number of buffers of the class allocated so far
+         */
+        long numAllocations();
+
+        /**
+         * @return the number of allocations served by the per-thread caches
+         */
+        long numThreadCacheHits();
+
+        /**
+         * @return the memory of the buffers of the class in use
+         */
+        long usedBytes();
+
+        /**
+         * @return the memory allocated for the class, either in use or pooled
+         */
+        long pooledBytes();
+    }
+
+    private final ByteBufAllocator fallbackAllocator;
+    private final SizeClass[] sizeClasses;
+    private final FastThreadLocal<ThreadCache> threadCache = new FastThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            if (FastThreadLocalThread.willCleanupFastThreadLocals(Thread.currentThread())) {
+                return new ThreadCache();
+            }
+            return null;
+        }
+
+        @Override
+        protected void onRemoval(ThreadCache cache) {
+            if (cache != null) {
+                cache.free();
+            }
+        }
+    };
+
+    public SlabByteBufAllocator(ByteBufAllocator fallbackAllocator) {
+        super(true /* preferDirect */);
+        this.fallbackAllocator = fallbackAllocator;
+        this.sizeClasses = new SizeClass[sizeClassIndex(MAX_SIZE_CLASS) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(i, sizeClassSize(i));
+        }
+    }
+
+    /**
+     * @return the index of the smallest size class that can hold a buffer of the given size
+     */
+    static int sizeClassIndex(int size) {
+        if (size <= MIN_SIZE_CLASS) {
+            return 0;
+        }
+        // 2^log2 < size <= 2^(log2 + 1)
+        int log2 = 31 - Integer.numberOfLeadingZeros(size - 1);
+        int subClassShift = log2 - SUB_CLASSES_SHIFT;
+        int subClass = (size - (1 << log2) + (1 << subClassShift) - 1) >> subClassShift;
+        return ((log2 - MIN_SIZE_CLASS_SHIFT) << SUB_CLASSES_SHIFT) + subClass;
+    }
+
+    static int sizeClassSize(int index) {
+        if (index == 0) {
+            return MIN_SIZE_CLASS;
+        }
+        int log2 = MIN_SIZE_CLASS_SHIFT + ((index - 1) >> SUB_CLASSES_SHIFT);
+        int subClass = ((index - 1) & ((1 << SUB_CLASSES_SHIFT) - 1)) + 1;
+        return (1 << log2) + (subClass << (log2 - SUB_CLASSES_SHIFT));
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        return fallbackAllocator.heapBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        if (initialCapacity == 0 || initialCapacity > MAX_SIZE_CLASS) {
+            return fallbackAllocator.directBuffer(initialCapacity, maxCapacity);
+        }
+        ByteBuf buf = PlatformDependent.hasUnsafe()
+                ? new SlabUnsafeDirectByteBuf(this, initialCapacity, maxCapacity)
+                : new SlabDirectByteBuf(this, initialCapacity, maxCapacity);
+        return toLeakAwareBuffer(buf);
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return true;
+    }
+
+    public List<SizeClassMetric> sizeClassMetrics() {
+        List<SizeClassMetric> metrics = new ArrayList<>(sizeClasses.length);
+        Collections.addAll(metrics, sizeClasses);
+        return metrics;
+    }
+
+    /**
+     * @return the direct memory of the buffers in use, rounded up to their size class
+     */
+    public long usedDirectMemory() {
+        long used = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            used += sizeClass.usedBytes.get();
+        }
+        return used;
+    }
+
+    /**
+     * @return the direct memory allocated by the size classes, either in use or pooled
+     */
+    public long pooledDirectMemory() {
+        long pooled = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            pooled += sizeClass.pooledBytes.get();
+        }
+        return pooled;
+    }
+
+    /**
+     * Allocate the memory of a buffer.
+     *
+     * <p>A new buffer gets a pooled buffer of its size class, with the limit set to the requested capacity, so that
+     * its capacity is exact. When a buffer grows, it gets the whole size class, unless it would exceed its max
+     * capacity, and in that case it gets an unpooled buffer of the exact capacity. The pooled buffers are tagged in
+     * the memory of the buffer with their size class.
+     */
+    private ByteBuffer allocate(PooledMemory memory, int capacity, int currentCapacity, int maxCapacity) {
+        if (capacity > MAX_SIZE_CLASS) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        SizeClass sizeClass = sizeClasses[sizeClassIndex(capacity)];
+        if (currentCapacity > 0 && sizeClass.size > maxCapacity) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        ByteBuffer buffer = sizeClass.allocate();
+        buffer.limit(capacity);
+        memory.add(buffer, sizeClass);
+        return buffer;
+    }
+
+    /**
+     * Release the memory of a buffer, either to the pool of the size class it was tagged with, or to the system if
+     * it was not pooled.
+     */
+    private void release(PooledMemory memory, ByteBuffer buffer) {
+        SizeClass sizeClass = memory.remove(buffer);
+        if (sizeClass == null) {
+            PlatformDependent.freeDirectBuffer(buffer);
+        } else {
+            buffer.clear();
+            sizeClass.release(buffer);
+        }
+    }
+
+    /**
+     * The pooled memory held by a buffer, with the size class of each pooled ByteBuffer, so that the memory goes back
+     * to the class it was taken from, whatever its capacity. A buffer holds a single ByteBuffer, and two while it is
+     * resized, until the old one is freed.
+     */
+    private static final class PooledMemory {
+        private ByteBuffer buffer;
+        private SizeClass sizeClass;
+        private ByteBuffer resizedBuffer;
+        private SizeClass resizedSizeClass;
+
+        void add(ByteBuffer buffer, SizeClass sizeClass) {
+            if (this.buffer == null) {
+                this.buffer = buffer;
+                this.sizeClass = sizeClass;
+            } else {
+                this.resizedBuffer = buffer;
+                this.resizedSizeClass = sizeClass;
+            }
+        }
+
+        /**
+         * @return the size class of the buffer, or null if the buffer was not allocated from a size class
+         */
+        SizeClass remove(ByteBuffer buffer) {
+            SizeClass removed;
+            if (buffer == this.buffer) {
+                removed = sizeClass;
+                this.buffer = resizedBuffer;
+                this.sizeClass = resizedSizeClass;
+            } else if (buffer == resizedBuffer) {
+                removed = resizedSizeClass;
+            } else {
+                return null;
+            }
+            resizedBuffer = null;
+            resizedSizeClass = null;
+            return removed;
+        }
+    }
+
+    private final class SizeClass implements SizeClassMetric {
+        private final int index;
+        private final int size;
+        private final int buffersPerSlab;
+        private final int threadCacheSize;
+        private final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger numFreeBuffers = new AtomicInteger(0);
+        private final LongAdder numAllocations = new LongAdder();
+        private final LongAdder numThreadCacheHits = new LongAdder();
+        private final AtomicLong usedBytes = new AtomicLong(0);
+        private final AtomicLong pooledBytes = new AtomicLong(0);
+
+        SizeClass(int index, int size) {
+            this.index = index;
+            this.size = size;
+            this.buffersPerSlab = Math.max(1, Math.min(MAX_BUFFERS_PER_SLAB, SLAB_SIZE / size));
+            this.threadCacheSize = Math.min(MAX_THREAD_CACHE_BUFFERS_PER_CLASS, THREAD_CACHE_BYTES_PER_CLASS / size);
+        }
+
+        ByteBuffer allocate() {
+            ThreadCache cache = threadCacheSize > 0 ? threadCache.get() : null;
+            ByteBuffer buffer = cache != null ? cache.poll(index) : null;
+            if (buffer != null) {
+                numThreadCacheHits.increment();
+            } else {
+                buffer = freeBuffers.poll();
+                if (buffer != null) {
+                    numFreeBuffers.decrementAndGet();
+                } else {
+                    buffer = allocateSlab();
+                }
+            }
+            numAllocations.increment();
+            usedBytes.addAndGet(size);
+            return buffer;
+        }
+
+        /**
+         * Allocate a new slab, keep its first buffer and add the others to the free list.
+         */
+        private ByteBuffer allocateSlab() {
+            ByteBuffer slab = ByteBuffer.allocateDirect(size * buffersPerSlab);
+            pooledBytes.addAndGet(slab.capacity());
+            if (buffersPerSlab == 1) {
+                return slab;
+            }
+            for (int i = 1; i < buffersPerSlab; i++) {
+                slab.limit((i + 1) * size).position(i * size);
+                freeBuffers.offer(slab.slice());
+            }
+            numFreeBuffers.addAndGet(buffersPerSlab - 1);
+            slab.limit(size).position(0);
+            return slab.slice();
+        }
+
+        void release(ByteBuffer buffer) {
+            usedBytes.addAndGet(-size);
+
+            ThreadCache cache = threadCacheSize > 0 ? threadCache.get() : null;
+            if (cache != null && cache.offer(index, buffer)) {
+                return;
+            }
+            addToFreeList(buffer);
+        }
+
+        void addToFreeList(ByteBuffer buffer) {
+            // The buffers of a slab share its memory, so only the buffers allocated one by one can be freed
+            if (buffersPerSlab == 1 && (long) numFreeBuffers.get() * size >= MAX_FREE_BYTES_PER_CLASS) {
+                pooledBytes.addAndGet(-size);
+                PlatformDependent.freeDirectBuffer(buffer);
+                return;
+            }
+            freeBuffers.offer(buffer);
+            numFreeBuffers.incrementAndGet();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long numAllocations() {
+            return numAllocations.sum();
+        }
+
+        @Override
+        public long numThreadCacheHits() {
+            return numThreadCacheHits.sum();
+        }
+
+        @Override
+        public long usedBytes() {
+            return usedBytes.get();
+        }
+
+        @Override
+        public long pooledBytes() {
+            return pooledBytes.get();
+        }
+    }
+
+    /**
+     * The buffers released by a thread, as a stack per size class.
+     */
+    private final class ThreadCache {
+        private final ByteBuffer[][] buffers = new ByteBuffer[sizeClasses.length][];
+        private final int[] numBuffers = new int[sizeClasses.length];
+
+        ThreadCache() {
+            for (SizeClass sizeClass : sizeClasses) {
+                if (sizeClass.threadCacheSize > 0) {
+                    buffers[sizeClass.index] = new ByteBuffer[sizeClass.threadCacheSize];
+                }
+            }
+        }
+
+        ByteBuffer poll(int index) {
+            int count = numBuffers[index];
+            if (count == 0) {
+                return null;
+            }
+            count--;
+            ByteBuffer buffer = buffers[index][count];
+            buffers[index][count] = null;
+            numBuffers[index] = count;
+            return buffer;
+        }
+
+        boolean offer(int index, ByteBuffer buffer) {
+            int count = numBuffers[index];
+            if (count == buffers[index].length) {
+                return false;
+            }
+            buffers[index][count] = buffer;
+            numBuffers[index] = count + 1;
+            return true;
+        }
+
+        /**
+         * Move the cached buffers to the free lists, when the thread terminates.
+         */
+        void free() {
+            for (SizeClass sizeClass : sizeClasses) {
+                ByteBuffer buffer;
+                while ((buffer = poll(sizeClass.index)) != null) {
+                    sizeClass.addToFreeList(buffer);
+                }
+            }
+        }
+    }
+
+    private static final class SlabDirectByteBuf extends UnpooledDirectByteBuf {
+        // no initializer, as it is set by the constructor of the super class, when it allocates the initial memory
+        private PooledMemory memory;
+
+        SlabDirectByteBuf(SlabByteBufAllocator alloc, int initialCapacity, int maxCapacity) {
+            super(alloc, initialCapacity, maxCapacity);
+        }
+
+        @Override
+        protected ByteBuffer allocateDirect(int initialCapacity) {
+            if (memory == null) {
+                memory = new PooledMemory();
+            }
+            return ((SlabByteBufAllocator) alloc()).allocate(memory, initialCapacity, capacity(), maxCapacity());
+        }
+
+        @Override
+        protected void freeDirect(ByteBuffer buffer) {
+            ((SlabByteBufAllocator) alloc()).release(memory, buffer);
+        }
+    }
+
+    private static final class SlabUnsafeDirectByteBuf extends UnpooledUnsafeDirectByteBuf {
+        // no initializer, as it is set by the constructor of the super class, when it allocates the initial memory
+        private PooledMemory memory;
+
+        SlabUnsafeDirectByteBuf(SlabByteBufAllocator alloc, int initialCapacity, int maxCapacity) {
+            super(alloc, initialCapacity, maxCapacity);
+        }
+
+        @Override
+        protected ByteBuffer allocateDirect(int initialCapacity) {
+            if (memory == null) {
+                memory = new PooledMemory();
+            }
+            return ((SlabByteBufAllocator) alloc()).allocate(memory, initialCapacity, capacity(), maxCapacity());
+        }
+
+        @Override
+        protected void freeDirect(ByteBuffer buffer) {
+            ((SlabByteBufAllocator) alloc()).release(memory, buffer);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.common.allocator.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class SlabByteBufAllocatorTest {
+
+    private final SlabByteBufAllocator allocator = new SlabByteBufAllocator(UnpooledByteBufAllocator.DEFAULT);
+
+    @Test
+    public void testSizeClasses() {
+        for (int size = 1; size <= 1024 * 1024; size++) {
+            int index = SlabByteBufAllocator.sizeClassIndex(size);
+            assertTrue(SlabByteBufAllocator.sizeClassSize(index) >= size, "size " + size);
+            if (index > 0) {
+                assertTrue(SlabByteBufAllocator.sizeClassSize(index - 1) < size, "size " + size);
+            }
+        }
+        int maxIndex = SlabByteBufAllocator.sizeClassIndex(SlabByteBufAllocator.MAX_SIZE_CLASS);
+        assertEquals(SlabByteBufAllocator.MAX_SIZE_CLASS, SlabByteBufAllocator.sizeClassSize(maxIndex));
+        for (int index = 0; index <= maxIndex; index++) {
+            assertEquals(index, SlabByteBufAllocator.sizeClassIndex(SlabByteBufAllocator.sizeClassSize(index)));
+        }
+    }
+
+    @Test
+    public void testReleaseToSizeClass() {
+        int[] sizes = { 1, 64, 65, 100, 4096, 5000, 1024 * 1024, 3 * 1024 * 1024 };
+        List<ByteBuf> buffers = new ArrayList<>();
+        long expectedUsed = 0;
+        for (int size : sizes) {
+            ByteBuf buf = allocator.directBuffer(size);
+            assertEquals(size, buf.capacity());
+            buffers.add(buf);
+            expectedUsed += SlabByteBufAllocator.sizeClassSize(SlabByteBufAllocator.sizeClassIndex(size));
+        }
+        assertEquals(expectedUsed, allocator.usedDirectMemory());
+
+        long pooled = allocator.pooledDirectMemory();
+        buffers.forEach(ByteBuf::release);
+        assertEquals(0, allocator.usedDirectMemory());
+        assertEquals(pooled, allocator.pooledDirectMemory());
+
+        // the released memory is reused
+        for (int size : sizes) {
+            allocator.directBuffer(size).release();
+        }
+        assertEquals(0, allocator.usedDirectMemory());
+        assertEquals(pooled, allocator.pooledDirectMemory());
+    }
+
+    @Test
+    public void testGrowWithinMaxCapacity() {
+        ByteBuf buf = allocator.directBuffer(64, 1024);
+        for (int i = 0; i < 1000; i++) {
+            buf.writeByte(i);
+        }
+        assertTrue(buf.capacity() >= 1000);
+        assertEquals(SlabByteBufAllocator.sizeClassSize(SlabByteBufAllocator.sizeClassIndex(buf.capacity())),
+                allocator.usedDirectMemory());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals((byte) i, buf.getByte(i));
+        }
+        buf.release();
+        assertEquals(0, allocator.usedDirectMemory());
+    }
+
+    @Test
+    public void testGrowBeyondMaxCapacity() {
+        // 100 bytes round up to the size class of 112 bytes, past the max capacity, so the buffer grows into an
+        // unpooled buffer of exactly 100 bytes
+        ByteBuf buf = allocator.directBuffer(64, 100);
+        for (int i = 0; i < 100; i++) {
+            buf.writeByte(i);
+        }
+        assertEquals(100, buf.capacity());
+        assertEquals(0, allocator.usedDirectMemory());
+        long pooled = allocator.pooledDirectMemory();
+
+        buf.release();
+        assertEquals(0, allocator.usedDirectMemory());
+        assertEquals(pooled, allocator.pooledDirectMemory());
+    }
+
+    @Test
+    public void testShrink() {
+        ByteBuf buf = allocator.directBuffer(4096);
+        buf.writeBytes(new byte[100]);
+        buf.capacity(128);
+        assertEquals(128, allocator.usedDirectMemory());
+        buf.capacity(96);
+        assertEquals(96, allocator.usedDirectMemory());
+        assertEquals(96, buf.writerIndex());
+        buf.release();
+        assertEquals(0, allocator.usedDirectMemory());
+    }
+
+    @Test
+    public void testFallbackBuffers() {
+        ByteBuf empty = allocator.directBuffer(0);
+        ByteBuf large = allocator.directBuffer(SlabByteBufAllocator.MAX_SIZE_CLASS + 1);
+        assertEquals(0, allocator.usedDirectMemory());
+        assertEquals(0, allocator.pooledDirectMemory());
+        empty.release();
+        large.release();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.common.util;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * An {@link OrderedExecutor} where the ordering keys are not pinned to a thread.
+ *
+ * <p>The ordering keys are hashed to a fixed set of mailboxes, each one holding the queue of the tasks of its
+ * keys. When a task is added to an idle mailbox, the mailbox is scheduled on the least loaded of two threads
+ * chosen at random. A mailbox runs at most {@link #MAX_TASKS_PER_RUN} tasks at a time and is then scheduled
+ * again, possibly on another thread. A mailbox is never scheduled twice at the same time, so the tasks of a key
+ * are still executed in order, while a hot key only keeps busy one thread at a time and the other keys move
+ * to the idle threads instead of queuing behind it.
+ *
+ * <p>The ordering guarantee only holds among the {@code executeOrdered} and {@code submitOrdered} methods. The
+ * executors returned by {@code chooseThread} are still bound to a thread and are not ordered with them.
+ *
+ * <p>{@code maxTasksInQueue} bounds the tasks waiting in all the mailboxes to {@code maxTasksInQueue} times the
+ * number of threads, which is the same capacity of the {@link OrderedExecutor}.
+ */
+@Slf4j
+public class MailboxOrderedExecutor extends OrderedExecutor {
+
+    static final int MAILBOXES_PER_THREAD = 256;
+    static final int MAX_TASKS_PER_RUN = 64;
+
+    private final Mailbox[] mailboxes;
+    private final int maxPendingTasks;
+    private final AtomicInteger pendingTasks = new AtomicInteger(0);
+    private volatile boolean shutdown = false;
+
+    MailboxOrderedExecutor(String baseName, int numThreads, ThreadFactory threadFactory,
+                           StatsLogger statsLogger, boolean traceTaskExecution,
+                           boolean preserveMdcForTaskExecution, long warnTimeMicroSec, int maxTasksInQueue,
+                           boolean enableBusyWait, boolean enableThreadScopedMetrics) {
+        super(baseName, numThreads, threadFactory, statsLogger, traceTaskExecution, preserveMdcForTaskExecution,
+                warnTimeMicroSec, maxTasksInQueue, enableBusyWait, enableThreadScopedMetrics);
+        this.mailboxes = new Mailbox[numThreads == 1 ? 1 : numThreads * MAILBOXES_PER_THREAD];
+        for (int i = 0; i < mailboxes.length; i++) {
+            mailboxes[i] = new Mailbox();
+        }
+        this.maxPendingTasks = maxTasksInQueue > 0 ? maxTasksInQueue * numThreads : NO_TASK_LIMIT;
+
+        statsLogger.registerGauge(String.format("%s-mailbox-pending-tasks", name), new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return pendingTasks.get();
+            }
+        });
+    }
+
+    @Override
+    protected ExecutorService createSingleThreadExecutor(ThreadFactory factory) {
+        // the threads only queue the mailboxes, the tasks are bounded in the mailboxes
+        return new SingleThreadExecutor(factory);
+    }
+
+    @Override
+    public void executeOrdered(Object orderingKey, Runnable r) {
+        if (null == orderingKey) {
+            chooseThread().execute(r);
+        } else {
+            executeOrdered(orderingKey.hashCode(), r);
+        }
+    }
+
+    @Override
+    public void executeOrdered(long orderingKey, Runnable r) {
+        mailboxes[mailboxIdx(orderingKey)].add(timedRunnable(r));
+    }
+
+    @Override
+    public void executeOrdered(int orderingKey, Runnable r) {
+        executeOrdered((long) orderingKey, r);
+    }
+
+    /**
+     * The tasks of a key are not bound to a thread, so the id returned identifies the mailbox of the key instead.
+     * It is the same for all the keys sharing a mailbox, and it is negative so that it never matches the id of
+     * a thread: callers never run a task inline and skip ahead of the tasks queued in the mailbox.
+     */
+    @Override
+    public long getThreadID(long orderingKey) {
+        return -1L - mailboxIdx(orderingKey);
+    }
+
+    private int mailboxIdx(long orderingKey) {
+        return mailboxes.length == 1 ? 0 : chooseThreadIdx(orderingKey, mailboxes.length);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> runnables = super.shutdownNow();
+        // the tasks of the mailboxes that were queued on the threads
+        runnables.removeIf(r -> r instanceof Mailbox);
+        for (Mailbox mailbox : mailboxes) {
+            Runnable task;
+            while ((task = mailbox.tasks.poll()) != null) {
+                pendingTasks.decrementAndGet();
+                runnables.add(task);
+            }
+        }
+        return runnables;
+    }
+
+    private void schedule(Mailbox mailbox) {
+        int idx;
+        if (threads.length == 1) {
+            idx = 0;
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(threads.length);
+            int second = random.nextInt(threads.length);
+            idx = singleThreadExecutors[first].getQueuedTasksCount()
+                    <= singleThreadExecutors[second].getQueuedTasksCount() ? first : second;
+        }
+        singleThreadExecutors[idx].execute(mailbox);
+    }
+
+    private final class Mailbox implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        void add(Runnable task) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor is shutting down");
+            }
+            if (pendingTasks.incrementAndGet() > maxPendingTasks && maxPendingTasks > 0) {
+                pendingTasks.decrementAndGet();
+                throw new RejectedExecutionException("Executor queue is full");
+            }
+            tasks.add(task);
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    schedule(this);
+                } catch (RejectedExecutionException e) {
+                    // shut down meanwhile, the task may not be executed
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    pendingTasks.decrementAndGet();
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        log.error("Error while running task: {}", t.getMessage(), t);
+                    }
+                }
+
+                if (tasks.isEmpty()) {
+                    scheduled.set(false);
+                    // a task may have been added after the last poll, but before clearing the flag
+                    if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+                try {
+                    // yield the thread to the other mailboxes
+                    schedule(this);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // shutting down, drain the mailbox on this thread
+                }
+            }
+        }
+    }
+}
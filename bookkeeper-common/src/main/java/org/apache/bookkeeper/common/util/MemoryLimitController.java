@@ -80,6 +80,13 @@ public class MemoryLimitController {
         }
     }
 
+    /**
+     * @return true if the memory in use is over the limit, so that reserving more memory would wait
+     */
+    public boolean isLimitExceeded() {
+        return memoryLimit > 0 && currentUsage.get() > memoryLimit;
+    }
+
     public long currentUsage() {
         return currentUsage.get();
     }
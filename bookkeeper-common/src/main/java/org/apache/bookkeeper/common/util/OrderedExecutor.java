@@ -64,6 +64,8 @@ public class OrderedExecutor implements ExecutorService {
 
     final String name;
     final ExecutorService[] threads;
+    // the undecorated executors of the threads, null if they are not SingleThreadExecutor
+    final SingleThreadExecutor[] singleThreadExecutors;
     final long[] threadIds;
     final Random rand = new Random();
     final OpStatsLogger taskExecutionStats;
@@ -90,6 +92,12 @@ public class OrderedExecutor implements ExecutorService {
             if (null == threadFactory) {
                 threadFactory = new DefaultThreadFactory("bookkeeper-ordered-safe-executor");
             }
+            if (enableWorkStealing) {
+                return new MailboxOrderedExecutor(name, numThreads, threadFactory, statsLogger,
+                                                  traceTaskExecution, preserveMdcForTaskExecution,
+                                                  warnTimeMicroSec, maxTasksInQueue, enableBusyWait,
+                                                  enableThreadScopedMetrics);
+            }
             return new OrderedExecutor(name, numThreads, threadFactory, statsLogger,
                                            traceTaskExecution, preserveMdcForTaskExecution,
                                            warnTimeMicroSec, maxTasksInQueue, enableBusyWait,
@@ -111,6 +119,7 @@ public class OrderedExecutor implements ExecutorService {
         protected int maxTasksInQueue = NO_TASK_LIMIT;
         protected boolean enableBusyWait = false;
         protected boolean enableThreadScopedMetrics = false;
+        protected boolean enableWorkStealing = false;
 
         public AbstractBuilder<T> name(String name) {
             this.name = name;
@@ -162,8 +171,18 @@ public class OrderedExecutor implements ExecutorService {
             return this;
         }
 
+        /**
+         * Run the tasks of the different ordering keys on any idle thread, instead of pinning every key to a
+         * thread. See {@link MailboxOrderedExecutor}. Only supported by {@link OrderedExecutor}.
+         */
+        public AbstractBuilder<T> enableWorkStealing(boolean enableWorkStealing) {
+            this.enableWorkStealing = enableWorkStealing;
+            return this;
+        }
+
         @SuppressWarnings("unchecked")
         public T build() {
+            checkArgument(!enableWorkStealing, "Work stealing is not supported by %s", getClass().getSimpleName());
             if (null == threadFactory) {
                 threadFactory = new DefaultThreadFactory(name);
             }
@@ -388,6 +407,7 @@ public class OrderedExecutor implements ExecutorService {
         this.enableThreadScopedMetrics = enableThreadScopedMetrics;
         name = baseName;
         threads = new ExecutorService[numThreads];
+        singleThreadExecutors = new SingleThreadExecutor[numThreads];
         threadIds = new long[numThreads];
         for (int i = 0; i < numThreads; i++) {
             ExecutorService thread = createSingleThreadExecutor(
@@ -397,6 +417,7 @@ public class OrderedExecutor implements ExecutorService {
             if (thread instanceof SingleThreadExecutor) {
                 ste = (SingleThreadExecutor) thread;
             }
+            singleThreadExecutors[i] = ste;
 
             if (traceTaskExecution || preserveMdcForTaskExecution) {
                 thread = addExecutorDecorators(thread);
@@ -568,6 +589,24 @@ public class OrderedExecutor implements ExecutorService {
         return threads[chooseThreadIdx(orderingKey, threads.length)];
     }
 
+    /**
+     * Get the index of the thread {@link #chooseThread(long)} returns for an ordering key.
+     *
+     * @param orderingKey long ordering key
+     * @return the index of the thread, between 0 and {@link #getNumThreads()}
+     */
+    public int chooseThreadIndex(long orderingKey) {
+        if (threads.length == 1) {
+            return 0;
+        }
+
+        return chooseThreadIdx(orderingKey, threads.length);
+    }
+
+    public int getNumThreads() {
+        return threads.length;
+    }
+
     protected static int chooseThreadIdx(long orderingKey, int numThreads) {
         return MathUtils.signSafeMod(orderingKey >>> 1, numThreads);
     }
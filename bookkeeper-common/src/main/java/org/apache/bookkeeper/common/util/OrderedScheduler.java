@@ -17,6 +17,8 @@
  */
 package org.apache.bookkeeper.common.util;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.util.concurrent.ForwardingListeningExecutorService;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListenableScheduledFuture;
@@ -62,6 +64,7 @@ public class OrderedScheduler extends OrderedExecutor implements ScheduledExecut
     public static class SchedulerBuilder extends OrderedExecutor.AbstractBuilder<OrderedScheduler> {
         @Override
         public OrderedScheduler build() {
+            checkArgument(!enableWorkStealing, "Work stealing is not supported by OrderedScheduler");
             if (null == threadFactory) {
                 threadFactory = new DefaultThreadFactory(name);
             }
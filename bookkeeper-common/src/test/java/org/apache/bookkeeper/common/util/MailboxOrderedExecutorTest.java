@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.common.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class MailboxOrderedExecutorTest {
+
+    private static final int NUM_THREADS = 4;
+
+    private static OrderedExecutor createExecutor() {
+        OrderedExecutor executor = OrderedExecutor.newBuilder()
+                .name("mailbox-test")
+                .numThreads(NUM_THREADS)
+                .enableWorkStealing(true)
+                .build();
+        assertTrue(executor instanceof MailboxOrderedExecutor);
+        return executor;
+    }
+
+    /**
+     * Tracks the tasks of a key, checking they run one at a time and in the order they were submitted.
+     */
+    private static final class KeyTracker {
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        // next sequence expected from each submitter of the key
+        private final int[] nextSequence;
+        private final Set<Long> threads = ConcurrentHashMap.newKeySet();
+
+        KeyTracker(int numSubmitters) {
+            this.nextSequence = new int[numSubmitters];
+        }
+
+        void run(int submitter, int sequence, List<String> violations) {
+            if (!running.compareAndSet(false, true)) {
+                violations.add("two tasks of the same key running at the same time");
+            }
+            threads.add(Thread.currentThread().getId());
+            // only read and written by the tasks of the key, which are serialized
+            if (nextSequence[submitter] != sequence) {
+                violations.add("submitter " + submitter + " expected " + nextSequence[submitter] + " got " + sequence);
+            }
+            nextSequence[submitter] = sequence + 1;
+            running.set(false);
+        }
+    }
+
+    @Test
+    public void testPerKeyOrderingUnderConcurrency() throws Exception {
+        OrderedExecutor executor = createExecutor();
+        int numSubmitters = 8;
+        int numKeys = 16;
+        int tasksPerSubmitter = 20_000;
+        KeyTracker[] trackers = new KeyTracker[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            trackers[i] = new KeyTracker(numSubmitters);
+        }
+        List<String> violations = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(numSubmitters * tasksPerSubmitter);
+        List<Thread> submitters = new ArrayList<>();
+        for (int s = 0; s < numSubmitters; s++) {
+            final int submitter = s;
+            submitters.add(new Thread(() -> {
+                int[] sequences = new int[numKeys];
+                for (int i = 0; i < tasksPerSubmitter; i++) {
+                    // key 0 is hot, it gets half of the tasks
+                    int key = i % 2 == 0 ? 0 : 1 + (i / 2 + submitter) % (numKeys - 1);
+                    int sequence = sequences[key]++;
+                    executor.executeOrdered(key, () -> {
+                        trackers[key].run(submitter, sequence, violations);
+                        done.countDown();
+                    });
+                }
+            }));
+        }
+        for (Thread submitter : submitters) {
+            submitter.start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        try {
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            assertTrue(violations.isEmpty(), violations.toString());
+            for (KeyTracker tracker : trackers) {
+                for (int sequence : tracker.nextSequence) {
+                    assertTrue(sequence > 0);
+                }
+            }
+            // the hot key is not pinned to a thread
+            assertTrue(trackers[0].threads.size() > 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testOtherKeysNotBlockedByBusyKey() throws Exception {
+        OrderedExecutor executor = createExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.executeOrdered(0L, () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            AtomicInteger executed = new AtomicInteger();
+            // with a key per thread, some of them would queue behind the blocked one
+            int numKeys = NUM_THREADS * 8;
+            CountDownLatch done = new CountDownLatch(numKeys);
+            // key 1 shares the mailbox of key 0
+            for (long key = 2; key < numKeys + 2; key++) {
+                executor.executeOrdered(key, () -> {
+                    executed.incrementAndGet();
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(numKeys, executed.get());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadIdIsStablePerKey() throws Exception {
+        OrderedExecutor executor = createExecutor();
+        try {
+            Set<Long> slots = ConcurrentHashMap.newKeySet();
+            for (long key = 0; key < 10_000; key++) {
+                long threadId = executor.getThreadID(key);
+                assertEquals(threadId, executor.getThreadID(key));
+                assertTrue(threadId < 0);
+                slots.add(threadId);
+            }
+            // the keys are spread over the mailboxes
+            assertEquals(NUM_THREADS * MailboxOrderedExecutor.MAILBOXES_PER_THREAD, slots.size());
+
+            // a task is never considered as running on the thread of its key, so it is never run inline
+            int numKeys = 1000;
+            AtomicBoolean matched = new AtomicBoolean(false);
+            CountDownLatch done = new CountDownLatch(numKeys);
+            for (long key = 0; key < numKeys; key++) {
+                final long orderingKey = key;
+                executor.executeOrdered(key, () -> {
+                    if (Thread.currentThread().getId() == executor.getThreadID(orderingKey)) {
+                        matched.set(true);
+                    }
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertFalse(matched.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleThread() throws Exception {
+        OrderedExecutor executor = OrderedExecutor.newBuilder()
+                .name("mailbox-test")
+                .numThreads(1)
+                .enableWorkStealing(true)
+                .build();
+        try {
+            assertEquals(executor.getThreadID(1L), executor.getThreadID(2L));
+            assertNotEquals(executor.getThreadID(1L), executor.submitOrdered(1L, () -> Thread.currentThread().getId())
+                    .get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
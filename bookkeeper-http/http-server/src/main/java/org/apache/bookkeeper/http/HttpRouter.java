@@ -56,6 +56,7 @@ public abstract class HttpRouter<Handler> {
     public static final String BOOKIE_INFO                  = "/api/v1/bookie/info";
     public static final String CLUSTER_INFO                  = "/api/v1/bookie/cluster_info";
     public static final String ENTRY_LOCATION_COMPACT       = "/api/v1/bookie/entry_location_compact";
+    public static final String REQUEST_TRACES               = "/api/v1/bookie/request_traces";
     // autorecovery
     public static final String AUTORECOVERY_STATUS          = "/api/v1/autorecovery/status";
     public static final String RECOVERY_BOOKIE              = "/api/v1/autorecovery/bookie";
@@ -100,6 +101,7 @@ public abstract class HttpRouter<Handler> {
             handlerFactory.newHandler(HttpServer.ApiType.RESUME_GC_COMPACTION));
         this.endpointHandlers.put(ENTRY_LOCATION_COMPACT,
                 handlerFactory.newHandler(HttpServer.ApiType.TRIGGER_ENTRY_LOCATION_COMPACT));
+        this.endpointHandlers.put(REQUEST_TRACES, handlerFactory.newHandler(HttpServer.ApiType.REQUEST_TRACES));
 
         // autorecovery
         this.endpointHandlers.put(AUTORECOVERY_STATUS, handlerFactory
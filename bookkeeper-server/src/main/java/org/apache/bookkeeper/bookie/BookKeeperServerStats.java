@@ -70,6 +70,10 @@ public interface BookKeeperServerStats {
     String GET_BOOKIE_INFO = "GET_BOOKIE_INFO";
     String GET_LIST_OF_ENTRIES_OF_LEDGER = "GET_LIST_OF_ENTRIES_OF_LEDGER";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST = "GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST";
+    String COPY_LEDGER_FRAGMENT = "COPY_LEDGER_FRAGMENT";
+    String COPY_LEDGER_FRAGMENT_REQUEST = "COPY_LEDGER_FRAGMENT_REQUEST";
+    String COPY_LEDGER_FRAGMENT_BYTES = "COPY_LEDGER_FRAGMENT_BYTES";
+    String FRAGMENT_COPY_CLIENT_SCOPE = "fragment_copy_client";
 
     // Ensemble Stats
     String WATCHER_SCOPE = "bookie_watcher";
@@ -92,11 +96,49 @@ public interface BookKeeperServerStats {
     String BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER = "BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER";
 
     String ADD_ENTRY_IN_PROGRESS = "ADD_ENTRY_IN_PROGRESS";
-    String ADD_ENTRY_BLOCKED = "ADD_ENTRY_BLOCKED";
-    String ADD_ENTRY_BLOCKED_WAIT = "ADD_ENTRY_BLOCKED_WAIT";
+    String ADD_ENTRY_CHANNELS_PAUSED = "ADD_ENTRY_CHANNELS_PAUSED";
+    String ADD_ENTRY_CHANNEL_PAUSE_TIME = "ADD_ENTRY_CHANNEL_PAUSE_TIME";
     String READ_ENTRY_IN_PROGRESS = "READ_ENTRY_IN_PROGRESS";
-    String READ_ENTRY_BLOCKED = "READ_ENTRY_BLOCKED";
-    String READ_ENTRY_BLOCKED_WAIT = "READ_ENTRY_BLOCKED_WAIT";
+    String READ_ENTRY_CHANNELS_PAUSED = "READ_ENTRY_CHANNELS_PAUSED";
+    String READ_ENTRY_CHANNEL_PAUSE_TIME = "READ_ENTRY_CHANNEL_PAUSE_TIME";
+
+    // Request Scheduling Stats (scoped under SERVER_SCOPE)
+    String REQUEST_SCHEDULER_SCOPE = "request_scheduler";
+    String REQUEST_SCHEDULER_POOL_LABEL = "pool";
+    String REQUEST_CLASS_LABEL = "request_class";
+    String SCHEDULER_QUEUED_REQUESTS = "SCHEDULER_QUEUED_REQUESTS";
+    String SCHEDULER_QUEUE_WAIT = "SCHEDULER_QUEUE_WAIT";
+    String SCHEDULER_REJECTED_REQUESTS = "SCHEDULER_REJECTED_REQUESTS";
+
+    // Virtual Thread Read Stats (scoped under SERVER_SCOPE)
+    String VIRTUAL_THREAD_READS_PENDING = "VIRTUAL_THREAD_READS_PENDING";
+    String VIRTUAL_THREAD_READ_DISK_WAIT = "VIRTUAL_THREAD_READ_DISK_WAIT";
+
+    // Thread-per-core Stats (thread scoped, scoped under SERVER_SCOPE)
+    String PER_CORE_ADD_ENTRIES = "PER_CORE_ADD_ENTRIES";
+    String PER_CORE_ADD_BYTES = "PER_CORE_ADD_BYTES";
+
+    // Request Tracing Stats (scoped under SERVER_SCOPE)
+    String REQUEST_TRACE_SCOPE = "request_trace";
+    String REQUEST_TRACE_OP_LABEL = "op";
+    String REQUEST_TRACE_STAGE_LABEL = "stage";
+    String REQUEST_TRACE_STAGE_LATENCY = "STAGE_LATENCY";
+
+    // Direct Memory Budget Stats (scoped under BOOKIE_SCOPE)
+    String DIRECT_MEMORY_BUDGET_SCOPE = "direct_memory_budget";
+    String DIRECT_MEMORY_BUDGET_CONSUMER_LABEL = "consumer";
+    String DIRECT_MEMORY_BUDGET_LIMIT = "LIMIT_BYTES";
+    String DIRECT_MEMORY_BUDGET_USED = "USED_BYTES";
+    String DIRECT_MEMORY_BUDGET_SHRUNK = "SHRUNK_BYTES";
+    String DIRECT_MEMORY_BUDGET_OVER_LIMIT = "OVER_LIMIT";
+
+    // Slab Allocator Stats (scoped under BOOKIE_SCOPE)
+    String SLAB_ALLOCATOR_SCOPE = "slab_allocator";
+    String SLAB_ALLOCATOR_SIZE_CLASS_LABEL = "size_class";
+    String SLAB_ALLOCATOR_ALLOCATIONS = "ALLOCATIONS";
+    String SLAB_ALLOCATOR_THREAD_CACHE_HITS = "THREAD_CACHE_HITS";
+    String SLAB_ALLOCATOR_USED = "USED_BYTES";
+    String SLAB_ALLOCATOR_POOLED = "POOLED_BYTES";
 
     //
     // Journal Stats (scoped under SERVER_SCOPE)
@@ -86,6 +86,16 @@ public interface Bookie {
     // TODO: Should be constructed and passed in as a parameter
     LedgerStorage getLedgerStorage();
 
+    DirectMemoryBudget getDirectMemoryBudget();
+
+    /**
+     * Whether an entry of the given ledger can be added right now without waiting for room in its journal or in the
+     * ledger storage. It is only a hint, used to keep the adds that may block off the threads that must not block.
+     */
+    default boolean canAddEntryWithoutBlocking(long ledgerId, int entrySize) {
+        return false;
+    }
+
     // TODO: Move this exceptions somewhere else
     /**
      * Exception is thrown when no such a ledger is found in this bookie.
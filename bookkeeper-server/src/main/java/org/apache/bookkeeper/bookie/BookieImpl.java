@@ -21,6 +21,7 @@
 
 package org.apache.bookkeeper.bookie;
 
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DIRECT_MEMORY_BUDGET_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_INDEX_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_LEDGER_SCOPE;
@@ -128,6 +129,8 @@ public class BookieImpl implements Bookie {
 
     private final boolean writeDataToJournal;
 
+    private final DirectMemoryBudget directMemoryBudget;
+
     // Write Callback do nothing
     static class NopWriteCallback implements WriteCallback {
         @Override
@@ -497,6 +500,26 @@ public class BookieImpl implements Bookie {
         ledgerStorage.registerLedgerDeletionListener(ledgerDeletionListener);
         handles = new HandleFactoryImpl(ledgerStorage);
 
+        // Account the direct memory of the subsystems in a single budget
+        this.directMemoryBudget = new DirectMemoryBudget(conf.getDirectMemoryBudgetMaxSizeMb() * 1024 * 1024,
+                statsLogger.scope(DIRECT_MEMORY_BUDGET_SCOPE));
+        directMemoryBudget.register("journal", null)
+                .reserve((long) conf.getJournalWriteBufferSizeKB() * 1024 * journals.size());
+        ledgerStorage.setDirectMemoryBudget(directMemoryBudget);
+        if (directMemoryBudget.isLimited()) {
+            long fixedReserved = directMemoryBudget.getFixedReserved();
+            if (fixedReserved >= directMemoryBudget.getLimit()) {
+                // the adds in progress could never be admitted
+                String err = "Direct memory budget of " + directMemoryBudget.getLimit() + " bytes does not fit the "
+                        + fixedReserved + " bytes allocated upfront by the journal, the write cache and the entry"
+                        + " logger, increase directMemoryBudgetMaxSizeMb or reduce those buffers";
+                LOG.error(err);
+                throw new IOException(err);
+            }
+            LOG.info("Direct memory budget: {} bytes, of which {} bytes allocated at startup",
+                    directMemoryBudget.getLimit(), directMemoryBudget.getUsed());
+        }
+
         // Expose Stats
         this.bookieStats = new BookieStats(statsLogger, journalDirectories.size(), conf.getJournalQueueSize());
     }
@@ -904,6 +927,9 @@ public class BookieImpl implements Bookie {
                     journal.shutdown();
                 }
 
+                // Stop shrinking the read caches before they are closed
+                directMemoryBudget.shutdown();
+
                 // Shutdown the EntryLogger which has the GarbageCollector Thread running
                 ledgerStorage.shutdown();
 
@@ -1089,6 +1115,12 @@ public class BookieImpl implements Bookie {
         bookieStats.getForceLedgerOps().inc();
     }
 
+    @Override
+    public boolean canAddEntryWithoutBlocking(long ledgerId, int entrySize) {
+        return (!writeDataToJournal || getJournal(ledgerId).canLogAddEntryWithoutBlocking())
+                && ledgerStorage.canAddEntryWithoutBlocking(ledgerId, entrySize);
+    }
+
     /**
      * Add entry to a ledger.
      */
@@ -1191,6 +1223,11 @@ public class BookieImpl implements Bookie {
         return ledgerStorage;
     }
 
+    @Override
+    public DirectMemoryBudget getDirectMemoryBudget() {
+        return directMemoryBudget;
+    }
+
     @VisibleForTesting
     public BookieStateManager getStateManager() {
         return (BookieStateManager) this.stateManager;
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DIRECT_MEMORY_BUDGET_CONSUMER_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DIRECT_MEMORY_BUDGET_LIMIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DIRECT_MEMORY_BUDGET_OVER_LIMIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DIRECT_MEMORY_BUDGET_SHRUNK;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DIRECT_MEMORY_BUDGET_USED;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the direct memory reserved by the subsystems of a bookie against a single budget.
+ *
+ * <p>Each subsystem registers as a {@link Consumer} and reserves the memory before allocating it. Memory that
+ * was already allocated (e.g. a request read from the socket, or an entry queued to the journal) is always
+ * accounted, and the caller is told whether the budget is exceeded, so that it can stop admitting more work.
+ * Caches register a {@link Shrinkable}: when a reservation exceeds the budget, they are asked to free memory, so
+ * that they yield to the memory in use by the requests in progress, and they grow back when there is room again.
+ * Shrinking takes the locks of the caches, so it runs on a background thread: the reservations are made by the
+ * Netty IO threads, which must not block. A shrinkable consumer never makes the others shrink, which also means
+ * that it can reserve memory while holding the locks it takes to shrink.
+ *
+ * <p>A limit of 0 means that the memory is tracked, but never limited.
+ */
+public class DirectMemoryBudget {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectMemoryBudget.class);
+
+    /**
+     * A consumer that can release some of its memory on demand.
+     */
+    public interface Shrinkable {
+        /**
+         * Release memory, and the reservations with it.
+         *
+         * @param bytes how many bytes should be released
+         * @return how many bytes were released
+         */
+        long shrink(long bytes);
+    }
+
+    private final long limit;
+    private final AtomicLong used = new AtomicLong(0);
+    private final List<Consumer> consumers = new CopyOnWriteArrayList<>();
+    private final StatsLogger statsLogger;
+    private final Counter shrunkBytes;
+    private final Counter overLimit;
+    // null if the budget is not limited, in which case nothing has to shrink
+    private final ExecutorService shrinkExecutor;
+    private final AtomicBoolean shrinkScheduled = new AtomicBoolean(false);
+
+    public DirectMemoryBudget(long limit, StatsLogger statsLogger) {
+        this.limit = limit;
+        this.statsLogger = statsLogger;
+        this.shrunkBytes = statsLogger.getCounter(DIRECT_MEMORY_BUDGET_SHRUNK);
+        this.overLimit = statsLogger.getCounter(DIRECT_MEMORY_BUDGET_OVER_LIMIT);
+        this.shrinkExecutor = limit > 0
+                ? Executors.newSingleThreadExecutor(new DefaultThreadFactory("DirectMemoryBudgetShrink"))
+                : null;
+        statsLogger.registerGauge(DIRECT_MEMORY_BUDGET_LIMIT, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return limit;
+            }
+        });
+    }
+
+    public boolean isLimited() {
+        return limit > 0;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public boolean isOverLimit() {
+        return limit > 0 && used.get() > limit;
+    }
+
+    /**
+     * @return the memory reserved by the consumers that cannot shrink, i.e. the part of the budget that will never
+     *         be available to the others
+     */
+    public long getFixedReserved() {
+        long fixed = 0;
+        for (Consumer consumer : consumers) {
+            if (consumer.shrinkable == null) {
+                fixed += consumer.getUsed();
+            }
+        }
+        return fixed;
+    }
+
+    /**
+     * Register a consumer of the budget.
+     *
+     * @param name name of the consumer, used to label its usage gauge
+     * @param shrinkable how to make the consumer release memory, null if it cannot
+     */
+    public Consumer register(String name, Shrinkable shrinkable) {
+        Consumer consumer = new Consumer(name, shrinkable);
+        consumers.add(consumer);
+        statsLogger.scopeLabel(DIRECT_MEMORY_BUDGET_CONSUMER_LABEL, name)
+                .registerGauge(DIRECT_MEMORY_BUDGET_USED, new Gauge<Long>() {
+                    @Override
+                    public Long getDefaultValue() {
+                        return 0L;
+                    }
+
+                    @Override
+                    public Long getSample() {
+                        return consumer.getUsed();
+                    }
+                });
+        return consumer;
+    }
+
+    /**
+     * Stop shrinking the consumers, waiting for a shrink in progress to complete.
+     */
+    public void shutdown() throws InterruptedException {
+        if (shrinkExecutor != null) {
+            shrinkExecutor.shutdown();
+            if (!shrinkExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warn("Timed out waiting for the read caches to shrink");
+            }
+        }
+    }
+
+    /**
+     * Make the shrinkable consumers release memory in the background. The requests coming while a shrink is
+     * scheduled are coalesced with it.
+     */
+    private void scheduleShrink() {
+        if (shrinkExecutor == null || !shrinkScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            shrinkExecutor.execute(() -> {
+                // a reservation exceeding the budget from now on schedules another shrink
+                shrinkScheduled.set(false);
+                shrinkConsumers();
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            shrinkScheduled.set(false);
+        }
+    }
+
+    /**
+     * Ask the shrinkable consumers to release enough memory to get back within the budget. Only called by the
+     * shrink thread.
+     */
+    private void shrinkConsumers() {
+        for (Consumer consumer : consumers) {
+            long excess = used.get() - limit;
+            if (excess <= 0) {
+                return;
+            }
+            if (consumer.shrinkable == null) {
+                continue;
+            }
+            long released = consumer.shrinkable.shrink(excess);
+            if (released > 0) {
+                shrunkBytes.addCount(released);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Released {} bytes of {} to get within the direct memory budget of {} bytes",
+                            released, consumer.name, limit);
+                }
+            }
+        }
+    }
+
+    /**
+     * The reservations of a subsystem.
+     */
+    public final class Consumer {
+        private final String name;
+        private final Shrinkable shrinkable;
+        private final AtomicLong consumerUsed = new AtomicLong(0);
+
+        private Consumer(String name, Shrinkable shrinkable) {
+            this.name = name;
+            this.shrinkable = shrinkable;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getUsed() {
+            return consumerUsed.get();
+        }
+
+        /**
+         * Reserve memory that is yet to be allocated, if the budget allows it. If this consumer is not shrinkable,
+         * the shrinkable ones are asked to release memory in the background, so that a later attempt can succeed.
+         *
+         * @return true if the memory was reserved, false if the budget is exhausted
+         */
+        public boolean tryReserve(long bytes) {
+            if (tryAdd(bytes)) {
+                return true;
+            }
+            if (shrinkable == null) {
+                scheduleShrink();
+            }
+            return false;
+        }
+
+        private boolean tryAdd(long bytes) {
+            while (true) {
+                long current = used.get();
+                if (limit > 0 && current + bytes > limit) {
+                    return false;
+                }
+                if (used.compareAndSet(current, current + bytes)) {
+                    consumerUsed.addAndGet(bytes);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Account memory that is already allocated. If it exceeds the budget and this consumer is not shrinkable,
+         * the shrinkable ones are asked to release memory in the background.
+         *
+         * @return true if the memory in use is still within the budget
+         */
+        public boolean reserve(long bytes) {
+            consumerUsed.addAndGet(bytes);
+            long newUsed = used.addAndGet(bytes);
+            if (limit <= 0 || newUsed <= limit) {
+                return true;
+            }
+            if (shrinkable == null) {
+                scheduleShrink();
+            }
+            overLimit.inc();
+            return false;
+        }
+
+        /**
+         * @return true if the memory reserved by all the consumers exceeds the budget
+         */
+        public boolean isOverLimit() {
+            return DirectMemoryBudget.this.isOverLimit();
+        }
+
+        public void release(long bytes) {
+            consumerUsed.addAndGet(-bytes);
+            used.addAndGet(-bytes);
+        }
+    }
+}
@@ -55,6 +55,7 @@ import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.RequestTrace;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -304,6 +305,8 @@ public class Journal implements CheckpointSource {
         Object ctx;
         long enqueueTime;
         boolean ackBeforeSync;
+        // null if the request is not traced
+        RequestTrace trace;
 
         OpStatsLogger journalAddEntryStats;
         Counter callbackTime;
@@ -321,6 +324,11 @@ public class Journal implements CheckpointSource {
             qe.enqueueTime = enqueueTime;
             qe.journalAddEntryStats = journalAddEntryStats;
             qe.callbackTime = callbackTime;
+            // the entry has been added to the ledger storage before being logged to the journal
+            qe.trace = cb instanceof RequestTrace.Traceable ? ((RequestTrace.Traceable) cb).getTrace() : null;
+            if (qe.trace != null) {
+                qe.trace.mark(RequestTrace.Stage.LEDGER_STORAGE, enqueueTime);
+            }
             return qe;
         }
 
@@ -359,6 +367,7 @@ public class Journal implements CheckpointSource {
             this.ctx = null;
             this.journalAddEntryStats = null;
             this.callbackTime = null;
+            this.trace = null;
             recyclerHandle.recycle(this);
         }
     }
@@ -376,6 +385,14 @@ public class Journal implements CheckpointSource {
         private boolean flushed;
 
         public int process(ObjectHashSet<BookieRequestHandler> writeHandlers) {
+            return process(writeHandlers, -1L, -1L);
+        }
+
+        /**
+         * @param fsyncStartNanos when the sync of the journal started, -1 if not known
+         * @param fsyncEndNanos when the journal was synced, -1 if not known
+         */
+        int process(ObjectHashSet<BookieRequestHandler> writeHandlers, long fsyncStartNanos, long fsyncEndNanos) {
             closeFileIfNecessary();
 
             // Notify the waiters that the force write succeeded
@@ -386,6 +403,10 @@ public class Journal implements CheckpointSource {
                             && qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
                         writeHandlers.add((BookieRequestHandler) qe.getCtx());
                     }
+                    if (qe.trace != null && fsyncStartNanos > 0) {
+                        qe.trace.mark(RequestTrace.Stage.FORCE_WRITE_QUEUE, fsyncStartNanos);
+                        qe.trace.mark(RequestTrace.Stage.FSYNC, fsyncEndNanos);
+                    }
                     qe.run();
                 }
             }
@@ -484,7 +505,7 @@ public class Journal implements CheckpointSource {
             LOG.info("ForceWrite Thread started");
             ThreadRegistry.register(super.getName());
 
-            if (conf.isBusyWaitEnabled()) {
+            if (conf.isBusyWaitEnabled() || conf.isThreadPerCoreEnabled()) {
                 try {
                     CpuAffinity.acquireCore();
                 } catch (Exception e) {
@@ -505,13 +526,15 @@ public class Journal implements CheckpointSource {
 
                     // Sync and mark the journal up to the position of the last entry in the batch
                     ForceWriteRequest lastRequest = localRequests[requestsCount - 1];
+                    long fsyncStartNanos = requestTracingEnabled ? MathUtils.nowInNano() : -1L;
                     syncJournal(lastRequest);
+                    long fsyncEndNanos = requestTracingEnabled ? MathUtils.nowInNano() : -1L;
 
                     // All the requests in the batch are now fully-synced. We can trigger sending the
                     // responses
                     for (int i = 0; i < requestsCount; i++) {
                         ForceWriteRequest req = localRequests[i];
-                        numEntriesInLastForceWrite += req.process(writeHandlers);
+                        numEntriesInLastForceWrite += req.process(writeHandlers, fsyncStartNanos, fsyncEndNanos);
                         localRequests[i] = null;
                         req.recycle();
                     }
@@ -640,6 +663,8 @@ public class Journal implements CheckpointSource {
 
     // Expose Stats
     private final JournalStats journalStats;
+    // whether the requests are sampled for tracing, see RequestTrace
+    private final boolean requestTracingEnabled;
 
     private JournalAliveListener journalAliveListener;
 
@@ -714,6 +739,7 @@ public class Journal implements CheckpointSource {
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
                 () -> memoryLimitController.currentUsage());
+        this.requestTracingEnabled = conf.getRequestTracingSampleRate() > 0;
     }
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
@@ -911,6 +937,14 @@ public class Journal implements CheckpointSource {
                 callbackTime));
     }
 
+    /**
+     * Whether an entry can be logged right now without waiting for room in the journal queue or for journal memory
+     * to be released. It is only a hint, concurrent adds can still take the room that was left.
+     */
+    boolean canLogAddEntryWithoutBlocking() {
+        return queue.remainingCapacity() > 0 && !memoryLimitController.isLimitExceeded();
+    }
+
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
@@ -957,7 +991,7 @@ public class Journal implements CheckpointSource {
         LOG.info("Starting journal on {}", journalDirectory);
         ThreadRegistry.register(journalThreadName);
 
-        if (conf.isBusyWaitEnabled()) {
+        if (conf.isBusyWaitEnabled() || conf.isThreadPerCoreEnabled()) {
             try {
                 CpuAffinity.acquireCore();
             } catch (Exception e) {
@@ -1095,6 +1129,9 @@ public class Journal implements CheckpointSource {
 
                         for (int i = 0; i < toFlush.size(); i++) {
                             QueueEntry entry = toFlush.get(i);
+                            if (entry != null && entry.trace != null) {
+                                entry.trace.mark(RequestTrace.Stage.GROUP_COMMIT);
+                            }
                             if (entry != null && (!syncData || entry.ackBeforeSync)) {
                                 toFlush.set(i, null);
                                 numEntriesToFlush--;
@@ -1172,6 +1209,9 @@ public class Journal implements CheckpointSource {
                 journalStats.getJournalQueueSize().dec();
                 journalStats.getJournalQueueStats()
                         .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                if (qe.trace != null) {
+                    qe.trace.mark(RequestTrace.Stage.JOURNAL_QUEUE);
+                }
 
                 if ((qe.entryId == BookieImpl.METAENTRY_ID_LEDGER_EXPLICITLAC)
                         && (journalFormatVersionToWrite < JournalChannel.V6)) {
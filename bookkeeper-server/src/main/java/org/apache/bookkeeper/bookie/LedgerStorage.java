@@ -62,6 +62,13 @@ public interface LedgerStorage {
     void setCheckpointSource(CheckpointSource checkpointSource);
     void setCheckpointer(Checkpointer checkpointer);
 
+    /**
+     * Account the direct memory used by the storage in the bookie memory budget. Storages that do not hold direct
+     * memory of their own can ignore it.
+     */
+    default void setDirectMemoryBudget(DirectMemoryBudget budget) {
+    }
+
     /**
      * Start any background threads belonging to the storage system. For example, garbage collection.
      */
@@ -139,6 +146,15 @@ public interface LedgerStorage {
      */
     long addEntry(ByteBuf entry) throws IOException, BookieException;
 
+    /**
+     * Whether an entry of the given size can be added right now without waiting, e.g. for a flush to make room for
+     * it. It is only a hint, concurrent adds can still take the room that was left. Storages that cannot tell return
+     * false.
+     */
+    default boolean canAddEntryWithoutBlocking(long ledgerId, int entrySize) {
+        return false;
+    }
+
     /**
      * Read an entry from storage.
      */
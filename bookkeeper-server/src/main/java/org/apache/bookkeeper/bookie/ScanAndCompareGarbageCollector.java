@@ -36,7 +36,6 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.Cleanup;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
@@ -152,8 +151,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
             long start;
             long end = -1;
             boolean done = false;
-            AtomicBoolean isBookieInEnsembles = new AtomicBoolean(false);
-            Versioned<LedgerMetadata> metadata = null;
+            Set<BookieId> ledgerBookies = null;
             while (!done) {
                 start = end + 1;
                 gcMetadataOpRateLimiter.acquire();
@@ -175,12 +173,12 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 for (Long bkLid : subBkActiveLedgers) {
                     if (!ledgersInMetadata.contains(bkLid)) {
                         if (verifyMetadataOnGc) {
-                            isBookieInEnsembles.set(false);
-                            metadata = null;
+                            ledgerBookies = null;
                             int rc = BKException.Code.OK;
                             try {
                                 gcMetadataOpRateLimiter.acquire();
-                                metadata = result(ledgerManager.readLedgerMetadata(bkLid), zkOpTimeoutMs,
+                                // only the bookies of the ledger are needed, not the rest of its metadata
+                                ledgerBookies = result(ledgerManager.readLedgerBookies(bkLid), zkOpTimeoutMs,
                                         TimeUnit.MILLISECONDS);
                             } catch (BKException | TimeoutException e) {
                                 if (e instanceof BKException) {
@@ -195,13 +193,8 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                             // check bookie should be part of ensembles in one
                             // of the segment else ledger should be deleted from
                             // local storage
-                            if (metadata != null && metadata.getValue() != null) {
-                                metadata.getValue().getAllEnsembles().forEach((entryId, ensembles) -> {
-                                    if (ensembles != null && ensembles.contains(selfBookieAddress)) {
-                                        isBookieInEnsembles.set(true);
-                                    }
-                                });
-                                if (isBookieInEnsembles.get()) {
+                            if (ledgerBookies != null) {
+                                if (ledgerBookies.contains(selfBookieAddress)) {
                                     continue;
                                 }
                             } else if (rc != BKException.Code.NoSuchLedgerExistsOnMetadataServerException) {
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.bookie.stats;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SLAB_ALLOCATOR_ALLOCATIONS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SLAB_ALLOCATOR_POOLED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SLAB_ALLOCATOR_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SLAB_ALLOCATOR_SIZE_CLASS_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SLAB_ALLOCATOR_THREAD_CACHE_HITS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SLAB_ALLOCATOR_USED;
+
+import java.util.function.LongSupplier;
+import org.apache.bookkeeper.common.allocator.impl.SlabByteBufAllocator;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * The stats of the size classes of the slab allocator, labelled by the size of the class: the number of buffers
+ * allocated, and served by the per-thread caches, the memory of the buffers in use, and the memory pooled.
+ */
+@StatsDoc(
+    name = SLAB_ALLOCATOR_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Slab allocator related stats"
+)
+public class SlabAllocatorStats {
+
+    public SlabAllocatorStats(SlabByteBufAllocator allocator, StatsLogger statsLogger) {
+        for (SlabByteBufAllocator.SizeClassMetric metric : allocator.sizeClassMetrics()) {
+            StatsLogger sizeClassLogger = statsLogger.scopeLabel(SLAB_ALLOCATOR_SIZE_CLASS_LABEL,
+                    String.valueOf(metric.size()));
+            registerGauge(sizeClassLogger, SLAB_ALLOCATOR_ALLOCATIONS, metric::numAllocations);
+            registerGauge(sizeClassLogger, SLAB_ALLOCATOR_THREAD_CACHE_HITS, metric::numThreadCacheHits);
+            registerGauge(sizeClassLogger, SLAB_ALLOCATOR_USED, metric::usedBytes);
+            registerGauge(sizeClassLogger, SLAB_ALLOCATOR_POOLED, metric::pooledBytes);
+        }
+    }
+
+    private static void registerGauge(StatsLogger statsLogger, String name, LongSupplier supplier) {
+        statsLogger.registerGauge(name, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return supplier.getAsLong();
+            }
+        });
+    }
+}
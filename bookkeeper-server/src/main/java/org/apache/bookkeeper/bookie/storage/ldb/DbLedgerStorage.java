@@ -48,6 +48,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.DirectMemoryBudget;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
@@ -122,6 +123,9 @@ public class DbLedgerStorage implements LedgerStorage {
     // but in that case data integrity should kick off anyhow.
     private static final long STORAGE_FLAGS_KEY = 0L;
     private int numberOfDirs;
+    // direct memory allocated upfront, accounted in the memory budget
+    private long writeCacheSize;
+    private long entryLoggerBuffersSize;
     private List<SingleDirectoryDbLedgerStorage> ledgerStorageList;
 
     private ExecutorService entryLoggerWriteExecutor = null;
@@ -173,6 +177,8 @@ public class DbLedgerStorage implements LedgerStorage {
 
         long perDirectoryWriteCacheSize = writeCacheMaxSize / numberOfDirs;
         long perDirectoryReadCacheSize = readCacheMaxSize / numberOfDirs;
+        this.writeCacheSize = perDirectoryWriteCacheSize * numberOfDirs;
+        this.entryLoggerBuffersSize = 0;
         int readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
         long readAheadCacheBatchBytesSize = conf.getInt(READ_AHEAD_CACHE_BATCH_BYTES_SIZE,
                 DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE);
@@ -205,6 +211,7 @@ public class DbLedgerStorage implements LedgerStorage {
                     conf,
                     DIRECT_IO_ENTRYLOGGER_TOTAL_READBUFFER_SIZE_MB,
                     DEFAULT_DIRECT_IO_TOTAL_READBUFFER_SIZE_MB) / numberOfDirs;
+                entryLoggerBuffersSize += perDirectoryTotalWriteBufferSize + perDirectoryTotalReadBufferSize;
                 int readBufferSize = MB * (int) getLongVariableOrDefault(
                     conf,
                     DIRECT_IO_ENTRYLOGGER_READBUFFER_SIZE_MB,
@@ -301,6 +308,28 @@ public class DbLedgerStorage implements LedgerStorage {
         ledgerStorageList.forEach(s -> s.setCheckpointer(checkpointer));
     }
 
+    @Override
+    public void setDirectMemoryBudget(DirectMemoryBudget budget) {
+        // The write caches and the entry logger buffers are allocated upfront and never released
+        budget.register("write_cache", null).reserve(writeCacheSize);
+        if (entryLoggerBuffersSize > 0) {
+            budget.register("entry_logger", null).reserve(entryLoggerBuffersSize);
+        }
+
+        // The read caches yield their oldest segments to the other consumers
+        DirectMemoryBudget.Consumer readCacheBudget = budget.register("read_cache", bytes -> {
+            long released = 0;
+            for (SingleDirectoryDbLedgerStorage storage : ledgerStorageList) {
+                if (released >= bytes) {
+                    break;
+                }
+                released += storage.shrinkReadCache(bytes - released);
+            }
+            return released;
+        });
+        ledgerStorageList.forEach(s -> s.setReadCacheMemoryBudget(readCacheBudget));
+    }
+
     @Override
     public void start() {
         ledgerStorageList.forEach(LedgerStorage::start);
@@ -356,6 +385,11 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).addEntry(entry);
     }
 
+    @Override
+    public boolean canAddEntryWithoutBlocking(long ledgerId, int entrySize) {
+        return getLedgerStorage(ledgerId).canAddEntryWithoutBlocking(ledgerId, entrySize);
+    }
+
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.bookkeeper.bookie.DirectMemoryBudget;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -45,6 +46,11 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>When a memory budget is set, the oldest segments can be released to make
+ * room for other consumers of the budget. The released segments are skipped
+ * in the rotation, and allocated again with the allocator of the cache when
+ * the budget allows it.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
@@ -62,6 +68,11 @@ public class ReadCache implements Closeable {
     private ByteBufAllocator allocator;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    // null if the memory of the cache is not accounted
+    private DirectMemoryBudget.Consumer memoryBudget;
+    // updated under the write lock, read without it to skip shrinking a cache that cannot shrink
+    private final AtomicInteger allocatedSegments = new AtomicInteger(0);
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
@@ -82,11 +93,89 @@ public class ReadCache implements Closeable {
                     .build();
             cacheIndexes.add(concurrentLongLongPairHashMap);
         }
+        allocatedSegments.set(segmentsCount);
+    }
+
+    /**
+     * Account the segments of the cache in a memory budget, so that they can be released when other consumers need
+     * the memory.
+     */
+    public void setMemoryBudget(DirectMemoryBudget.Consumer memoryBudget) {
+        lock.writeLock().lock();
+        try {
+            this.memoryBudget = memoryBudget;
+            memoryBudget.reserve(allocatedSegments.get() * (long) segmentSize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Release the oldest segments, always keeping the current one.
+     *
+     * @param bytes how many bytes should be released
+     * @return how many bytes were released
+     */
+    public long shrink(long bytes) {
+        if (allocatedSegments.get() <= 1) {
+            return 0;
+        }
+        lock.writeLock().lock();
+        try {
+            long released = 0;
+            int size = cacheSegments.size();
+            // The segment after the current one is the oldest
+            for (int i = 1; i < size && released < bytes; i++) {
+                int segmentIdx = (currentSegmentIdx + i) % size;
+                ByteBuf segment = cacheSegments.get(segmentIdx);
+                if (segment != null) {
+                    cacheIndexes.get(segmentIdx).clear();
+                    cacheSegments.set(segmentIdx, null);
+                    segment.release();
+                    allocatedSegments.decrementAndGet();
+                    released += segmentSize;
+                }
+            }
+            if (released > 0 && memoryBudget != null) {
+                memoryBudget.release(released);
+            }
+            return released;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
     public void close() {
-        cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        lock.writeLock().lock();
+        try {
+            if (memoryBudget != null) {
+                memoryBudget.release(allocatedSegments.get() * (long) segmentSize);
+            }
+            cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Move to the next segment that is allocated, or that can be allocated again within the memory budget. The
+     * current segment is reused if there is no other one.
+     */
+    private int nextSegmentIdx() {
+        int size = cacheSegments.size();
+        for (int i = 1; i < size; i++) {
+            int segmentIdx = (currentSegmentIdx + i) % size;
+            if (cacheSegments.get(segmentIdx) != null) {
+                return segmentIdx;
+            }
+            if (memoryBudget == null || memoryBudget.tryReserve(segmentSize)) {
+                cacheSegments.set(segmentIdx, allocator.directBuffer(segmentSize, segmentSize));
+                allocatedSegments.incrementAndGet();
+                return segmentIdx;
+            }
+        }
+        return currentSegmentIdx;
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
@@ -122,7 +211,7 @@ public class ReadCache implements Closeable {
             int offset = currentSegmentOffset.getAndAdd(entrySize);
             if (offset + entrySize > segmentSize) {
                 // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                currentSegmentIdx = nextSegmentIdx();
                 currentSegmentOffset.set(alignedSize);
                 cacheIndexes.get(currentSegmentIdx).clear();
                 offset = 0;
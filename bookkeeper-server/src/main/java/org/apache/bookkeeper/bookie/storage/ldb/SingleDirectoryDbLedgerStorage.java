@@ -57,6 +57,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
+import org.apache.bookkeeper.bookie.DirectMemoryBudget;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
@@ -254,6 +255,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     @Override
     public void setCheckpointer(Checkpointer checkpointer) { }
 
+    void setReadCacheMemoryBudget(DirectMemoryBudget.Consumer memoryBudget) {
+        readCache.setMemoryBudget(memoryBudget);
+    }
+
+    long shrinkReadCache(long bytes) {
+        return readCache.shrink(bytes);
+    }
+
     /**
      * Evict all the ledger info object that were not used recently.
      */
@@ -517,6 +526,15 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entryId;
     }
 
+    /**
+     * An entry is added without waiting as long as it fits in the write cache, otherwise it waits for the flush to
+     * rotate the cache in {@link #triggerFlushAndAddEntry(long, long, ByteBuf)}.
+     */
+    @Override
+    public boolean canAddEntryWithoutBlocking(long ledgerId, int entrySize) {
+        return writeCache.hasRoomFor(entrySize);
+    }
+
     private void triggerFlushAndAddEntry(long ledgerId, long entryId, ByteBuf entry)
             throws IOException, BookieException {
         long throttledStartTime = MathUtils.nowInNano();
@@ -285,6 +285,13 @@ public class WriteCache implements Closeable {
         return cacheSize.get();
     }
 
+    /**
+     * @return whether an entry of the given size would fit in the cache right now
+     */
+    public boolean hasRoomFor(int size) {
+        return cacheOffset.get() + align64(size) <= maxCacheSize;
+    }
+
     public long count() {
         return cacheCount.sum();
     }
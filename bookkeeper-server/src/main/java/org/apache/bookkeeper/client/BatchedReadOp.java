@@ -24,7 +24,11 @@ import io.netty.buffer.ByteBuf;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.bookkeeper.client.api.LedgerEntry;
 import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
@@ -110,8 +114,48 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
 
         bufList.retain();
+        Executor verificationExecutor = clientCtx.getDigestVerificationExecutor();
+        if (verificationExecutor != null && !entry.isComplete()
+                && bufList.size() >= clientCtx.getConf().batchReadDigestVerificationMinEntries) {
+            verifyDigestsInParallel(entry.eId, bufList, verificationExecutor)
+                    .whenComplete((firstMismatch, cause) -> {
+                        // hop back to the ledger thread, so entries are delivered as with inline verification
+                        try {
+                            clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId,
+                                    () -> completeVerifiedRead(rctx, entry, bufList, firstMismatch, cause));
+                        } catch (RejectedExecutionException ree) {
+                            LOG.error("Failed to complete batch read of {} on the ledger thread", entry, ree);
+                            bufList.release();
+                            entry.fail(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
+                                    BKException.Code.InterruptedException));
+                        }
+                    });
+            return;
+        }
+        completeRead(rctx, entry, bufList, false);
+    }
+
+    private void completeVerifiedRead(ReadContext rctx, BatchedLedgerEntryRequest entry, ByteBufList bufList,
+                                      Integer firstMismatch, Throwable cause) {
+        if (cause != null || firstMismatch >= 0) {
+            bufList.release();
+            if (cause != null) {
+                LOG.error("Failed to verify digests of batch read response for {}", entry, cause);
+            }
+            if (!entry.isComplete()) {
+                clientCtx.getClientStats().getReadOpDmCounter().inc();
+                entry.logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Mac mismatch",
+                        BKException.Code.DigestMatchException);
+            }
+            return;
+        }
+        completeRead(rctx, entry, bufList, true);
+    }
+
+    private void completeRead(ReadContext rctx, BatchedLedgerEntryRequest entry, ByteBufList bufList,
+                              boolean digestsVerified) {
         // if entry has completed don't handle twice
-        if (entry.complete(rctx.bookieIndex, rctx.to, bufList)) {
+        if (entry.complete(rctx.bookieIndex, rctx.to, bufList, digestsVerified)) {
             if (!isRecoveryRead) {
                 // do not advance LastAddConfirmed for recovery reads
                 lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
@@ -122,6 +166,49 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         }
     }
 
+    /**
+     * Verify the digests of the entries of a batch response, splitting them in contiguous ranges
+     * verified concurrently on the given executor. Each buffer is only touched by one task, and its
+     * reader index is left at the beginning of the entry data, as
+     * {@link DigestManager#verifyDigestAndReturnData(long, ByteBuf)} does. A range rejected by the executor
+     * is verified by the calling thread, so every range is verified exactly once whatever the executor accepts.
+     *
+     * @return a future completed with the index of the first entry whose digest does not match, or -1
+     */
+    private CompletableFuture<Integer> verifyDigestsInParallel(long firstEntryId, ByteBufList bufList,
+                                                               Executor executor) {
+        final int size = bufList.size();
+        final int parallelism = Math.max(1, Math.min(size, clientCtx.getConf().batchReadDigestVerificationParallelism));
+        final int rangeSize = (size + parallelism - 1) / parallelism;
+        final DigestManager macManager = lh.getDigestManager();
+        final AtomicInteger firstMismatch = new AtomicInteger(Integer.MAX_VALUE);
+        final List<CompletableFuture<Void>> tasks = new ArrayList<>(parallelism);
+        for (int from = 0; from < size; from += rangeSize) {
+            final int rangeStart = from;
+            final int rangeEnd = Math.min(size, from + rangeSize);
+            Runnable verifyRange = () -> {
+                for (int i = rangeStart; i < rangeEnd; i++) {
+                    try {
+                        macManager.verifyDigestAndReturnData(firstEntryId + i, bufList.getBuffer(i));
+                    } catch (BKException.BKDigestMatchException e) {
+                        firstMismatch.accumulateAndGet(i, Math::min);
+                        return;
+                    }
+                }
+            };
+            try {
+                tasks.add(CompletableFuture.runAsync(verifyRange, executor));
+            } catch (RejectedExecutionException ree) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Digest verification rejected, verifying inline : {}", ree.getMessage());
+                }
+                tasks.add(CompletableFuture.runAsync(verifyRange, Runnable::run));
+            }
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> firstMismatch.get() == Integer.MAX_VALUE ? -1 : firstMismatch.get());
+    }
+
     void sendReadTo(int bookieIndex, BookieId to, BatchedLedgerEntryRequest entry) throws InterruptedException {
         if (lh.throttler != null) {
             lh.throttler.acquire();
@@ -153,7 +240,7 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
             this.entries = new ArrayList<>(maxCount);
         }
 
-        boolean complete(int bookieIndex, BookieId host, final ByteBufList bufList) {
+        boolean complete(int bookieIndex, BookieId host, final ByteBufList bufList, boolean digestsVerified) {
             if (isComplete()) {
                 return false;
             }
@@ -161,13 +248,18 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
                 for (int i = 0; i < bufList.size(); i++) {
                     ByteBuf buffer = bufList.getBuffer(i);
                     ByteBuf content;
-                    try {
-                        content = lh.macManager.verifyDigestAndReturnData(eId + i, buffer);
-                    } catch (BKException.BKDigestMatchException e) {
-                        clientCtx.getClientStats().getReadOpDmCounter().inc();
-                        logErrorAndReattemptRead(bookieIndex, host, "Mac mismatch",
-                                BKException.Code.DigestMatchException);
-                        return false;
+                    if (digestsVerified) {
+                        // the reader index was already moved past the digest by the verification
+                        content = buffer;
+                    } else {
+                        try {
+                            content = lh.macManager.verifyDigestAndReturnData(eId + i, buffer);
+                        } catch (BKException.BKDigestMatchException e) {
+                            clientCtx.getClientStats().getReadOpDmCounter().inc();
+                            logErrorAndReattemptRead(bookieIndex, host, "Mac mismatch",
+                                    BKException.Code.DigestMatchException);
+                            return false;
+                        }
                     }
                     rc = BKException.Code.OK;
                     /*
@@ -303,8 +395,8 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         }
 
         @Override
-        boolean complete(int bookieIndex, BookieId host, final ByteBufList bufList) {
-            boolean completed = super.complete(bookieIndex, host, bufList);
+        boolean complete(int bookieIndex, BookieId host, final ByteBufList bufList, boolean digestsVerified) {
+            boolean completed = super.complete(bookieIndex, host, bufList, digestsVerified);
             if (completed) {
                 int numReplicasTried = getNextReplicaIndexToReadFrom();
                 // Check if any speculative reads were issued and mark any slow bookies before
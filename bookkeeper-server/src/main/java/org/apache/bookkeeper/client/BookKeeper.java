@@ -40,7 +40,10 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -131,6 +134,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
 
     final OrderedExecutor mainWorkerPool;
     final OrderedScheduler scheduler;
+    final Executor digestVerificationExecutor;
     final HashedWheelTimer requestTimer;
     final boolean ownTimer;
     final FeatureProvider featureProvider;
@@ -140,6 +144,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     // Ledger manager responsible for how to store ledger meta data
     final LedgerManagerFactory ledgerManagerFactory;
     final LedgerManager ledgerManager;
+    // Cache of the ledger metadata, null if disabled
+    final LedgerMetadataCache ledgerMetadataCache;
     final LedgerIdGenerator ledgerIdGenerator;
 
     // Ensemble Placement Policy
@@ -438,6 +444,15 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 .traceTaskWarnTimeMicroSec(conf.getTaskExecutionWarnTimeMicros())
                 .enableBusyWait(conf.isBusyWaitEnabled())
                 .build();
+        int digestVerificationThreads = conf.getBatchReadDigestVerificationThreads();
+        if (digestVerificationThreads > 0) {
+            this.digestVerificationExecutor = Executors.newFixedThreadPool(digestVerificationThreads,
+                    new DefaultThreadFactory("BookKeeperClientDigestVerifier"));
+        } else if (digestVerificationThreads < 0) {
+            this.digestVerificationExecutor = ForkJoinPool.commonPool();
+        } else {
+            this.digestVerificationExecutor = null;
+        }
 
         // initialize stats logger
         this.statsLogger = rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE);
@@ -541,6 +556,13 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         }
         this.ledgerManager = new CleanupLedgerManager(ledgerManagerFactory.newLedgerManager());
         this.ledgerIdGenerator = ledgerManagerFactory.newLedgerIdGenerator();
+        if (conf.getLedgerMetadataCacheMaxSize() > 0) {
+            this.ledgerMetadataCache = new LedgerMetadataCache(ledgerManager, conf.getLedgerMetadataCacheMaxSize(),
+                    conf.getLedgerMetadataCachePrefetchMaxOutstandingReads(),
+                    this.statsLogger.scope(BookKeeperClientStats.LEDGER_METADATA_CACHE_SCOPE));
+        } else {
+            this.ledgerMetadataCache = null;
+        }
 
         this.bookieQuarantineRatio = conf.getBookieQuarantineRatio();
         scheduleBookieHealthCheckIfEnabled(conf);
@@ -556,6 +578,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         statsLogger = NullStatsLogger.INSTANCE;
         clientStats = BookKeeperClientStats.newInstance(statsLogger);
         scheduler = null;
+        digestVerificationExecutor = null;
         highPriorityTaskExecutor = null;
         requestTimer = null;
         metadataDriver = null;
@@ -564,6 +587,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         mainWorkerPool = null;
         ledgerManagerFactory = null;
         ledgerManager = null;
+        ledgerMetadataCache = null;
         ledgerIdGenerator = null;
         featureProvider = null;
         eventLoopGroup = null;
@@ -655,6 +679,25 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         return ledgerManager;
     }
 
+    /**
+     * Get the cache of the ledger metadata.
+     *
+     * @return the cache of the ledger metadata, or null if the cache is disabled
+     */
+    public LedgerMetadataCache getLedgerMetadataCache() {
+        return ledgerMetadataCache;
+    }
+
+    /**
+     * Read the metadata of a ledger, from the cache if it is enabled.
+     */
+    CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId) {
+        if (ledgerMetadataCache != null) {
+            return ledgerMetadataCache.readLedgerMetadata(ledgerId);
+        }
+        return ledgerManager.readLedgerMetadata(ledgerId);
+    }
+
     @VisibleForTesting
     public LedgerManagerFactory getLedgerManagerFactory() {
         return ledgerManagerFactory;
@@ -1443,7 +1486,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
      * @param cb    callback method
      */
     public void asyncIsClosed(long lId, final IsClosedCallback cb, final Object ctx){
-        ledgerManager.readLedgerMetadata(lId).whenComplete((metadata, exception) -> {
+        readLedgerMetadata(lId).whenComplete((metadata, exception) -> {
                 if (exception == null) {
                     cb.isClosedComplete(BKException.Code.OK, metadata.getValue().isClosed(), ctx);
                 } else {
@@ -1515,6 +1558,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         // Close bookie client so all pending bookie requests would be failed
         // which will reject any incoming bookie requests.
         bookieClient.close();
+        if (ledgerMetadataCache != null) {
+            ledgerMetadataCache.close();
+        }
         try {
             // Close ledger manage so all pending metadata requests would be failed
             // which will reject any incoming metadata requests.
@@ -1541,6 +1587,14 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         if (!mainWorkerPool.awaitTermination(10, TimeUnit.SECONDS)) {
             LOG.warn("The mainWorkerPool did not shutdown cleanly");
         }
+        if (digestVerificationExecutor instanceof ExecutorService
+                && digestVerificationExecutor != ForkJoinPool.commonPool()) {
+            ExecutorService verifier = (ExecutorService) digestVerificationExecutor;
+            verifier.shutdown();
+            if (!verifier.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warn("The digestVerificationExecutor did not shutdown cleanly");
+            }
+        }
         if (this.bookieInfoScheduler != null) {
             this.bookieInfoScheduler.shutdown();
             if (!bookieInfoScheduler.awaitTermination(10, TimeUnit.SECONDS)) {
@@ -1730,6 +1784,16 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return clientStats;
             }
 
+            @Override
+            public Executor getDigestVerificationExecutor() {
+                return digestVerificationExecutor;
+            }
+
+            @Override
+            public LedgerMetadataCache getLedgerMetadataCache() {
+                return ledgerMetadataCache;
+            }
+
             @Override
             public boolean isClientClosed() {
                 return BookKeeper.this.isClosed();
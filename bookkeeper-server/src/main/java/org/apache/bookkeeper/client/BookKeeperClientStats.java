@@ -45,6 +45,16 @@ public interface BookKeeperClientStats {
     String LEDGER_RECOVER_ADD_ENTRIES = "LEDGER_RECOVER_ADD_ENTRIES";
     String LEDGER_ENSEMBLE_BOOKIE_DISTRIBUTION = "LEDGER_ENSEMBLE_BOOKIE_DISTRIBUTION";
 
+    // Ledger Metadata Cache
+
+    String LEDGER_METADATA_CACHE_SCOPE = "ledger_metadata_cache";
+    String LEDGER_METADATA_CACHE_HITS = "HITS";
+    String LEDGER_METADATA_CACHE_MISSES = "MISSES";
+    // reads of the metadata store issued by the cache, the updates delivered by the listeners are not counted
+    String LEDGER_METADATA_CACHE_READS = "METADATA_READS";
+    String LEDGER_METADATA_CACHE_UPDATES = "UPDATES";
+    String LEDGER_METADATA_CACHE_SIZE = "SIZE";
+
     // Data Operations
 
     String ADD_OP = "ADD_ENTRY";
@@ -65,6 +75,7 @@ public interface BookKeeperClientStats {
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String COPY_LEDGER_FRAGMENT_OP = "COPY_LEDGER_FRAGMENT";
 
     // per channel stats
     String CHANNEL_SCOPE = "per_channel_bookie_client";
@@ -83,6 +94,7 @@ public interface BookKeeperClientStats {
     String CHANNEL_START_TLS_OP = "START_TLS";
     String CHANNEL_TIMEOUT_START_TLS_OP = "TIMEOUT_START_TLS";
     String TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER = "TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String TIMEOUT_COPY_LEDGER_FRAGMENT = "TIMEOUT_COPY_LEDGER_FRAGMENT";
 
     String NETTY_EXCEPTION_CNT = "NETTY_EXCEPTION_CNT";
     String CLIENT_CHANNEL_WRITE_WAIT = "CLIENT_CHANNEL_WRITE_WAIT";
@@ -94,6 +106,8 @@ public interface BookKeeperClientStats {
     String ACTIVE_TLS_CHANNEL_COUNTER = "ACTIVE_TLS_CHANNEL_COUNTER";
     String FAILED_CONNECTION_COUNTER = "FAILED_CONNECTION_COUNTER";
     String FAILED_TLS_HANDSHAKE_COUNTER = "FAILED_TLS_HANDSHAKE_COUNTER";
+    String CHANNEL_OUTSTANDING_REQUESTS = "CHANNEL_OUTSTANDING_REQUESTS";
+    String CHANNEL_REBALANCES = "CHANNEL_REBALANCES";
 
     // placementpolicy stats
     String NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK = "NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK";
@@ -104,6 +118,7 @@ public interface BookKeeperClientStats {
     String NUM_WRITABLE_BOOKIES_IN_DEFAULT_FAULTDOMAIN = "NUM_WRITABLE_BOOKIES_IN_DEFAULT_FAULTDOMAIN";
 
     String BOOKIE_LABEL = "bookie";
+    String CHANNEL_LABEL = "channel";
 
     OpStatsLogger getCreateOpLogger();
     OpStatsLogger getOpenOpLogger();
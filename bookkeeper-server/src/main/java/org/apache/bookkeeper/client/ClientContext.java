@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.Executor;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -42,5 +43,16 @@ public interface ClientContext {
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
+
+    /**
+     * Executor used to verify the digests of batch read responses in parallel,
+     * or null if the digests are verified inline.
+     */
+    Executor getDigestVerificationExecutor();
+
+    /**
+     * Cache of the ledger metadata, or null if the client does not cache the metadata.
+     */
+    LedgerMetadataCache getLedgerMetadataCache();
     boolean isClientClosed();
 }
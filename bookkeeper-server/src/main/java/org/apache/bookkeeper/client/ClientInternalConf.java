@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.feature.Feature;
@@ -49,6 +50,8 @@ class ClientInternalConf {
     final boolean useV2WireProtocol;
     final boolean enforceMinNumFaultDomainsForWrite;
     final boolean batchReadEnabled;
+    final int batchReadDigestVerificationParallelism;
+    final int batchReadDigestVerificationMinEntries;
     final int nettyMaxFrameSizeBytes;
 
     static ClientInternalConf defaultValues() {
@@ -75,6 +78,10 @@ class ClientInternalConf {
         this.throttleValue = conf.getThrottleValue();
         this.bookieFailureHistoryExpirationMSec = conf.getBookieFailureHistoryExpirationMSec();
         this.batchReadEnabled = conf.isBatchReadEnabled();
+        int verificationThreads = conf.getBatchReadDigestVerificationThreads();
+        this.batchReadDigestVerificationParallelism = verificationThreads < 0
+                ? ForkJoinPool.getCommonPoolParallelism() : verificationThreads;
+        this.batchReadDigestVerificationMinEntries = Math.max(2, conf.getBatchReadDigestVerificationMinEntries());
         this.nettyMaxFrameSizeBytes = conf.getNettyMaxFrameSizeBytes();
         this.disableEnsembleChangeFeature = featureProvider.getFeature(conf.getDisableEnsembleChangeFeatureName());
         this.delayEnsembleChange = conf.getDelayEnsembleChange();
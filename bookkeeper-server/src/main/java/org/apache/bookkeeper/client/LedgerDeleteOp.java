@@ -82,6 +82,10 @@ class LedgerDeleteOp {
                         deleteOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
                     } else {
                         deleteOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                        if (bk.getLedgerMetadataCache() != null) {
+                            // don't wait for the deletion to be notified to the cache
+                            bk.getLedgerMetadataCache().invalidate(ledgerId);
+                        }
                     }
                     cb.deleteComplete(BKException.getExceptionCode(exception), this.ctx);
                 }, bk.getMainWorkerPool().chooseThread(ledgerId));
@@ -25,6 +25,9 @@ import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BYTES_WRITT
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_READ;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_WRITTEN;
 import static org.apache.bookkeeper.replication.ReplicationStats.READ_DATA_LATENCY;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_ETA_SECONDS;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_PENDING_ENTRIES;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_THROUGHPUT_BYTES;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WORKER_SCOPE;
 import static org.apache.bookkeeper.replication.ReplicationStats.WRITE_DATA_LATENCY;
 
@@ -32,6 +35,7 @@ import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,21 +43,29 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.client.AsyncCallback.ReadCallback;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyLedgerFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.DataFormats;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -107,12 +119,23 @@ public class LedgerFragmentReplicator {
     )
     private final OpStatsLogger writeDataLatency;
 
+    // bytes and entries written to the new bookies, for the throughput and eta gauges
+    private final LongAdder replicatedBytes = new LongAdder();
+    private final LongAdder replicatedEntries = new LongAdder();
+    // entries of the batches in progress
+    private final AtomicLong pendingEntries = new AtomicLong();
+    private long lastThroughputSampleNanos;
+    private long lastThroughputSampleBytes;
+    private long throughput;
+
     protected Throttler replicationThrottle = null;
+    private LoadAwareReplicationThrottler loadAwareThrottle = null;
 
     private AtomicInteger averageEntrySize;
 
     private static final int INITIAL_AVERAGE_ENTRY_SIZE = 1024;
     private static final double AVERAGE_ENTRY_SIZE_RATIO = 0.8;
+    private static final long THROUGHPUT_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
     private ClientConfiguration conf;
 
     public LedgerFragmentReplicator(BookKeeper bkc, StatsLogger statsLogger, ClientConfiguration conf) {
@@ -126,9 +149,79 @@ public class LedgerFragmentReplicator {
         writeDataLatency = this.statsLogger.getOpStatsLogger(WRITE_DATA_LATENCY);
         if (conf.getReplicationRateByBytes() > 0) {
             this.replicationThrottle = new Throttler(conf.getReplicationRateByBytes());
+            if (conf.isReplicationLoadAwareThrottlingEnabled()) {
+                this.loadAwareThrottle = new LoadAwareReplicationThrottler(conf.getReplicationRateByBytes());
+            }
         }
         averageEntrySize = new AtomicInteger(INITIAL_AVERAGE_ENTRY_SIZE);
         this.conf = conf;
+        this.lastThroughputSampleNanos = MathUtils.nowInNano();
+        this.statsLogger.registerGauge(REPLICATION_THROUGHPUT_BYTES, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return getThroughput();
+            }
+        });
+        this.statsLogger.registerGauge(REPLICATION_PENDING_ENTRIES, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return pendingEntries.get();
+            }
+        });
+        this.statsLogger.registerGauge(REPLICATION_ETA_SECONDS, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return getEtaSeconds();
+            }
+        });
+    }
+
+    /**
+     * @return the bytes written per second to the new bookies, since the previous sample
+     */
+    synchronized long getThroughput() {
+        long now = MathUtils.nowInNano();
+        long elapsedNanos = now - lastThroughputSampleNanos;
+        if (elapsedNanos >= THROUGHPUT_SAMPLE_INTERVAL_NANOS) {
+            long bytes = replicatedBytes.sum();
+            throughput = (long) ((bytes - lastThroughputSampleBytes) * (double) TimeUnit.SECONDS.toNanos(1)
+                    / elapsedNanos);
+            lastThroughputSampleNanos = now;
+            lastThroughputSampleBytes = bytes;
+        }
+        return throughput;
+    }
+
+    /**
+     * @return the estimated time to replicate the fragments being replicated, -1 if it is unknown
+     */
+    long getEtaSeconds() {
+        long pending = pendingEntries.get();
+        if (pending <= 0) {
+            return 0;
+        }
+        long bytesPerSecond = getThroughput();
+        long entries = replicatedEntries.sum();
+        if (bytesPerSecond <= 0 || entries == 0) {
+            return -1;
+        }
+        long averageEntryBytes = replicatedBytes.sum() / entries;
+        return pending * averageEntryBytes / bytesPerSecond;
     }
 
     public LedgerFragmentReplicator(BookKeeper bkc, ClientConfiguration conf) {
@@ -171,51 +264,158 @@ public class LedgerFragmentReplicator {
             return;
         }
 
-        /*
-         * Now asynchronously replicate all of the entries for the ledger
-         * fragment that were on the dead bookie.
-         */
+        if (this.replicationThrottle != null) {
+            this.replicationThrottle.resetRate(this.conf.getReplicationRateByBytes());
+        }
+        if (this.loadAwareThrottle != null) {
+            this.loadAwareThrottle.resetRate(this.conf.getReplicationRateByBytes());
+        }
+        Set<BookieId> replacedBookies = lf.getAddresses();
+
+        if (conf.isRereplicationBookieToBookieCopyEnabled()) {
+            // the batch is charged once, whether it is copied by the bookies or re-replicated through the client
+            throttle(lh, startEntryId, replacedBookies, estimateBytes(startEntryId, endEntryId));
+            copyLedgerFragmentEntries(startEntryId, endEntryId, lh, newBookies, replacedBookies, rc -> {
+                if (rc == BKException.Code.OK) {
+                    ledgerFragmentMcb.processResult(rc, null, null);
+                    return;
+                }
+                LOG.warn("Failed to copy entries {} - {} of ledger {} between the bookies,"
+                        + " re-replicating them through the client", startEntryId, endEntryId, lh.getId());
+                // not on the thread of the bookie client callback, which must not issue the reads of the batch
+                try {
+                    bkc.getScheduler().executeOrdered(lh.getId(), () -> {
+                        try {
+                            recoverLedgerFragmentEntries(startEntryId, endEntryId, lh, ledgerFragmentMcb,
+                                    newBookies, replacedBookies, onReadEntryFailureCallback, false);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            ledgerFragmentMcb.processResult(BKException.Code.InterruptedException, null, null);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    ledgerFragmentMcb.processResult(BKException.Code.InterruptedException, null, null);
+                }
+            });
+        } else {
+            recoverLedgerFragmentEntries(startEntryId, endEntryId, lh, ledgerFragmentMcb,
+                    newBookies, replacedBookies, onReadEntryFailureCallback, true);
+        }
+    }
+
+    /**
+     * @return the estimated size of the entries of a batch, capped to the max permits acquired at once
+     */
+    private int estimateBytes(long startEntryId, long endEntryId) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) averageEntrySize.get() * (endEntryId - startEntryId + 1));
+    }
+
+    /**
+     * Asynchronously replicate all of the entries for the ledger fragment
+     * that were on the dead bookie, reading them with the client and
+     * writing them to the new bookies. The reads are throttled unless the
+     * entries were already charged to the throttle.
+     */
+    private void recoverLedgerFragmentEntries(final long startEntryId,
+            final long endEntryId,
+            final LedgerHandle lh,
+            final AsyncCallback.VoidCallback ledgerFragmentMcb,
+            final Set<BookieId> newBookies,
+            final Set<BookieId> replacedBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback,
+            final boolean throttle) throws InterruptedException {
         int entriesToReplicateCnt = (int) (endEntryId - startEntryId + 1);
         MultiCallback ledgerFragmentEntryMcb = new MultiCallback(
                 entriesToReplicateCnt, ledgerFragmentMcb, null, BKException.Code.OK,
                 BKException.Code.LedgerRecoveryException);
-        if (this.replicationThrottle != null) {
-            this.replicationThrottle.resetRate(this.conf.getReplicationRateByBytes());
-        }
 
         if (conf.isRecoveryBatchReadEnabled()
                 && conf.getUseV2WireProtocol()
                 && conf.isBatchReadEnabled()
                 && lh.getLedgerMetadata().getEnsembleSize() == lh.getLedgerMetadata().getWriteQuorumSize()) {
             batchRecoverLedgerFragmentEntry(startEntryId, endEntryId, lh, ledgerFragmentEntryMcb,
-                    newBookies, onReadEntryFailureCallback);
+                    newBookies, replacedBookies, onReadEntryFailureCallback, throttle);
 
+        } else if (conf.isRereplicationRangeReadEnabled() && endEntryId > startEntryId) {
+            rangeRecoverLedgerFragmentEntries(startEntryId, endEntryId, lh, ledgerFragmentEntryMcb,
+                    newBookies, replacedBookies, onReadEntryFailureCallback, throttle);
         } else {
             /*
              * Add all the entries to entriesToReplicate list from
              * firstStoredEntryId to lastStoredEntryID.
              */
             List<Long> entriesToReplicate = new LinkedList<Long>();
-            long lastStoredEntryId = lf.getLastStoredEntryId();
-            for (long i = lf.getFirstStoredEntryId(); i <= lastStoredEntryId; i++) {
+            for (long i = startEntryId; i <= endEntryId; i++) {
                 entriesToReplicate.add(i);
             }
             for (final Long entryId : entriesToReplicate) {
                 recoverLedgerFragmentEntry(entryId, lh, ledgerFragmentEntryMcb,
-                        newBookies, onReadEntryFailureCallback);
+                        newBookies, replacedBookies, onReadEntryFailureCallback, throttle);
             }
         }
 
     }
 
+    /**
+     * Have the new bookies copy the entries of a batch directly from the other
+     * bookies of the fragment, so that the entries are neither read nor
+     * written by the replicator. The callback is notified with the first
+     * failure, or once all the new bookies copied the entries.
+     */
+    private void copyLedgerFragmentEntries(final long startEntryId,
+            final long endEntryId,
+            final LedgerHandle lh,
+            final Set<BookieId> newBookies,
+            final Set<BookieId> replacedBookies,
+            final IntConsumer cb) {
+        LedgerMetadata metadata = lh.getLedgerMetadata();
+        // the new bookies resolve the ids through the registration of the bookies
+        List<String> ensemble = new ArrayList<>(metadata.getEnsembleSize());
+        for (BookieId bookie : metadata.getEnsembleAt(startEntryId)) {
+            ensemble.add(replacedBookies.contains(bookie) ? "" : bookie.toString());
+        }
+        // the password is only needed to verify the HMAC digest of the entries
+        byte[] password = lh.digestType == DataFormats.LedgerMetadataFormat.DigestType.HMAC ? lh.password : null;
+        final AtomicInteger numCompleted = new AtomicInteger(0);
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        CopyLedgerFragmentCallback copyCallback = (rc, ledgerId, numEntries, numBytes, addr, ctx) -> {
+            if (rc != BKException.Code.OK) {
+                LOG.warn("Bookie {} failed to copy entries {} - {} of ledger {}: {}",
+                        addr, startEntryId, endEntryId, ledgerId, BKException.getMessage(rc));
+                if (completed.compareAndSet(false, true)) {
+                    cb.accept(rc);
+                }
+                return;
+            }
+            numEntriesWritten.addCount(numEntries);
+            replicatedBytes.add(numBytes);
+            replicatedEntries.add(numEntries);
+            if (replicationThrottle != null && numEntries > 0) {
+                updateAverageEntrySize((int) (numBytes / numEntries));
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Bookie {} copied entries {} - {} of ledger {}", addr, startEntryId, endEntryId, ledgerId);
+            }
+            if (numCompleted.incrementAndGet() == newBookies.size() && completed.compareAndSet(false, true)) {
+                cb.accept(rc);
+            }
+        };
+        for (BookieId newBookie : newBookies) {
+            bkc.getBookieClient().copyLedgerFragment(newBookie, lh.getId(), lh.getLedgerKey(),
+                    startEntryId, endEntryId, ensemble, metadata.getWriteQuorumSize(), lh.digestType, password,
+                    copyCallback, null);
+        }
+    }
+
     /**
      * This method replicate a ledger fragment which is a contiguous portion of
      * a ledger that was stored in an ensemble that included the failed bookie.
      * It will Splits the fragment into multiple sub fragments by keeping the
      * max entries up to the configured value of rereplicationEntryBatchSize and
-     * then it re-replicates that batched entry fragments one by one. After
-     * re-replication of all batched entry fragments, it will update the
-     * ensemble info with new Bookie once
+     * then it re-replicates that batched entry fragments, up to
+     * rereplicationMaxInflightBatches at a time. After re-replication of all
+     * batched entry fragments, it will update the ensemble info with new
+     * Bookie once
      *
      * @param lh
      *            LedgerHandle for the ledger
@@ -237,43 +437,95 @@ public class LedgerFragmentReplicator {
                 bkc.getConf().getRereplicationEntryBatchSize());
         LOG.info("Replicating fragment {} in {} sub fragments.",
                 lf, partitionedFragments.size());
-        replicateNextBatch(lh, partitionedFragments.iterator(),
-                ledgerFragmentMcb, targetBookieAddresses, onReadEntryFailureCallback);
+        new BatchReplication(lh, partitionedFragments.iterator(), ledgerFragmentMcb, targetBookieAddresses,
+                onReadEntryFailureCallback).start(Math.max(1, conf.getRereplicationMaxInflightBatches()));
+    }
+
+    private static long numEntries(LedgerFragment lf) {
+        long firstEntryId = lf.getFirstStoredEntryId();
+        long lastEntryId = lf.getLastStoredEntryId();
+        return firstEntryId == INVALID_ENTRY_ID || lastEntryId < firstEntryId ? 0 : lastEntryId - firstEntryId + 1;
     }
 
     /**
-     * Replicate the batched entry fragments one after other.
+     * Replicate the batched entry fragments, keeping up to a number of them in
+     * progress, so that the reads of a batch overlap with the writes of the
+     * others. No more batch is started once a batch fails.
      */
-    private void replicateNextBatch(final LedgerHandle lh,
-            final Iterator<LedgerFragment> fragments,
-            final AsyncCallback.VoidCallback ledgerFragmentMcb,
-            final Set<BookieId> targetBookieAddresses,
-            final BiConsumer<Long, Long> onReadEntryFailureCallback) {
-        if (fragments.hasNext()) {
-            try {
-                replicateFragmentInternal(lh, fragments.next(),
-                        new AsyncCallback.VoidCallback() {
-                            @Override
-                            public void processResult(int rc, String v, Object ctx) {
-                                if (rc != BKException.Code.OK) {
-                                    ledgerFragmentMcb.processResult(rc, null,
-                                            null);
-                                } else {
-                                    replicateNextBatch(lh, fragments,
-                                            ledgerFragmentMcb,
-                                            targetBookieAddresses,
-                                            onReadEntryFailureCallback);
-                                }
-                            }
+    private class BatchReplication {
+        final LedgerHandle lh;
+        final Iterator<LedgerFragment> fragments;
+        final AsyncCallback.VoidCallback ledgerFragmentMcb;
+        final Set<BookieId> targetBookieAddresses;
+        final BiConsumer<Long, Long> onReadEntryFailureCallback;
+        // guarded by this
+        int inflightBatches = 0;
+        int rc = BKException.Code.OK;
+        boolean completed = false;
+
+        BatchReplication(LedgerHandle lh, Iterator<LedgerFragment> fragments,
+                         AsyncCallback.VoidCallback ledgerFragmentMcb, Set<BookieId> targetBookieAddresses,
+                         BiConsumer<Long, Long> onReadEntryFailureCallback) {
+            this.lh = lh;
+            this.fragments = fragments;
+            this.ledgerFragmentMcb = ledgerFragmentMcb;
+            this.targetBookieAddresses = targetBookieAddresses;
+            this.onReadEntryFailureCallback = onReadEntryFailureCallback;
+        }
+
+        void start(int maxInflightBatches) {
+            for (int i = 0; i < maxInflightBatches; i++) {
+                if (!replicateNextBatch()) {
+                    return;
+                }
+            }
+        }
 
-                        }, targetBookieAddresses, onReadEntryFailureCallback);
+        /**
+         * @return true if a batch was started
+         */
+        private boolean replicateNextBatch() {
+            LedgerFragment fragment;
+            int result;
+            synchronized (this) {
+                if (rc == BKException.Code.OK && fragments.hasNext()) {
+                    fragment = fragments.next();
+                    inflightBatches++;
+                } else if (inflightBatches == 0 && !completed) {
+                    completed = true;
+                    fragment = null;
+                } else {
+                    return false;
+                }
+                result = rc;
+            }
+            if (fragment == null) {
+                ledgerFragmentMcb.processResult(result, null, null);
+                return false;
+            }
+            long batchEntries = numEntries(fragment);
+            pendingEntries.addAndGet(batchEntries);
+            try {
+                replicateFragmentInternal(lh, fragment, (batchRc, v, ctx) -> {
+                    pendingEntries.addAndGet(-batchEntries);
+                    batchComplete(batchRc);
+                }, targetBookieAddresses, onReadEntryFailureCallback);
             } catch (InterruptedException e) {
-                ledgerFragmentMcb.processResult(
-                        BKException.Code.InterruptedException, null, null);
                 Thread.currentThread().interrupt();
+                pendingEntries.addAndGet(-batchEntries);
+                batchComplete(BKException.Code.InterruptedException);
             }
-        } else {
-            ledgerFragmentMcb.processResult(BKException.Code.OK, null, null);
+            return true;
+        }
+
+        private void batchComplete(int batchRc) {
+            synchronized (this) {
+                inflightBatches--;
+                if (batchRc != BKException.Code.OK && rc == BKException.Code.OK) {
+                    rc = batchRc;
+                }
+            }
+            replicateNextBatch();
         }
     }
 
@@ -347,45 +599,25 @@ public class LedgerFragmentReplicator {
      * @param newBookies
      *            New bookies we want to use to recover and replicate the ledger
      *            entries that were stored on the failed bookie.
+     * @param replacedBookies
+     *            Bookies which are replaced, the entry is not read from them.
+     * @param throttle
+     *            Whether the read of the entry is throttled, false if it was
+     *            already charged to the throttle.
      */
     void recoverLedgerFragmentEntry(final Long entryId,
             final LedgerHandle lh,
             final AsyncCallback.VoidCallback ledgerFragmentEntryMcb,
             final Set<BookieId> newBookies,
-            final BiConsumer<Long, Long> onReadEntryFailureCallback) throws InterruptedException {
+            final Set<BookieId> replacedBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback,
+            final boolean throttle) throws InterruptedException {
         final long ledgerId = lh.getId();
-        final AtomicInteger numCompleted = new AtomicInteger(0);
-        final AtomicBoolean completed = new AtomicBoolean(false);
 
-        if (replicationThrottle != null) {
-            replicationThrottle.acquire(averageEntrySize.get());
+        if (throttle) {
+            throttle(lh, entryId, replacedBookies, averageEntrySize.get());
         }
 
-        final WriteCallback multiWriteCallback = new WriteCallback() {
-            @Override
-            public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
-                if (rc != BKException.Code.OK) {
-                    LOG.error("BK error writing entry for ledgerId: {}, entryId: {}, bookie: {}",
-                            ledgerId, entryId, addr, BKException.create(rc));
-                    if (completed.compareAndSet(false, true)) {
-                        ledgerFragmentEntryMcb.processResult(rc, null, null);
-                    }
-                } else {
-                    numEntriesWritten.inc();
-                    if (ctx instanceof Long) {
-                        numBytesWritten.registerSuccessfulValue((Long) ctx);
-                    }
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Success writing ledger id {}, entry id {} to a new bookie {}!",
-                                ledgerId, entryId, addr);
-                    }
-                    if (numCompleted.incrementAndGet() == newBookies.size() && completed.compareAndSet(false, true)) {
-                        ledgerFragmentEntryMcb.processResult(rc, null, null);
-                    }
-                }
-            }
-        };
-
         long startReadEntryTime = MathUtils.nowInNano();
         /*
          * Read the ledger entry using the LedgerHandle. This will allow us to
@@ -404,53 +636,196 @@ public class LedgerFragmentReplicator {
                     return;
                 }
 
-                readDataLatency.registerSuccessfulEvent(MathUtils.elapsedNanos(startReadEntryTime),
-                        TimeUnit.NANOSECONDS);
+                long readNanos = MathUtils.elapsedNanos(startReadEntryTime);
+                readDataLatency.registerSuccessfulEvent(readNanos, TimeUnit.NANOSECONDS);
+                LedgerEntry entry = seq.nextElement();
+                recordRead(lh, entryId, replacedBookies, readNanos, entry.getLength());
 
                 /*
                  * Now that we've read the ledger entry, write it to the new
                  * bookie we've selected.
                  */
-                LedgerEntry entry = seq.nextElement();
-                byte[] data = entry.getEntry();
-                final long dataLength = data.length;
-                numEntriesRead.inc();
-                numBytesRead.registerSuccessfulValue(dataLength);
-
-                ReferenceCounted toSend = lh.getDigestManager()
-                        .computeDigestAndPackageForSending(entryId,
-                                lh.getLastAddConfirmed(), entry.getLength(),
-                                Unpooled.wrappedBuffer(data, 0, data.length),
-                                lh.getLedgerKey(),
-                                BookieProtocol.FLAG_RECOVERY_ADD
-                                );
-                if (replicationThrottle != null) {
-                    if (toSend instanceof ByteBuf) {
-                        updateAverageEntrySize(((ByteBuf) toSend).readableBytes());
-                    } else if (toSend instanceof ByteBufList) {
-                        updateAverageEntrySize(((ByteBufList) toSend).readableBytes());
+                writeEntry(lh, entry, ledgerFragmentEntryMcb, newBookies);
+            }
+        }, null);
+    }
+
+    /**
+     * Recover the entries of a batch with a single range read. If the range
+     * read fails, the entries are recovered one by one, to find out which
+     * entries cannot be read.
+     */
+    void rangeRecoverLedgerFragmentEntries(final long startEntryId,
+            final long endEntryId,
+            final LedgerHandle lh,
+            final AsyncCallback.VoidCallback ledgerFragmentEntryMcb,
+            final Set<BookieId> newBookies,
+            final Set<BookieId> replacedBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback,
+            final boolean throttle) throws InterruptedException {
+        if (throttle) {
+            throttle(lh, startEntryId, replacedBookies, estimateBytes(startEntryId, endEntryId));
+        }
+
+        long startReadEntryTime = MathUtils.nowInNano();
+        lh.asyncReadEntries(startEntryId, endEntryId, new ReadCallback() {
+            @Override
+            public void readComplete(int rc, LedgerHandle lh, Enumeration<LedgerEntry> seq, Object ctx) {
+                if (rc != BKException.Code.OK) {
+                    LOG.warn("BK error reading ledger entries: {} - {} of ledger {}, reading them one by one",
+                            startEntryId, endEntryId, lh.getId(), BKException.create(rc));
+                    for (long entryId = startEntryId; entryId <= endEntryId; entryId++) {
+                        try {
+                            // the entries were charged to the throttle with the range read
+                            recoverLedgerFragmentEntry(entryId, lh, ledgerFragmentEntryMcb, newBookies,
+                                    replacedBookies, onReadEntryFailureCallback, false);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            for (long i = entryId; i <= endEntryId; i++) {
+                                ledgerFragmentEntryMcb.processResult(BKException.Code.InterruptedException,
+                                        null, null);
+                            }
+                            return;
+                        }
                     }
+                    return;
                 }
-                for (BookieId newBookie : newBookies) {
-                    long startWriteEntryTime = MathUtils.nowInNano();
-                    bkc.getBookieClient().addEntry(newBookie, lh.getId(),
-                            lh.getLedgerKey(), entryId, toSend,
-                            multiWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD,
-                            false, WriteFlag.NONE);
-                    writeDataLatency.registerSuccessfulEvent(
-                           MathUtils.elapsedNanos(startWriteEntryTime), TimeUnit.NANOSECONDS);
+
+                long readNanos = MathUtils.elapsedNanos(startReadEntryTime);
+                readDataLatency.registerSuccessfulEvent(readNanos, TimeUnit.NANOSECONDS);
+                long readBytes = 0;
+                while (seq.hasMoreElements()) {
+                    LedgerEntry entry = seq.nextElement();
+                    readBytes += entry.getLength();
+                    writeEntry(lh, entry, ledgerFragmentEntryMcb, newBookies);
                 }
-                toSend.release();
+                recordRead(lh, startEntryId, replacedBookies, readNanos, readBytes);
             }
         }, null);
     }
 
+    /**
+     * Write an entry read from the ledger to the new bookies.
+     */
+    private void writeEntry(LedgerHandle lh, LedgerEntry entry,
+            AsyncCallback.VoidCallback ledgerFragmentEntryMcb, Set<BookieId> newBookies) {
+        final long entryId = entry.getEntryId();
+        final AtomicInteger numCompleted = new AtomicInteger(0);
+        final AtomicBoolean completed = new AtomicBoolean(false);
+
+        final WriteCallback multiWriteCallback = new WriteCallback() {
+            @Override
+            public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+                if (rc != BKException.Code.OK) {
+                    LOG.error("BK error writing entry for ledgerId: {}, entryId: {}, bookie: {}",
+                            ledgerId, entryId, addr, BKException.create(rc));
+                    if (completed.compareAndSet(false, true)) {
+                        ledgerFragmentEntryMcb.processResult(rc, null, null);
+                    }
+                } else {
+                    numEntriesWritten.inc();
+                    if (ctx instanceof Long) {
+                        numBytesWritten.registerSuccessfulValue((Long) ctx);
+                        replicatedBytes.add((Long) ctx);
+                        replicatedEntries.increment();
+                    }
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Success writing ledger id {}, entry id {} to a new bookie {}!",
+                                ledgerId, entryId, addr);
+                    }
+                    if (numCompleted.incrementAndGet() == newBookies.size() && completed.compareAndSet(false, true)) {
+                        ledgerFragmentEntryMcb.processResult(rc, null, null);
+                    }
+                }
+            }
+        };
+
+        byte[] data = entry.getEntry();
+        final long dataLength = data.length;
+        numEntriesRead.inc();
+        numBytesRead.registerSuccessfulValue(dataLength);
+
+        ReferenceCounted toSend = lh.getDigestManager()
+                .computeDigestAndPackageForSending(entryId,
+                        lh.getLastAddConfirmed(), entry.getLength(),
+                        Unpooled.wrappedBuffer(data, 0, data.length),
+                        lh.getLedgerKey(),
+                        BookieProtocol.FLAG_RECOVERY_ADD
+                        );
+        if (replicationThrottle != null) {
+            if (toSend instanceof ByteBuf) {
+                updateAverageEntrySize(((ByteBuf) toSend).readableBytes());
+            } else if (toSend instanceof ByteBufList) {
+                updateAverageEntrySize(((ByteBufList) toSend).readableBytes());
+            }
+        }
+        for (BookieId newBookie : newBookies) {
+            long startWriteEntryTime = MathUtils.nowInNano();
+            bkc.getBookieClient().addEntry(newBookie, lh.getId(),
+                    lh.getLedgerKey(), entryId, toSend,
+                    multiWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD,
+                    false, WriteFlag.NONE);
+            writeDataLatency.registerSuccessfulEvent(
+                   MathUtils.elapsedNanos(startWriteEntryTime), TimeUnit.NANOSECONDS);
+        }
+        toSend.release();
+    }
+
+    /**
+     * Acquire the permits to read bytes of the entries starting at an entry.
+     * With the load aware throttling, the permits are taken from the first
+     * bookie of the write set of the entry which is not replaced, as this is
+     * the bookie the entries are most likely read from.
+     */
+    private void throttle(LedgerHandle lh, long entryId, Set<BookieId> replacedBookies, int bytes) {
+        if (loadAwareThrottle != null) {
+            BookieId source = getSourceBookie(lh, entryId, replacedBookies);
+            if (source != null) {
+                loadAwareThrottle.acquire(source, bytes);
+                return;
+            }
+        }
+        if (replicationThrottle != null) {
+            replicationThrottle.acquire(bytes);
+        }
+    }
+
+    /**
+     * Record the time taken to read entries starting at an entry, for the
+     * load aware throttling to share the rate according to the read times of
+     * the source bookies.
+     */
+    private void recordRead(LedgerHandle lh, long entryId, Set<BookieId> replacedBookies, long readNanos,
+                            long bytes) {
+        if (loadAwareThrottle != null) {
+            BookieId source = getSourceBookie(lh, entryId, replacedBookies);
+            if (source != null) {
+                loadAwareThrottle.recordRead(source, readNanos, bytes);
+            }
+        }
+    }
+
+    private static BookieId getSourceBookie(LedgerHandle lh, long entryId, Set<BookieId> replacedBookies) {
+        LedgerMetadata metadata = lh.getLedgerMetadata();
+        List<BookieId> ensemble = metadata.getEnsembleAt(entryId);
+        DistributionSchedule schedule = lh.getDistributionSchedule();
+        for (int i = 0; i < metadata.getWriteQuorumSize(); i++) {
+            BookieId bookie = ensemble.get(schedule.getWriteSetBookieIndex(entryId, i));
+            if (!replacedBookies.contains(bookie)) {
+                return bookie;
+            }
+        }
+        return null;
+    }
+
     void batchRecoverLedgerFragmentEntry(final long startEntryId,
                                          final long endEntryId,
                                          final LedgerHandle lh,
                                          final AsyncCallback.VoidCallback ledgerFragmentMcb,
                                          final Set<BookieId> newBookies,
-                                         final BiConsumer<Long, Long> onReadEntryFailureCallback)
+                                         final Set<BookieId> replacedBookies,
+                                         final BiConsumer<Long, Long> onReadEntryFailureCallback,
+                                         final boolean throttle)
             throws InterruptedException {
         int entriesToReplicateCnt = (int) (endEntryId - startEntryId + 1);
         int maxBytesToReplicate = conf.getReplicationRateByBytes();
@@ -458,13 +833,17 @@ public class LedgerFragmentReplicator {
             if (maxBytesToReplicate != -1 && maxBytesToReplicate > averageEntrySize.get() * entriesToReplicateCnt) {
                 maxBytesToReplicate = averageEntrySize.get() * entriesToReplicateCnt;
             }
-            replicationThrottle.acquire(maxBytesToReplicate);
+            if (throttle) {
+                throttle(lh, startEntryId, replacedBookies, maxBytesToReplicate);
+            }
         }
 
+        long startReadEntryTime = MathUtils.nowInNano();
         lh.asyncBatchReadEntries(startEntryId, entriesToReplicateCnt, maxBytesToReplicate,
             new ReadCallback() {
                 @Override
                 public void readComplete(int rc, LedgerHandle lh, Enumeration<LedgerEntry> seq, Object ctx) {
+                    long readNanos = MathUtils.elapsedNanos(startReadEntryTime);
                     if (rc != BKException.Code.OK) {
                         LOG.error("BK error reading ledger entries: {} - {}",
                                 startEntryId, endEntryId, BKException.create(rc));
@@ -475,11 +854,13 @@ public class LedgerFragmentReplicator {
                         return;
                     }
                     long lastEntryId = startEntryId;
+                    long readBytes = 0;
                     while (seq.hasMoreElements()) {
                         LedgerEntry entry = seq.nextElement();
                         lastEntryId = entry.getEntryId();
                         byte[] data = entry.getEntry();
                         final long dataLength = data.length;
+                        readBytes += dataLength;
                         numEntriesRead.inc();
                         numBytesRead.registerSuccessfulValue(dataLength);
 
@@ -512,6 +893,8 @@ public class LedgerFragmentReplicator {
                                     numEntriesWritten.inc();
                                     if (ctx instanceof Long) {
                                         numBytesWritten.registerSuccessfulValue((Long) ctx);
+                                        replicatedBytes.add((Long) ctx);
+                                        replicatedEntries.increment();
                                     }
                                     if (LOG.isDebugEnabled()) {
                                         LOG.debug("Success writing ledger id {}, entry id {} to a new bookie {}!",
@@ -536,10 +919,12 @@ public class LedgerFragmentReplicator {
                         }
                         toSend.release();
                     }
+                    recordRead(lh, startEntryId, replacedBookies, readNanos, readBytes);
                     if (lastEntryId != endEntryId) {
                         try {
                             batchRecoverLedgerFragmentEntry(lastEntryId + 1, endEntryId, lh,
-                                    ledgerFragmentMcb, newBookies, onReadEntryFailureCallback);
+                                    ledgerFragmentMcb, newBookies, replacedBookies, onReadEntryFailureCallback,
+                                    throttle);
                         } catch (InterruptedException e) {
                             int remainingEntries = (int) (endEntryId - lastEntryId);
                             for (int i = 0; i < remainingEntries; i++) {
@@ -79,6 +79,7 @@ import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.DataFormats;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
@@ -100,6 +101,9 @@ public class LedgerHandle implements WriteHandle {
     final ClientContext clientCtx;
 
     final byte[] ledgerKey;
+    // the digest type and the password of the entries, for the bookies verifying the entries they copy
+    final DataFormats.LedgerMetadataFormat.DigestType digestType;
+    final byte[] password;
     private Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
     final ExecutorService executor;
@@ -213,7 +217,9 @@ public class LedgerHandle implements WriteHandle {
             this.throttler = null;
         }
 
-        macManager = DigestManager.instantiate(ledgerId, password, BookKeeper.DigestType.toProtoDigestType(digestType),
+        this.digestType = BookKeeper.DigestType.toProtoDigestType(digestType);
+        this.password = password;
+        macManager = DigestManager.instantiate(ledgerId, password, this.digestType,
                                                clientCtx.getByteBufAllocator(), clientCtx.getConf().useV2WireProtocol);
 
         // If the password is empty, pass the same random ledger key which is generated by the hash of the empty
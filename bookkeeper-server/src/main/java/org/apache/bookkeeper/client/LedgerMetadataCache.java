@@ -0,0 +1,268 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.LEDGER_METADATA_CACHE_HITS;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.LEDGER_METADATA_CACHE_MISSES;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.LEDGER_METADATA_CACHE_READS;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.LEDGER_METADATA_CACHE_SIZE;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.LEDGER_METADATA_CACHE_UPDATES;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A size bounded cache of ledger metadata, shared by the operations of a client.
+ *
+ * <p>The metadata of a ledger is read from the ledger manager on the first access, with a ledger metadata listener
+ * registered by the same read to keep it up to date, until the ledger is evicted from the cache or deleted.
+ * Concurrent reads of the same ledger are coalesced into a single read of the metadata store.
+ *
+ * <p>The cached metadata can lag behind the metadata store by the time it takes to deliver a change to the
+ * listener, so the operations that update the metadata must still rely on the version of the metadata to detect
+ * conflicting updates.
+ */
+public class LedgerMetadataCache implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LedgerMetadataCache.class);
+
+    private final LedgerManager ledgerManager;
+    private final int prefetchMaxOutstandingReads;
+    private final Cache<Long, Versioned<LedgerMetadata>> cache;
+    private final ConcurrentMap<Long, CompletableFuture<Versioned<LedgerMetadata>>> pendingReads =
+            new ConcurrentHashMap<>();
+    private final LedgerMetadataListener listener = this::onLedgerMetadataChanged;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter reads;
+    private final Counter updates;
+
+    public LedgerMetadataCache(LedgerManager ledgerManager, int maxSize, int prefetchMaxOutstandingReads,
+                               StatsLogger statsLogger) {
+        this.ledgerManager = ledgerManager;
+        this.prefetchMaxOutstandingReads = Math.max(1, prefetchMaxOutstandingReads);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .<Long, Versioned<LedgerMetadata>>removalListener(notification -> {
+                    if (notification.getCause() != RemovalCause.REPLACED) {
+                        ledgerManager.unregisterLedgerMetadataListener(notification.getKey(), listener);
+                    }
+                })
+                .build();
+
+        this.hits = statsLogger.getCounter(LEDGER_METADATA_CACHE_HITS);
+        this.misses = statsLogger.getCounter(LEDGER_METADATA_CACHE_MISSES);
+        this.reads = statsLogger.getCounter(LEDGER_METADATA_CACHE_READS);
+        this.updates = statsLogger.getCounter(LEDGER_METADATA_CACHE_UPDATES);
+        statsLogger.registerGauge(LEDGER_METADATA_CACHE_SIZE, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return cache.size();
+            }
+        });
+    }
+
+    /**
+     * Get the metadata of a ledger, from the cache if present, otherwise from the ledger manager.
+     *
+     * @param ledgerId ledger id
+     * @return a future completed with the metadata, or with the error of the ledger manager
+     */
+    public CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId) {
+        Versioned<LedgerMetadata> metadata = cache.getIfPresent(ledgerId);
+        if (metadata != null) {
+            hits.inc();
+            return CompletableFuture.completedFuture(metadata);
+        }
+        misses.inc();
+        return load(ledgerId);
+    }
+
+    /**
+     * Load the metadata of many ledgers in the cache, with up to a configured number of reads of the ledger manager
+     * in progress at a time. The ledgers that cannot be read are skipped.
+     *
+     * @param ledgerIds ids of the ledgers to load
+     * @return a future completed when all the ledgers have been loaded
+     */
+    public CompletableFuture<Void> prefetch(Iterable<Long> ledgerIds) {
+        Prefetch prefetch = new Prefetch(ledgerIds.iterator());
+        prefetch.start();
+        return prefetch.promise;
+    }
+
+    /**
+     * Remove a ledger from the cache.
+     */
+    public void invalidate(long ledgerId) {
+        cache.invalidate(ledgerId);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private CompletableFuture<Versioned<LedgerMetadata>> load(long ledgerId) {
+        CompletableFuture<Versioned<LedgerMetadata>> pendingRead = pendingReads.get(ledgerId);
+        if (pendingRead != null) {
+            return pendingRead;
+        }
+        CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
+        pendingRead = pendingReads.putIfAbsent(ledgerId, promise);
+        if (pendingRead != null) {
+            return pendingRead;
+        }
+        reads.inc();
+        ledgerManager.readLedgerMetadataAndRegisterListener(ledgerId, listener).whenComplete((metadata, exception) -> {
+            if (exception == null) {
+                // cached before the read is done, so that the changes notified meanwhile are not dropped
+                put(ledgerId, metadata);
+                pendingReads.remove(ledgerId, promise);
+                promise.complete(metadata);
+            } else {
+                pendingReads.remove(ledgerId, promise);
+                promise.completeExceptionally(exception);
+            }
+        });
+        return promise;
+    }
+
+    private void put(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        if (closed.get()) {
+            ledgerManager.unregisterLedgerMetadataListener(ledgerId, listener);
+            return;
+        }
+        cache.asMap().compute(ledgerId,
+                (id, current) -> current == null || isNewer(metadata, current) ? metadata : current);
+    }
+
+    private void onLedgerMetadataChanged(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        if (metadata == null) {
+            // the ledger was deleted
+            cache.invalidate(ledgerId);
+            return;
+        }
+        Versioned<LedgerMetadata> updated;
+        if (pendingReads.containsKey(ledgerId)) {
+            // the change was notified before the read that registered the listener completed
+            updated = cache.asMap().compute(ledgerId,
+                    (id, current) -> current == null || isNewer(metadata, current) ? metadata : current);
+        } else {
+            updated = cache.asMap().computeIfPresent(ledgerId,
+                    (id, current) -> isNewer(metadata, current) ? metadata : current);
+        }
+        if (updated == null) {
+            // the ledger was evicted while the listener was registered
+            ledgerManager.unregisterLedgerMetadataListener(ledgerId, listener);
+        } else if (updated == metadata) {
+            updates.inc();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Updated the cached metadata of ledger {} to version {}", ledgerId, metadata.getVersion());
+            }
+        }
+    }
+
+    private static boolean isNewer(Versioned<LedgerMetadata> metadata, Versioned<LedgerMetadata> current) {
+        return metadata.getVersion().compare(current.getVersion()) == Version.Occurred.AFTER;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Reads the metadata of the ledgers to prefetch, as a fixed number of chains of reads running in parallel.
+     */
+    private final class Prefetch {
+        private final Iterator<Long> ledgerIds;
+        private final AtomicInteger runningChains = new AtomicInteger(0);
+        private final CompletableFuture<Void> promise = new CompletableFuture<>();
+
+        Prefetch(Iterator<Long> ledgerIds) {
+            this.ledgerIds = ledgerIds;
+        }
+
+        void start() {
+            runningChains.set(prefetchMaxOutstandingReads);
+            for (int i = 0; i < prefetchMaxOutstandingReads; i++) {
+                readNext();
+            }
+        }
+
+        private void readNext() {
+            Long ledgerId;
+            while ((ledgerId = nextLedgerId()) != null) {
+                if (closed.get() || cache.getIfPresent(ledgerId) != null) {
+                    continue;
+                }
+                final long id = ledgerId;
+                CompletableFuture<Versioned<LedgerMetadata>> read = load(id);
+                if (read.isDone()) {
+                    // go on with the loop rather than recursing
+                    continue;
+                }
+                read.whenComplete((metadata, exception) -> {
+                    if (exception != null && LOG.isDebugEnabled()) {
+                        LOG.debug("Failed to prefetch the metadata of ledger {}", id, exception);
+                    }
+                    readNext();
+                });
+                return;
+            }
+            if (runningChains.decrementAndGet() == 0) {
+                promise.complete(null);
+            }
+        }
+
+        private Long nextLedgerId() {
+            synchronized (ledgerIds) {
+                return ledgerIds.hasNext() ? ledgerIds.next() : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+
+/**
+ * Shares the bytes rate of re-replication among the bookies the entries are read from.
+ *
+ * <p>Each bookie read from gets its own rate limiter. Periodically, the total rate is split among the bookies
+ * read from recently, in inverse proportion to the time they recently took to serve a byte of the reads of the
+ * re-replication. A bookie busy serving other clients is slower to respond, so it is asked for less, and the
+ * others for more. The bookies which did not serve a read yet get the average share. A single source bookie gets
+ * the whole rate.
+ */
+class LoadAwareReplicationThrottler {
+
+    private static final long REBALANCE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // a bookie not read from for this long does not get a share of the rate anymore
+    private static final long IDLE_SOURCE_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // the weight of the latest read in the moving average of the read time of a bookie
+    private static final double READ_TIME_SMOOTHING = 0.2;
+
+    private final ConcurrentHashMap<BookieId, Source> sources = new ConcurrentHashMap<>();
+    private volatile int totalRate;
+    private volatile long lastRebalanceNanos;
+
+    LoadAwareReplicationThrottler(int totalRate) {
+        this.totalRate = totalRate;
+        this.lastRebalanceNanos = MathUtils.nowInNano();
+    }
+
+    void resetRate(int totalRate) {
+        if (this.totalRate != totalRate) {
+            this.totalRate = totalRate;
+            rebalance(MathUtils.nowInNano());
+        }
+    }
+
+    /**
+     * Acquire the permits to read bytes from a bookie.
+     */
+    void acquire(BookieId bookie, int bytes) {
+        long now = MathUtils.nowInNano();
+        Source source = sources.get(bookie);
+        if (source == null) {
+            source = sources.computeIfAbsent(bookie, b -> new Source(totalRate));
+            // make room for the new bookie right away
+            rebalance(now);
+        } else if (now - lastRebalanceNanos >= REBALANCE_INTERVAL_NANOS) {
+            rebalance(now);
+        }
+        source.lastUsedNanos = now;
+        source.rateLimiter.acquire(Math.max(1, bytes));
+    }
+
+    /**
+     * Record the time a bookie took to serve a read of the re-replication.
+     */
+    void recordRead(BookieId bookie, long elapsedNanos, long bytes) {
+        Source source = sources.get(bookie);
+        if (source == null || bytes <= 0) {
+            return;
+        }
+        source.recordRead((double) elapsedNanos / bytes);
+    }
+
+    private synchronized void rebalance(long now) {
+        lastRebalanceNanos = now;
+        double knownWeight = 0;
+        int numKnown = 0;
+        Iterator<Map.Entry<BookieId, Source>> iterator = sources.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Source source = iterator.next().getValue();
+            if (now - source.lastUsedNanos > IDLE_SOURCE_NANOS) {
+                iterator.remove();
+                continue;
+            }
+            double nanosPerByte = source.getNanosPerByte();
+            if (nanosPerByte > 0) {
+                source.weight = 1.0 / nanosPerByte;
+                knownWeight += source.weight;
+                numKnown++;
+            } else {
+                source.weight = 0;
+            }
+        }
+        if (sources.isEmpty()) {
+            return;
+        }
+        double defaultWeight = numKnown == 0 ? 1.0 : knownWeight / numKnown;
+        double totalWeight = 0;
+        for (Source source : sources.values()) {
+            if (source.weight == 0) {
+                source.weight = defaultWeight;
+            }
+            totalWeight += source.weight;
+        }
+        for (Source source : sources.values()) {
+            source.rateLimiter.setRate(Math.max(1.0, totalRate * source.weight / totalWeight));
+        }
+    }
+
+    @VisibleForTesting
+    double getRate(BookieId bookie) {
+        Source source = sources.get(bookie);
+        return source == null ? 0 : source.rateLimiter.getRate();
+    }
+
+    private static final class Source {
+        private final RateLimiter rateLimiter;
+        private volatile long lastUsedNanos;
+        // the moving average of the time taken to read a byte, 0 until the bookie served a read
+        private double nanosPerByte = 0;
+        // guarded by the throttler
+        private double weight = 1.0;
+
+        Source(int rate) {
+            this.rateLimiter = RateLimiter.create(rate);
+            this.lastUsedNanos = MathUtils.nowInNano();
+        }
+
+        synchronized void recordRead(double sample) {
+            nanosPerByte = nanosPerByte == 0
+                    ? sample : nanosPerByte + READ_TIME_SMOOTHING * (sample - nanosPerByte);
+        }
+
+        synchronized double getNanosPerByte() {
+            return nanosPerByte;
+        }
+    }
+}
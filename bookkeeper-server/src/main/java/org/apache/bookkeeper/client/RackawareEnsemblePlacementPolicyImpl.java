@@ -362,7 +362,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         Set<BookieId> comprehensiveExclusionBookiesSet;
         if (enforceMinNumRacksPerWriteQuorum) {
             Set<BookieId> bookiesInDefaultRack = null;
-            Set<Node> defaultRackLeaves = topology.getLeaves(getDefaultRack());
+            List<Node> defaultRackLeaves = topology.getLeafList(getDefaultRack());
             for (Node node : defaultRackLeaves) {
                 if (node instanceof BookieNode) {
                     if (bookiesInDefaultRack == null) {
@@ -635,7 +635,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                                                    boolean fallbackToRandom)
             throws BKNotEnoughBookiesException {
 
-        List<BookieNode> knownNodes = new ArrayList<>(knownBookies.values());
+        List<BookieNode> knownNodes = getKnownBookieNodes();
         Set<Node> fullExclusionBookiesList = new HashSet<Node>(excludeBookies);
         for (BookieNode knownNode : knownNodes) {
             if (excludeRacks.contains(knownNode.getNetworkLocation())) {
@@ -702,38 +702,26 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
      */
     protected BookieNode selectRandomFromRack(String netPath, Set<Node> excludeBookies, Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble) throws BKNotEnoughBookiesException {
-        WeightedRandomSelection<BookieNode> wRSelection = null;
-        List<Node> leaves = new ArrayList<Node>(topology.getLeaves(netPath));
         if (!this.isWeighted) {
-            Collections.shuffle(leaves);
-        } else {
-            if (CollectionUtils.subtract(leaves, excludeBookies).size() < 1) {
-                throw new BKNotEnoughBookiesException();
-            }
-            wRSelection = prepareForWeightedSelection(leaves);
-            if (wRSelection == null) {
-                throw new BKNotEnoughBookiesException();
-            }
+            return selectRandomFromLeaves(netPath, excludeBookies, predicate, ensemble);
+        }
+        List<Node> leaves = new ArrayList<Node>(topology.getLeaves(netPath));
+        if (CollectionUtils.subtract(leaves, excludeBookies).size() < 1) {
+            throw new BKNotEnoughBookiesException();
+        }
+        WeightedRandomSelection<BookieNode> wRSelection = prepareForWeightedSelection(leaves);
+        if (wRSelection == null) {
+            throw new BKNotEnoughBookiesException();
         }
 
-        Iterator<Node> it = leaves.iterator();
         Set<Node> bookiesSeenSoFar = new HashSet<Node>();
         while (true) {
-            Node n;
-            if (isWeighted) {
-                if (bookiesSeenSoFar.size() == leaves.size()) {
-                    // Don't loop infinitely.
-                    break;
-                }
-                n = wRSelection.getNextRandom();
-                bookiesSeenSoFar.add(n);
-            } else {
-                if (it.hasNext()) {
-                    n = it.next();
-                } else {
-                    break;
-                }
+            if (bookiesSeenSoFar.size() == leaves.size()) {
+                // Don't loop infinitely.
+                break;
             }
+            Node n = wRSelection.getNextRandom();
+            bookiesSeenSoFar.add(n);
             if (excludeBookies.contains(n)) {
                 continue;
             }
@@ -751,6 +739,61 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         throw new BKNotEnoughBookiesException();
     }
 
+    /**
+     * Choose random node under a given network path, which may start with ~ to choose among the nodes that are
+     * not under any of a list of network paths. The nodes are drawn in a random order from the list of leaves
+     * shared by the topology, without copying or shuffling it.
+     */
+    private BookieNode selectRandomFromLeaves(String netPath, Set<Node> excludeBookies,
+            Predicate<BookieNode> predicate, Ensemble<BookieNode> ensemble) throws BKNotEnoughBookiesException {
+        List<Node> leaves;
+        String[] excludeScopes = null;
+        if (netPath.startsWith(NetworkTopologyImpl.INVERSE)) {
+            leaves = topology.getLeafList(NodeBase.ROOT);
+            excludeScopes = netPath.substring(1).split(NetworkTopologyImpl.NODE_SEPARATOR);
+            for (int i = 0; i < excludeScopes.length; i++) {
+                excludeScopes[i] = NodeBase.normalize(excludeScopes[i]);
+            }
+        } else {
+            leaves = topology.getLeafList(netPath);
+        }
+        int size = leaves.size();
+        if (size == 0) {
+            throw new BKNotEnoughBookiesException();
+        }
+        try (RandomIndexes indexes = RandomIndexes.draw(size)) {
+            while (indexes.hasNext()) {
+                Node n = leaves.get(indexes.next());
+                if (excludeBookies.contains(n) || isUnderAnyScope(n, excludeScopes)) {
+                    continue;
+                }
+                if (!(n instanceof BookieNode) || !predicate.apply((BookieNode) n, ensemble)) {
+                    continue;
+                }
+                BookieNode bn = (BookieNode) n;
+                // got a good candidate
+                if (ensemble.addNode(bn)) {
+                    // add the candidate to exclude set
+                    excludeBookies.add(bn);
+                }
+                return bn;
+            }
+        }
+        throw new BKNotEnoughBookiesException();
+    }
+
+    private static boolean isUnderAnyScope(Node node, String[] scopes) {
+        if (null == scopes) {
+            return false;
+        }
+        for (String scope : scopes) {
+            if (isUnderScope(node, scope)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Choose a random node from whole cluster.
      *
@@ -781,7 +824,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         if (bookiesToSelectFrom == null) {
             // If the list is null, we need to select from the entire knownBookies set
             wRSelection = this.weightedSelection;
-            bookiesToSelectFrom = new ArrayList<BookieNode>(knownBookies.values());
+            bookiesToSelectFrom = getKnownBookieNodes();
         }
         if (isWeighted) {
             if (CollectionUtils.subtract(bookiesToSelectFrom, excludeBookies).size() < numBookies) {
@@ -800,46 +843,46 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                 }
             }
             wRSelection.updateMap(rackMap);
-        } else {
-            Collections.shuffle(bookiesToSelectFrom);
         }
 
         BookieNode bookie;
         List<BookieNode> newBookies = new ArrayList<BookieNode>(numBookies);
-        Iterator<BookieNode> it = bookiesToSelectFrom.iterator();
-        Set<BookieNode> bookiesSeenSoFar = new HashSet<BookieNode>();
-        while (numBookies > 0) {
-            if (isWeighted) {
-                if (bookiesSeenSoFar.size() == bookiesToSelectFrom.size()) {
-                    // If we have gone through the whole available list of bookies,
-                    // and yet haven't been able to satisfy the ensemble request, bail out.
-                    // We don't want to loop infinitely.
-                    break;
-                }
-                bookie = wRSelection.getNextRandom();
-                bookiesSeenSoFar.add(bookie);
-            } else {
-                if (it.hasNext()) {
-                    bookie = it.next();
+        Set<BookieNode> bookiesSeenSoFar = isWeighted ? new HashSet<BookieNode>() : null;
+        // without weights, the bookies are drawn in a random order from the list, which may be shared, so it
+        // is neither copied nor shuffled
+        try (RandomIndexes indexes = isWeighted ? null : RandomIndexes.draw(bookiesToSelectFrom.size())) {
+            while (numBookies > 0) {
+                if (isWeighted) {
+                    if (bookiesSeenSoFar.size() == bookiesToSelectFrom.size()) {
+                        // If we have gone through the whole available list of bookies,
+                        // and yet haven't been able to satisfy the ensemble request, bail out.
+                        // We don't want to loop infinitely.
+                        break;
+                    }
+                    bookie = wRSelection.getNextRandom();
+                    bookiesSeenSoFar.add(bookie);
                 } else {
-                    break;
+                    if (!indexes.hasNext()) {
+                        break;
+                    }
+                    bookie = bookiesToSelectFrom.get(indexes.next());
+                }
+                if (excludeBookies.contains(bookie)) {
+                    continue;
                 }
-            }
-            if (excludeBookies.contains(bookie)) {
-                continue;
-            }
 
-            // When durability is being enforced; we must not violate the
-            // predicate even when selecting a random bookie; as durability
-            // guarantee is not best effort; correctness is implied by it
-            if (enforceDurability && !predicate.apply(bookie, ensemble)) {
-                continue;
-            }
+                // When durability is being enforced; we must not violate the
+                // predicate even when selecting a random bookie; as durability
+                // guarantee is not best effort; correctness is implied by it
+                if (enforceDurability && !predicate.apply(bookie, ensemble)) {
+                    continue;
+                }
 
-            if (ensemble.addNode(bookie)) {
-                excludeBookies.add(bookie);
-                newBookies.add(bookie);
-                --numBookies;
+                if (ensemble.addNode(bookie)) {
+                    excludeBookies.add(bookie);
+                    newBookies.add(bookie);
+                    --numBookies;
+                }
             }
         }
         if (numBookies == 0) {
@@ -150,6 +150,7 @@ public class RegionAwareEnsemblePlacementPolicy extends RackawareEnsemblePlaceme
             BookieNode node = createBookieNode(addr);
             topology.add(node);
             knownBookies.put(addr, node);
+            invalidateKnownBookieNodes();
             historyBookies.put(addr, node);
             String region = getLocalRegion(node);
             if (null == perRegionPlacement.get(region)) {
@@ -199,6 +200,7 @@ public class RegionAwareEnsemblePlacementPolicy extends RackawareEnsemblePlaceme
                             topology.remove(node);
                             topology.add(newNode);
                             knownBookies.put(bookieAddress, newNode);
+                            invalidateKnownBookieNodes();
                             historyBookies.put(bookieAddress, newNode);
                         }
                         //Handle per region placement policy.
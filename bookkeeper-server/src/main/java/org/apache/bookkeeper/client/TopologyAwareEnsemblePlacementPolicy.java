@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -61,6 +62,8 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
     static final Logger LOG = LoggerFactory.getLogger(TopologyAwareEnsemblePlacementPolicy.class);
     public static final String REPP_DNS_RESOLVER_CLASS = "reppDnsResolverClass";
     protected final Map<BookieId, BookieNode> knownBookies = new HashMap<BookieId, BookieNode>();
+    // an immutable copy of the values of knownBookies, shared by the selections until the known bookies change
+    private volatile List<BookieNode> knownBookieNodes = null;
     protected final Map<BookieId, BookieNode> historyBookies = new HashMap<BookieId, BookieNode>();
     protected final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
     protected Map<BookieNode, WeightedObject> bookieInfoMap = new HashMap<BookieNode, WeightedObject>();
@@ -602,6 +605,112 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
         return networkLocs;
     }
 
+    /**
+     * Get the known bookies as an immutable list, which is shared until the known bookies change.
+     * It should be called in the scope of 'rwLock'.
+     */
+    protected List<BookieNode> getKnownBookieNodes() {
+        List<BookieNode> nodes = knownBookieNodes;
+        if (null == nodes) {
+            nodes = Collections.unmodifiableList(new ArrayList<>(knownBookies.values()));
+            knownBookieNodes = nodes;
+        }
+        return nodes;
+    }
+
+    /**
+     * Drop the list of the known bookies after they changed.
+     * It should be called in writelock scope of 'rwLock'.
+     */
+    protected void invalidateKnownBookieNodes() {
+        knownBookieNodes = null;
+    }
+
+    /**
+     * A uniformly random order over the indexes of a list of <i>size</i> items, drawn one index at a time with a
+     * partial Fisher-Yates shuffle. It allows to pick random items from a shared list without copying or
+     * shuffling it, in a time proportional to the number of items drawn.
+     *
+     * <p>The indexes are shuffled in an array reused by the thread, which is restored when the draw is closed.
+     */
+    static final class RandomIndexes implements AutoCloseable {
+
+        private static final ThreadLocal<RandomIndexes> THREAD_INDEXES = ThreadLocal.withInitial(RandomIndexes::new);
+
+        // indexes[i] == i outside of a draw
+        private int[] indexes = new int[0];
+        // the position swapped with the i-th drawn one, to undo the swaps
+        private int[] swaps = new int[0];
+        private int size;
+        private int drawn;
+        private boolean inUse;
+
+        /**
+         * Start drawing the indexes of a list of <i>size</i> items in a random order.
+         */
+        static RandomIndexes draw(int size) {
+            RandomIndexes randomIndexes = THREAD_INDEXES.get();
+            if (randomIndexes.inUse) {
+                // a draw nested in another one of the same thread
+                randomIndexes = new RandomIndexes();
+            }
+            randomIndexes.start(size);
+            return randomIndexes;
+        }
+
+        private void start(int size) {
+            if (indexes.length < size) {
+                indexes = new int[size];
+                for (int i = 0; i < size; i++) {
+                    indexes[i] = i;
+                }
+                swaps = new int[size];
+            }
+            this.size = size;
+            this.drawn = 0;
+            this.inUse = true;
+        }
+
+        boolean hasNext() {
+            return drawn < size;
+        }
+
+        int next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int i = drawn++;
+            int j = i + ThreadLocalRandom.current().nextInt(size - i);
+            swap(i, j);
+            swaps[i] = j;
+            return indexes[i];
+        }
+
+        private void swap(int i, int j) {
+            int index = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = index;
+        }
+
+        @Override
+        public void close() {
+            for (int i = drawn - 1; i >= 0; i--) {
+                swap(i, swaps[i]);
+            }
+            drawn = 0;
+            inUse = false;
+        }
+    }
+
+    /**
+     * Whether the node is located under the network location <i>scope</i>.
+     */
+    static boolean isUnderScope(Node node, String scope) {
+        String loc = node.getNetworkLocation();
+        return loc.startsWith(scope)
+                && (loc.length() == scope.length() || loc.charAt(scope.length()) == NodeBase.PATH_SEPARATOR);
+    }
+
     /**
      * Shuffle all the entries of an array that matches a mask.
      * It assumes all entries with the same mask are contiguous in the array.
@@ -686,6 +795,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
             try {
                 BookieNode node = knownBookies.remove(addr);
                 if (null != node) {
+                    invalidateKnownBookieNodes();
                     topology.remove(node);
                     if (this.isWeighted) {
                         this.bookieInfoMap.remove(node);
@@ -719,6 +829,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
                 BookieNode node = createBookieNode(addr);
                 topology.add(node);
                 knownBookies.put(addr, node);
+                invalidateKnownBookieNodes();
                 historyBookies.put(addr, node);
                 if (this.isWeighted) {
                     this.bookieInfoMap.putIfAbsent(node, new BookieInfo());
@@ -754,6 +865,7 @@ abstract class TopologyAwareEnsemblePlacementPolicy implements
                             topology.remove(node);
                             topology.add(newNode);
                             knownBookies.put(bookieAddress, newNode);
+                            invalidateKnownBookieNodes();
                             historyBookies.put(bookieAddress, newNode);
                         }
                     }
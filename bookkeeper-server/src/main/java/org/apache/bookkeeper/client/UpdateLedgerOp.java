@@ -20,8 +20,10 @@ package org.apache.bookkeeper.client;
 
 import com.google.common.util.concurrent.RateLimiter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +37,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.bookie.BookieShell.UpdateLedgerNotifier;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.versioning.Versioned;
@@ -49,10 +52,12 @@ public class UpdateLedgerOp {
     private static final Logger LOG = LoggerFactory.getLogger(UpdateLedgerOp.class);
     private final LedgerManager lm;
     private final BookKeeperAdmin admin;
+    private final int batchSize;
 
     public UpdateLedgerOp(final BookKeeper bkc, final BookKeeperAdmin admin) {
         this.lm = bkc.getLedgerManager();
         this.admin = admin;
+        this.batchSize = bkc.getConf().getLedgerMetadataBatchSize();
     }
 
     /**
@@ -86,35 +91,29 @@ public class UpdateLedgerOp {
         final RateLimiter throttler = RateLimiter.create(rate);
         final Semaphore outstandingReads = new Semaphore(maxOutstandingReads);
         final Iterator<Long> ledgerItr = admin.listLedgers().iterator();
+        final int ledgersPerBatch = Math.max(1, Math.min(batchSize, maxOutstandingReads));
 
         // iterate through all the ledgers
         while (ledgerItr.hasNext() && !finalPromise.isDone()
                && (limit == Integer.MIN_VALUE || issuedLedgerCnt.get() < limit)) {
+            final List<Long> ledgerIds = new ArrayList<>(ledgersPerBatch);
+            while (ledgerIds.size() < ledgersPerBatch && ledgerItr.hasNext()
+                   && (limit == Integer.MIN_VALUE || issuedLedgerCnt.get() + ledgerIds.size() < limit)) {
+                ledgerIds.add(ledgerItr.next());
+            }
             // semaphore to control reads according to update throttling
-            outstandingReads.acquire();
-
-            final long ledgerId = ledgerItr.next();
-            issuedLedgerCnt.incrementAndGet();
-
-            CompletableFuture<Versioned<LedgerMetadata>> writePromise = lm.readLedgerMetadata(ledgerId)
-                .thenCompose((readMetadata) -> {
-                    AtomicReference<Versioned<LedgerMetadata>> ref = new AtomicReference<>(readMetadata);
-                    return new MetadataUpdateLoop(
-                            lm, ledgerId,
-                            ref::get,
-                            (metadata) -> {
-                                return metadata.getAllEnsembles().values().stream()
-                                    .flatMap(Collection::stream)
-                                    .anyMatch(b -> b.equals(oldBookieId));
-                            },
-                            (metadata) -> {
-                                return replaceBookieInEnsembles(metadata, oldBookieId, newBookieId);
-                            },
-                            ref::compareAndSet, throttler).run();
-                });
-
-            outstanding.add(writePromise);
-            writePromise.whenComplete((metadata, ex) -> {
+            outstandingReads.acquire(ledgerIds.size());
+            /*
+             * throttler to control updates per second, acquired here rather
+             * than in the metadata store callbacks, which must not block. The
+             * ledgers of the batch are charged whether they are rewritten or not.
+             */
+            throttler.acquire(ledgerIds.size());
+            issuedLedgerCnt.addAndGet(ledgerIds.size());
+
+            updateBookieIdInBatch(ledgerIds, oldBookieId, newBookieId).forEach((ledgerId, writePromise) -> {
+                outstanding.add(writePromise);
+                writePromise.whenComplete((metadata, ex) -> {
                         if (ex != null
                             && !(ex instanceof BKException.BKNoSuchLedgerExistsOnMetadataServerException)) {
                             String error = String.format("Failed to update ledger metadata %s, replacing %s with %s",
@@ -131,6 +130,7 @@ public class UpdateLedgerOp {
                         outstandingReads.release();
                         outstanding.remove(writePromise);
                     });
+            });
         }
 
         CompletableFuture.allOf(outstanding.stream().toArray(CompletableFuture[]::new))
@@ -158,6 +158,75 @@ public class UpdateLedgerOp {
         }
     }
 
+    /**
+     * Update the bookie id in a batch of ledgers: their metadata is read and written with the batched
+     * operations of the ledger manager. A ledger whose metadata changed between the read and the write is
+     * updated again on its own.
+     *
+     * @return the futures of the updates, by ledger id
+     */
+    private Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> updateBookieIdInBatch(
+            List<Long> ledgerIds, BookieId oldBookieId, BookieId newBookieId) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> updatePromises = new HashMap<>();
+        for (Long ledgerId : ledgerIds) {
+            updatePromises.put(ledgerId, new CompletableFuture<>());
+        }
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readPromises = lm.readLedgersMetadata(ledgerIds);
+        CompletableFuture.allOf(readPromises.values().toArray(new CompletableFuture<?>[0]))
+            .whenComplete((ignored, readException) -> {
+                Map<Long, Versioned<LedgerMetadata>> toWrite = new HashMap<>();
+                readPromises.forEach((ledgerId, readPromise) -> readPromise.whenComplete((readMetadata, ex) -> {
+                    if (ex != null) {
+                        updatePromises.get(ledgerId).completeExceptionally(ex);
+                    } else if (containsBookie(readMetadata.getValue(), oldBookieId)) {
+                        toWrite.put(ledgerId, new Versioned<>(
+                                replaceBookieInEnsembles(readMetadata.getValue(), oldBookieId, newBookieId),
+                                readMetadata.getVersion()));
+                    } else {
+                        updatePromises.get(ledgerId).complete(readMetadata);
+                    }
+                }));
+                if (toWrite.isEmpty()) {
+                    return;
+                }
+                lm.writeLedgersMetadata(toWrite).forEach((ledgerId, writePromise) -> writePromise.whenComplete(
+                    (writtenMetadata, ex) -> {
+                        if (ex instanceof BKException.BKMetadataVersionException) {
+                            // the metadata changed since it was read, the ledger was already charged to the throttler
+                            FutureUtils.proxyTo(updateBookieIdInLedger(ledgerId, oldBookieId, newBookieId),
+                                    updatePromises.get(ledgerId));
+                        } else if (ex != null) {
+                            updatePromises.get(ledgerId).completeExceptionally(ex);
+                        } else {
+                            updatePromises.get(ledgerId).complete(writtenMetadata);
+                        }
+                    }));
+            });
+        return updatePromises;
+    }
+
+    private CompletableFuture<Versioned<LedgerMetadata>> updateBookieIdInLedger(
+            long ledgerId, BookieId oldBookieId, BookieId newBookieId) {
+        return lm.readLedgerMetadata(ledgerId)
+            .thenCompose((readMetadata) -> {
+                AtomicReference<Versioned<LedgerMetadata>> ref = new AtomicReference<>(readMetadata);
+                return new MetadataUpdateLoop(
+                        lm, ledgerId,
+                        ref::get,
+                        (metadata) -> containsBookie(metadata, oldBookieId),
+                        (metadata) -> {
+                            return replaceBookieInEnsembles(metadata, oldBookieId, newBookieId);
+                        },
+                        ref::compareAndSet).run();
+            });
+    }
+
+    private static boolean containsBookie(LedgerMetadata metadata, BookieId bookieId) {
+        return metadata.getAllEnsembles().values().stream()
+            .flatMap(Collection::stream)
+            .anyMatch(b -> b.equals(bookieId));
+    }
+
     private static LedgerMetadata replaceBookieInEnsembles(LedgerMetadata metadata,
                                                            BookieId oldBookieId,
                                                            BookieId newBookieId) {
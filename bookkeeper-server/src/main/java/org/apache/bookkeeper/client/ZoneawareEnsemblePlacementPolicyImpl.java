@@ -476,7 +476,7 @@ public class ZoneawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     }
 
     private Set<BookieNode> getBookiesToConsider(Set<BookieId> excludeBookies) {
-        Set<Node> leaves = topology.getLeaves(NodeBase.ROOT);
+        List<Node> leaves = topology.getLeafList(NodeBase.ROOT);
         Set<BookieNode> bookiesToConsider = new HashSet<BookieNode>();
         BookieNode bookieNode;
         for (Node leaf : leaves) {
@@ -578,7 +578,7 @@ public class ZoneawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
      */
     protected Set<BookieId> addDefaultFaultDomainBookies(Set<BookieId> excludeBookies) {
         Set<BookieId> comprehensiveExclusionBookiesSet = new HashSet<BookieId>(excludeBookies);
-        Set<Node> defaultFaultDomainLeaves = topology.getLeaves(getDefaultFaultDomain());
+        List<Node> defaultFaultDomainLeaves = topology.getLeafList(getDefaultFaultDomain());
         for (Node node : defaultFaultDomainLeaves) {
             if (node instanceof BookieNode) {
                 comprehensiveExclusionBookiesSet.add(((BookieNode) node).getAddr());
@@ -612,28 +612,17 @@ public class ZoneawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         return candidate;
     }
 
-    private String getExcludedZonesString(Set<String> excludeZones) {
-        if (excludeZones.isEmpty()) {
-            return "";
-        }
-        StringBuilder excludedZonesString = new StringBuilder(NetworkTopologyImpl.INVERSE);
-        boolean firstZone = true;
-        for (String excludeZone : excludeZones) {
-            if (!firstZone) {
-                excludedZonesString.append(NetworkTopologyImpl.NODE_SEPARATOR);
-            }
-            excludedZonesString.append(excludeZone);
-            firstZone = false;
-        }
-        return excludedZonesString.toString();
-    }
-
-    private Set<BookieNode> getBookiesToConsider(String excludedZonesString, Set<BookieId> excludeBookies) {
+    /*
+     * Get the bookies that are neither in 'excludeZones' nor in 'excludeBookies', reading the list of all the
+     * leaves shared by the topology rather than copying the leaves outside of the excluded zones.
+     */
+    private Set<BookieNode> getBookiesToConsiderExcludingZones(Set<String> excludeZones,
+            Set<BookieId> excludeBookies) {
         Set<BookieNode> bookiesToConsider = new HashSet<BookieNode>();
-        Set<Node> leaves = topology.getLeaves(excludedZonesString);
+        List<Node> leaves = topology.getLeafList(NodeBase.ROOT);
         for (Node leaf : leaves) {
             BookieNode bookieNode = ((BookieNode) leaf);
-            if (excludeBookies.contains(bookieNode.getAddr())) {
+            if (excludeBookies.contains(bookieNode.getAddr()) || isInAnyZone(bookieNode, excludeZones)) {
                 continue;
             }
             bookiesToConsider.add(bookieNode);
@@ -641,6 +630,15 @@ public class ZoneawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         return bookiesToConsider;
     }
 
+    private static boolean isInAnyZone(BookieNode bookieNode, Set<String> zones) {
+        for (String zone : zones) {
+            if (isUnderScope(bookieNode, zone)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /*
      * For the position of 'bookieToReplaceIndex' in currentEnsemble, get the
      * set of bookies eligible by excluding the 'excludeZones' and
@@ -658,8 +656,8 @@ public class ZoneawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             Set<BookieId> excludeBookies, Set<String> excludeZones) {
         Set<BookieNode> bookiesToConsiderAfterExcludingZonesAndUDs = new HashSet<BookieNode>();
         HashMap<String, Set<String>> excludingUDsOfZonesToConsider = new HashMap<String, Set<String>>();
-        Set<BookieNode> bookiesToConsiderAfterExcludingZones = getBookiesToConsider(
-                getExcludedZonesString(excludeZones), excludeBookies);
+        Set<BookieNode> bookiesToConsiderAfterExcludingZones = getBookiesToConsiderExcludingZones(excludeZones,
+                excludeBookies);
 
         if (!bookiesToConsiderAfterExcludingZones.isEmpty()) {
             Set<String> zonesToConsider = getZonesOfBookies(bookiesToConsiderAfterExcludingZones);
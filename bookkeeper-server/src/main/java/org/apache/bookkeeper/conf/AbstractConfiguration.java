@@ -80,6 +80,9 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String LEDGER_MANAGER_TYPE = "ledgerManagerType";
     protected static final String LEDGER_MANAGER_FACTORY_CLASS = "ledgerManagerFactoryClass";
     protected static final String LEDGER_METADATA_FORMAT_VERSION = "ledgerMetadataVersion";
+    protected static final String LEDGER_METADATA_BATCH_SIZE = "ledgerMetadataBatchSize";
+    protected static final String LEDGER_METADATA_BATCH_MAX_INFLIGHT = "ledgerMetadataBatchMaxInflight";
+    protected static final String LEDGER_ID_CACHE_ENABLED = "ledgerIdCacheEnabled";
     protected static final String ALLOW_SHADED_LEDGER_MANAGER_FACTORY_CLASS = "allowShadedLedgerManagerFactoryClass";
     protected static final String SHADED_LEDGER_MANAGER_FACTORY_CLASS_PREFIX = "shadedLedgerManagerFactoryClassPrefix";
     protected static final String METADATA_SERVICE_URI = "metadataServiceUri";
@@ -191,6 +194,11 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     public static final String LIMIT_STATS_LOGGING = "limitStatsLogging";
 
     protected static final String REPLICATION_RATE_BY_BYTES = "replicationRateByBytes";
+    protected static final String REPLICATION_LOAD_AWARE_THROTTLING_ENABLED = "replicationLoadAwareThrottlingEnabled";
+    protected static final String REREPLICATION_MAX_INFLIGHT_BATCHES = "rereplicationMaxInflightBatches";
+    protected static final String REREPLICATION_RANGE_READ_ENABLED = "rereplicationRangeReadEnabled";
+    protected static final String REREPLICATION_BOOKIE_TO_BOOKIE_COPY_ENABLED =
+            "rereplicationBookieToBookieCopyEnabled";
 
     protected AbstractConfiguration() {
         super();
@@ -489,6 +497,76 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getInt(LEDGER_METADATA_FORMAT_VERSION, -1);
     }
 
+    /**
+     * Get the number of ledgers whose metadata is read, written or removed in a single request to the metadata
+     * store, by the batched operations of the ledger manager.
+     *
+     * @return the number of ledgers per batch. Default is 100.
+     */
+    public int getLedgerMetadataBatchSize() {
+        return getInt(LEDGER_METADATA_BATCH_SIZE, 100);
+    }
+
+    /**
+     * Set the number of ledgers whose metadata is read, written or removed in a single request to the metadata
+     * store. The metadata of a batch has to fit in a single request, whose size is limited by the metadata store
+     * (e.g. jute.maxbuffer in ZooKeeper, max-txn-ops in etcd).
+     *
+     * @param batchSize
+     *          the number of ledgers per batch.
+     * @return configuration.
+     */
+    public T setLedgerMetadataBatchSize(int batchSize) {
+        setProperty(LEDGER_METADATA_BATCH_SIZE, batchSize);
+        return getThis();
+    }
+
+    /**
+     * Get the number of batches of a batched operation of the ledger manager sent to the metadata store without
+     * waiting for the previous ones to complete.
+     *
+     * @return the number of batches in flight. Default is 4.
+     */
+    public int getLedgerMetadataBatchMaxInflight() {
+        return getInt(LEDGER_METADATA_BATCH_MAX_INFLIGHT, 4);
+    }
+
+    /**
+     * Set the number of batches of a batched operation of the ledger manager sent to the metadata store without
+     * waiting for the previous ones to complete.
+     *
+     * @param maxInflight
+     *          the number of batches in flight.
+     * @return configuration.
+     */
+    public T setLedgerMetadataBatchMaxInflight(int maxInflight) {
+        setProperty(LEDGER_METADATA_BATCH_MAX_INFLIGHT, maxInflight);
+        return getThis();
+    }
+
+    /**
+     * Whether the hierarchical ledger managers keep the ids of all the ledgers in a local cache, which is kept up
+     * to date with ZooKeeper watches on the children of the ledgers tree, and iterate over the ledgers from it
+     * instead of walking the ledgers tree.
+     *
+     * @return true if the ledger id cache is enabled.
+     */
+    public boolean isLedgerIdCacheEnabled() {
+        return getBoolean(LEDGER_ID_CACHE_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the local cache of the ledger ids of the hierarchical ledger managers.
+     *
+     * @param enabled
+     *          whether to enable the ledger id cache.
+     * @return configuration.
+     */
+    public T setLedgerIdCacheEnabled(boolean enabled) {
+        setProperty(LEDGER_ID_CACHE_ENABLED, enabled);
+        return getThis();
+    }
+
     /**
      * Get layout string ("null" if unconfigured).
      *
@@ -1251,6 +1329,95 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Whether the bytes rate of re-replication is shared among the bookies the entries are read from, in inverse
+     * proportion to the time each of them recently took to serve the reads of the re-replication, instead of
+     * being a single limit.
+     *
+     * @return true if the re-replication throttling is load aware. Default is false.
+     */
+    public boolean isReplicationLoadAwareThrottlingEnabled() {
+        return getBoolean(REPLICATION_LOAD_AWARE_THROTTLING_ENABLED, false);
+    }
+
+    /**
+     * Set whether the bytes rate of re-replication is shared among the bookies the entries are read from,
+     * according to their load. It has no effect unless {@link #setReplicationRateByBytes(int)} is set.
+     *
+     * @param enabled
+     * @return configuration.
+     */
+    public T setReplicationLoadAwareThrottlingEnabled(boolean enabled) {
+        setProperty(REPLICATION_LOAD_AWARE_THROTTLING_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the max number of batches of a fragment that are re-replicated at the same time, so that the reads of
+     * a batch are pipelined with the writes of the previous ones.
+     *
+     * @see #getRereplicationEntryBatchSize()
+     * @return the max number of batches re-replicated at the same time. Default is 1.
+     */
+    public int getRereplicationMaxInflightBatches() {
+        return getInt(REREPLICATION_MAX_INFLIGHT_BATCHES, 1);
+    }
+
+    /**
+     * Set the max number of batches of a fragment that are re-replicated at the same time.
+     *
+     * @param maxInflightBatches
+     * @return configuration.
+     */
+    public T setRereplicationMaxInflightBatches(int maxInflightBatches) {
+        setProperty(REREPLICATION_MAX_INFLIGHT_BATCHES, maxInflightBatches);
+        return getThis();
+    }
+
+    /**
+     * Whether the entries of a batch are re-replicated with a single range read, instead of a read per entry.
+     * The entries are read one by one again if the range read fails, to find the ones which cannot be read.
+     *
+     * @return true if the range reads are enabled. Default is false.
+     */
+    public boolean isRereplicationRangeReadEnabled() {
+        return getBoolean(REREPLICATION_RANGE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the range reads for the re-replication.
+     *
+     * @param enabled
+     * @return configuration.
+     */
+    public T setRereplicationRangeReadEnabled(boolean enabled) {
+        setProperty(REREPLICATION_RANGE_READ_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Whether the new bookies copy the entries of a batch directly from the other bookies of the fragment,
+     * instead of having the entries read and written again by the re-replication. The entries are re-replicated
+     * through the client if a new bookie fails to copy them, e.g. because it does not support the copy or the
+     * copy is not enabled on it with {@code ledgerFragmentCopyEnabled}.
+     *
+     * @return true if the bookie to bookie copy is enabled. Default is false.
+     */
+    public boolean isRereplicationBookieToBookieCopyEnabled() {
+        return getBoolean(REREPLICATION_BOOKIE_TO_BOOKIE_COPY_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the bookie to bookie copy for the re-replication.
+     *
+     * @param enabled
+     * @return configuration.
+     */
+    public T setRereplicationBookieToBookieCopyEnabled(boolean enabled) {
+        setProperty(REREPLICATION_BOOKIE_TO_BOOKIE_COPY_ENABLED, enabled);
+        return getThis();
+    }
+
     /**
      * get the max tasks can be acquired per second of re-replication.
      * @return max tasks can be acquired per second of re-replication.
@@ -97,6 +97,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String CLIENT_CONNECT_TIMEOUT_MILLIS = "clientConnectTimeoutMillis";
     protected static final String CLIENT_TCP_USER_TIMEOUT_MILLIS = "clientTcpUserTimeoutMillis";
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
+    protected static final String MAX_CHANNELS_PER_BOOKIE = "maxChannelsPerBookie";
+    protected static final String CHANNEL_CONGESTION_PENDING_REQUESTS_THRESHOLD =
+            "channelCongestionPendingRequestsThreshold";
     protected static final String USE_V2_WIRE_PROTOCOL = "useV2WireProtocol";
     protected static final String NETTY_USE_POOLED_BUFFERS = "nettyUsePooledBuffers";
 
@@ -148,6 +151,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String BOOKIE_MAX_MULTIPLE_FOR_WEIGHTED_PLACEMENT =
         "bookieMaxMultipleForWeightBasedPlacement";
     protected static final String GET_BOOKIE_INFO_TIMEOUT_SECS = "getBookieInfoTimeoutSecs";
+    protected static final String COPY_LEDGER_FRAGMENT_TIMEOUT_SECS = "copyLedgerFragmentTimeoutSecs";
     protected static final String START_TLS_TIMEOUT_SECS = "startTLSTimeoutSecs";
     protected static final String TLS_HOSTNAME_VERIFICATION_ENABLED = "tlsHostnameVerificationEnabled";
 
@@ -203,6 +207,14 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     //For batch read api, it the batch read is not stable, we can fail back to single read by this config.
     protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
+    protected static final String BATCH_READ_DIGEST_VERIFICATION_THREADS = "batchReadDigestVerificationThreads";
+    protected static final String BATCH_READ_DIGEST_VERIFICATION_MIN_ENTRIES =
+            "batchReadDigestVerificationMinEntries";
+
+    // Ledger metadata cache
+    protected static final String LEDGER_METADATA_CACHE_MAX_SIZE = "ledgerMetadataCacheMaxSize";
+    protected static final String LEDGER_METADATA_CACHE_PREFETCH_MAX_OUTSTANDING_READS =
+            "ledgerMetadataCachePrefetchMaxOutstandingReads";
 
     /**
      * Construct a default client-side configuration.
@@ -579,6 +591,56 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of channels per bookie. Defaults to {@link #getNumChannelsPerBookie()},
+     * i.e. a fixed size channel pool.
+     *
+     * @return max num channels per bookie.
+     */
+    public int getMaxChannelsPerBookie() {
+        return Math.max(getNumChannelsPerBookie(), getInt(MAX_CHANNELS_PER_BOOKIE, getNumChannelsPerBookie()));
+    }
+
+    /**
+     * Set the max number of channels per bookie.
+     *
+     * <p>If it is greater than {@link #getNumChannelsPerBookie()}, the client opens additional channels
+     * to a bookie, up to this number, when its channels are congested, and moves ledgers from the
+     * congested channels to the least loaded ones. Moving a ledger to another channel while it has
+     * requests in flight may change the order in which the bookie receives them.
+     *
+     * @param maxChannelsPerBookie
+     *          max num channels per bookie.
+     * @return client configuration.
+     */
+    public ClientConfiguration setMaxChannelsPerBookie(int maxChannelsPerBookie) {
+        setProperty(MAX_CHANNELS_PER_BOOKIE, maxChannelsPerBookie);
+        return this;
+    }
+
+    /**
+     * Get the number of pending requests on a channel above which the channel is considered congested.
+     *
+     * @return pending requests threshold.
+     * @see #setMaxChannelsPerBookie(int)
+     */
+    public long getChannelCongestionPendingRequestsThreshold() {
+        return getLong(CHANNEL_CONGESTION_PENDING_REQUESTS_THRESHOLD, 1000L);
+    }
+
+    /**
+     * Set the number of pending requests on a channel above which the channel is considered congested.
+     * Only used when the channel pool can grow, see {@link #setMaxChannelsPerBookie(int)}.
+     *
+     * @param threshold
+     *          pending requests threshold.
+     * @return client configuration.
+     */
+    public ClientConfiguration setChannelCongestionPendingRequestsThreshold(long threshold) {
+        setProperty(CHANNEL_CONGESTION_PENDING_REQUESTS_THRESHOLD, threshold);
+        return this;
+    }
+
     /**
      * Use older Bookkeeper wire protocol (no protobuf).
      *
@@ -1548,6 +1610,29 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getInteger(GET_BOOKIE_INFO_TIMEOUT_SECS, 5);
     }
 
+    /**
+     * Return the timeout value in secs for the COPY_LEDGER_FRAGMENT request.
+     *
+     * <p>A single request copies a whole batch of entries, reading each of them from the other bookies of the
+     * ensemble, so it takes much longer than a read.
+     *
+     * @return the timeout value in secs for the COPY_LEDGER_FRAGMENT request
+     */
+    public int getCopyLedgerFragmentTimeout() {
+        return getInteger(COPY_LEDGER_FRAGMENT_TIMEOUT_SECS, 600);
+    }
+
+    /**
+     * Set the timeout value in secs for the COPY_LEDGER_FRAGMENT request.
+     *
+     * @param timeoutSecs
+     * @return client configuration
+     */
+    public ClientConfiguration setCopyLedgerFragmentTimeout(int timeoutSecs) {
+        setProperty(COPY_LEDGER_FRAGMENT_TIMEOUT_SECS, timeoutSecs);
+        return this;
+    }
+
     /**
      * Return the timeout value for startTLS request.
      * @return
@@ -2084,6 +2169,99 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getBoolean(BATCH_READ_ENABLED, true);
     }
 
+    /**
+     * Set the number of threads used to verify the digests of batch read responses in parallel.
+     *
+     * <p>0 (default) verifies the digests inline on the thread handling the response, a negative
+     * value uses the {@link java.util.concurrent.ForkJoinPool#commonPool()} and a positive value
+     * creates a dedicated pool with that number of threads.
+     *
+     * @param numThreads number of digest verification threads
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchReadDigestVerificationThreads(int numThreads) {
+        setProperty(BATCH_READ_DIGEST_VERIFICATION_THREADS, numThreads);
+        return this;
+    }
+
+    /**
+     * Get the number of threads used to verify the digests of batch read responses in parallel.
+     *
+     * @return number of digest verification threads
+     * @see #setBatchReadDigestVerificationThreads(int)
+     */
+    public int getBatchReadDigestVerificationThreads() {
+        return getInt(BATCH_READ_DIGEST_VERIFICATION_THREADS, 0);
+    }
+
+    /**
+     * Set the minimum number of entries a batch read response must contain for its digests to be
+     * verified in parallel. Smaller responses are verified inline.
+     *
+     * @param minEntries minimum number of entries
+     * @return client configuration.
+     */
+    public ClientConfiguration setBatchReadDigestVerificationMinEntries(int minEntries) {
+        setProperty(BATCH_READ_DIGEST_VERIFICATION_MIN_ENTRIES, minEntries);
+        return this;
+    }
+
+    /**
+     * Get the minimum number of entries a batch read response must contain for its digests to be
+     * verified in parallel.
+     *
+     * @return minimum number of entries
+     */
+    public int getBatchReadDigestVerificationMinEntries() {
+        return getInt(BATCH_READ_DIGEST_VERIFICATION_MIN_ENTRIES, 16);
+    }
+
+    /**
+     * Set the maximum number of ledgers whose metadata is cached by the client.
+     *
+     * <p>The cached metadata is kept up to date by watching the metadata store, and it is used to open the
+     * ledgers. 0 (default) disables the cache.
+     *
+     * @param maxSize maximum number of cached ledgers
+     * @return client configuration.
+     */
+    public ClientConfiguration setLedgerMetadataCacheMaxSize(int maxSize) {
+        setProperty(LEDGER_METADATA_CACHE_MAX_SIZE, maxSize);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of ledgers whose metadata is cached by the client.
+     *
+     * @return maximum number of cached ledgers
+     * @see #setLedgerMetadataCacheMaxSize(int)
+     */
+    public int getLedgerMetadataCacheMaxSize() {
+        return getInt(LEDGER_METADATA_CACHE_MAX_SIZE, 0);
+    }
+
+    /**
+     * Set the maximum number of reads of the metadata store in progress at a time when prefetching the metadata
+     * of many ledgers in the cache.
+     *
+     * @param maxOutstandingReads maximum number of outstanding reads
+     * @return client configuration.
+     */
+    public ClientConfiguration setLedgerMetadataCachePrefetchMaxOutstandingReads(int maxOutstandingReads) {
+        setProperty(LEDGER_METADATA_CACHE_PREFETCH_MAX_OUTSTANDING_READS, maxOutstandingReads);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of reads of the metadata store in progress at a time when prefetching the metadata
+     * of many ledgers in the cache.
+     *
+     * @return maximum number of outstanding reads
+     */
+    public int getLedgerMetadataCachePrefetchMaxOutstandingReads() {
+        return getInt(LEDGER_METADATA_CACHE_PREFETCH_MAX_OUTSTANDING_READS, 100);
+    }
+
     @Override
     protected ClientConfiguration getThis() {
         return this;
@@ -159,6 +159,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
+    protected static final String MAX_ADD_BYTES_IN_PROGRESS_LIMIT = "maxAddBytesInProgressLimit";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
 
@@ -214,13 +215,23 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String AUTO_RECOVERY_DAEMON_ENABLED = "autoRecoveryDaemonEnabled";
     protected static final String LOST_BOOKIE_RECOVERY_DELAY = "lostBookieRecoveryDelay";
     protected static final String RW_REREPLICATE_BACKOFF_MS = "rwRereplicateBackoffMs";
+    protected static final String REPLICATION_WORKER_CONCURRENT_LEDGERS = "replicationWorkerConcurrentLedgers";
+    protected static final String LEDGER_FRAGMENT_COPY_ENABLED = "ledgerFragmentCopyEnabled";
+    protected static final String LEDGER_FRAGMENT_COPY_MAX_INFLIGHT_ENTRIES = "ledgerFragmentCopyMaxInflightEntries";
     protected static final String UNDERREPLICATED_LEDGER_RECOVERY_GRACE_PERIOD =
             "underreplicatedLedgerRecoveryGracePeriod";
     protected static final String AUDITOR_REPLICAS_CHECK_INTERVAL = "auditorReplicasCheckInterval";
+    protected static final String AUDITOR_REPLICAS_CHECK_INCREMENTAL_ENABLED =
+            "auditorReplicasCheckIncrementalEnabled";
+    protected static final String AUDITOR_REPLICAS_CHECK_MAX_AGE_SEC = "auditorReplicasCheckMaxAgeSec";
+    protected static final String AUDITOR_REPLICAS_CHECK_MAX_INFLIGHT_LEDGERS =
+            "auditorReplicasCheckMaxInflightLedgers";
     protected static final String AUDITOR_MAX_NUMBER_OF_CONCURRENT_OPEN_LEDGER_OPERATIONS =
         "auditorMaxNumberOfConcurrentOpenLedgerOperations";
     protected static final String AUDITOR_ACQUIRE_CONCURRENT_OPEN_LEDGER_OPERATIONS_TIMEOUT_MSEC =
         "auditorAcquireConcurrentOpenLedgerOperationsTimeOutMSec";
+    protected static final String AUDITOR_INCREMENTAL_LEDGER_INDEX_ENABLED = "auditorIncrementalLedgerIndexEnabled";
+    protected static final String AUDITOR_LEDGER_INDEX_SNAPSHOT_PATH = "auditorLedgerIndexSnapshotPath";
     protected static final String IN_FLIGHT_READ_ENTRY_NUM_IN_LEDGER_CHECKER = "inFlightReadEntryNumInLedgerChecker";
 
 
@@ -232,6 +243,20 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String REQUEST_SCHEDULING_ENABLED = "requestSchedulingEnabled";
+    protected static final String REQUEST_SCHEDULING_MAX_TASKS_IN_FLIGHT_PER_THREAD =
+            "requestSchedulingMaxTasksInFlightPerThread";
+    protected static final String REQUEST_SCHEDULING_MAX_QUEUED_TASKS_PER_CLASS =
+            "requestSchedulingMaxQueuedTasksPerClass";
+    protected static final String REQUEST_SCHEDULING_CLASS_WEIGHTS = "requestSchedulingClassWeights";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_ENABLED = "readWorkerVirtualThreadsEnabled";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY_PER_DISK =
+            "readWorkerVirtualThreadsMaxConcurrencyPerDisk";
+    protected static final String THREAD_PER_CORE_ENABLED = "threadPerCoreEnabled";
+    protected static final String REQUEST_TRACING_SAMPLE_RATE = "requestTracingSampleRate";
+    protected static final String REQUEST_TRACING_SLOW_REQUEST_THRESHOLD_MS = "requestTracingSlowRequestThresholdMs";
+    protected static final String REQUEST_TRACING_SLOW_REQUESTS_CAPACITY = "requestTracingSlowRequestsCapacity";
+    protected static final String DIRECT_MEMORY_BUDGET_MAX_SIZE_MB = "directMemoryBudgetMaxSizeMb";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -1072,6 +1097,31 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get max number of bytes of the adds in progress. 0 == unlimited.
+     *
+     * <p>Once the limit is reached, the bookie stops reading from the connections of the clients sending adds,
+     * until enough adds completed. Past half the limit, it already stops reading from the connections of the
+     * clients holding the largest share of the bytes in progress.
+     *
+     * @return Max number of bytes of the adds in progress.
+     */
+    public long getMaxAddBytesInProgressLimit() {
+        return this.getLong(MAX_ADD_BYTES_IN_PROGRESS_LIMIT, 0L);
+    }
+
+    /**
+     * Set max number of bytes of the adds in progress. 0 == unlimited.
+     *
+     * @param value
+     *          max number of bytes of the adds in progress.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxAddBytesInProgressLimit(long value) {
+        this.setProperty(MAX_ADD_BYTES_IN_PROGRESS_LIMIT, value);
+        return this;
+    }
+
     /**
      * Get max number of reads in progress. 0 == unlimited.
      *
@@ -2137,6 +2187,289 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(MAX_PENDING_ADD_REQUESTS_PER_THREAD, 10000);
     }
 
+    /**
+     * Whether the requests are scheduled fairly among the clients before being executed by the read and add worker
+     * threads.
+     *
+     * <p>Requests are classified by the principal the client authenticated as, or by its host if it is anonymous.
+     * Every class has its own queue and the queues are served in weighted round robin, so a client flooding the
+     * bookie only delays its own requests. When enabled, {@link #getMaxPendingReadRequestPerThread()} and
+     * {@link #getMaxPendingAddRequestPerThread()} are replaced by
+     * {@link #getRequestSchedulingMaxQueuedTasksPerClass()}.
+     *
+     * @return true if the requests are scheduled fairly among the clients
+     */
+    public boolean isRequestSchedulingEnabled() {
+        return getBoolean(REQUEST_SCHEDULING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the fair scheduling of requests among the clients.
+     *
+     * @param enabled
+     *          whether to schedule the requests fairly among the clients
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestSchedulingEnabled(boolean enabled) {
+        setProperty(REQUEST_SCHEDULING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of scheduled requests handed to each worker thread at any time. The lower it is, the more
+     * quickly a new class of requests gets its share of the threads (default: 2).
+     *
+     * @return max number of scheduled requests handed to each worker thread
+     */
+    public int getRequestSchedulingMaxTasksInFlightPerThread() {
+        return getInt(REQUEST_SCHEDULING_MAX_TASKS_IN_FLIGHT_PER_THREAD, 2);
+    }
+
+    /**
+     * Set the max number of scheduled requests handed to each worker thread at any time.
+     *
+     * @param maxTasks
+     *          max number of scheduled requests handed to each worker thread
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestSchedulingMaxTasksInFlightPerThread(int maxTasks) {
+        setProperty(REQUEST_SCHEDULING_MAX_TASKS_IN_FLIGHT_PER_THREAD, maxTasks);
+        return this;
+    }
+
+    /**
+     * Get the max number of requests of a class waiting to be scheduled. After the quota is reached, new requests of
+     * the class will be failed immediately (default: 10000).
+     *
+     * @return max number of requests of a class waiting to be scheduled
+     */
+    public int getRequestSchedulingMaxQueuedTasksPerClass() {
+        return getInt(REQUEST_SCHEDULING_MAX_QUEUED_TASKS_PER_CLASS, 10000);
+    }
+
+    /**
+     * Set the max number of requests of a class waiting to be scheduled.
+     *
+     * @param maxTasks
+     *          max number of requests of a class waiting to be scheduled
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestSchedulingMaxQueuedTasksPerClass(int maxTasks) {
+        setProperty(REQUEST_SCHEDULING_MAX_QUEUED_TASKS_PER_CLASS, maxTasks);
+        return this;
+    }
+
+    /**
+     * Get the weights of the request classes, as a list of {@code class:weight}. A class with weight {@code n} is
+     * served {@code n} requests per round, the classes not listed have weight 1.
+     *
+     * @return weights of the request classes
+     */
+    public String[] getRequestSchedulingClassWeights() {
+        return getStringArray(REQUEST_SCHEDULING_CLASS_WEIGHTS);
+    }
+
+    /**
+     * Set the weights of the request classes, as a list of {@code class:weight}.
+     *
+     * @param weights
+     *          weights of the request classes
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestSchedulingClassWeights(String... weights) {
+        setProperty(REQUEST_SCHEDULING_CLASS_WEIGHTS, weights);
+        return this;
+    }
+
+    /**
+     * Whether the read and long poll requests are executed on virtual threads instead of the read worker threads.
+     *
+     * <p>Virtual threads are only available on JDK 21 or later, on older JDKs the read worker threads are used. A
+     * read blocking on the disk then only parks its virtual thread, so cold reads neither need more read worker
+     * threads nor queue behind each other. The reads running at the same time on the ledger directory of a ledger are
+     * capped by {@link #getReadWorkerVirtualThreadsMaxConcurrencyPerDisk()}. Fencing and high priority reads are
+     * still executed in order on the high priority threads. With {@link #isRequestSchedulingEnabled()}, the reads
+     * are still scheduled fairly among the clients before being handed to the ledger directories.
+     *
+     * <p>Reads that block in native code, like the RocksDB index lookups of {@code DbLedgerStorage}, or inside
+     * {@code synchronized} sections pin their carrier thread instead of parking. With a storage whose reads mostly
+     * pin, the reads running at the same time on all the ledger directories should not exceed the number of carriers
+     * of the virtual thread scheduler (the number of cores, or {@code -Djdk.virtualThreadScheduler.parallelism}).
+     *
+     * @return true if the read requests are executed on virtual threads
+     */
+    public boolean isReadWorkerVirtualThreadsEnabled() {
+        return getBoolean(READ_WORKER_VIRTUAL_THREADS_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the execution of the read requests on virtual threads.
+     *
+     * @param enabled
+     *          whether to execute the read requests on virtual threads
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsEnabled(boolean enabled) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of read requests executed at the same time on virtual threads for each ledger directory
+     * (default: 16).
+     *
+     * @return max number of read requests executed at the same time for each ledger directory
+     */
+    public int getReadWorkerVirtualThreadsMaxConcurrencyPerDisk() {
+        return getInt(READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY_PER_DISK, 16);
+    }
+
+    /**
+     * Set the max number of read requests executed at the same time on virtual threads for each ledger directory.
+     *
+     * @param maxConcurrency
+     *          max number of read requests executed at the same time for each ledger directory
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsMaxConcurrencyPerDisk(int maxConcurrency) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_MAX_CONCURRENCY_PER_DISK, maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Whether the bookie runs in thread-per-core mode.
+     *
+     * <p>In thread-per-core mode the Netty IO threads, the journal threads and the journal force-write threads each
+     * acquire an isolated CPU core, as with busy-wait but without spinning, and the add requests are executed
+     * directly on the IO thread that read them, so that an entry goes from the socket to the journal queue without
+     * being handed to another thread. The add worker threads only take the adds arriving while the journal of their
+     * ledger is full or over its memory limit, or while the ledger storage has no room for the entry (only
+     * {@code DbLedgerStorage} tells, with the other storages all the adds go to the add worker threads), which would
+     * block the IO thread. The adds of a connection following one handed to the add worker threads are handed to them
+     * too until it is executed, so that the adds of a ledger stay in order. The ledgers are still spread over the
+     * journals and the write caches of the ledger directories by their id. The adds received by every IO thread are
+     * reported as thread-scoped metrics.
+     *
+     * <p>The cores are acquired through the cpu-affinity module, so the machine must have enough isolated CPUs for
+     * {@link #getServerNumIOThreads()} plus two threads per journal directory.
+     *
+     * @return true if the bookie runs in thread-per-core mode
+     */
+    public boolean isThreadPerCoreEnabled() {
+        return getBoolean(THREAD_PER_CORE_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the thread-per-core mode.
+     *
+     * @param enabled
+     *          whether the bookie runs in thread-per-core mode
+     * @return server configuration
+     * @see #isThreadPerCoreEnabled()
+     */
+    public ServerConfiguration setThreadPerCoreEnabled(boolean enabled) {
+        setProperty(THREAD_PER_CORE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the rate of the add and read requests traced: one request out of this number is traced, 0 disables the
+     * tracing (default: 0).
+     *
+     * <p>A traced request records the time it spends in each stage: decoding, waiting for a worker thread, writing
+     * to the ledger storage, waiting in the journal queue, waiting for the group commit, waiting for and executing
+     * the fsync, reading from the ledger storage and writing the response. The durations are reported as
+     * per-stage latency metrics, and the slowest requests are kept to be retrieved through the http endpoint
+     * {@code /api/v1/bookie/request_traces}.
+     *
+     * @return one request out of how many is traced
+     */
+    public int getRequestTracingSampleRate() {
+        return getInt(REQUEST_TRACING_SAMPLE_RATE, 0);
+    }
+
+    /**
+     * Set the rate of the add and read requests traced.
+     *
+     * @param sampleRate
+     *          one request out of how many is traced, 0 disables the tracing
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestTracingSampleRate(int sampleRate) {
+        setProperty(REQUEST_TRACING_SAMPLE_RATE, sampleRate);
+        return this;
+    }
+
+    /**
+     * Get the latency above which a traced request is kept among the slow requests (default: 10 ms).
+     *
+     * @return latency threshold of the slow requests, in milliseconds
+     */
+    public long getRequestTracingSlowRequestThresholdMs() {
+        return getLong(REQUEST_TRACING_SLOW_REQUEST_THRESHOLD_MS, 10L);
+    }
+
+    /**
+     * Set the latency above which a traced request is kept among the slow requests.
+     *
+     * @param thresholdMs
+     *          latency threshold of the slow requests, in milliseconds
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestTracingSlowRequestThresholdMs(long thresholdMs) {
+        setProperty(REQUEST_TRACING_SLOW_REQUEST_THRESHOLD_MS, thresholdMs);
+        return this;
+    }
+
+    /**
+     * Get the number of the most recent slow requests kept (default: 64).
+     *
+     * @return number of slow requests kept
+     */
+    public int getRequestTracingSlowRequestsCapacity() {
+        return getInt(REQUEST_TRACING_SLOW_REQUESTS_CAPACITY, 64);
+    }
+
+    /**
+     * Set the number of the most recent slow requests kept.
+     *
+     * @param capacity
+     *          number of slow requests kept
+     * @return server configuration
+     */
+    public ServerConfiguration setRequestTracingSlowRequestsCapacity(int capacity) {
+        setProperty(REQUEST_TRACING_SLOW_REQUESTS_CAPACITY, capacity);
+        return this;
+    }
+
+    /**
+     * Get the direct memory budget shared by the write cache, the read cache, the journal queue and the add
+     * requests in progress, 0 means that the direct memory is tracked but not limited (default: 0).
+     *
+     * <p>When the budget is exceeded, the read cache releases memory in the background to make room for the
+     * writes, and the channels are paused until the add requests in progress complete. It should be set below
+     * -XX:MaxDirectMemorySize, so that the bookie stops admitting requests before the allocator runs out of
+     * memory. It must be greater than the memory allocated upfront by the journal write buffers, the write cache
+     * and the entry logger buffers, otherwise the bookie fails to start.
+     *
+     * @return direct memory budget in MB
+     */
+    public long getDirectMemoryBudgetMaxSizeMb() {
+        return getLong(DIRECT_MEMORY_BUDGET_MAX_SIZE_MB, 0L);
+    }
+
+    /**
+     * Set the direct memory budget shared by the bookie subsystems.
+     *
+     * @param maxSizeMb
+     *          direct memory budget in MB, 0 to only track the direct memory
+     * @return server configuration
+     */
+    public ServerConfiguration setDirectMemoryBudgetMaxSizeMb(long maxSizeMb) {
+        setProperty(DIRECT_MEMORY_BUDGET_MAX_SIZE_MB, maxSizeMb);
+        return this;
+    }
+
 
 
     /**
@@ -2748,6 +3081,84 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getLong(AUDITOR_REPLICAS_CHECK_INTERVAL, 0);
     }
 
+    /**
+     * Whether the replicas check only checks the ledgers which changed or were not verified recently.
+     *
+     * <p>The auditor remembers the ledgers found with all their replicas, with the version of their metadata.
+     * Such a ledger is checked again only once its metadata changed, or once its last check is older than
+     * {@link #getAuditorReplicasCheckMaxAgeSec()}.
+     *
+     * <p><b>Warning:</b> the loss of entries of a ledger whose metadata doesn't change, for example the entries
+     * lost with a disk of a bookie which is still up, is not found by the incremental replicas check until the
+     * ledger is checked again, which can take up to {@link #getAuditorReplicasCheckMaxAgeSec()} (1 week by
+     * default). Lower the max age if the entries lost must be found sooner.
+     *
+     * @return true if the replicas check is incremental. Default is false.
+     */
+    public boolean isAuditorReplicasCheckIncrementalEnabled() {
+        return getBoolean(AUDITOR_REPLICAS_CHECK_INCREMENTAL_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the incremental replicas check.
+     *
+     * @param enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setAuditorReplicasCheckIncrementalEnabled(boolean enabled) {
+        setProperty(AUDITOR_REPLICAS_CHECK_INCREMENTAL_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum age of the check of a ledger found with all its replicas, when the replicas check is
+     * incremental. The ledgers are checked again after between half of it and all of it, depending on their
+     * id, so that each replicas check samples a part of the verified ledgers.
+     *
+     * <p>This is also the longest time the entries lost from a ledger whose metadata doesn't change can go
+     * unnoticed by the incremental replicas check.
+     *
+     * @return the maximum age in seconds. Default is 604800 (1 week).
+     */
+    public long getAuditorReplicasCheckMaxAgeSec() {
+        return getLong(AUDITOR_REPLICAS_CHECK_MAX_AGE_SEC, 604800);
+    }
+
+    /**
+     * Set the maximum age of the check of a ledger found with all its replicas, when the replicas check is
+     * incremental.
+     *
+     * @param maxAgeSec
+     *            the maximum age in seconds.
+     * @return server configuration
+     */
+    public ServerConfiguration setAuditorReplicasCheckMaxAgeSec(long maxAgeSec) {
+        setProperty(AUDITOR_REPLICAS_CHECK_MAX_AGE_SEC, maxAgeSec);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of ledgers the replicas check checks at the same time. The number of ledgers checked
+     * at the same time starts from at most 100, grows while the bookies answer as fast as usual, and shrinks when
+     * they slow down or fail.
+     *
+     * @return the maximum number of ledgers checked at the same time. Default is 1000.
+     */
+    public int getAuditorReplicasCheckMaxInflightLedgers() {
+        return getInt(AUDITOR_REPLICAS_CHECK_MAX_INFLIGHT_LEDGERS, 1000);
+    }
+
+    /**
+     * Set the maximum number of ledgers the replicas check checks at the same time.
+     *
+     * @param maxInflightLedgers
+     * @return server configuration
+     */
+    public ServerConfiguration setAuditorReplicasCheckMaxInflightLedgers(int maxInflightLedgers) {
+        setProperty(AUDITOR_REPLICAS_CHECK_MAX_INFLIGHT_LEDGERS, maxInflightLedgers);
+        return this;
+    }
+
     /**
      * Get the semaphore limit value of getting ledger from zookeeper in auto recovery.
      *
@@ -2782,6 +3193,49 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         setProperty(AUDITOR_ACQUIRE_CONCURRENT_OPEN_LEDGER_OPERATIONS_TIMEOUT_MSEC, timeoutMs);
     }
 
+    /**
+     * Whether the auditor keeps the bookie to ledgers index in memory and updates it from the ledger metadata
+     * change stream, instead of reading the metadata of all the ledgers at each bookie check. It requires a
+     * metadata store with a change stream, such as etcd, otherwise the index is still rebuilt at each check.
+     *
+     * @return true if the incremental ledger index is enabled. Default is false.
+     */
+    public boolean isAuditorIncrementalLedgerIndexEnabled() {
+        return getBoolean(AUDITOR_INCREMENTAL_LEDGER_INDEX_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the incremental bookie to ledgers index of the auditor.
+     *
+     * @param enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setAuditorIncrementalLedgerIndexEnabled(boolean enabled) {
+        setProperty(AUDITOR_INCREMENTAL_LEDGER_INDEX_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the file where the auditor saves its incremental ledger index after each bookie check, and loads it
+     * from when it starts, to resume from the last change applied to it instead of rebuilding it.
+     *
+     * @return the path of the snapshot file. Default is null, the index is rebuilt when the auditor starts.
+     */
+    public String getAuditorLedgerIndexSnapshotPath() {
+        return getString(AUDITOR_LEDGER_INDEX_SNAPSHOT_PATH, null);
+    }
+
+    /**
+     * Set the file where the auditor saves its incremental ledger index.
+     *
+     * @param path
+     * @return server configuration
+     */
+    public ServerConfiguration setAuditorLedgerIndexSnapshotPath(String path) {
+        setProperty(AUDITOR_LEDGER_INDEX_SNAPSHOT_PATH, path);
+        return this;
+    }
+
 
     /**
      * Set what percentage of a ledger (fragment)'s entries will be verified.
@@ -2863,6 +3317,71 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         setProperty(RW_REREPLICATE_BACKOFF_MS, backoffMs);
     }
 
+    /**
+     * Get the number of under replicated ledgers the replication worker re-replicates at the same time.
+     *
+     * @return the number of ledgers re-replicated at the same time. Default is 1.
+     */
+    public int getReplicationWorkerConcurrentLedgers() {
+        return getInt(REPLICATION_WORKER_CONCURRENT_LEDGERS, 1);
+    }
+
+    /**
+     * Set the number of under replicated ledgers the replication worker re-replicates at the same time.
+     *
+     * @param concurrentLedgers
+     * @return server configuration
+     */
+    public ServerConfiguration setReplicationWorkerConcurrentLedgers(int concurrentLedgers) {
+        setProperty(REPLICATION_WORKER_CONCURRENT_LEDGERS, concurrentLedgers);
+        return this;
+    }
+
+    /**
+     * Whether the bookie copies the entries of the ledger fragments it is asked to copy to itself by the
+     * replication workers, reading them from the other bookies. The client reading them is created when the
+     * bookie starts. A bookie which does not copy them rejects the copies, and the replication workers
+     * re-replicate the entries themselves.
+     *
+     * @return true if the bookie copies the ledger fragments it is asked to. Default is false.
+     */
+    public boolean isLedgerFragmentCopyEnabled() {
+        return getBoolean(LEDGER_FRAGMENT_COPY_ENABLED, false);
+    }
+
+    /**
+     * Set whether the bookie copies the entries of the ledger fragments it is asked to copy to itself.
+     *
+     * @param enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setLedgerFragmentCopyEnabled(boolean enabled) {
+        setProperty(LEDGER_FRAGMENT_COPY_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the number of entries a bookie reads at the same time from the other bookies, when it is asked to copy
+     * the entries of a ledger fragment to itself.
+     *
+     * @return the number of entries read at the same time for a fragment copy. Default is 16.
+     */
+    public int getLedgerFragmentCopyMaxInflightEntries() {
+        return getInt(LEDGER_FRAGMENT_COPY_MAX_INFLIGHT_ENTRIES, 16);
+    }
+
+    /**
+     * Set the number of entries a bookie reads at the same time from the other bookies, when it is asked to copy
+     * the entries of a ledger fragment to itself.
+     *
+     * @param maxInflightEntries
+     * @return server configuration
+     */
+    public ServerConfiguration setLedgerFragmentCopyMaxInflightEntries(int maxInflightEntries) {
+        setProperty(LEDGER_FRAGMENT_COPY_MAX_INFLIGHT_ENTRIES, maxInflightEntries);
+        return this;
+    }
+
     /**
      * Sets that whether force start a bookie in readonly mode.
      *
@@ -40,6 +40,9 @@ public abstract class AbstractHierarchicalLedgerManager extends AbstractZkLedger
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractHierarchicalLedgerManager.class);
 
+    // the ledger ids are read from this cache instead of walking the ledgers tree, if set
+    LedgerIdCache ledgerIdCache = null;
+
     /**
      * Constructor.
      *
@@ -52,6 +55,10 @@ public abstract class AbstractHierarchicalLedgerManager extends AbstractZkLedger
         super(conf, zk);
     }
 
+    void setLedgerIdCache(LedgerIdCache ledgerIdCache) {
+        this.ledgerIdCache = ledgerIdCache;
+    }
+
     /**
      * Process hash nodes in a given path.
      */
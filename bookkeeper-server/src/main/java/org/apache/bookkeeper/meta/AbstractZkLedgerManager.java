@@ -20,8 +20,12 @@ package org.apache.bookkeeper.meta;
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.Set;
@@ -39,6 +43,7 @@ import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.conf.AbstractConfiguration;
 import org.apache.bookkeeper.meta.zk.ZKMetadataDriverBase;
+import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
@@ -57,6 +62,8 @@ import org.apache.zookeeper.AsyncCallback.VoidCallback;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
@@ -75,10 +82,19 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
     @VisibleForTesting
     static final int ZK_CONNECT_BACKOFF_MS = 200;
 
+    /*
+     * the max size of the metadata written by a single multi: half of
+     * jute.maxbuffer, leaving room for the paths and the headers of the ops.
+     */
+    @VisibleForTesting
+    static final int MAX_MULTI_WRITE_BYTES = Integer.getInteger("jute.maxbuffer", 0xfffff) / 2;
+
     private final LedgerMetadataSerDe serDe;
     protected final AbstractConfiguration conf;
     protected final ZooKeeper zk;
     protected final String ledgerRootPath;
+    private final int batchSize;
+    private final int batchMaxInflight;
 
     // ledger metadata listeners
     protected final ConcurrentMap<Long, Set<LedgerMetadataListener>> listeners =
@@ -187,6 +203,8 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         this.conf = conf;
         this.zk = zk;
         this.ledgerRootPath = ZKMetadataDriverBase.resolveZkLedgersRootPath(conf);
+        this.batchSize = conf.getLedgerMetadataBatchSize();
+        this.batchMaxInflight = conf.getLedgerMetadataBatchMaxInflight();
         this.scheduler = Executors
                 .newSingleThreadScheduledExecutor(new DefaultThreadFactory("ZkLedgerManagerScheduler"));
         if (LOG.isDebugEnabled()) {
@@ -367,31 +385,11 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         VoidCallback callbackForDelete = new VoidCallback() {
             @Override
             public void processResult(int rc, String path, Object ctx) {
-                if (rc == KeeperException.Code.NONODE.intValue()) {
-                    LOG.warn("Ledger node does not exist in ZooKeeper: ledgerId={}.  Returning success.", ledgerId);
-                    FutureUtils.complete(promise, null);
-                } else if (rc == KeeperException.Code.OK.intValue()) {
-                    // removed listener on ledgerId
-                    Set<LedgerMetadataListener> listenerSet = listeners.remove(ledgerId);
-                    if (null != listenerSet) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug(
-                                    "Remove registered ledger metadata listeners on ledger {} after ledger is deleted.",
-                                    ledgerId);
-                        }
-                    } else if (LOG.isDebugEnabled()) {
-                        LOG.debug("No ledger metadata listeners to remove from ledger {} when it's being deleted.",
-                                ledgerId);
-                    }
-                    FutureUtils.complete(promise, null);
-                } else {
-                    promise.completeExceptionally(
-                            new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
-                }
+                completeRemoveLedgerMetadata(ledgerId, rc, path, promise);
             }
         };
         String ledgerZnodePath = getLedgerPath(ledgerId);
-        if (this instanceof HierarchicalLedgerManager || this instanceof LongHierarchicalLedgerManager) {
+        if (isHierarchical()) {
             /*
              * do recursive deletes only for HierarchicalLedgerManager and
              * LongHierarchicalLedgerManager
@@ -404,6 +402,34 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         return promise;
     }
 
+    private boolean isHierarchical() {
+        return this instanceof HierarchicalLedgerManager || this instanceof LongHierarchicalLedgerManager;
+    }
+
+    private void completeRemoveLedgerMetadata(long ledgerId, int rc, String path, CompletableFuture<Void> promise) {
+        if (rc == KeeperException.Code.NONODE.intValue()) {
+            LOG.warn("Ledger node does not exist in ZooKeeper: ledgerId={}.  Returning success.", ledgerId);
+            FutureUtils.complete(promise, null);
+        } else if (rc == KeeperException.Code.OK.intValue()) {
+            // removed listener on ledgerId
+            Set<LedgerMetadataListener> listenerSet = listeners.remove(ledgerId);
+            if (null != listenerSet) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(
+                            "Remove registered ledger metadata listeners on ledger {} after ledger is deleted.",
+                            ledgerId);
+                }
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("No ledger metadata listeners to remove from ledger {} when it's being deleted.",
+                        ledgerId);
+            }
+            FutureUtils.complete(promise, null);
+        } else {
+            promise.completeExceptionally(
+                    new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
+        }
+    }
+
     @Override
     public void registerLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener) {
         if (null != listener) {
@@ -427,6 +453,40 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         }
     }
 
+    /**
+     * Register the listener, then read the metadata with the watcher of the ledger manager, so that the read both
+     * returns the metadata and sets the watch notifying the listener of the changes that follow.
+     */
+    @Override
+    public CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadataAndRegisterListener(
+            long ledgerId, LedgerMetadataListener listener) {
+        Set<LedgerMetadataListener> listenerSet = listeners.get(ledgerId);
+        if (listenerSet == null) {
+            Set<LedgerMetadataListener> newListenerSet = new HashSet<LedgerMetadataListener>();
+            Set<LedgerMetadataListener> oldListenerSet = listeners.putIfAbsent(ledgerId, newListenerSet);
+            listenerSet = oldListenerSet != null ? oldListenerSet : newListenerSet;
+        }
+        synchronized (listenerSet) {
+            listenerSet.add(listener);
+        }
+        return readLedgerMetadata(ledgerId, this).whenComplete((metadata, exception) -> {
+            if (exception != null) {
+                // no watch is set when the read fails, so there is no watch to cancel
+                Set<LedgerMetadataListener> currentListenerSet = listeners.get(ledgerId);
+                if (currentListenerSet != null) {
+                    synchronized (currentListenerSet) {
+                        currentListenerSet.remove(listener);
+                        if (currentListenerSet.isEmpty()) {
+                            listeners.remove(ledgerId, currentListenerSet);
+                        }
+                    }
+                }
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Registered ledger metadata listener {} on ledger {}.", listener, ledgerId);
+            }
+        });
+    }
+
     @Override
     public void unregisterLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener) {
         Set<LedgerMetadataListener> listenerSet = listeners.get(ledgerId);
@@ -471,44 +531,78 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
         zk.getData(getLedgerPath(ledgerId), watcher, new DataCallback() {
             @Override
             public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
-                if (rc == KeeperException.Code.NONODE.intValue()) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("No such ledger: " + ledgerId,
-                                  KeeperException.create(KeeperException.Code.get(rc), path));
-                    }
-                    promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
-                    return;
-                }
-                if (rc != KeeperException.Code.OK.intValue()) {
-                    LOG.error("Could not read metadata for ledger: " + ledgerId,
-                              KeeperException.create(KeeperException.Code.get(rc), path));
-                    promise.completeExceptionally(
-                            new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
-                    return;
-                }
-                if (stat == null) {
-                    LOG.error("Could not parse ledger metadata for ledger: {}. Stat object is null", ledgerId);
-                    promise.completeExceptionally(new BKException.ZKException(
-                            new Exception("Could not parse ledger metadata for ledger: "
-                                    + ledgerId + " . Stat object is null").fillInStackTrace()));
-                    return;
-                }
+                completeReadLedgerMetadata(ledgerId, rc, path, data, stat, promise);
+            }
+        }, null);
+        return promise;
+    }
 
-                try {
-                    LongVersion version = new LongVersion(stat.getVersion());
-                    LedgerMetadata metadata = serDe.parseConfig(data, ledgerId, Optional.of(stat.getCtime()));
-                    promise.complete(new Versioned<>(metadata, version));
-                } catch (Throwable t) {
-                    LOG.error("Could not parse ledger metadata for ledger: {}", ledgerId, t);
-                    promise.completeExceptionally(new BKException.ZKException(
-                            new Exception("Could not parse ledger metadata for ledger: "
-                                    + ledgerId, t).fillInStackTrace()));
-                }
+    /**
+     * Parse only the bookies from the metadata read from zookeeper.
+     */
+    @Override
+    public CompletableFuture<Set<BookieId>> readLedgerBookies(long ledgerId) {
+        CompletableFuture<Set<BookieId>> promise = new CompletableFuture<>();
+        zk.getData(getLedgerPath(ledgerId), null, new DataCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+                completeReadLedgerMetadata(ledgerId, rc, path, data, stat, promise,
+                        (bytes, dataStat) -> serDe.parseBookies(bytes, ledgerId));
             }
         }, null);
         return promise;
     }
 
+    /**
+     * Parses the metadata of a ledger read from zookeeper.
+     */
+    private interface MetadataParser<T> {
+        T parse(byte[] data, Stat stat) throws IOException;
+    }
+
+    private void completeReadLedgerMetadata(long ledgerId, int rc, String path, byte[] data, Stat stat,
+                                            CompletableFuture<Versioned<LedgerMetadata>> promise) {
+        completeReadLedgerMetadata(ledgerId, rc, path, data, stat, promise,
+                (bytes, dataStat) -> new Versioned<>(
+                        serDe.parseConfig(bytes, ledgerId, Optional.of(dataStat.getCtime())),
+                        new LongVersion(dataStat.getVersion())));
+    }
+
+    private <T> void completeReadLedgerMetadata(long ledgerId, int rc, String path, byte[] data, Stat stat,
+                                                CompletableFuture<T> promise, MetadataParser<T> parser) {
+        if (rc == KeeperException.Code.NONODE.intValue()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No such ledger: " + ledgerId,
+                          KeeperException.create(KeeperException.Code.get(rc), path));
+            }
+            promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+            return;
+        }
+        if (rc != KeeperException.Code.OK.intValue()) {
+            LOG.error("Could not read metadata for ledger: " + ledgerId,
+                      KeeperException.create(KeeperException.Code.get(rc), path));
+            promise.completeExceptionally(
+                    new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
+            return;
+        }
+        if (stat == null) {
+            LOG.error("Could not parse ledger metadata for ledger: {}. Stat object is null", ledgerId);
+            promise.completeExceptionally(new BKException.ZKException(
+                    new Exception("Could not parse ledger metadata for ledger: "
+                            + ledgerId + " . Stat object is null").fillInStackTrace()));
+            return;
+        }
+
+        try {
+            promise.complete(parser.parse(data, stat));
+        } catch (Throwable t) {
+            LOG.error("Could not parse ledger metadata for ledger: {}", ledgerId, t);
+            promise.completeExceptionally(new BKException.ZKException(
+                    new Exception("Could not parse ledger metadata for ledger: "
+                            + ledgerId, t).fillInStackTrace()));
+        }
+    }
+
     @Override
     public CompletableFuture<Versioned<LedgerMetadata>> writeLedgerMetadata(long ledgerId, LedgerMetadata metadata,
                                                                             Version currentVersion) {
@@ -531,22 +625,216 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
                    new StatCallback() {
             @Override
             public void processResult(int rc, String path, Object ctx, Stat stat) {
-                if (KeeperException.Code.BADVERSION.intValue() == rc) {
-                    promise.completeExceptionally(new BKException.BKMetadataVersionException());
-                } else if (KeeperException.Code.OK.intValue() == rc) {
-                    // update metadata version
-                    promise.complete(new Versioned<>(metadata, new LongVersion(stat.getVersion())));
-                } else if (KeeperException.Code.NONODE.intValue() == rc) {
-                    LOG.warn("Ledger node does not exist in ZooKeeper: ledgerId={}", ledgerId);
-                    promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+                completeWriteLedgerMetadata(ledgerId, metadata, rc, path, stat, promise);
+            }
+        }, null);
+        return promise;
+    }
+
+    private void completeWriteLedgerMetadata(long ledgerId, LedgerMetadata metadata, int rc, String path, Stat stat,
+                                             CompletableFuture<Versioned<LedgerMetadata>> promise) {
+        if (KeeperException.Code.BADVERSION.intValue() == rc) {
+            promise.completeExceptionally(new BKException.BKMetadataVersionException());
+        } else if (KeeperException.Code.OK.intValue() == rc) {
+            // update metadata version
+            promise.complete(new Versioned<>(metadata, new LongVersion(stat.getVersion())));
+        } else if (KeeperException.Code.NONODE.intValue() == rc) {
+            LOG.warn("Ledger node does not exist in ZooKeeper: ledgerId={}", ledgerId);
+            promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+        } else {
+            LOG.warn("Conditional update ledger metadata failed: {}", KeeperException.Code.get(rc));
+            promise.completeExceptionally(
+                    new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
+        }
+    }
+
+    /**
+     * Read the ledgers in batches, each one with a single multi read. The reads of a multi read succeed or fail
+     * independently. The size of the metadata is not known before it is read, so a batch whose response exceeds
+     * jute.maxbuffer, which drops the connection, is read again one ledger at a time.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readLedgersMetadata(Collection<Long> ledgerIds) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises = new HashMap<>();
+        for (Long ledgerId : ledgerIds) {
+            promises.put(ledgerId, new CompletableFuture<>());
+        }
+        LedgerMetadataBatches.run(new ArrayList<>(promises.keySet()), batchSize, batchMaxInflight, batch -> {
+            List<Op> ops = new ArrayList<>(batch.size());
+            for (Long ledgerId : batch) {
+                ops.add(Op.getData(getLedgerPath(ledgerId)));
+            }
+            zk.multi(ops, (rc, path, ctx, results) -> {
+                if (rc == Code.CONNECTIONLOSS.intValue() && batch.size() > 1) {
+                    LOG.warn("Lost the connection on a multi read of {} ledgers, reading them one by one",
+                            batch.size());
+                    for (Long ledgerId : batch) {
+                        FutureUtils.proxyTo(readLedgerMetadata(ledgerId), promises.get(ledgerId));
+                    }
+                    return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    long ledgerId = batch.get(i);
+                    OpResult result = results == null ? null : results.get(i);
+                    if (result instanceof OpResult.GetDataResult) {
+                        OpResult.GetDataResult dataResult = (OpResult.GetDataResult) result;
+                        completeReadLedgerMetadata(ledgerId, Code.OK.intValue(), ops.get(i).getPath(),
+                                dataResult.getData(), dataResult.getStat(), promises.get(ledgerId));
+                    } else {
+                        int opRc = result instanceof OpResult.ErrorResult
+                                ? ((OpResult.ErrorResult) result).getErr() : rc;
+                        completeReadLedgerMetadata(ledgerId, opRc, ops.get(i).getPath(), null, null,
+                                promises.get(ledgerId));
+                    }
+                }
+            }, null);
+            return allOf(batch, promises);
+        });
+        return promises;
+    }
+
+    /**
+     * Write the ledgers in batches. The ledgers of a batch are written with as few multis as possible, each one
+     * writing at most {@link #MAX_MULTI_WRITE_BYTES} of metadata so that its request stays within jute.maxbuffer.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgersMetadata(
+            Map<Long, Versioned<LedgerMetadata>> ledgers) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises = new HashMap<>();
+        for (Long ledgerId : ledgers.keySet()) {
+            promises.put(ledgerId, new CompletableFuture<>());
+        }
+        LedgerMetadataBatches.run(new ArrayList<>(promises.keySet()), batchSize, batchMaxInflight, batch -> {
+            List<Long> ledgersInMulti = new ArrayList<>(batch.size());
+            List<Op> ops = new ArrayList<>(batch.size());
+            int bytesInMulti = 0;
+            for (Long ledgerId : batch) {
+                Versioned<LedgerMetadata> versioned = ledgers.get(ledgerId);
+                if (!(versioned.getVersion() instanceof LongVersion)) {
+                    promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataVersionException());
+                    continue;
+                }
+                byte[] data;
+                try {
+                    data = serDe.serialize(versioned.getValue());
+                } catch (IOException ioe) {
+                    promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
+                    continue;
+                }
+                if (!ops.isEmpty() && bytesInMulti + data.length > MAX_MULTI_WRITE_BYTES) {
+                    writeInMulti(ledgersInMulti, ops, ledgers, promises);
+                    ledgersInMulti = new ArrayList<>(batch.size());
+                    ops = new ArrayList<>(batch.size());
+                    bytesInMulti = 0;
+                }
+                ops.add(Op.setData(getLedgerPath(ledgerId), data,
+                        (int) ((LongVersion) versioned.getVersion()).getLongVersion()));
+                ledgersInMulti.add(ledgerId);
+                bytesInMulti += data.length;
+            }
+            if (!ops.isEmpty()) {
+                writeInMulti(ledgersInMulti, ops, ledgers, promises);
+            }
+            return allOf(batch, promises);
+        });
+        return promises;
+    }
+
+    private void writeInMulti(List<Long> ledgersInMulti, List<Op> ops, Map<Long, Versioned<LedgerMetadata>> ledgers,
+                              Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises) {
+        zk.multi(ops, (rc, path, ctx, results) -> {
+            for (int i = 0; i < ledgersInMulti.size(); i++) {
+                long ledgerId = ledgersInMulti.get(i);
+                Versioned<LedgerMetadata> versioned = ledgers.get(ledgerId);
+                if (rc == Code.OK.intValue()) {
+                    completeWriteLedgerMetadata(ledgerId, versioned.getValue(), rc, ops.get(i).getPath(),
+                            ((OpResult.SetDataResult) results.get(i)).getStat(), promises.get(ledgerId));
+                } else if (results != null) {
+                    // one of the writes failed, so none was applied: write the ledgers one by one
+                    FutureUtils.proxyTo(writeLedgerMetadata(ledgerId, versioned.getValue(), versioned.getVersion()),
+                            promises.get(ledgerId));
                 } else {
-                    LOG.warn("Conditional update ledger metadata failed: {}", KeeperException.Code.get(rc));
-                    promise.completeExceptionally(
-                            new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
+                    completeWriteLedgerMetadata(ledgerId, versioned.getValue(), rc, ops.get(i).getPath(), null,
+                            promises.get(ledgerId));
                 }
             }
         }, null);
-        return promise;
+    }
+
+    /**
+     * Remove the ledgers in batches, each one with a single multi.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Void>> removeLedgersMetadata(Map<Long, Version> ledgers) {
+        Map<Long, CompletableFuture<Void>> promises = new HashMap<>();
+        for (Long ledgerId : ledgers.keySet()) {
+            promises.put(ledgerId, new CompletableFuture<>());
+        }
+        LedgerMetadataBatches.run(new ArrayList<>(promises.keySet()), batchSize, batchMaxInflight, batch -> {
+            List<Long> ledgersInMulti = new ArrayList<>(batch.size());
+            List<Op> ops = new ArrayList<>(batch.size());
+            for (Long ledgerId : batch) {
+                Version version = ledgers.get(ledgerId);
+                int znodeVersion = -1;
+                if (Version.NEW == version) {
+                    LOG.error("Request to delete ledger {} metadata with version set to the initial one", ledgerId);
+                    promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataVersionException());
+                    continue;
+                } else if (Version.ANY != version) {
+                    if (!(version instanceof LongVersion)) {
+                        LOG.info("Not an instance of ZKVersion: {}", ledgerId);
+                        promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataVersionException());
+                        continue;
+                    }
+                    znodeVersion = (int) ((LongVersion) version).getLongVersion();
+                }
+                ops.add(Op.delete(getLedgerPath(ledgerId), znodeVersion));
+                ledgersInMulti.add(ledgerId);
+            }
+            if (ops.isEmpty()) {
+                return FutureUtils.Void();
+            }
+            zk.multi(ops, (rc, path, ctx, results) -> {
+                for (int i = 0; i < ledgersInMulti.size(); i++) {
+                    long ledgerId = ledgersInMulti.get(i);
+                    if (rc == Code.OK.intValue() || results == null) {
+                        completeRemoveLedgerMetadata(ledgerId, rc, ops.get(i).getPath(), promises.get(ledgerId));
+                    } else {
+                        /*
+                         * one of the removals failed, e.g. because its ledger
+                         * was already removed, so none was applied: remove the
+                         * ledgers one by one.
+                         */
+                        FutureUtils.proxyTo(removeLedgerMetadata(ledgerId, ledgers.get(ledgerId)),
+                                promises.get(ledgerId));
+                    }
+                }
+                if (rc == Code.OK.intValue() && isHierarchical()) {
+                    removeEmptyParentNodes(ops);
+                }
+            }, null);
+            return allOf(batch, promises);
+        });
+        return promises;
+    }
+
+    private void removeEmptyParentNodes(List<Op> ops) {
+        Set<String> parents = new HashSet<>();
+        for (Op op : ops) {
+            parents.add(op.getPath().substring(0, op.getPath().lastIndexOf('/')));
+        }
+        for (String parent : parents) {
+            // the parents which still have children are not removed
+            ZkUtils.asyncDeleteFullPathOptimistic(zk, parent, -1, (rc, path, ctx) -> {}, parent);
+        }
+    }
+
+    private static <T> CompletableFuture<Void> allOf(List<Long> batch, Map<Long, CompletableFuture<T>> promises) {
+        CompletableFuture<?>[] promisesOfBatch = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            promisesOfBatch[i] = promises.get(batch.get(i));
+        }
+        return CompletableFuture.allOf(promisesOfBatch);
     }
 
     /**
@@ -19,7 +19,10 @@ package org.apache.bookkeeper.meta;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -28,7 +31,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataChangeListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
 import org.apache.bookkeeper.versioning.Version;
@@ -105,6 +110,57 @@ public class CleanupLedgerManager implements LedgerManager {
         underlying.unregisterLedgerMetadataListener(ledgerId, listener);
     }
 
+    @Override
+    public CompletableFuture<Set<BookieId>> readLedgerBookies(long ledgerId) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromise();
+            }
+            CompletableFuture<Set<BookieId>> promise = underlying.readLedgerBookies(ledgerId);
+            recordPromise(promise);
+            return promise;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadataAndRegisterListener(
+            long ledgerId, LedgerMetadataListener listener) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromise();
+            }
+            CompletableFuture<Versioned<LedgerMetadata>> promise =
+                    underlying.readLedgerMetadataAndRegisterListener(ledgerId, listener);
+            recordPromise(promise);
+            return promise;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> registerLedgerMetadataChangeListener(long fromRevision,
+                                                                        LedgerMetadataChangeListener listener) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromise();
+            }
+            return underlying.registerLedgerMetadataChangeListener(fromRevision, listener);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void unregisterLedgerMetadataChangeListener(LedgerMetadataChangeListener listener) {
+        underlying.unregisterLedgerMetadataChangeListener(listener);
+    }
+
     private boolean removeCallback(GenericCallback callback) {
         return callbacks.remove(callback);
     }
@@ -184,6 +240,54 @@ public class CleanupLedgerManager implements LedgerManager {
         }
     }
 
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readLedgersMetadata(Collection<Long> ledgerIds) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromises(ledgerIds);
+            }
+            Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises =
+                underlying.readLedgersMetadata(ledgerIds);
+            promises.values().forEach(this::recordPromise);
+            return promises;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgersMetadata(
+            Map<Long, Versioned<LedgerMetadata>> ledgers) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromises(ledgers.keySet());
+            }
+            Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises =
+                underlying.writeLedgersMetadata(ledgers);
+            promises.values().forEach(this::recordPromise);
+            return promises;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Long, CompletableFuture<Void>> removeLedgersMetadata(Map<Long, Version> ledgers) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromises(ledgers.keySet());
+            }
+            Map<Long, CompletableFuture<Void>> promises = underlying.removeLedgersMetadata(ledgers);
+            promises.values().forEach(this::recordPromise);
+            return promises;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void asyncProcessLedgers(Processor<Long> processor,
                                     final AsyncCallback.VoidCallback finalCb, final Object context,
@@ -255,4 +359,12 @@ public class CleanupLedgerManager implements LedgerManager {
     private static <T> CompletableFuture<T> closedPromise() {
         return FutureUtils.exception(new BKException.BKClientClosedException());
     }
+
+    private static <T> Map<Long, CompletableFuture<T>> closedPromises(Collection<Long> ledgerIds) {
+        Map<Long, CompletableFuture<T>> promises = new HashMap<>();
+        for (Long ledgerId : ledgerIds) {
+            promises.put(ledgerId, closedPromise());
+        }
+        return promises;
+    }
 }
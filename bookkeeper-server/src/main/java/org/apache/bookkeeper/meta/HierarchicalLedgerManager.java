@@ -54,6 +54,10 @@ class HierarchicalLedgerManager extends AbstractHierarchicalLedgerManager {
     @Override
     public void asyncProcessLedgers(Processor<Long> processor, VoidCallback finalCb, Object context, int successRc,
             int failureRc) {
+        if (ledgerIdCache != null) {
+            ledgerIdCache.asyncProcessLedgers(processor, finalCb, context, successRc, failureRc, scheduler);
+            return;
+        }
         // Process the old 31-bit id ledgers first.
         legacyLM.asyncProcessLedgers(processor, new VoidCallback(){
 
@@ -87,6 +91,9 @@ class HierarchicalLedgerManager extends AbstractHierarchicalLedgerManager {
 
     @Override
     public LedgerRangeIterator getLedgerRanges(long zkOpTimeoutMs) {
+        if (ledgerIdCache != null) {
+            return ledgerIdCache.getLedgerRanges();
+        }
         LedgerRangeIterator legacyLedgerRangeIterator = legacyLM.getLedgerRanges(zkOpTimeoutMs);
         LedgerRangeIterator longLedgerRangeIterator = longLM.getLedgerRanges(zkOpTimeoutMs);
         return new HierarchicalLedgerRangeIterator(legacyLedgerRangeIterator, longLedgerRangeIterator);
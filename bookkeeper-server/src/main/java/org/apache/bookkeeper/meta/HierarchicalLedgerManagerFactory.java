@@ -17,6 +17,7 @@
  */
 package org.apache.bookkeeper.meta;
 
+import java.io.IOException;
 import java.util.List;
 import org.apache.bookkeeper.meta.zk.ZKMetadataDriverBase;
 import org.apache.bookkeeper.util.ZkUtils;
@@ -29,6 +30,9 @@ public class HierarchicalLedgerManagerFactory extends LegacyHierarchicalLedgerMa
 
     public static final String NAME = "hierarchical";
 
+    // shared by the ledger managers of this factory, so that the ledgers tree is watched once
+    private LedgerIdCache ledgerIdCache = null;
+
     @Override
     public LedgerIdGenerator newLedgerIdGenerator() {
         List<ACL> zkAcls = ZkUtils.getACLs(conf);
@@ -41,6 +45,32 @@ public class HierarchicalLedgerManagerFactory extends LegacyHierarchicalLedgerMa
 
     @Override
     public LedgerManager newLedgerManager() {
+        AbstractHierarchicalLedgerManager ledgerManager = createLedgerManager();
+        if (conf.isLedgerIdCacheEnabled()) {
+            ledgerManager.setLedgerIdCache(getLedgerIdCache());
+        }
+        return ledgerManager;
+    }
+
+    AbstractHierarchicalLedgerManager createLedgerManager() {
         return new HierarchicalLedgerManager(conf, zk);
     }
+
+    private synchronized LedgerIdCache getLedgerIdCache() {
+        if (ledgerIdCache == null) {
+            ledgerIdCache = new LedgerIdCache(createLedgerManager(), zk, conf.getZkTimeout());
+        }
+        return ledgerIdCache;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (ledgerIdCache != null) {
+                ledgerIdCache.close();
+                ledgerIdCache = null;
+            }
+        }
+        super.close();
+    }
 }
@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
+import org.apache.bookkeeper.util.StringUtils;
+import org.apache.bookkeeper.util.collections.LedgerIdBitmap;
+import org.apache.zookeeper.AddWatchMode;
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local cache of the ids of all the ledgers of a hierarchical ledger manager.
+ *
+ * <p>The cache lists the children of every intermediate znode of the ledgers tree once, and it puts a persistent
+ * watch on each of them. Such a watch only fires when the children of the znode change, so the cache learns about
+ * the ledgers created and deleted, but not about the updates of their metadata. It then lists again only the
+ * znodes whose children changed. So iterating over the ledgers is a local scan, instead of listing the children of
+ * every znode of the tree each time.
+ *
+ * <p>Before handing out the ids, the cache syncs the ledgers root path. ZooKeeper delivers the watch events and the
+ * result of the sync in order, so the ids include every ledger created before the iteration started, which the
+ * garbage collector relies on. A disconnection from ZooKeeper may lose events, and an expired session loses the
+ * watches, so after one the cache lists all the znodes again on the next iteration.
+ */
+class LedgerIdCache implements Watcher, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LedgerIdCache.class);
+
+    // the number of ledgers of a range returned by the iterators
+    static final int RANGE_SIZE = 10000;
+
+    /**
+     * An intermediate znode of the ledgers tree.
+     */
+    private static class Node {
+        // the intermediate znodes under this one
+        final Set<String> children = new HashSet<>();
+        // the ledgers stored right under this znode
+        LedgerIdBitmap ledgers = new LedgerIdBitmap();
+    }
+
+    // the ledger manager used to parse the ledger paths
+    private final AbstractHierarchicalLedgerManager ledgerManager;
+    private final ZooKeeper zk;
+    private final String ledgerRootPath;
+    private final long zkOpTimeoutMs;
+    private final ExecutorService executor;
+
+    // the fields below are guarded by this
+    private final LedgerIdBitmap ledgers = new LedgerIdBitmap();
+    private final Map<String, Node> nodes = new HashMap<>();
+    // the znodes to list, because their children changed or the cache missed events
+    private final Set<String> changedNodes = new LinkedHashSet<>();
+    private boolean closed = false;
+
+    LedgerIdCache(AbstractHierarchicalLedgerManager ledgerManager, ZooKeeper zk, long zkOpTimeoutMs) {
+        this.ledgerManager = ledgerManager;
+        this.zk = zk;
+        this.ledgerRootPath = ledgerManager.ledgerRootPath;
+        this.zkOpTimeoutMs = zkOpTimeoutMs;
+        this.executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("LedgerIdCache"));
+        this.changedNodes.add(ledgerRootPath);
+    }
+
+    /**
+     * Get the ids of all the ledgers, in ascending order. The ids include every ledger created before the call.
+     */
+    CompletableFuture<long[]> getLedgerIds() {
+        CompletableFuture<long[]> promise = new CompletableFuture<>();
+        executor.submit(() -> {
+            try {
+                promise.complete(refresh());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                promise.completeExceptionally(new IOException("Interrupted while refreshing the ledger id cache", ie));
+            } catch (Throwable t) {
+                promise.completeExceptionally(t);
+            }
+        });
+        return promise;
+    }
+
+    LedgerRangeIterator getLedgerRanges() {
+        return new LedgerRangeIterator() {
+            private long[] ids = null;
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() throws IOException {
+                if (ids == null) {
+                    ids = result(getLedgerIds());
+                }
+                return next < ids.length;
+            }
+
+            @Override
+            public LedgerRange next() throws IOException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int end = Math.min(ids.length, next + RANGE_SIZE);
+                Set<Long> range = new HashSet<>(end - next);
+                for (int i = next; i < end; i++) {
+                    range.add(ids[i]);
+                }
+                next = end;
+                return new LedgerRange(range);
+            }
+        };
+    }
+
+    void asyncProcessLedgers(final Processor<Long> processor, final AsyncCallback.VoidCallback finalCb,
+                             final Object context, final int successRc, final int failureRc,
+                             final ScheduledExecutorService scheduler) {
+        getLedgerIds().whenComplete((ids, cause) -> {
+            if (cause != null) {
+                LOG.error("Failed to get the ledger ids from the ledger id cache", cause);
+                finalCb.processResult(failureRc, null, context);
+                return;
+            }
+            processLedgers(ids, 0, processor, finalCb, context, successRc, failureRc, scheduler);
+        });
+    }
+
+    /**
+     * Process the ledgers range by range, the ledgers of a range are processed concurrently.
+     */
+    private void processLedgers(final long[] ids, final int start, final Processor<Long> processor,
+                                final AsyncCallback.VoidCallback finalCb, final Object context,
+                                final int successRc, final int failureRc,
+                                final ScheduledExecutorService scheduler) {
+        if (start >= ids.length) {
+            finalCb.processResult(successRc, null, context);
+            return;
+        }
+        final int end = Math.min(ids.length, start + RANGE_SIZE);
+        MultiCallback mcb = new MultiCallback(end - start, (rc, path, ctx) -> {
+            if (rc != successRc) {
+                finalCb.processResult(failureRc, null, context);
+                return;
+            }
+            processLedgers(ids, end, processor, finalCb, context, successRc, failureRc, scheduler);
+        }, null, successRc, failureRc);
+        scheduler.submit(() -> {
+            for (int i = start; i < end; i++) {
+                processor.process(ids[i], mcb);
+            }
+        });
+    }
+
+    private long[] refresh() throws IOException, InterruptedException, KeeperException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Ledger id cache is closed");
+            }
+        }
+        // the events of the changes made before the sync are delivered before it completes
+        syncLedgerRootPath();
+        List<String> toList;
+        synchronized (this) {
+            toList = new ArrayList<>(changedNodes);
+            changedNodes.clear();
+        }
+        // the znodes changed after the sync are left to the next refresh, so a busy tree does not keep it going
+        for (int i = 0; i < toList.size(); i++) {
+            String path = toList.get(i);
+            try {
+                listNode(path, toList);
+            } catch (KeeperException | InterruptedException | RuntimeException e) {
+                synchronized (this) {
+                    changedNodes.addAll(toList.subList(i, toList.size()));
+                }
+                throw e;
+            }
+        }
+        synchronized (this) {
+            long[] ids = new long[(int) ledgers.cardinality()];
+            int[] i = new int[1];
+            ledgers.forEach(ledgerId -> ids[i[0]++] = ledgerId);
+            return ids;
+        }
+    }
+
+    /**
+     * List the children of an intermediate znode and update the ledgers stored under it. The intermediate znodes
+     * found under it for the first time are added to the znodes to list.
+     */
+    private void listNode(String path, List<String> toList) throws KeeperException, InterruptedException {
+        List<String> children;
+        try {
+            // watch before listing, so that no change made after the listing is missed
+            zk.addWatch(path, this, AddWatchMode.PERSISTENT);
+            children = zk.getChildren(path, false);
+        } catch (KeeperException.NoNodeException nne) {
+            removeNode(path);
+            return;
+        }
+        boolean isRoot = ledgerRootPath.equals(path);
+        Set<String> childNodes = new HashSet<>();
+        LedgerIdBitmap childLedgers = new LedgerIdBitmap();
+        for (String child : children) {
+            if (AbstractZkLedgerManager.isSpecialZnode(child)) {
+                continue;
+            }
+            if (isRoot) {
+                if (ledgerManager.isLedgerParentNode(child)) {
+                    childNodes.add(child);
+                }
+            } else if (child.startsWith(StringUtils.LEDGER_NODE_PREFIX)) {
+                try {
+                    childLedgers.add(ledgerManager.getLedgerId(path + "/" + child));
+                } catch (IOException ioe) {
+                    LOG.warn("Error extracting the ledger id from the znode {}/{}", path, child);
+                }
+            } else if (isNumber(child)) {
+                childNodes.add(child);
+            }
+        }
+
+        List<String> removedChildren = new ArrayList<>();
+        synchronized (this) {
+            Node node = nodes.computeIfAbsent(path, p -> new Node());
+            node.ledgers.forEach(ledgers::remove);
+            childLedgers.forEach(ledgers::add);
+            node.ledgers = childLedgers;
+            for (String child : node.children) {
+                if (!childNodes.contains(child)) {
+                    removedChildren.add(path + "/" + child);
+                }
+            }
+            for (String child : childNodes) {
+                String childPath = path + "/" + child;
+                if (!nodes.containsKey(childPath) && !toList.contains(childPath)) {
+                    toList.add(childPath);
+                }
+            }
+            node.children.clear();
+            node.children.addAll(childNodes);
+        }
+        for (String removed : removedChildren) {
+            removeNode(removed);
+        }
+    }
+
+    /**
+     * Forget a deleted intermediate znode, and the znodes and ledgers under it.
+     */
+    private void removeNode(String path) throws InterruptedException {
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            List<String> toRemove = new ArrayList<>();
+            toRemove.add(path);
+            while (!toRemove.isEmpty()) {
+                String nodePath = toRemove.remove(toRemove.size() - 1);
+                removed.add(nodePath);
+                Node node = nodes.remove(nodePath);
+                if (node == null) {
+                    continue;
+                }
+                node.ledgers.forEach(ledgers::remove);
+                for (String child : node.children) {
+                    toRemove.add(nodePath + "/" + child);
+                }
+            }
+        }
+        // a persistent watch outlives the znode, it would fire again if the znode were created again
+        for (String nodePath : removed) {
+            removeWatch(nodePath);
+        }
+    }
+
+    private void removeWatch(String path) throws InterruptedException {
+        try {
+            zk.removeWatches(path, this, WatcherType.Any, true);
+        } catch (KeeperException ke) {
+            // the watch was not added, or the session is gone
+            LOG.debug("Failed to remove the watch of the ledger id cache on {}", path, ke);
+        }
+    }
+
+    private static boolean isNumber(String node) {
+        if (node.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < node.length(); i++) {
+            char ch = node.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void syncLedgerRootPath() throws IOException, InterruptedException {
+        CompletableFuture<Void> synced = new CompletableFuture<>();
+        zk.sync(ledgerRootPath, (rc, path, ctx) -> {
+            if (rc == Code.OK.intValue()) {
+                synced.complete(null);
+            } else {
+                synced.completeExceptionally(KeeperException.create(Code.get(rc), path));
+            }
+        }, null);
+        try {
+            synced.get(zkOpTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ee) {
+            throw new IOException("Failed to sync " + ledgerRootPath, ee.getCause());
+        } catch (TimeoutException te) {
+            throw new IOException("Timed out syncing " + ledgerRootPath, te);
+        }
+    }
+
+    @Override
+    public synchronized void process(WatchedEvent event) {
+        if (event.getType() == Event.EventType.None) {
+            if (event.getState() != Event.KeeperState.SyncConnected) {
+                // the events are lost while disconnected, and the watches with the session
+                changedNodes.add(ledgerRootPath);
+                changedNodes.addAll(nodes.keySet());
+            }
+            return;
+        }
+        switch (event.getType()) {
+        case NodeChildrenChanged:
+        case NodeCreated:
+        case NodeDeleted:
+            if (event.getPath() != null) {
+                changedNodes.add(event.getPath());
+            }
+            break;
+        default:
+            // the intermediate znodes carry no data
+            break;
+        }
+    }
+
+    private static <T> T result(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the ledger id cache", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException("Failed to read the ledger id cache", ee.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        List<String> watched;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            watched = new ArrayList<>(nodes.keySet());
+        }
+        executor.shutdown();
+        try {
+            for (String path : watched) {
+                removeWatch(path);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        ledgerManager.close();
+    }
+}
@@ -19,11 +19,19 @@ package org.apache.bookkeeper.meta;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataChangeListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
 import org.apache.bookkeeper.versioning.Version;
@@ -87,6 +95,28 @@ public interface LedgerManager extends Closeable {
      */
     CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId);
 
+    /**
+     * Read the bookies storing the entries of a ledger, that is the bookies of all its ensembles.
+     *
+     * <p>The default implementation reads the whole metadata. The implementations able to parse only the bookies
+     * from the serialized metadata do so, which is cheaper for the callers that need nothing else, such as the
+     * auditor building its index of the ledgers of each bookie, or the garbage collector of a bookie.
+     *
+     * @param ledgerId
+     *          Ledger Id
+     * @return Future which, when completed, contains the bookies of the ledger. Completed with an exception as
+     *         {@link #readLedgerMetadata(long)} would.
+     */
+    default CompletableFuture<Set<BookieId>> readLedgerBookies(long ledgerId) {
+        return readLedgerMetadata(ledgerId).thenApply(metadata -> {
+            Set<BookieId> bookies = new HashSet<>();
+            for (List<BookieId> ensemble : metadata.getValue().getAllEnsembles().values()) {
+                bookies.addAll(ensemble);
+            }
+            return bookies;
+        });
+    }
+
     /**
      * Write ledger metadata.
      *
@@ -106,6 +136,68 @@ public interface LedgerManager extends Closeable {
     CompletableFuture<Versioned<LedgerMetadata>> writeLedgerMetadata(long ledgerId, LedgerMetadata metadata,
                                                                      Version currentVersion);
 
+    /**
+     * Read the metadata of several ledgers.
+     *
+     * <p>The default implementation reads the ledgers one by one. The implementations backed by a metadata
+     * store able to serve several reads in a single request read them in batches.
+     *
+     * @param ledgerIds
+     *          Ledger Ids
+     * @return the futures of the reads, by ledger id. Each one completes as
+     *         {@link #readLedgerMetadata(long)} would for its ledger.
+     */
+    default Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readLedgersMetadata(Collection<Long> ledgerIds) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises = new HashMap<>();
+        for (Long ledgerId : ledgerIds) {
+            promises.put(ledgerId, readLedgerMetadata(ledgerId));
+        }
+        return promises;
+    }
+
+    /**
+     * Write the metadata of several ledgers.
+     *
+     * <p>The default implementation writes the ledgers one by one. The implementations backed by a metadata
+     * store with multi-key transactions write them in batches. A batch either writes all its ledgers or none of
+     * them, in which case its ledgers are written again one by one, so that the outcome of each write only
+     * depends on the version of its own ledger.
+     *
+     * @param ledgers
+     *          the metadata to write by ledger id, with the version of the metadata we expect to be overwriting.
+     * @return the futures of the writes, by ledger id. Each one completes as
+     *         {@link #writeLedgerMetadata(long, LedgerMetadata, Version)} would for its ledger.
+     */
+    default Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgersMetadata(
+            Map<Long, Versioned<LedgerMetadata>> ledgers) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises = new HashMap<>();
+        for (Map.Entry<Long, Versioned<LedgerMetadata>> e : ledgers.entrySet()) {
+            promises.put(e.getKey(),
+                    writeLedgerMetadata(e.getKey(), e.getValue().getValue(), e.getValue().getVersion()));
+        }
+        return promises;
+    }
+
+    /**
+     * Remove the metadata of several ledgers.
+     *
+     * <p>The default implementation removes the ledgers one by one. The implementations backed by a metadata
+     * store with multi-key transactions remove them in batches, in the same way as
+     * {@link #writeLedgersMetadata(Map)}.
+     *
+     * @param ledgers
+     *          the version of the metadata to remove, by ledger id.
+     * @return the futures of the removals, by ledger id. Each one completes as
+     *         {@link #removeLedgerMetadata(long, Version)} would for its ledger.
+     */
+    default Map<Long, CompletableFuture<Void>> removeLedgersMetadata(Map<Long, Version> ledgers) {
+        Map<Long, CompletableFuture<Void>> promises = new HashMap<>();
+        for (Map.Entry<Long, Version> e : ledgers.entrySet()) {
+            promises.put(e.getKey(), removeLedgerMetadata(e.getKey(), e.getValue()));
+        }
+        return promises;
+    }
+
     /**
      * Register the ledger metadata <i>listener</i> on <i>ledgerId</i>.
      *
@@ -126,6 +218,60 @@ public interface LedgerManager extends Closeable {
      */
     void unregisterLedgerMetadataListener(long ledgerId, LedgerMetadataListener listener);
 
+    /**
+     * Read the metadata of a ledger and register the ledger metadata <i>listener</i> on it, so that the listener
+     * is notified of the changes that follow the read. If the read fails, the listener is not registered.
+     *
+     * <p>The default implementation reads the metadata, then registers the listener. The implementations that
+     * watch the metadata with a read do both with a single read of the metadata store.
+     *
+     * @param ledgerId
+     *          ledger id.
+     * @param listener
+     *          listener.
+     * @return a future completed as {@link #readLedgerMetadata(long)} would.
+     */
+    default CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadataAndRegisterListener(
+            long ledgerId, LedgerMetadataListener listener) {
+        return readLedgerMetadata(ledgerId).whenComplete((metadata, exception) -> {
+            if (exception == null) {
+                registerLedgerMetadataListener(ledgerId, listener);
+            }
+        });
+    }
+
+    /**
+     * Register a <i>listener</i> on the changes of the metadata of all the ledgers, starting after
+     * <i>fromRevision</i>. It allows to maintain an index derived from the ledger metadata incrementally,
+     * instead of reading the metadata of all the ledgers over and over.
+     *
+     * <p>With {@code auditorIncrementalLedgerIndexEnabled}, the auditor keeps its index of the ledgers of each
+     * bookie up to date with it, see {@link org.apache.bookkeeper.replication.IncrementalBookieLedgerIndexer}.
+     * The default implementation fails
+     * with {@link UnsupportedOperationException}, for the metadata stores without a change stream, and the
+     * auditor then scans all the ledgers at each bookie check instead.
+     *
+     * @param fromRevision
+     *          the revision of the last change processed by the listener, or -1 to start from the current one.
+     * @param listener
+     *          listener.
+     * @return a future completed once the listener is registered.
+     */
+    default CompletableFuture<Void> registerLedgerMetadataChangeListener(long fromRevision,
+                                                                         LedgerMetadataChangeListener listener) {
+        return FutureUtils.exception(new UnsupportedOperationException(
+                "Ledger metadata change stream is not supported by " + getClass().getSimpleName()));
+    }
+
+    /**
+     * Unregister the ledger metadata change <i>listener</i>.
+     *
+     * @param listener
+     *          listener.
+     */
+    default void unregisterLedgerMetadataChangeListener(LedgerMetadataChangeListener listener) {
+    }
+
     /**
      * Loop to process all ledgers.
      * <p>
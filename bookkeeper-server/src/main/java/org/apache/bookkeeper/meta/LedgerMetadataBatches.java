@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs the batches of a batched ledger metadata operation.
+ *
+ * <p>The ledgers are split into batches of a given size, and a bounded number of batches is sent to the
+ * metadata store without waiting for the previous ones: a new batch is sent each time one completes.
+ */
+public final class LedgerMetadataBatches {
+
+    private LedgerMetadataBatches() {}
+
+    /**
+     * Run a batched operation.
+     *
+     * @param ledgerIds
+     *          the ledgers of the operation
+     * @param batchSize
+     *          the number of ledgers per batch
+     * @param maxInflight
+     *          the number of batches in flight
+     * @param batchOp
+     *          the operation on a batch, returning a future completed when the batch is done
+     * @return a future completed when all the batches are done
+     */
+    public static CompletableFuture<Void> run(List<Long> ledgerIds, int batchSize, int maxInflight,
+                                              Function<List<Long>, CompletableFuture<?>> batchOp) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (ledgerIds.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+        List<List<Long>> batches = Lists.partition(ledgerIds, Math.max(1, batchSize));
+        AtomicInteger nextBatch = new AtomicInteger(0);
+        AtomicInteger remainingBatches = new AtomicInteger(batches.size());
+        for (int i = 0; i < Math.min(Math.max(1, maxInflight), batches.size()); i++) {
+            runNextBatch(batches, nextBatch, remainingBatches, batchOp, done);
+        }
+        return done;
+    }
+
+    private static void runNextBatch(List<List<Long>> batches, AtomicInteger nextBatch,
+                                     AtomicInteger remainingBatches,
+                                     Function<List<Long>, CompletableFuture<?>> batchOp,
+                                     CompletableFuture<Void> done) {
+        int batch = nextBatch.getAndIncrement();
+        if (batch >= batches.size()) {
+            return;
+        }
+        batchOp.apply(batches.get(batch)).whenComplete((result, cause) -> {
+            if (remainingBatches.decrementAndGet() == 0) {
+                done.complete(null);
+            } else {
+                runNextBatch(batches, nextBatch, remainingBatches, batchOp, done);
+            }
+        });
+    }
+}
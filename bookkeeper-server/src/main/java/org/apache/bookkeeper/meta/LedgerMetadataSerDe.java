@@ -34,10 +34,17 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.client.LedgerMetadataBuilder;
 import org.apache.bookkeeper.client.LedgerMetadataUtils;
@@ -74,7 +81,16 @@ public class LedgerMetadataSerDe {
      */
     public static final int METADATA_FORMAT_VERSION_3 = 3;
 
-    public static final int MAXIMUM_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_3;
+    /**
+     * Compact binary format. The bookie ids are stored once in a dictionary, referenced by the ensembles, the
+     * numbers are varint encoded, and the fields are ordered so that the state or the ensembles can be read
+     * without parsing the rest of the metadata.
+     * Cannot be read by the clients and bookies that only know the previous versions, so it is only written
+     * if configured with {@code ledgerMetadataVersion}.
+     */
+    public static final int METADATA_FORMAT_VERSION_4 = 4;
+
+    public static final int MAXIMUM_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_4;
     public static final int CURRENT_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_3;
     private static final int LOWEST_COMPAT_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_1;
 
@@ -89,6 +105,9 @@ public class LedgerMetadataSerDe {
     private static final String V1_CLOSED_TAG = "CLOSED";
     private static final int V1_IN_RECOVERY_ENTRY_ID = -102;
 
+    // V4 flags
+    private static final int V4_FLAG_STORE_CTIME = 0x1;
+
     private static void writeHeader(OutputStream os, int version) throws IOException {
         os.write(VERSION_KEY_BYTES);
         os.write(String.valueOf(version).getBytes(UTF_8));
@@ -128,6 +147,9 @@ public class LedgerMetadataSerDe {
         int formatVersion = metadata.getMetadataFormatVersion();
         final byte[] serialized;
         switch (formatVersion) {
+        case METADATA_FORMAT_VERSION_4:
+            serialized = serializeVersion4(metadata);
+            break;
         case METADATA_FORMAT_VERSION_3:
             serialized = serializeVersion3(metadata);
             break;
@@ -152,6 +174,94 @@ public class LedgerMetadataSerDe {
         return serialized;
     }
 
+    private static byte[] serializeVersion4(LedgerMetadata metadata) throws IOException {
+        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            writeHeader(os, METADATA_FORMAT_VERSION_4);
+            writeVarLong(os, metadata.getEnsembleSize());
+            writeVarLong(os, metadata.getWriteQuorumSize());
+            writeVarLong(os, metadata.getAckQuorumSize());
+
+            switch (metadata.getState()) {
+            case CLOSED:
+                os.write(LedgerMetadataFormat.State.CLOSED.getNumber());
+                writeVarLong(os, zigZag(metadata.getLastEntryId()));
+                writeVarLong(os, metadata.getLength());
+                break;
+            case IN_RECOVERY:
+                os.write(LedgerMetadataFormat.State.IN_RECOVERY.getNumber());
+                break;
+            case OPEN:
+                os.write(LedgerMetadataFormat.State.OPEN.getNumber());
+                break;
+            default:
+                checkArgument(false,
+                              String.format("Unknown state %s for compact serialization", metadata.getState()));
+                break;
+            }
+
+            // The dictionary of the bookie ids, in order of appearance in the ensembles
+            Map<BookieId, Integer> dictionary = new LinkedHashMap<>();
+            for (List<BookieId> ensemble : metadata.getAllEnsembles().values()) {
+                for (BookieId bookieId : ensemble) {
+                    dictionary.putIfAbsent(bookieId, dictionary.size());
+                }
+            }
+            writeVarLong(os, dictionary.size());
+            for (BookieId bookieId : dictionary.keySet()) {
+                writeBytes(os, bookieId.toString().getBytes(UTF_8));
+            }
+
+            // The ensembles, with the first entry id of each one as the delta from the previous one
+            writeVarLong(os, metadata.getAllEnsembles().size());
+            long previousFirstEntryId = 0;
+            for (Map.Entry<Long, ? extends List<BookieId>> entry : metadata.getAllEnsembles().entrySet()) {
+                writeVarLong(os, entry.getKey() - previousFirstEntryId);
+                previousFirstEntryId = entry.getKey();
+                for (BookieId bookieId : entry.getValue()) {
+                    writeVarLong(os, dictionary.get(bookieId));
+                }
+            }
+
+            os.write(apiToProtoDigestType(metadata.getDigestType()).getNumber());
+            byte[] password = metadata.getPassword();
+            writeBytes(os, password == null ? new byte[0] : password);
+
+            /** Hack to get around fact that ctime was never versioned correctly */
+            if (LedgerMetadataUtils.shouldStoreCtime(metadata)) {
+                os.write(V4_FLAG_STORE_CTIME);
+                writeVarLong(os, metadata.getCtime());
+            } else {
+                os.write(0);
+            }
+            writeVarLong(os, zigZag(metadata.getCToken()));
+
+            Map<String, byte[]> customMetadata = metadata.getCustomMetadata();
+            writeVarLong(os, customMetadata.size());
+            for (Map.Entry<String, byte[]> entry : customMetadata.entrySet()) {
+                writeBytes(os, entry.getKey().getBytes(UTF_8));
+                writeBytes(os, entry.getValue());
+            }
+            return os.toByteArray();
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(OutputStream os, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            os.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        os.write((int) value);
+    }
+
+    private static void writeBytes(OutputStream os, byte[] bytes) throws IOException {
+        writeVarLong(os, bytes.length);
+        os.write(bytes);
+    }
+
     private static byte[] serializeVersion3(LedgerMetadata metadata) throws IOException {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             writeHeader(os, METADATA_FORMAT_VERSION_3);
@@ -353,6 +463,9 @@ public class LedgerMetadataSerDe {
             }
 
             switch (metadataFormatVersion) {
+            case METADATA_FORMAT_VERSION_4:
+                return parseVersion4Config(ledgerId, new CompactReader(bytes, bytes.length - is.available()),
+                                           metadataStoreCtime);
             case METADATA_FORMAT_VERSION_3:
                 return parseVersion3Config(ledgerId, is, metadataStoreCtime);
             case METADATA_FORMAT_VERSION_2:
@@ -362,12 +475,191 @@ public class LedgerMetadataSerDe {
             default:
                 throw new IOException(
                         String.format("Metadata version not compatible. Expected between %d and %d, but got %d",
-                                      LOWEST_COMPAT_METADATA_FORMAT_VERSION, CURRENT_METADATA_FORMAT_VERSION,
+                                      LOWEST_COMPAT_METADATA_FORMAT_VERSION, MAXIMUM_METADATA_FORMAT_VERSION,
                                       metadataFormatVersion));
             }
         }
     }
 
+    /**
+     * Parses only the bookies storing the entries of a ledger from its serialized metadata.
+     *
+     * <p>With the compact format, only the dictionary of the bookie ids is parsed, the ensembles and the rest of
+     * the metadata are skipped. The metadata in the previous formats is parsed entirely.
+     */
+    public Set<BookieId> parseBookies(byte[] bytes, long ledgerId) throws IOException {
+        Set<BookieId> bookies = new HashSet<>();
+        try (ByteArrayInputStream is = new ByteArrayInputStream(bytes)) {
+            if (readHeader(is) != METADATA_FORMAT_VERSION_4) {
+                for (List<BookieId> ensemble : parseConfig(bytes, ledgerId, Optional.empty())
+                        .getAllEnsembles().values()) {
+                    bookies.addAll(ensemble);
+                }
+                return bookies;
+            }
+            CompactReader reader = new CompactReader(bytes, bytes.length - is.available());
+            // the quorum sizes
+            reader.readVarInt();
+            reader.readVarInt();
+            reader.readVarInt();
+            reader.readState(null);
+            Collections.addAll(bookies, reader.readDictionary());
+            return bookies;
+        }
+    }
+
+    private static LedgerMetadata parseVersion4Config(long ledgerId, CompactReader reader,
+                                                      Optional<Long> metadataStoreCtime) throws IOException {
+        LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withMetadataFormatVersion(METADATA_FORMAT_VERSION_4);
+        int ensembleSize = reader.readVarInt();
+        builder.withEnsembleSize(ensembleSize)
+                .withWriteQuorumSize(reader.readVarInt())
+                .withAckQuorumSize(reader.readVarInt());
+        reader.readState(builder);
+        reader.readEnsembles(ensembleSize, reader.readDictionary(), builder::newEnsembleEntry);
+
+        LedgerMetadataFormat.DigestType digestType = LedgerMetadataFormat.DigestType.forNumber(reader.readByte());
+        if (digestType == null) {
+            throw new IOException("Unknown digest type in ledger metadata");
+        }
+        builder.withPassword(reader.readBytes()).withDigestType(protoToApiDigestType(digestType));
+
+        int flags = reader.readByte();
+        if ((flags & V4_FLAG_STORE_CTIME) != 0) {
+            builder.withCreationTime(reader.readVarLong()).storingCreationTime(true);
+        } else if (metadataStoreCtime.isPresent()) {
+            builder.withCreationTime(metadataStoreCtime.get()).storingCreationTime(false);
+        }
+        builder.withCToken(reader.readZigZagVarLong());
+
+        int numCustomMetadata = reader.readVarInt();
+        if (numCustomMetadata > 0) {
+            Map<String, byte[]> customMetadata = new HashMap<>();
+            for (int i = 0; i < numCustomMetadata; i++) {
+                customMetadata.put(reader.readString(), reader.readBytes());
+            }
+            builder.withCustomMetadata(customMetadata);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the compact format in place.
+     */
+    private static final class CompactReader {
+        private final byte[] bytes;
+        private int pos;
+
+        CompactReader(byte[] bytes, int pos) {
+            this.bytes = bytes;
+            this.pos = pos;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= bytes.length) {
+                throw new IOException("Ledger metadata truncated at " + pos);
+            }
+            return bytes[pos++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in ledger metadata at " + pos);
+        }
+
+        long readZigZagVarLong() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Invalid size " + value + " in ledger metadata");
+            }
+            return (int) value;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readLength();
+            byte[] value = Arrays.copyOfRange(bytes, pos, pos + length);
+            pos += length;
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            String value = new String(bytes, pos, length, UTF_8);
+            pos += length;
+            return value;
+        }
+
+        private int readLength() throws IOException {
+            int length = readVarInt();
+            if (length > bytes.length - pos) {
+                throw new IOException("Ledger metadata truncated at " + pos);
+            }
+            return length;
+        }
+
+        /**
+         * Read the state, and the last entry id and length if closed.
+         *
+         * @param builder the builder to set the state to, or null to skip the state
+         */
+        void readState(LedgerMetadataBuilder builder) throws IOException {
+            int state = readByte();
+            if (state == LedgerMetadataFormat.State.CLOSED.getNumber()) {
+                long lastEntryId = readZigZagVarLong();
+                long length = readVarLong();
+                if (builder != null) {
+                    builder.withClosedState().withLastEntryId(lastEntryId).withLength(length);
+                }
+            } else if (state == LedgerMetadataFormat.State.IN_RECOVERY.getNumber()) {
+                if (builder != null) {
+                    builder.withInRecoveryState();
+                }
+            } else if (state != LedgerMetadataFormat.State.OPEN.getNumber()) {
+                throw new IOException("Unknown state " + state + " in ledger metadata");
+            }
+        }
+
+        BookieId[] readDictionary() throws IOException {
+            BookieId[] dictionary = new BookieId[readVarInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = BookieId.parse(readString());
+            }
+            return dictionary;
+        }
+
+        void readEnsembles(int ensembleSize, BookieId[] dictionary, BiConsumer<Long, List<BookieId>> consumer)
+                throws IOException {
+            int numEnsembles = readVarInt();
+            long firstEntryId = 0;
+            for (int i = 0; i < numEnsembles; i++) {
+                firstEntryId += readVarLong();
+                List<BookieId> ensemble = new ArrayList<>(ensembleSize);
+                for (int j = 0; j < ensembleSize; j++) {
+                    int index = readVarInt();
+                    if (index >= dictionary.length) {
+                        throw new IOException("Invalid bookie index " + index + " in ledger metadata");
+                    }
+                    ensemble.add(dictionary[index]);
+                }
+                consumer.accept(firstEntryId, ensemble);
+            }
+        }
+    }
+
     private static LedgerMetadata parseVersion3Config(long ledgerId, InputStream is, Optional<Long> metadataStoreCtime)
             throws IOException {
         LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
@@ -94,6 +94,10 @@ class LongHierarchicalLedgerManager extends AbstractHierarchicalLedgerManager {
     @Override
     public void asyncProcessLedgers(final Processor<Long> processor, final AsyncCallback.VoidCallback finalCb,
             final Object context, final int successRc, final int failureRc) {
+        if (ledgerIdCache != null) {
+            ledgerIdCache.asyncProcessLedgers(processor, finalCb, context, successRc, failureRc, scheduler);
+            return;
+        }
 
         // If it succeeds, proceed with our own recursive ledger processing for the 63-bit id ledgers
         asyncProcessLevelNodes(ledgerRootPath,
@@ -139,6 +143,9 @@ class LongHierarchicalLedgerManager extends AbstractHierarchicalLedgerManager {
 
     @Override
     public LedgerRangeIterator getLedgerRanges(long zkOpTimeoutMs) {
+        if (ledgerIdCache != null) {
+            return ledgerIdCache.getLedgerRanges();
+        }
         return new LongHierarchicalLedgerRangeIterator(zkOpTimeoutMs);
     }
 
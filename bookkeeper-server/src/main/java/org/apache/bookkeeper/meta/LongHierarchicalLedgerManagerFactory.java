@@ -25,7 +25,7 @@ public class LongHierarchicalLedgerManagerFactory extends HierarchicalLedgerMana
     public static final String NAME = "longhierarchical";
 
     @Override
-    public LedgerManager newLedgerManager() {
+    AbstractHierarchicalLedgerManager createLedgerManager() {
         return new LongHierarchicalLedgerManager(conf, zk);
     }
 
@@ -17,7 +17,10 @@
  */
 package org.apache.bookkeeper.net;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -80,6 +83,18 @@ public interface NetworkTopology {
      */
     Set<Node> getLeaves(String loc);
 
+    /**
+     * Returns the nodes under a location as an immutable list, which may be shared among the callers until the
+     * topology changes. Unlike {@link #getLeaves(String)}, the location can not start with ~.
+     *
+     * @param loc
+     *      network location
+     * @return nodes under a location
+     */
+    default List<Node> getLeafList(String loc) {
+        return Collections.unmodifiableList(new ArrayList<>(getLeaves(loc)));
+    }
+
     /**
      * Return the number of leaves in <i>scope</i> but not in <i>excludedNodes</i>.
      *
@@ -21,8 +21,11 @@ import com.google.common.base.Strings;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -389,6 +392,11 @@ public class NetworkTopologyImpl implements NetworkTopology {
      * The lock used to manage access.
      */
     protected ReadWriteLock netlock = new ReentrantReadWriteLock();
+    /**
+     * The leaves under each inner node, keyed by the path of the node. It is built on demand and dropped on each
+     * change of the topology, so the lists are shared by the readers until then.
+     */
+    private volatile Map<String, List<Node>> leavesSnapshot = null;
 
     public NetworkTopologyImpl() {
         clusterMap = new InnerNode(InnerNode.ROOT);
@@ -425,6 +433,7 @@ public class NetworkTopologyImpl implements NetworkTopology {
                         + " at an illegal network location");
             }
             if (clusterMap.add(node)) {
+                leavesSnapshot = null;
                 LOG.info("Adding a new node: " + NodeBase.getPath(node));
                 if (rack == null) {
                     numOfRacks++;
@@ -501,6 +510,7 @@ public class NetworkTopologyImpl implements NetworkTopology {
         netlock.writeLock().lock();
         try {
             if (clusterMap.remove(node)) {
+                leavesSnapshot = null;
                 InnerNode rack = (InnerNode) getNode(node.getNetworkLocation());
                 if (rack == null) {
                     numOfRacks--;
@@ -795,6 +805,49 @@ public class NetworkTopologyImpl implements NetworkTopology {
         }
     }
 
+    @Override
+    public List<Node> getLeafList(String scope) {
+        if (scope.startsWith(INVERSE)) {
+            return NetworkTopology.super.getLeafList(scope);
+        }
+        String path = NodeBase.normalize(scope);
+        Map<String, List<Node>> snapshot = leavesSnapshot;
+        if (null == snapshot) {
+            netlock.readLock().lock();
+            try {
+                snapshot = leavesSnapshot;
+                if (null == snapshot) {
+                    snapshot = new HashMap<>();
+                    collectLeaves(clusterMap, NodeBase.ROOT, snapshot);
+                    leavesSnapshot = snapshot;
+                }
+            } finally {
+                netlock.readLock().unlock();
+            }
+        }
+        List<Node> leaves = snapshot.get(path);
+        if (null == leaves) {
+            // a leaf or an unknown location
+            return NetworkTopology.super.getLeafList(path);
+        }
+        return leaves;
+    }
+
+    private static List<Node> collectLeaves(InnerNode node, String path, Map<String, List<Node>> snapshot) {
+        List<Node> leaves = new ArrayList<>(node.getNumOfLeaves());
+        for (Node child : node.getChildren()) {
+            if (child instanceof InnerNode) {
+                leaves.addAll(collectLeaves((InnerNode) child,
+                        path + NodeBase.PATH_SEPARATOR_STR + child.getName(), snapshot));
+            } else {
+                leaves.add(child);
+            }
+        }
+        List<Node> immutableLeaves = Collections.unmodifiableList(leaves);
+        snapshot.put(path, immutableLeaves);
+        return immutableLeaves;
+    }
+
     @Override
     public int countNumOfAvailableNodes(String scope, Collection<Node> excludedNodes) {
         boolean isExcluded = false;
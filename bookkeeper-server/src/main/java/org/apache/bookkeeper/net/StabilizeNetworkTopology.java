@@ -21,6 +21,7 @@ import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timeout;
 import io.netty.util.TimerTask;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -151,6 +152,11 @@ public class StabilizeNetworkTopology implements NetworkTopology {
         return impl.getLeaves(loc);
     }
 
+    @Override
+    public List<Node> getLeafList(String loc) {
+        return impl.getLeafList(loc);
+    }
+
     @Override
     public int countNumOfAvailableNodes(String scope, Collection<Node> excludedNodes) {
         return impl.countNumOfAvailableNodes(scope, excludedNodes);
@@ -83,7 +83,10 @@ class AddCompletion extends CompletionValue implements BookkeeperInternalCallbac
                               Object ctx) {
         logOpResult(rc);
         originalCallback.writeComplete(rc, ledgerId, entryId, addr, ctx);
-        key.release();
+        // v2 adds have no key, they are tracked in the v2 completion table
+        if (key != null) {
+            key.release();
+        }
         this.release();
     }
 
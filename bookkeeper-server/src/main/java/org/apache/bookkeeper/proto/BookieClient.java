@@ -27,6 +27,7 @@ import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyLedgerFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
@@ -272,6 +273,31 @@ public interface BookieClient {
     CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
             long ledgerId);
 
+    /**
+     * Ask the bookie at address {@code address} to copy the entries of a ledger
+     * fragment to itself. The bookie reads the entries directly from the other
+     * bookies of the fragment ensemble and adds them as recovery adds, so the
+     * entries do not go through the client.
+     *
+     * @param address address of the bookie to copy the entries to
+     * @param ledgerId id of the ledger the fragment belongs to
+     * @param masterKey the master key of the ledger
+     * @param firstEntryId id of the first entry to copy
+     * @param lastEntryId id of the last entry to copy
+     * @param ensemble the ids of the bookies of the fragment ensemble, an empty
+     *                 string for the bookies the entries must not be read from
+     * @param writeQuorumSize the write quorum size of the ledger
+     * @param digestType the digest type of the ledger, used by the bookie to
+     *                   verify the entries it reads
+     * @param password the password of the ledger, only needed by the HMAC digest
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     */
+    void copyLedgerFragment(BookieId address, long ledgerId, byte[] masterKey,
+                            long firstEntryId, long lastEntryId, List<String> ensemble,
+                            int writeQuorumSize, DataFormats.LedgerMetadataFormat.DigestType digestType,
+                            byte[] password, CopyLedgerFragmentCallback cb, Object ctx);
+
     /**
      * @return whether bookie client object has been closed
      */
@@ -56,6 +56,7 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyLedgerFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
@@ -99,6 +100,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     private final ReentrantReadWriteLock closeLock;
     private final StatsLogger statsLogger;
     private final int numConnectionsPerBookie;
+    private final int maxConnectionsPerBookie;
+    private final StatsLogger limitedStatsLogger;
     private final BookieAddressResolver bookieAddressResolver;
 
     private final long bookieErrorThresholdPerInterval;
@@ -122,6 +125,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
 
         this.statsLogger = statsLogger;
         this.numConnectionsPerBookie = conf.getNumChannelsPerBookie();
+        this.maxConnectionsPerBookie = conf.getMaxChannelsPerBookie();
+        this.limitedStatsLogger = conf.getLimitStatsLogging() ? NullStatsLogger.INSTANCE : statsLogger;
         this.bookieErrorThresholdPerInterval = conf.getBookieErrorThresholdPerInterval();
 
         this.scheduler = scheduler;
@@ -206,7 +211,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                     return null;
                 }
                 PerChannelBookieClientPool newClientPool =
-                    new DefaultPerChannelBookieClientPool(conf, this, addr, numConnectionsPerBookie);
+                    new DefaultPerChannelBookieClientPool(conf, this, addr, numConnectionsPerBookie,
+                            maxConnectionsPerBookie, limitedStatsLogger);
                 PerChannelBookieClientPool oldClientPool = channels.putIfAbsent(addr, newClientPool);
                 if (null == oldClientPool) {
                     clientPool = newClientPool;
@@ -343,6 +349,35 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         return futureResult;
     }
 
+    @Override
+    public void copyLedgerFragment(final BookieId addr, final long ledgerId, final byte[] masterKey,
+                                   final long firstEntryId, final long lastEntryId, final List<String> ensemble,
+                                   final int writeQuorumSize,
+                                   final DataFormats.LedgerMetadataFormat.DigestType digestType,
+                                   final byte[] password, final CopyLedgerFragmentCallback cb,
+                                   final Object ctx) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            cb.copyLedgerFragmentComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                    ledgerId, 0L, 0L, addr, ctx);
+            return;
+        }
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                try {
+                    executor.executeOrdered(ledgerId, () ->
+                            cb.copyLedgerFragmentComplete(rc, ledgerId, 0L, 0L, addr, ctx));
+                } catch (RejectedExecutionException re) {
+                    cb.copyLedgerFragmentComplete(getRc(BKException.Code.InterruptedException),
+                            ledgerId, 0L, 0L, addr, ctx);
+                }
+            } else {
+                pcbc.copyLedgerFragment(ledgerId, masterKey, firstEntryId, lastEntryId, ensemble,
+                        writeQuorumSize, digestType, password, cb, ctx);
+            }
+        }, ledgerId, useV3Enforced);
+    }
+
     private void completeRead(final int rc,
                               final long ledgerId,
                               final long entryId,
@@ -156,7 +156,7 @@ class BookieNettyServer {
             };
 
             // Enable CPU affinity on IO threads
-            if (conf.isBusyWaitEnabled()) {
+            if (conf.isBusyWaitEnabled() || conf.isThreadPerCoreEnabled()) {
                 for (int i = 0; i < conf.getServerNumIOThreads(); i++) {
                     jvmEventLoopGroup.next().submit(() -> {
                         try {
@@ -351,7 +351,8 @@ class BookieNettyServer {
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
-                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
+                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry,
+                            conf.getRequestTracingSampleRate() > 0));
                     pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
@@ -417,7 +418,8 @@ class BookieNettyServer {
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
-                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
+                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry,
+                            conf.getRequestTracingSampleRate() > 0));
                     pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
@@ -36,6 +36,7 @@ import io.netty.channel.ChannelPromise;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
@@ -533,15 +534,33 @@ public class BookieProtoEncoding {
         final EnDecoder reqPreV3;
         final EnDecoder reqV3;
         boolean usingV3Protocol;
+        // record when the decoding of each request starts, for the request tracing
+        final boolean recordDecodeStart;
+        long decodeStartNanos = -1L;
 
         RequestDecoder(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false);
+        }
+
+        RequestDecoder(ExtensionRegistry extensionRegistry, boolean recordDecodeStart) {
             reqPreV3 = new RequestEnDeCoderPreV3(extensionRegistry);
             reqV3 = new RequestEnDecoderV3(extensionRegistry);
             usingV3Protocol = true;
+            this.recordDecodeStart = recordDecodeStart;
+        }
+
+        /**
+         * @return when the decoding of the last request started, -1 if not recorded
+         */
+        long getDecodeStartNanos() {
+            return decodeStartNanos;
         }
 
         @Override
         public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (recordDecodeStart) {
+                decodeStartNanos = MathUtils.nowInNano();
+            }
             if (LOG.isTraceEnabled()) {
                 LOG.trace("Received request {} from channel {} to decode.", msg, ctx.channel());
             }
@@ -41,6 +41,7 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     private final ChannelGroup allChannels;
 
     private ChannelHandlerContext ctx;
+    private BookieProtoEncoding.RequestDecoder decoder;
 
     private ByteBuf pendingSendResponses = null;
     private int maxPendingResponsesSize = DEFAULT_PENDING_RESPONSE_SIZE;
@@ -54,10 +55,21 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
         return ctx;
     }
 
+    /**
+     * The requests are handled on the IO thread right after being decoded, so this is the start of the decoding
+     * of the request being handled.
+     *
+     * @return when the decoding of the last request started, -1 if not recorded
+     */
+    long getDecodeStartNanos() {
+        return decoder != null ? decoder.getDecodeStartNanos() : -1L;
+    }
+
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         log.info("Channel connected {}", ctx.channel());
         this.ctx = ctx;
+        this.decoder = ctx.pipeline().get(BookieProtoEncoding.RequestDecoder.class);
         super.channelActive(ctx);
     }
 
@@ -21,6 +21,10 @@
 package org.apache.bookkeeper.proto;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FRAGMENT_COPY_CLIENT_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_SCHEDULER_POOL_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_SCHEDULER_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_TRACE_SCOPE;
 import static org.apache.bookkeeper.proto.RequestUtils.hasFlag;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -32,21 +36,24 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import java.io.IOException;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import lombok.AccessLevel;
 import lombok.Getter;
 import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
 import org.apache.bookkeeper.auth.AuthToken;
 import org.apache.bookkeeper.bookie.Bookie;
-import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.bookie.DirectMemoryBudget;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.processor.RequestProcessor;
@@ -66,6 +73,10 @@ import org.slf4j.MDC;
 public class BookieRequestProcessor implements RequestProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookieRequestProcessor.class);
+
+    // adds of a channel handed to the add worker threads and not executed yet, in thread-per-core mode
+    private static final AttributeKey<AtomicInteger> QUEUED_ADDS =
+            AttributeKey.valueOf(BookieRequestProcessor.class, "queuedAdds");
     public static final String TLS_HANDLER_NAME = "tls";
 
     /**
@@ -107,6 +118,17 @@ public class BookieRequestProcessor implements RequestProcessor {
      */
     private final OrderedExecutor highPriorityThreadPool;
 
+    /**
+     * The schedulers sharing the read and write threadpools fairly among the clients, null if disabled.
+     */
+    private final FairRequestScheduler readScheduler;
+    private final FairRequestScheduler writeScheduler;
+
+    /**
+     * The executor running the read and long poll requests on virtual threads, null if disabled.
+     */
+    private final VirtualThreadReadExecutor readVirtualThreads;
+
     /**
      * The Timer used to time out requests for long polling.
      */
@@ -117,9 +139,10 @@ public class BookieRequestProcessor implements RequestProcessor {
     private final boolean statsEnabled;
 
     private final RequestStats requestStats;
+    private final RequestTracer requestTracer;
 
-    final Semaphore addsSemaphore;
-    final Semaphore readsSemaphore;
+    final InFlightRequestLimiter addsLimiter;
+    final InFlightRequestLimiter readsLimiter;
 
     final ChannelGroup allChannels;
 
@@ -131,6 +154,14 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    private final boolean threadPerCore;
+
+    /**
+     * The client reading the entries of the ledger fragments copied to this bookie, null if the bookie does not
+     * copy them.
+     */
+    private final LedgerFragmentCopyClient fragmentCopyClient;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
                                   ChannelGroup allChannels) throws SecurityException {
@@ -141,16 +172,37 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.threadPerCore = serverCfg.isThreadPerCoreEnabled();
+        // with the fair scheduling the queues are bounded per request class by the schedulers
+        boolean requestScheduling = serverCfg.isRequestSchedulingEnabled();
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
-                serverCfg.getMaxPendingReadRequestPerThread(),
+                requestScheduling ? OrderedExecutor.NO_TASK_LIMIT : serverCfg.getMaxPendingReadRequestPerThread(),
                 statsLogger);
+        // in thread-per-core mode the add worker threads only take the adds that could block an IO thread
         this.writeThreadPool = createExecutor(
                 this.serverCfg.getNumAddWorkerThreads(),
                 "BookieWriteThreadPool",
-                serverCfg.getMaxPendingAddRequestPerThread(),
+                requestScheduling ? OrderedExecutor.NO_TASK_LIMIT : serverCfg.getMaxPendingAddRequestPerThread(),
                 statsLogger);
+        this.readVirtualThreads = createVirtualThreadReadExecutor(statsLogger);
+        if (!requestScheduling) {
+            this.readScheduler = null;
+        } else if (null != readVirtualThreads) {
+            // the reads handed to a ledger directory are capped by its permits, the others wait in the class queues
+            this.readScheduler = new FairRequestScheduler(
+                    "read",
+                    readVirtualThreads,
+                    serverCfg.getReadWorkerVirtualThreadsMaxConcurrencyPerDisk(),
+                    serverCfg.getRequestSchedulingMaxQueuedTasksPerClass(),
+                    serverCfg.getRequestSchedulingClassWeights(),
+                    schedulerStatsLogger(statsLogger, "read"));
+        } else {
+            this.readScheduler = createScheduler(readThreadPool, "read", statsLogger);
+        }
+        this.writeScheduler = requestScheduling
+                ? createScheduler(writeThreadPool, "write", statsLogger) : null;
         if (serverCfg.getNumLongPollWorkerThreads() <= 0 && readThreadPool != null) {
             this.longPollThreadPool = this.readThreadPool;
         } else {
@@ -199,62 +251,91 @@ public class BookieRequestProcessor implements RequestProcessor {
         // Expose Stats
         this.statsEnabled = serverCfg.isStatisticsEnabled();
         this.requestStats = new RequestStats(statsLogger);
+        this.fragmentCopyClient = createFragmentCopyClient(serverCfg, allocator,
+                statsLogger.scope(FRAGMENT_COPY_CLIENT_SCOPE));
+        this.requestTracer = new RequestTracer(serverCfg, statsLogger.scope(REQUEST_TRACE_SCOPE));
+
+        // The entries of the adds in progress are held in direct memory until they are journaled
+        DirectMemoryBudget memoryBudget = bookie != null ? bookie.getDirectMemoryBudget() : null;
+        this.addsLimiter = new InFlightRequestLimiter("add",
+                serverCfg.getMaxAddsInProgressLimit(), serverCfg.getMaxAddBytesInProgressLimit(),
+                memoryBudget != null && memoryBudget.isLimited() ? memoryBudget.register("add_requests", null) : null,
+                new InFlightRequestLimiter.Listener() {
+                    @Override
+                    public void onChannelPaused() {
+                        requestStats.pauseAddChannel();
+                    }
 
-        int maxAdds = serverCfg.getMaxAddsInProgressLimit();
-        addsSemaphore = maxAdds > 0 ? new Semaphore(maxAdds, true) : null;
-
-        int maxReads = serverCfg.getMaxReadsInProgressLimit();
-        readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
-    }
-
-    protected void onAddRequestStart(Channel channel) {
-        if (addsSemaphore != null) {
-            if (!addsSemaphore.tryAcquire()) {
-                final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
-                LOG.info("Too many add requests in progress, disabling autoread on channel {}", channel);
-                requestStats.blockAddRequest();
-                addsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
-                final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
-                LOG.info("Re-enabled autoread on channel {} after AddRequest delay of {} nanos", channel, delayNanos);
-                requestStats.unblockAddRequest(delayNanos);
-            }
+                    @Override
+                    public void onChannelResumed(long pausedNanos) {
+                        requestStats.resumeAddChannel(pausedNanos);
+                    }
+                });
+        this.readsLimiter = new InFlightRequestLimiter("read",
+                serverCfg.getMaxReadsInProgressLimit(), 0L,
+                new InFlightRequestLimiter.Listener() {
+                    @Override
+                    public void onChannelPaused() {
+                        requestStats.pauseReadChannel();
+                    }
+
+                    @Override
+                    public void onChannelResumed(long pausedNanos) {
+                        requestStats.resumeReadChannel(pausedNanos);
+                    }
+                });
+    }
+
+    /**
+     * Track an add request. It never blocks: if too many adds are in progress, the channel stops being read
+     * until enough of them completed.
+     *
+     * @param channel channel the request was received from
+     * @param entrySize size of the entry, it must be passed again to {@link #onAddRequestFinish(Channel, long)}
+     */
+    protected void onAddRequestStart(Channel channel, long entrySize) {
+        if (addsLimiter.isEnabled()) {
+            addsLimiter.onRequestStart(channel, entrySize);
         }
         requestStats.trackAddRequest();
+        if (threadPerCore) {
+            requestStats.recordPerCoreAdd(entrySize);
+        }
     }
 
-    protected void onAddRequestFinish() {
+    protected void onAddRequestFinish(Channel channel, long entrySize) {
         requestStats.untrackAddRequest();
-        if (addsSemaphore != null) {
-            addsSemaphore.release();
+        if (addsLimiter.isEnabled()) {
+            addsLimiter.onRequestFinish(channel, entrySize);
         }
     }
 
+    /**
+     * Track a read request. It never blocks: if too many reads are in progress, the channel stops being read
+     * until enough of them completed. Since the size of a read is only known once it has been served, every
+     * read accounts for the same weight in the fair share of the channel.
+     */
     protected void onReadRequestStart(Channel channel) {
-        if (readsSemaphore != null) {
-            if (!readsSemaphore.tryAcquire()) {
-                final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
-                LOG.info("Too many read requests in progress, disabling autoread on channel {}", channel);
-                requestStats.blockReadRequest();
-                readsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
-                final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
-                LOG.info("Re-enabled autoread on channel {} after ReadRequest delay of {} nanos", channel, delayNanos);
-                requestStats.unblockReadRequest(delayNanos);
-            }
+        if (readsLimiter.isEnabled()) {
+            readsLimiter.onRequestStart(channel, 1L);
         }
         requestStats.trackReadRequest();
     }
 
-    protected void onReadRequestFinish() {
+    protected void onReadRequestFinish(Channel channel) {
         requestStats.untrackReadRequest();
-        if (readsSemaphore != null) {
-            readsSemaphore.release();
+        if (readsLimiter.isEnabled()) {
+            readsLimiter.onRequestFinish(channel, 1L);
         }
     }
 
+    /**
+     * @return the tracer of the add and read requests, also used to expose the slowest recent requests
+     */
+    public RequestTracer getRequestTracer() {
+        return requestTracer;
+    }
+
     @VisibleForTesting
     int maxAddsInProgressCount() {
         return requestStats.maxAddsInProgressCount();
@@ -265,15 +346,44 @@ public class BookieRequestProcessor implements RequestProcessor {
         return requestStats.maxReadsInProgressCount();
     }
 
+    private static LedgerFragmentCopyClient createFragmentCopyClient(ServerConfiguration serverCfg,
+                                                                     ByteBufAllocator allocator,
+                                                                     StatsLogger statsLogger) {
+        if (!serverCfg.isLedgerFragmentCopyEnabled()) {
+            return null;
+        }
+        try {
+            return new LedgerFragmentCopyClient(serverCfg, allocator, statsLogger);
+        } catch (IOException e) {
+            LOG.error("Could not create the client to copy the ledger fragments, rejecting the copies", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the client reading the entries of the ledger fragments copied to this bookie, null if the bookie
+     *         does not copy them
+     */
+    LedgerFragmentCopyClient getFragmentCopyClient() {
+        return fragmentCopyClient;
+    }
+
     @Override
     public void close() {
         LOG.info("Closing RequestProcessor");
         shutdownExecutor(writeThreadPool);
         shutdownExecutor(readThreadPool);
+        if (null != readVirtualThreads) {
+            readVirtualThreads.shutdown(10, TimeUnit.SECONDS);
+        }
         if (serverCfg.getNumLongPollWorkerThreads() > 0 || readThreadPool == null) {
             shutdownExecutor(longPollThreadPool);
         }
         shutdownExecutor(highPriorityThreadPool);
+        // the copies in progress on the high priority threads are done with the client
+        if (null != fragmentCopyClient) {
+            fragmentCopyClient.close();
+        }
         requestTimer.stop();
         LOG.info("Closed RequestProcessor");
     }
@@ -298,6 +408,116 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private VirtualThreadReadExecutor createVirtualThreadReadExecutor(StatsLogger statsLogger) {
+        if (!serverCfg.isReadWorkerVirtualThreadsEnabled() || null == readThreadPool) {
+            return null;
+        } else if (!VirtualThreadReadExecutor.isSupported()) {
+            LOG.warn("Virtual threads are not supported by this JDK, read requests are executed on {} read threads",
+                    serverCfg.getNumReadWorkerThreads());
+            return null;
+        }
+        int maxPendingReads = Math.max(0, serverCfg.getMaxPendingReadRequestPerThread())
+                * serverCfg.getNumReadWorkerThreads();
+        return new VirtualThreadReadExecutor(
+                "BookieReadVirtualThread",
+                serverCfg.getLedgerDirNames().length,
+                serverCfg.getReadWorkerVirtualThreadsMaxConcurrencyPerDisk(),
+                maxPendingReads,
+                statsLogger);
+    }
+
+    private FairRequestScheduler createScheduler(
+            OrderedExecutor threadPool,
+            String name,
+            StatsLogger statsLogger) {
+        if (null == threadPool) {
+            return null;
+        }
+        return new FairRequestScheduler(
+                name,
+                threadPool,
+                serverCfg.getRequestSchedulingMaxTasksInFlightPerThread(),
+                serverCfg.getRequestSchedulingMaxQueuedTasksPerClass(),
+                serverCfg.getRequestSchedulingClassWeights(),
+                schedulerStatsLogger(statsLogger, name));
+    }
+
+    private static StatsLogger schedulerStatsLogger(StatsLogger statsLogger, String name) {
+        return statsLogger.scope(REQUEST_SCHEDULER_SCOPE).scopeLabel(REQUEST_SCHEDULER_POOL_LABEL, name);
+    }
+
+    /**
+     * Execute a request on the given threadpool, going through the fair scheduler of the threadpool if any. The read
+     * and long poll requests are executed on virtual threads instead, if enabled, the reads still going through the
+     * fair scheduler.
+     *
+     * <p>{@code onRejected} is run if the request is rejected, either right away or later on by the fair scheduler.
+     */
+    private void executeOrdered(OrderedExecutor threadPool, Channel channel, long ledgerId, Runnable request,
+                                Runnable onRejected) {
+        try {
+            if (threadPool == readThreadPool && null != readScheduler) {
+                readScheduler.executeOrdered(channel, ledgerId, request, onRejected);
+            } else if ((threadPool == readThreadPool || threadPool == longPollThreadPool)
+                    && null != readVirtualThreads) {
+                readVirtualThreads.executeOrdered(ledgerId, request);
+            } else if (threadPool == writeThreadPool && null != writeScheduler) {
+                writeScheduler.executeOrdered(channel, ledgerId, request, onRejected);
+            } else {
+                threadPool.executeOrdered(ledgerId, request);
+            }
+        } catch (RejectedExecutionException e) {
+            onRejected.run();
+        }
+    }
+
+    /**
+     * In thread-per-core mode an add is executed on the IO thread that read it, unless the journal or the ledger
+     * storage of its ledger is full: adding the entry would then block the IO thread, and every channel it serves,
+     * until they catch up, so the add is handed to the add worker threads instead. Once an add of a channel is
+     * handed to them, the following adds of the channel are handed to them too until they have all been executed,
+     * so that the adds of a ledger never overtake each other.
+     */
+    private boolean runAddOnIoThread(OrderedExecutor threadPool, Channel channel, long ledgerId, int entrySize) {
+        return threadPerCore && threadPool == writeThreadPool && queuedAdds(channel).get() == 0
+                && bookie.canAddEntryWithoutBlocking(ledgerId, entrySize);
+    }
+
+    private static AtomicInteger queuedAdds(Channel channel) {
+        Attribute<AtomicInteger> attr = channel.attr(QUEUED_ADDS);
+        AtomicInteger queuedAdds = attr.get();
+        if (queuedAdds == null) {
+            // only the IO thread of the channel sets it
+            queuedAdds = new AtomicInteger(0);
+            attr.set(queuedAdds);
+        }
+        return queuedAdds;
+    }
+
+    /**
+     * Execute an add on the add worker threads, counting it among the adds of the channel that are not executed yet
+     * in thread-per-core mode.
+     */
+    private void executeAdd(OrderedExecutor threadPool, Channel channel, long ledgerId, Runnable write,
+                            Runnable onRejected) {
+        if (!threadPerCore || threadPool != writeThreadPool) {
+            executeOrdered(threadPool, channel, ledgerId, write, onRejected);
+            return;
+        }
+        AtomicInteger queuedAdds = queuedAdds(channel);
+        queuedAdds.incrementAndGet();
+        executeOrdered(threadPool, channel, ledgerId, () -> {
+            try {
+                write.run();
+            } finally {
+                queuedAdds.decrementAndGet();
+            }
+        }, () -> {
+            queuedAdds.decrementAndGet();
+            onRejected.run();
+        });
+    }
+
     private void shutdownExecutor(OrderedExecutor service) {
         if (null != service) {
             service.shutdown();
@@ -354,6 +574,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case GET_LIST_OF_ENTRIES_OF_LEDGER:
                         processGetListOfEntriesOfLedgerProcessorV3(r, requestHandler);
                         break;
+                    case COPY_LEDGER_FRAGMENT:
+                        processCopyLedgerFragmentRequestV3(r, requestHandler);
+                        break;
                     default:
                         LOG.info("Unknown operation type {}", header.getOperation());
                         final BookkeeperProtocol.Response response =
@@ -450,12 +673,12 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = writeThreadPool;
         }
 
-        if (null == threadPool) {
+        Channel channel = requestHandler.ctx().channel();
+        long ledgerId = r.getAddRequest().getLedgerId();
+        if (null == threadPool || runAddOnIoThread(threadPool, channel, ledgerId, r.getAddRequest().getBody().size())) {
             write.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getAddRequest().getLedgerId(), write);
-            } catch (RejectedExecutionException e) {
+            executeAdd(threadPool, channel, ledgerId, write, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests",
                               r.getAddRequest().getLedgerId(), r.getAddRequest().getEntryId());
@@ -471,7 +694,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                         .setAddResponse(addResponse);
                 BookkeeperProtocol.Response resp = response.build();
                 write.sendResponse(addResponse.getStatus(), resp, requestStats.getAddRequestStats());
-            }
+            });
         }
     }
 
@@ -543,9 +766,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             read.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
-            } catch (RejectedExecutionException e) {
+            executeOrdered(threadPool, requestHandler.ctx().channel(), r.getReadRequest().getLedgerId(), read, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
                               r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId());
@@ -561,8 +782,8 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .setReadResponse(readResponse);
                 BookkeeperProtocol.Response resp = response.build();
                 read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
-                onReadRequestFinish();
-            }
+                onReadRequestFinish(requestHandler.ctx().channel());
+            });
         }
     }
 
@@ -650,6 +871,27 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processCopyLedgerFragmentRequestV3(final BookkeeperProtocol.Request r,
+                                                    final BookieRequestHandler requestHandler) {
+        CopyLedgerFragmentProcessorV3 copyLedgerFragment = new CopyLedgerFragmentProcessorV3(r, requestHandler, this);
+        long ledgerId = r.getCopyLedgerFragmentRequest().getLedgerId();
+        // the copy adds the entries it reads as recovery adds, which may block, so it never runs on the IO
+        // thread: it runs on the high priority threads like the other recovery adds, or on the copy client threads
+        try {
+            if (null != highPriorityThreadPool) {
+                highPriorityThreadPool.executeOrdered(ledgerId, copyLedgerFragment);
+            } else if (null != fragmentCopyClient) {
+                fragmentCopyClient.getExecutor().executeOrdered(ledgerId, copyLedgerFragment);
+            } else {
+                // the copy is rejected right away
+                copyLedgerFragment.run();
+            }
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Failed to schedule the copy of ledger {}, the request processor is closing", ledgerId);
+            copyLedgerFragment.reject(BookkeeperProtocol.StatusCode.EIO);
+        }
+    }
+
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final BookieRequestHandler requestHandler) {
         WriteEntryProcessor write = WriteEntryProcessor.create(r, requestHandler, this);
 
@@ -662,12 +904,11 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = writeThreadPool;
         }
 
-        if (null == threadPool) {
+        Channel channel = requestHandler.ctx().channel();
+        if (null == threadPool || runAddOnIoThread(threadPool, channel, r.getLedgerId(), r.getData().readableBytes())) {
             write.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getLedgerId(), write);
-            } catch (RejectedExecutionException e) {
+            executeAdd(threadPool, channel, r.getLedgerId(), write, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests", r.ledgerId,
                             r.entryId);
@@ -681,7 +922,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                 r.release();
                 r.recycle();
                 write.recycle();
-            }
+            });
         }
     }
 
@@ -707,9 +948,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             read.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getLedgerId(), read);
-            } catch (RejectedExecutionException e) {
+            executeOrdered(threadPool, requestHandler.ctx().channel(), r.getLedgerId(), read, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
                             r.entryId);
@@ -719,9 +958,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     BookieProtocol.ETOOMANYREQUESTS,
                     ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
                     requestStats.getReadRequestStats());
-                onReadRequestFinish();
+                onReadRequestFinish(requestHandler.ctx().channel());
                 read.recycle();
-            }
+            });
         }
     }
 
@@ -72,6 +72,35 @@ public class BookkeeperInternalCallbacks {
         void onChanged(long ledgerId, Versioned<LedgerMetadata> metadata);
     }
 
+    /**
+     * Listener on the changes of the metadata of all the ledgers.
+     */
+    public interface LedgerMetadataChangeListener {
+        /**
+         * Triggered each time the metadata of a ledger is created, updated or removed. The changes are triggered
+         * in the order of their revisions.
+         *
+         * @param ledgerId
+         *          ledger id.
+         * @param metadata
+         *          new ledger metadata, or null if the ledger was removed.
+         * @param revision
+         *          revision of the change, which the listener can resume from.
+         */
+        void onChanged(long ledgerId, Versioned<LedgerMetadata> metadata, long revision);
+
+        /**
+         * Triggered when the changes after the revision the listener resumed from are not available anymore,
+         * e.g. because the metadata store compacted them, or when the change at the given revision could not be
+         * read. The listener should rebuild its state from a scan of all the ledgers. The changes after the given
+         * revision follow, and the ones older than the scan should be told apart by the version of the metadata.
+         *
+         * @param revision
+         *          revision after which the changes are triggered again.
+         */
+        void onReset(long revision);
+    }
+
     /**
      * A writer callback interface.
      */
@@ -115,6 +144,14 @@ public class BookkeeperInternalCallbacks {
                 AvailabilityOfEntriesOfLedger availabilityOfEntriesOfLedger);
     }
 
+    /**
+     * A callback interface for CopyLedgerFragment command.
+     */
+    public interface CopyLedgerFragmentCallback {
+        void copyLedgerFragmentComplete(int rc, long ledgerId, long numEntriesCopied, long numBytesCopied,
+                                        BookieId addr, Object ctx);
+    }
+
     /**
      * Handle the Response Code and transform it to a BKException.
      *
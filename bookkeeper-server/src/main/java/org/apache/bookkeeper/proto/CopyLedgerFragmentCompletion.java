@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+class CopyLedgerFragmentCompletion extends CompletionValue {
+    final BookkeeperInternalCallbacks.CopyLedgerFragmentCallback cb;
+
+    public CopyLedgerFragmentCompletion(final CompletionKey key,
+                                        final BookkeeperInternalCallbacks.CopyLedgerFragmentCallback originalCallback,
+                                        final Object originalCtx,
+                                        final long ledgerId,
+                                        PerChannelBookieClient perChannelBookieClient) {
+        super("CopyLedgerFragment", originalCtx, ledgerId, BookieProtocol.INVALID_ENTRY_ID, perChannelBookieClient);
+        this.opLogger = perChannelBookieClient.copyLedgerFragmentOpLogger;
+        this.timeoutOpLogger = perChannelBookieClient.copyLedgerFragmentTimeoutOpLogger;
+        this.cb = (rc, ledgerId1, numEntriesCopied, numBytesCopied, addr, ctx) -> {
+            logOpResult(rc);
+            originalCallback.copyLedgerFragmentComplete(rc, ledgerId1, numEntriesCopied, numBytesCopied,
+                    addr, originalCtx);
+            key.release();
+        };
+    }
+
+    @Override
+    boolean maybeTimeout() {
+        if (MathUtils.elapsedNanos(startTime) >= perChannelBookieClient.copyLedgerFragmentTimeoutNanos) {
+            timeout();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public void errorOut() {
+        errorOut(BKException.Code.BookieHandleNotAvailableException);
+    }
+
+    @Override
+    public void errorOut(final int rc) {
+        errorOutAndRunCallback(
+                () -> cb.copyLedgerFragmentComplete(rc, ledgerId, 0L, 0L, perChannelBookieClient.bookieId, ctx));
+    }
+
+    @Override
+    public void handleV3Response(BookkeeperProtocol.Response response) {
+        BookkeeperProtocol.CopyLedgerFragmentResponse copyLedgerFragmentResponse =
+                response.getCopyLedgerFragmentResponse();
+        BookkeeperProtocol.StatusCode status = response.getStatus() == BookkeeperProtocol.StatusCode.EOK
+                ? copyLedgerFragmentResponse.getStatus() : response.getStatus();
+
+        if (LOG.isDebugEnabled()) {
+            logResponse(status, "ledger", ledgerId);
+        }
+        int rc = convertStatus(status, BKException.Code.LedgerRecoveryException);
+        cb.copyLedgerFragmentComplete(rc, ledgerId, copyLedgerFragmentResponse.getNumEntriesCopied(),
+                copyLedgerFragmentResponse.getNumBytesCopied(), perChannelBookieClient.bookieId, ctx);
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor class for v3 copy ledger fragment packets.
+ *
+ * <p>The entries of the fragment are read from the other bookies of the fragment ensemble, and added to this
+ * bookie as recovery adds, keeping up to a configured number of entries in progress. The entries are stored by
+ * the bookies as they were sent by the writer, with their digest, so they are copied as they are read, once their
+ * digest is verified with the digest type and the password of the ledger. An entry is read from the first bookie
+ * of its write set the entries can be read from, then from the next ones if the read fails or the entry read is
+ * corrupted. When every bookie of the ensemble stores all the entries, the entries are read by batches from a
+ * single bookie instead, falling back to reading them one by one if a batch read fails. Only the bookies
+ * registered in the cluster are read from, they are looked up without blocking. The copy stops at the first entry
+ * which cannot be copied.
+ */
+public class CopyLedgerFragmentProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CopyLedgerFragmentProcessorV3.class);
+
+    private final CopyLedgerFragmentRequest copyRequest;
+    private final long ledgerId;
+    private final byte[] masterKey;
+    private final long lastEntryId;
+    private final int writeQuorumSize;
+    // the bookies of the ensemble, null for the ones the entries must not be read from
+    private final List<BookieId> ensemble;
+    private long startTimeNanos;
+    private DigestManager digestManager;
+    private BookieClient bookieClient;
+    private int maxInflightEntries;
+    private long maxBatchReadSize;
+
+    // guarded by this
+    private long nextEntryId;
+    private int inflightEntries = 0;
+    // whether the entries are read by batches, until a batch read fails
+    private boolean batchReads = false;
+    private boolean batchReadInProgress = false;
+    private StatusCode status = StatusCode.EOK;
+    private boolean completed = false;
+    private long numEntriesCopied = 0;
+    private long numBytesCopied = 0;
+
+    public CopyLedgerFragmentProcessorV3(Request request, BookieRequestHandler requestHandler,
+                                         BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        this.copyRequest = request.getCopyLedgerFragmentRequest();
+        this.ledgerId = copyRequest.getLedgerId();
+        this.masterKey = copyRequest.getMasterKey().toByteArray();
+        this.nextEntryId = copyRequest.getFirstEntryId();
+        this.lastEntryId = copyRequest.getLastEntryId();
+        this.writeQuorumSize = copyRequest.getWriteQuorumSize();
+        this.ensemble = new ArrayList<>(copyRequest.getEnsembleCount());
+    }
+
+    @Override
+    public void run() {
+        startTimeNanos = MathUtils.nowInNano();
+        if (!isVersionCompatible()) {
+            complete(StatusCode.EBADVERSION);
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new copyLedgerFragment request: {}", request);
+        }
+        if (requestProcessor.getBookie().isReadOnly()
+                && !requestProcessor.getBookie().isAvailableForHighPriorityWrites()) {
+            LOG.warn("BookieServer is running as readonly mode, so rejecting the copy of ledger {}", ledgerId);
+            complete(StatusCode.EREADONLY);
+            return;
+        }
+        LedgerFragmentCopyClient copyClient = requestProcessor.getFragmentCopyClient();
+        if (copyClient == null) {
+            LOG.warn("The copy of ledger fragments is not enabled on this bookie, rejecting the copy of ledger {}",
+                    ledgerId);
+            complete(StatusCode.EBADREQ);
+            return;
+        }
+        try {
+            for (String address : copyRequest.getEnsembleList()) {
+                ensemble.add(address.isEmpty() ? null : BookieId.parse(address));
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.error("Invalid ensemble {} to copy ledger {} from", copyRequest.getEnsembleList(), ledgerId, e);
+            complete(StatusCode.EBADREQ);
+            return;
+        }
+        if (ensemble.isEmpty() || writeQuorumSize <= 0 || writeQuorumSize > ensemble.size()
+                || copyRequest.getFirstEntryId() < 0 || copyRequest.getFirstEntryId() > lastEntryId) {
+            LOG.error("Invalid copy of ledger {} requested: {}", ledgerId, copyRequest);
+            complete(StatusCode.EBADREQ);
+            return;
+        }
+        DataFormats.LedgerMetadataFormat.DigestType digestType =
+                DataFormats.LedgerMetadataFormat.DigestType.forNumber(copyRequest.getDigestType());
+        if (digestType == null) {
+            LOG.error("Unknown digest type {} to copy ledger {}", copyRequest.getDigestType(), ledgerId);
+            complete(StatusCode.EBADREQ);
+            return;
+        }
+        try {
+            digestManager = DigestManager.instantiate(ledgerId, copyRequest.getPassword().toByteArray(), digestType,
+                    requestProcessor.getAllocator(), false);
+        } catch (GeneralSecurityException e) {
+            LOG.error("Could not create the digest manager to copy ledger {}", ledgerId, e);
+            complete(StatusCode.EBADREQ);
+            return;
+        }
+        bookieClient = copyClient.getBookieClient();
+        maxInflightEntries = Math.max(1, requestProcessor.getServerCfg().getLedgerFragmentCopyMaxInflightEntries());
+        maxBatchReadSize = requestProcessor.getServerCfg().getNettyMaxFrameSizeBytes();
+        batchReads = maxInflightEntries > 1 && writeQuorumSize == ensemble.size();
+        // the registered bookies are looked up in the metadata store, the copy goes on on the copy threads
+        copyClient.getRegisteredBookies().whenCompleteAsync((registeredBookies, cause) -> {
+            if (cause != null) {
+                LOG.error("Could not get the bookies registered in the cluster to copy ledger {}", ledgerId, cause);
+                complete(StatusCode.EIO);
+            } else if (!retainRegisteredBookies(registeredBookies)) {
+                LOG.error("None of the bookies {} to copy ledger {} from is registered in the cluster",
+                        copyRequest.getEnsembleList(), ledgerId);
+                complete(StatusCode.EBADREQ);
+            } else {
+                copyEntries();
+            }
+        }, copyClient.getExecutor().chooseThread(ledgerId));
+    }
+
+    /**
+     * Reject the copy without starting it.
+     */
+    void reject(StatusCode result) {
+        startTimeNanos = MathUtils.nowInNano();
+        complete(result);
+    }
+
+    /**
+     * Stop reading from the bookies of the ensemble which are not registered in the cluster.
+     *
+     * @return true if the entries can be read from at least one bookie of the ensemble
+     */
+    private boolean retainRegisteredBookies(Set<BookieId> registeredBookies) {
+        boolean readable = false;
+        for (int i = 0; i < ensemble.size(); i++) {
+            BookieId bookie = ensemble.get(i);
+            if (bookie == null) {
+                continue;
+            }
+            if (registeredBookies.contains(bookie)) {
+                readable = true;
+            } else {
+                LOG.warn("Bookie {} is not registered in the cluster, not reading ledger {} from it",
+                        bookie, ledgerId);
+                ensemble.set(i, null);
+            }
+        }
+        return readable;
+    }
+
+    /**
+     * Start the copy of as many entries as can be in progress.
+     */
+    private void copyEntries() {
+        for (int i = 0; i < maxInflightEntries; i++) {
+            if (!copyNextEntries()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start the copy of the next entry, or of the next batch of entries when they are read by batches. A batch
+     * is only read once half of the entries in progress at most are left, so that the batches are not split
+     * into single entries as the entries of the previous batch complete.
+     *
+     * @return true if the copy of entries was started
+     */
+    private boolean copyNextEntries() {
+        long startEntryId;
+        int numEntries;
+        boolean batchRead;
+        StatusCode result;
+        synchronized (this) {
+            long remainingEntries = lastEntryId - nextEntryId + 1;
+            int freeEntries = maxInflightEntries - inflightEntries;
+            if (status == StatusCode.EOK && remainingEntries > 0 && !batchReadInProgress
+                    && freeEntries >= (batchReads ? Math.min(remainingEntries, (maxInflightEntries + 1) / 2) : 1)) {
+                startEntryId = nextEntryId;
+                numEntries = batchReads ? (int) Math.min(remainingEntries, freeEntries) : 1;
+                nextEntryId += numEntries;
+                inflightEntries += numEntries;
+                batchRead = batchReads;
+                batchReadInProgress = batchReads;
+                result = null;
+            } else if (inflightEntries == 0 && !completed) {
+                completed = true;
+                result = status;
+                startEntryId = BookieProtocol.INVALID_ENTRY_ID;
+                numEntries = 0;
+                batchRead = false;
+            } else {
+                return false;
+            }
+        }
+        if (result != null) {
+            complete(result);
+            return false;
+        }
+        if (batchRead) {
+            batchReadEntries(startEntryId, numEntries);
+        } else {
+            readEntry(startEntryId, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Read a batch of entries from a single bookie, every bookie of the ensemble storing all the entries.
+     */
+    private void batchReadEntries(long startEntryId, int numEntries) {
+        final BookieId bookie = getFirstReadableBookie(startEntryId);
+        bookieClient.batchReadEntries(bookie, ledgerId, startEntryId, numEntries, maxBatchReadSize,
+                (rc, ledgerId1, startEntryId1, entries, ctx) ->
+                        batchReadComplete(rc, bookie, startEntryId, numEntries, entries),
+                null, BookieProtocol.FLAG_NONE);
+    }
+
+    private BookieId getFirstReadableBookie(long entryId) {
+        for (int i = 0; i < ensemble.size(); i++) {
+            BookieId bookie = ensemble.get((int) ((entryId + i) % ensemble.size()));
+            if (bookie != null) {
+                return bookie;
+            }
+        }
+        // the bookies which are not registered are only dropped if another bookie is
+        throw new IllegalStateException("No bookie to read ledger " + ledgerId + " from");
+    }
+
+    /**
+     * Copy the entries of a batch read. A bookie returns fewer entries than asked when they do not fit in a
+     * response, the entries which were not returned are read again with the next batches. If the batch read
+     * fails, the entries are read one by one from then on, from the other bookies if needed.
+     */
+    private void batchReadComplete(int rc, BookieId bookie, long startEntryId, int numEntries,
+                                   ByteBufList entries) {
+        int numRead = rc == BKException.Code.OK && entries != null ? Math.min(entries.size(), numEntries) : 0;
+        if (numRead == 0) {
+            LOG.warn("Failed to batch read entries {} - {} of ledger {} from {} to copy them: {},"
+                    + " reading them one by one", startEntryId, startEntryId + numEntries - 1, ledgerId, bookie,
+                    BKException.getMessage(rc));
+        }
+        synchronized (this) {
+            // no other entries were started while the batch was read
+            inflightEntries -= numEntries - numRead;
+            nextEntryId = startEntryId + numRead;
+            batchReadInProgress = false;
+            if (numRead == 0) {
+                batchReads = false;
+            }
+        }
+        for (int i = 0; i < numRead; i++) {
+            long entryId = startEntryId + i;
+            ByteBuf entry = entries.getBuffer(i);
+            if (verifyEntry(entryId, entry, bookie)) {
+                entry.retain();
+                addEntry(entryId, entry);
+            } else {
+                readEntry(entryId, 0);
+            }
+        }
+        copyEntries();
+    }
+
+    /**
+     * Read an entry from a bookie of its write set, starting from the given position in the write set.
+     */
+    private void readEntry(long entryId, int writeSetIndex) {
+        for (int i = writeSetIndex; i < writeQuorumSize; i++) {
+            BookieId bookie = ensemble.get((int) ((entryId + i) % ensemble.size()));
+            if (bookie == null) {
+                continue;
+            }
+            final int nextIndex = i + 1;
+            bookieClient.readEntry(bookie, ledgerId, entryId, (rc, ledgerId1, entryId1, buffer, ctx) -> {
+                if (rc != BKException.Code.OK) {
+                    LOG.warn("Failed to read entry {} of ledger {} from {} to copy it: {}",
+                            entryId1, ledgerId1, bookie, BKException.getMessage(rc));
+                    readEntry(entryId1, nextIndex);
+                } else if (!verifyEntry(entryId1, buffer, bookie)) {
+                    readEntry(entryId1, nextIndex);
+                } else {
+                    buffer.retain();
+                    addEntry(entryId1, buffer);
+                }
+            }, null, BookieProtocol.FLAG_NONE);
+            return;
+        }
+        LOG.error("Could not read entry {} of ledger {} from any bookie to copy it", entryId, ledgerId);
+        entryCopied(StatusCode.ENOENTRY, 0);
+    }
+
+    /**
+     * @return true if the entry read is the expected entry of the ledger, and its digest matches its content
+     */
+    private boolean verifyEntry(long entryId, ByteBuf entry, BookieId bookie) {
+        try {
+            // the digest manager verifies the entry from the first index of the buffer, and moves its reader index
+            digestManager.verifyDigestAndReturnData(entryId, entry.slice());
+            return true;
+        } catch (BKException.BKDigestMatchException e) {
+            LOG.error("Read a corrupted entry {} of ledger {} from {}, not copying it", entryId, ledgerId, bookie);
+            return false;
+        }
+    }
+
+    private void addEntry(long entryId, ByteBuf entry) {
+        final int entrySize = entry.readableBytes();
+        StatusCode addStatus;
+        try {
+            requestProcessor.getBookie().recoveryAddEntry(entry, (rc, ledgerId1, entryId1, addr, ctx) -> {
+                if (rc == BookieProtocol.EOK) {
+                    entryCopied(StatusCode.EOK, entrySize);
+                } else {
+                    LOG.error("Failed to add entry {} of ledger {} copied from another bookie: {}",
+                            entryId1, ledgerId1, rc);
+                    entryCopied(StatusCode.EIO, 0);
+                }
+            }, null, masterKey);
+            return;
+        } catch (IOException e) {
+            LOG.error("Error writing entry:{} to ledger:{}", entryId, ledgerId, e);
+            addStatus = StatusCode.EIO;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while writing entry:{}", ledgerId, entryId, e);
+            addStatus = StatusCode.EUA;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            addStatus = StatusCode.EIO;
+        }
+        entryCopied(addStatus, 0);
+    }
+
+    private void entryCopied(StatusCode entryStatus, long entrySize) {
+        synchronized (this) {
+            inflightEntries--;
+            if (entryStatus == StatusCode.EOK) {
+                numEntriesCopied++;
+                numBytesCopied += entrySize;
+            } else if (status == StatusCode.EOK) {
+                status = entryStatus;
+            }
+        }
+        copyNextEntries();
+    }
+
+    private void complete(StatusCode result) {
+        long entries;
+        long bytes;
+        synchronized (this) {
+            entries = numEntriesCopied;
+            bytes = numBytesCopied;
+        }
+        RequestStats stats = requestProcessor.getRequestStats();
+        if (result == StatusCode.EOK) {
+            stats.copyLedgerFragmentStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos),
+                    TimeUnit.NANOSECONDS);
+        } else {
+            stats.copyLedgerFragmentStats.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos),
+                    TimeUnit.NANOSECONDS);
+        }
+        stats.copyLedgerFragmentBytesCounter.addCount(bytes);
+
+        CopyLedgerFragmentResponse copyResponse = CopyLedgerFragmentResponse.newBuilder()
+                .setStatus(result)
+                .setLedgerId(ledgerId)
+                .setNumEntriesCopied(entries)
+                .setNumBytesCopied(bytes)
+                .build();
+        Response resp = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(result)
+                .setCopyLedgerFragmentResponse(copyResponse)
+                .build();
+        sendResponse(result, resp, stats.copyLedgerFragmentRequestStats);
+    }
+}
@@ -22,12 +22,22 @@ package org.apache.bookkeeper.proto;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.client.BookKeeperClientStats;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.tls.SecurityException;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory;
 import org.apache.bookkeeper.tls.SecurityProviderFactoryFactory;
@@ -37,17 +47,37 @@ import org.slf4j.LoggerFactory;
 /**
  *  Provide a simple round-robin style channel pool. We could improve it later to do more
  *  fantastic things.
+ *
+ *  <p>When the pool is allowed to grow ({@code maxSize > coreSize}), ordering keys are hashed into a fixed
+ *  number of stripes, each one assigned to a channel. When the channel of a stripe is congested (too many
+ *  pending requests, or not writable because its outbound buffer is full) the stripe is moved to the least
+ *  loaded channel, and a new channel is opened if all of them are loaded and the pool is not at its max size.
+ *  A stripe is only moved when none of its requests are in flight on the old channel: the responses of the
+ *  adds, writeLac and forceLedger of a ledger are ordered per channel, so moving a stripe with requests in
+ *  flight could complete a later request of a ledger before an earlier one. Requests of a stripe choose their
+ *  channel and register their completion in it under the lock of the stripe, which the move also holds.
  */
 class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         GenericCallback<PerChannelBookieClient> {
 
     static final Logger LOG = LoggerFactory.getLogger(DefaultPerChannelBookieClientPool.class);
 
+    static final int NUM_STRIPES = 256;
+    private static final long MIN_REBALANCE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     final PerChannelBookieClientFactory factory;
     final BookieId address;
 
-    final PerChannelBookieClient[] clients;
+    volatile PerChannelBookieClient[] clients;
     final PerChannelBookieClient[] clientsV3Enforced;
+    final int maxSize;
+    final long congestionThreshold;
+    // stripe -> index of the channel in clients, null if the pool has a fixed size
+    final AtomicIntegerArray stripeToChannel;
+    // stripe -> lock held while choosing the channel of a request and registering its completion in it
+    final Object[] stripeLocks;
+    private volatile long lastRebalanceNanos = 0;
+    private boolean closed = false;
 
     final ClientConfiguration conf;
     SecurityHandlerFactory shFactory;
@@ -55,19 +85,53 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
     final AtomicInteger counter = new AtomicInteger(0);
     final AtomicLong errorCounter = new AtomicLong(0);
 
+    private final StatsLogger channelStatsLogger;
+    private final List<Gauge<Long>> outstandingGauges = new ArrayList<>();
+    private final Counter rebalanceCounter;
+
     DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
                                       BookieId address,
                                       int coreSize) throws SecurityException {
+        this(conf, factory, address, coreSize, coreSize, NullStatsLogger.INSTANCE);
+    }
+
+    DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
+                                      BookieId address,
+                                      int coreSize,
+                                      int maxSize,
+                                      StatsLogger statsLogger) throws SecurityException {
         checkArgument(coreSize > 0);
         this.factory = factory;
         this.address = address;
         this.conf = conf;
+        this.maxSize = Math.max(coreSize, maxSize);
+        this.congestionThreshold = conf.getChannelCongestionPendingRequestsThreshold();
 
         this.shFactory = SecurityProviderFactoryFactory.getSecurityProviderFactory(conf.getTLSProviderFactoryClass());
 
-        this.clients = new PerChannelBookieClient[coreSize];
+        this.channelStatsLogger = statsLogger.scope(BookKeeperClientStats.CHANNEL_SCOPE)
+                .scopeLabel(BookKeeperClientStats.BOOKIE_LABEL, address.toString());
+        this.rebalanceCounter = channelStatsLogger.getCounter(BookKeeperClientStats.CHANNEL_REBALANCES);
+
+        PerChannelBookieClient[] coreClients = new PerChannelBookieClient[coreSize];
         for (int i = 0; i < coreSize; i++) {
-            this.clients[i] = factory.create(address, this, shFactory, false);
+            coreClients[i] = factory.create(address, this, shFactory, false);
+            registerOutstandingGauge(i, coreClients[i]);
+        }
+        this.clients = coreClients;
+
+        if (this.maxSize > coreSize) {
+            this.stripeToChannel = new AtomicIntegerArray(NUM_STRIPES);
+            for (int i = 0; i < NUM_STRIPES; i++) {
+                stripeToChannel.set(i, i % coreSize);
+            }
+            this.stripeLocks = new Object[NUM_STRIPES];
+            for (int i = 0; i < NUM_STRIPES; i++) {
+                stripeLocks[i] = new Object();
+            }
+        } else {
+            this.stripeToChannel = null;
+            this.stripeLocks = null;
         }
 
         if (conf.getUseV2WireProtocol()) {
@@ -76,10 +140,35 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
                 this.clientsV3Enforced[i] = factory.create(address, this, shFactory, true);
             }
         } else {
-            this.clientsV3Enforced = this.clients;
+            this.clientsV3Enforced = null;
         }
     }
 
+    private void registerOutstandingGauge(int channelIndex, PerChannelBookieClient pcbc) {
+        Gauge<Long> gauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return pcbc.getNumPendingCompletionRequests();
+            }
+        };
+        channelStatsLogger.scopeLabel(BookKeeperClientStats.CHANNEL_LABEL, String.valueOf(channelIndex))
+                .registerGauge(BookKeeperClientStats.CHANNEL_OUTSTANDING_REQUESTS, gauge);
+        outstandingGauges.add(gauge);
+    }
+
+    private void unregisterOutstandingGauges() {
+        for (int i = 0; i < outstandingGauges.size(); i++) {
+            channelStatsLogger.scopeLabel(BookKeeperClientStats.CHANNEL_LABEL, String.valueOf(i))
+                    .unregisterGauge(BookKeeperClientStats.CHANNEL_OUTSTANDING_REQUESTS, outstandingGauges.get(i));
+        }
+        outstandingGauges.clear();
+    }
+
     @Override
     public void operationComplete(int rc, PerChannelBookieClient pcbc) {
         // nop
@@ -103,11 +192,87 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         int idx = MathUtils.signSafeMod(key, pcbc.length);
         return pcbc[idx];
     }
+
     private PerChannelBookieClient getClient(long key, boolean forceUseV3) {
-        if (forceUseV3) {
+        if (forceUseV3 && clientsV3Enforced != null) {
             return getClient(key, clientsV3Enforced);
         }
-        return getClient(key, clients);
+        if (stripeToChannel == null) {
+            return getClient(key, clients);
+        }
+        return clients[stripeToChannel.get(MathUtils.signSafeMod(key, NUM_STRIPES))];
+    }
+
+    private boolean isStriped(boolean forceUseV3) {
+        return stripeToChannel != null && !(forceUseV3 && clientsV3Enforced != null);
+    }
+
+    /**
+     * Get the channel of a stripe for sending a request, moving the stripe to another channel first
+     * if its current one is congested. Called with the lock of the stripe held.
+     */
+    private PerChannelBookieClient getClientForRequest(int stripe) {
+        int idx = stripeToChannel.get(stripe);
+        PerChannelBookieClient[] current = clients;
+        if (isCongested(current[idx])
+                && MathUtils.nowInNano() - lastRebalanceNanos >= MIN_REBALANCE_INTERVAL_NANOS) {
+            idx = rebalance(stripe, idx);
+            current = clients;
+        }
+        return current[idx];
+    }
+
+    private boolean isCongested(PerChannelBookieClient pcbc) {
+        return !pcbc.isWritable() || pcbc.getNumPendingCompletionRequests() >= congestionThreshold;
+    }
+
+    private synchronized int rebalance(int stripe, int congestedIdx) {
+        lastRebalanceNanos = MathUtils.nowInNano();
+        if (closed) {
+            return congestedIdx;
+        }
+        return moveStripe(stripe, congestedIdx);
+    }
+
+    private int moveStripe(int stripe, int congestedIdx) {
+        PerChannelBookieClient[] current = clients;
+        if (current[congestedIdx].hasPendingRequests(
+                ledgerId -> MathUtils.signSafeMod(ledgerId, NUM_STRIPES) == stripe)) {
+            // keep the order of the requests in flight, the stripe stays where it is until they are done
+            return congestedIdx;
+        }
+        int bestIdx = -1;
+        long bestLoad = Long.MAX_VALUE;
+        for (int i = 0; i < current.length; i++) {
+            if (i == congestedIdx || !current[i].isWritable()) {
+                continue;
+            }
+            long load = current[i].getNumPendingCompletionRequests();
+            if (load < bestLoad) {
+                bestLoad = load;
+                bestIdx = i;
+            }
+        }
+        if ((bestIdx < 0 || bestLoad >= congestionThreshold / 2) && current.length < maxSize) {
+            try {
+                PerChannelBookieClient pcbc = factory.create(address, this, shFactory, false);
+                PerChannelBookieClient[] grown = Arrays.copyOf(current, current.length + 1);
+                grown[current.length] = pcbc;
+                registerOutstandingGauge(current.length, pcbc);
+                clients = grown;
+                pcbc.connectIfNeededAndDoOp(this);
+                bestIdx = current.length;
+                LOG.info("Opened channel {} to bookie {}, channels are congested", bestIdx, address);
+            } catch (SecurityException e) {
+                LOG.warn("Failed to open a new channel to bookie {}", address, e);
+            }
+        }
+        if (bestIdx < 0) {
+            return congestedIdx;
+        }
+        stripeToChannel.set(stripe, bestIdx);
+        rebalanceCounter.inc();
+        return bestIdx;
     }
 
     @Override
@@ -117,7 +282,15 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     @Override
     public void obtain(GenericCallback<PerChannelBookieClient> callback, long key, boolean forceUseV3) {
-        getClient(key, forceUseV3).connectIfNeededAndDoOp(callback);
+        if (!isStriped(forceUseV3)) {
+            getClient(key, forceUseV3).connectIfNeededAndDoOp(callback);
+            return;
+        }
+        int stripe = MathUtils.signSafeMod(key, NUM_STRIPES);
+        // the request is registered in the channel, or queued until it connects, by the time the op returns
+        synchronized (stripeLocks[stripe]) {
+            getClientForRequest(stripe).connectIfNeededAndDoOp(callback);
+        }
     }
 
     @Override
@@ -127,10 +300,12 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     @Override
     public void checkTimeoutOnPendingOperations() {
-        for (int i = 0; i < clients.length; i++) {
-            clients[i].checkTimeoutOnPendingOperations();
-            if (clients != clientsV3Enforced) {
-                clientsV3Enforced[i].checkTimeoutOnPendingOperations();
+        for (PerChannelBookieClient pcbc : clients) {
+            pcbc.checkTimeoutOnPendingOperations();
+        }
+        if (clientsV3Enforced != null) {
+            for (PerChannelBookieClient pcbc : clientsV3Enforced) {
+                pcbc.checkTimeoutOnPendingOperations();
             }
         }
     }
@@ -142,20 +317,30 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     @Override
     public void disconnect(boolean wait) {
-        for (int i = 0; i < clients.length; i++) {
-            clients[i].disconnect();
-            if (clients != clientsV3Enforced) {
-                clientsV3Enforced[i].disconnect();
+        for (PerChannelBookieClient pcbc : clients) {
+            pcbc.disconnect();
+        }
+        if (clientsV3Enforced != null) {
+            for (PerChannelBookieClient pcbc : clientsV3Enforced) {
+                pcbc.disconnect();
             }
         }
     }
 
     @Override
     public void close(boolean wait) {
-        for (int i = 0; i < clients.length; i++) {
-            clients[i].close(wait);
-            if (clients != clientsV3Enforced) {
-                clientsV3Enforced[i].close(wait);
+        PerChannelBookieClient[] current;
+        synchronized (this) {
+            closed = true;
+            current = clients;
+            unregisterOutstandingGauges();
+        }
+        for (PerChannelBookieClient pcbc : current) {
+            pcbc.close(wait);
+        }
+        if (clientsV3Enforced != null) {
+            for (PerChannelBookieClient pcbc : clientsV3Enforced) {
+                pcbc.close(wait);
             }
         }
     }
@@ -166,7 +351,7 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         for (PerChannelBookieClient pcbc : clients) {
             numPending += pcbc.getNumPendingCompletionRequests();
         }
-        if (clients != clientsV3Enforced) {
+        if (clientsV3Enforced != null) {
             for (PerChannelBookieClient pcbc : clientsV3Enforced) {
                 numPending += pcbc.getNumPendingCompletionRequests();
             }
@@ -0,0 +1,382 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_CLASS_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SCHEDULER_QUEUED_REQUESTS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SCHEDULER_QUEUE_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SCHEDULER_REJECTED_REQUESTS;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.auth.BookKeeperPrincipal;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the requests of the different clients fairly on an {@link OrderedExecutor}, or on any other
+ * {@link TaskExecutor}.
+ *
+ * <p>Requests are classified by the principal the client authenticated as or, for anonymous clients, by the
+ * host they connect from. Every class has its own queue. Only a bounded number of requests is handed to each
+ * thread of the executor at any time, and the next one is taken from the class queues in weighted round robin:
+ * a class of weight {@code n} gets {@code n} requests executed per round. A client flooding the bookie (e.g. a
+ * catch-up read of a whole ledger) only fills its own queue and cannot starve the other clients of worker
+ * threads, and the requests for a busy thread never hold back the requests for the idle ones.
+ *
+ * <p>The requests of a class are handed to the executor in FIFO order, so the requests of a client on the same
+ * ledger are still executed in order. A class whose next request is for a busy thread gives its turn to the
+ * next class.
+ *
+ * <p>A class only lives as long as it has open channels or queued requests, so that the classes of the clients
+ * that went away, and their gauges, don't pile up.
+ */
+class FairRequestScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FairRequestScheduler.class);
+
+    static final String ANONYMOUS_CLASS = "anonymous";
+
+    private final String name;
+    private final TaskExecutor executor;
+    private final int maxTasksInFlightPerThread;
+    private final int maxQueuedTasksPerClass;
+    private final Map<String, Integer> classWeights;
+    private final StatsLogger statsLogger;
+    private final AttributeKey<RequestClass> requestClassKey;
+    // guarded by this
+    private final Map<String, RequestClass> requestClasses = new HashMap<>();
+
+    // classes with queued requests, in round robin order. Guarded by this.
+    private final ArrayDeque<RequestClass> activeClasses = new ArrayDeque<>();
+    // thread of the executor -> number of requests handed to it. Guarded by this.
+    private final int[] tasksInFlight;
+
+    /**
+     * Executes the requests handed by the scheduler. The requests are bound to a fixed number of threads by their
+     * ordering key, and the scheduler caps the requests handed to each thread.
+     */
+    interface TaskExecutor {
+
+        int getNumThreads();
+
+        /**
+         * @return the thread the requests with the given ordering key are executed on, between 0 and
+         *         {@link #getNumThreads()}
+         */
+        int chooseThreadIndex(long orderingKey);
+
+        void executeOrdered(long orderingKey, Runnable task) throws RejectedExecutionException;
+    }
+
+    FairRequestScheduler(String name, OrderedExecutor executor, int maxTasksInFlightPerThread,
+                         int maxQueuedTasksPerClass, String[] classWeights, StatsLogger statsLogger) {
+        this(name, toTaskExecutor(executor), maxTasksInFlightPerThread, maxQueuedTasksPerClass, classWeights,
+                statsLogger);
+    }
+
+    private static TaskExecutor toTaskExecutor(OrderedExecutor executor) {
+        return new TaskExecutor() {
+            @Override
+            public int getNumThreads() {
+                return executor.getNumThreads();
+            }
+
+            @Override
+            public int chooseThreadIndex(long orderingKey) {
+                return executor.chooseThreadIndex(orderingKey);
+            }
+
+            @Override
+            public void executeOrdered(long orderingKey, Runnable task) {
+                executor.executeOrdered(orderingKey, task);
+            }
+        };
+    }
+
+    /**
+     * @param name name of the scheduler, it has to be unique
+     * @param executor executor running the requests
+     * @param maxTasksInFlightPerThread max number of requests handed to each thread of the executor at any time
+     * @param maxQueuedTasksPerClass max number of requests of a class waiting to be handed to the executor
+     * @param classWeights weights of the classes as {@code class:weight}, the classes not listed have weight 1
+     */
+    FairRequestScheduler(String name, TaskExecutor executor, int maxTasksInFlightPerThread,
+                         int maxQueuedTasksPerClass, String[] classWeights, StatsLogger statsLogger) {
+        this.name = name;
+        this.executor = executor;
+        this.maxTasksInFlightPerThread = Math.max(1, maxTasksInFlightPerThread);
+        this.tasksInFlight = new int[executor.getNumThreads()];
+        this.maxQueuedTasksPerClass = maxQueuedTasksPerClass;
+        this.classWeights = parseClassWeights(classWeights);
+        this.statsLogger = statsLogger;
+        this.requestClassKey = AttributeKey.valueOf(FairRequestScheduler.class, name);
+    }
+
+    static Map<String, Integer> parseClassWeights(String[] classWeights) {
+        Map<String, Integer> weights = new HashMap<>();
+        if (classWeights == null) {
+            return weights;
+        }
+        for (String classWeight : classWeights) {
+            int idx = classWeight.lastIndexOf(':');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Invalid request class weight : " + classWeight);
+            }
+            int weight = Integer.parseInt(classWeight.substring(idx + 1).trim());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid request class weight : " + classWeight);
+            }
+            weights.put(classWeight.substring(0, idx).trim(), weight);
+        }
+        return weights;
+    }
+
+    /**
+     * Schedule a request received from the given channel.
+     *
+     * @param onRejected run instead of the request if the executor rejects it once it is dequeued, it has to
+     *                   respond to the client and release whatever the request holds
+     * @throws RejectedExecutionException if there are already too many requests queued for the class of the channel
+     */
+    void executeOrdered(Channel channel, long orderingKey, Runnable task, Runnable onRejected)
+            throws RejectedExecutionException {
+        RequestClass requestClass = getRequestClass(channel);
+        List<ScheduledTask> rejected;
+        synchronized (this) {
+            if (requestClass.queue.size() >= maxQueuedTasksPerClass) {
+                requestClass.rejectedRequests.inc();
+                throw new RejectedExecutionException("Too many requests queued for " + requestClass.id);
+            }
+            requestClass.queue.add(new ScheduledTask(orderingKey, executor.chooseThreadIndex(orderingKey), task,
+                    onRejected));
+            requestClass.queued = requestClass.queue.size();
+            if (!requestClass.active) {
+                requestClass.active = true;
+                requestClass.credits = requestClass.weight;
+                activeClasses.add(requestClass);
+            }
+            rejected = dispatch();
+        }
+        reject(rejected);
+    }
+
+    private void onTaskDone(int thread) {
+        List<ScheduledTask> rejected;
+        synchronized (this) {
+            --tasksInFlight[thread];
+            rejected = dispatch();
+        }
+        reject(rejected);
+    }
+
+    // Called holding the lock, so that the requests of a class are handed to the executor in order.
+    // Returns the requests rejected by the executor, to be failed once the lock is released.
+    private List<ScheduledTask> dispatch() {
+        List<ScheduledTask> rejected = null;
+        // number of classes in a row whose next request is for a busy thread
+        int waiting = 0;
+        while (waiting < activeClasses.size()) {
+            RequestClass requestClass = activeClasses.peek();
+            ScheduledTask task = requestClass.queue.peek();
+            if (tasksInFlight[task.thread] >= maxTasksInFlightPerThread) {
+                // keep the requests of the class in order, the next class takes its turn
+                activeClasses.add(activeClasses.poll());
+                ++waiting;
+                continue;
+            }
+            waiting = 0;
+            requestClass.queue.poll();
+            requestClass.queued = requestClass.queue.size();
+            if (requestClass.queue.isEmpty()) {
+                activeClasses.poll();
+                requestClass.active = false;
+                evictIfIdle(requestClass);
+            } else if (--requestClass.credits == 0) {
+                // the class used its share of this round, move to the next one
+                activeClasses.poll();
+                requestClass.credits = requestClass.weight;
+                activeClasses.add(requestClass);
+            }
+
+            requestClass.queueWaitStats.registerSuccessfulEvent(
+                    MathUtils.elapsedNanos(task.enqueueNanos), TimeUnit.NANOSECONDS);
+            try {
+                executor.executeOrdered(task.orderingKey, task);
+                ++tasksInFlight[task.thread];
+            } catch (RejectedExecutionException e) {
+                // the executor queue is full or it is shutting down
+                requestClass.rejectedRequests.inc();
+                if (rejected == null) {
+                    rejected = new ArrayList<>();
+                }
+                rejected.add(task);
+            }
+        }
+        return rejected;
+    }
+
+    private void reject(List<ScheduledTask> rejected) {
+        if (rejected == null) {
+            return;
+        }
+        for (ScheduledTask task : rejected) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Request {} scheduled on {} rejected by the executor", task, name);
+            }
+            task.onRejected.run();
+        }
+    }
+
+    private RequestClass getRequestClass(Channel channel) {
+        Attribute<RequestClass> attr = channel.attr(requestClassKey);
+        RequestClass requestClass = attr.get();
+        if (requestClass == null) {
+            // the auth handler holds the requests until the client is authenticated, so the principal is final here
+            String id = classify(channel);
+            synchronized (this) {
+                requestClass = requestClasses.computeIfAbsent(id, RequestClass::new);
+                ++requestClass.channels;
+            }
+            attr.set(requestClass);
+            final RequestClass channelClass = requestClass;
+            channel.closeFuture().addListener(future -> releaseRequestClass(channelClass));
+        }
+        return requestClass;
+    }
+
+    private synchronized void releaseRequestClass(RequestClass requestClass) {
+        --requestClass.channels;
+        evictIfIdle(requestClass);
+    }
+
+    // Called holding the lock
+    private void evictIfIdle(RequestClass requestClass) {
+        if (requestClass.channels == 0 && !requestClass.active) {
+            requestClasses.remove(requestClass.id, requestClass);
+            requestClass.unregisterStats();
+        }
+    }
+
+    static String classify(Channel channel) {
+        BookieNettyServer.BookieSideConnectionPeerContextHandler contextHandler =
+                channel.pipeline().get(BookieNettyServer.BookieSideConnectionPeerContextHandler.class);
+        if (contextHandler != null) {
+            BookKeeperPrincipal principal = contextHandler.getConnectionPeer().getAuthorizedId();
+            if (principal != null && !BookKeeperPrincipal.ANONYMOUS.equals(principal)) {
+                return principal.getName();
+            }
+        }
+        SocketAddress address = channel.remoteAddress();
+        if (address instanceof InetSocketAddress) {
+            return ((InetSocketAddress) address).getHostString();
+        }
+        return ANONYMOUS_CLASS;
+    }
+
+    private final class ScheduledTask implements Runnable {
+        final long orderingKey;
+        final int thread;
+        final Runnable task;
+        final Runnable onRejected;
+        final long enqueueNanos;
+
+        ScheduledTask(long orderingKey, int thread, Runnable task, Runnable onRejected) {
+            this.orderingKey = orderingKey;
+            this.thread = thread;
+            this.task = task;
+            this.onRejected = onRejected;
+            this.enqueueNanos = MathUtils.nowInNano();
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                onTaskDone(thread);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return task.toString();
+        }
+    }
+
+    private final class RequestClass {
+        final String id;
+        final int weight;
+        // guarded by the scheduler lock
+        final ArrayDeque<ScheduledTask> queue = new ArrayDeque<>();
+        boolean active = false;
+        int credits;
+        // number of open channels classified in this class, guarded by the scheduler lock
+        int channels = 0;
+        volatile int queued = 0;
+
+        final StatsLogger classStatsLogger;
+        final OpStatsLogger queueWaitStats;
+        final Counter rejectedRequests;
+        final Gauge<Number> queuedGauge;
+
+        RequestClass(String id) {
+            this.id = id;
+            this.weight = classWeights.getOrDefault(id, 1);
+            this.classStatsLogger = statsLogger.scopeLabel(REQUEST_CLASS_LABEL, id);
+            this.queueWaitStats = classStatsLogger.getOpStatsLogger(SCHEDULER_QUEUE_WAIT);
+            this.rejectedRequests = classStatsLogger.getCounter(SCHEDULER_REJECTED_REQUESTS);
+            this.queuedGauge = new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return queued;
+                }
+            };
+            classStatsLogger.registerGauge(SCHEDULER_QUEUED_REQUESTS, queuedGauge);
+        }
+
+        void unregisterStats() {
+            classStatsLogger.unregisterGauge(SCHEDULER_QUEUED_REQUESTS, queuedGauge);
+        }
+    }
+}
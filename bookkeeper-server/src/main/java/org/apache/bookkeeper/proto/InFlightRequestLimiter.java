@@ -0,0 +1,239 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.DirectMemoryBudget;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the requests in progress on a bookie without ever blocking the thread that admits them.
+ *
+ * <p>A request is always admitted, since it was already read from the socket. When the requests (or
+ * bytes) in progress go over the limit, auto-read is disabled on the channel the request came from,
+ * so that no more requests are read from it, and it is re-enabled once enough requests completed.
+ * Other channels sharing the same event loop are not affected. The requests in progress can only
+ * exceed the limit by the requests already read from the socket when a channel is paused.
+ *
+ * <p>Past half the limit, when several channels have requests in progress, the channels holding at
+ * least their fair share of the bytes in progress, i.e. the bytes in progress divided by the number
+ * of channels with requests in progress, are paused too. This way a client pushing large entries is
+ * throttled first, while clients with few small requests keep being served up to the limit. Paused
+ * channels are resumed once the requests in progress are back under half the limit.
+ *
+ * <p>When a direct memory budget is given, the bytes in progress are also reserved in it, and every
+ * channel is paused while the budget is exceeded, before the allocator runs out of memory. Since other
+ * consumers share the budget, the channels are resumed anyway once no request is in progress.
+ */
+class InFlightRequestLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InFlightRequestLimiter.class);
+
+    // Number of limiters that currently want auto-read disabled on a channel, since both the adds and the
+    // reads limiters can pause the same channel.
+    private static final AttributeKey<AtomicInteger> PAUSE_HOLDS =
+            AttributeKey.valueOf(InFlightRequestLimiter.class, "pauseHolds");
+
+    /**
+     * Stats of the limiter.
+     */
+    interface Listener {
+        void onChannelPaused();
+
+        void onChannelResumed(long pausedNanos);
+    }
+
+    private final String name;
+    private final int maxRequests;
+    private final long maxBytes;
+    private final Listener listener;
+    private final AttributeKey<ChannelUsage> usageKey;
+    // null if the bytes in progress are not accounted in the direct memory budget
+    private final DirectMemoryBudget.Consumer memoryBudget;
+
+    private final AtomicInteger requestsInProgress = new AtomicInteger(0);
+    private final AtomicLong bytesInProgress = new AtomicLong(0);
+    private final AtomicInteger activeChannels = new AtomicInteger(0);
+    private final Queue<ChannelUsage> pausedChannels = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param name name of the limited requests, it has to be unique
+     * @param maxRequests max number of requests in progress, 0 == unlimited
+     * @param maxBytes max number of bytes in progress, 0 == unlimited
+     */
+    InFlightRequestLimiter(String name, int maxRequests, long maxBytes, Listener listener) {
+        this(name, maxRequests, maxBytes, null, listener);
+    }
+
+    /**
+     * @param memoryBudget where to reserve the bytes in progress, null if they are not accounted
+     */
+    InFlightRequestLimiter(String name, int maxRequests, long maxBytes, DirectMemoryBudget.Consumer memoryBudget,
+                           Listener listener) {
+        this.name = name;
+        this.memoryBudget = memoryBudget;
+        this.maxRequests = maxRequests;
+        this.maxBytes = maxBytes;
+        this.listener = listener;
+        this.usageKey = AttributeKey.valueOf(InFlightRequestLimiter.class, name);
+    }
+
+    boolean isEnabled() {
+        return maxRequests > 0 || maxBytes > 0 || memoryBudget != null;
+    }
+
+    void onRequestStart(Channel channel, long bytes) {
+        ChannelUsage usage = getUsage(channel);
+        int requests = requestsInProgress.incrementAndGet();
+        long totalBytes = bytesInProgress.addAndGet(bytes);
+        if (usage.requests.getAndIncrement() == 0) {
+            activeChannels.incrementAndGet();
+        }
+        long channelBytes = usage.bytes.addAndGet(bytes);
+
+        if (memoryBudget != null && !memoryBudget.reserve(bytes)) {
+            pause(usage);
+        } else if (isOverLimit(requests, totalBytes, 1)) {
+            pause(usage);
+        } else if (isOverLimit(requests, totalBytes, 2)) {
+            int channels = activeChannels.get();
+            if (channels > 1 && channelBytes >= totalBytes / channels) {
+                pause(usage);
+            }
+        }
+    }
+
+    void onRequestFinish(Channel channel, long bytes) {
+        ChannelUsage usage = channel.attr(usageKey).get();
+        int requests = requestsInProgress.decrementAndGet();
+        long totalBytes = bytesInProgress.addAndGet(-bytes);
+        if (memoryBudget != null) {
+            memoryBudget.release(bytes);
+        }
+        if (usage != null) {
+            usage.bytes.addAndGet(-bytes);
+            if (usage.requests.decrementAndGet() == 0) {
+                activeChannels.decrementAndGet();
+            }
+        }
+        if (!pausedChannels.isEmpty() && canResume(requests, totalBytes)) {
+            resumePausedChannels();
+        }
+    }
+
+    int getPausedChannels() {
+        return pausedChannels.size();
+    }
+
+    private boolean canResume(int requests, long bytes) {
+        return requests == 0
+                || (!isOverLimit(requests, bytes, 2) && (memoryBudget == null || !memoryBudget.isOverLimit()));
+    }
+
+    /**
+     * Whether the requests or bytes in progress are over the given fraction (1 / divisor) of the limit.
+     */
+    private boolean isOverLimit(int requests, long bytes, int divisor) {
+        return (maxRequests > 0 && (long) requests * divisor > maxRequests)
+                || (maxBytes > 0 && bytes * divisor > maxBytes);
+    }
+
+    private ChannelUsage getUsage(Channel channel) {
+        Attribute<ChannelUsage> attr = channel.attr(usageKey);
+        ChannelUsage usage = attr.get();
+        if (usage == null) {
+            usage = new ChannelUsage(channel);
+            ChannelUsage existing = attr.setIfAbsent(usage);
+            if (existing != null) {
+                usage = existing;
+            }
+        }
+        return usage;
+    }
+
+    private void pause(ChannelUsage usage) {
+        if (!usage.paused.compareAndSet(false, true)) {
+            return;
+        }
+        usage.pausedAtNanos = MathUtils.nowInNano();
+        Attribute<AtomicInteger> holds = usage.channel.attr(PAUSE_HOLDS);
+        holds.setIfAbsent(new AtomicInteger(0));
+        if (holds.get().getAndIncrement() == 0) {
+            usage.channel.config().setAutoRead(false);
+        }
+        pausedChannels.add(usage);
+        listener.onChannelPaused();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Too many {} requests in progress, disabled autoread on channel {}", name, usage.channel);
+        }
+
+        // The channel has at least a request in progress, so its completion will resume it in any case.
+        // Checking again here only shortens the pause if all the other requests completed meanwhile.
+        if (canResume(requestsInProgress.get(), bytesInProgress.get())) {
+            resumePausedChannels();
+        }
+    }
+
+    private void resumePausedChannels() {
+        ChannelUsage usage;
+        while (canResume(requestsInProgress.get(), bytesInProgress.get())
+                && (usage = pausedChannels.poll()) != null) {
+            resume(usage);
+        }
+    }
+
+    private void resume(ChannelUsage usage) {
+        if (!usage.paused.compareAndSet(true, false)) {
+            return;
+        }
+        if (usage.channel.attr(PAUSE_HOLDS).get().decrementAndGet() == 0) {
+            usage.channel.config().setAutoRead(true);
+        }
+        long pausedNanos = MathUtils.elapsedNanos(usage.pausedAtNanos);
+        listener.onChannelResumed(pausedNanos);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Re-enabled autoread on channel {} after {} requests pause of {} nanos",
+                    usage.channel, name, pausedNanos);
+        }
+    }
+
+    private static final class ChannelUsage {
+        final Channel channel;
+        final AtomicInteger requests = new AtomicInteger(0);
+        final AtomicLong bytes = new AtomicLong(0);
+        final AtomicBoolean paused = new AtomicBoolean(false);
+        volatile long pausedAtNanos;
+
+        ChannelUsage(Channel channel) {
+            this.channel = channel;
+        }
+    }
+}
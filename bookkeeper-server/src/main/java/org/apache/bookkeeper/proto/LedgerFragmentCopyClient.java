@@ -0,0 +1,143 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.DefaultBookieAddressResolver;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.RegistrationClient;
+import org.apache.bookkeeper.meta.MetadataClientDriver;
+import org.apache.bookkeeper.meta.MetadataDrivers;
+import org.apache.bookkeeper.meta.exceptions.MetadataException;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.EventLoopUtil;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The client a bookie uses to read the entries of the ledger fragments it is asked to copy from the other bookies.
+ *
+ * <p>The bookies are passed by id in the copy requests, and they are resolved through their registration in the
+ * metadata store of the cluster, so a bookie never connects to an address that is not a bookie of its cluster.
+ * The entries are read with the v2 protocol, which supports the batch reads.
+ */
+class LedgerFragmentCopyClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LedgerFragmentCopyClient.class);
+
+    private final EventLoopGroup eventLoopGroup;
+    private final OrderedExecutor executor;
+    private final ScheduledExecutorService scheduler;
+    private final MetadataClientDriver metadataDriver;
+    private final BookieClient bookieClient;
+
+    LedgerFragmentCopyClient(ServerConfiguration serverCfg, ByteBufAllocator allocator, StatsLogger statsLogger)
+            throws IOException {
+        ClientConfiguration conf = new ClientConfiguration(serverCfg);
+        conf.setUseV2WireProtocol(true);
+        this.eventLoopGroup = EventLoopUtil.getClientEventLoopGroup(conf,
+                new DefaultThreadFactory("LedgerFragmentCopyIO"));
+        this.executor = OrderedExecutor.newBuilder()
+                .name("LedgerFragmentCopyWorker")
+                .numThreads(1)
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory("LedgerFragmentCopyScheduler"));
+        try {
+            this.metadataDriver = MetadataDrivers.getClientDriver(URI.create(conf.getMetadataServiceUri()));
+            this.metadataDriver.initialize(conf, scheduler, statsLogger, Optional.empty());
+        } catch (ConfigurationException | MetadataException e) {
+            shutdownExecutors();
+            throw new IOException("Failed to initialize the metadata client driver of the ledger fragment copies", e);
+        }
+        BookieAddressResolver bookieAddressResolver =
+                new DefaultBookieAddressResolver(metadataDriver.getRegistrationClient());
+        try {
+            this.bookieClient = new BookieClientImpl(conf, eventLoopGroup, allocator, executor, scheduler,
+                    statsLogger, bookieAddressResolver);
+        } catch (IOException e) {
+            metadataDriver.close();
+            shutdownExecutors();
+            throw e;
+        }
+    }
+
+    BookieClient getBookieClient() {
+        return bookieClient;
+    }
+
+    /**
+     * @return the executor the copies run on, and the bookie client completes the reads on
+     */
+    OrderedExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Get the bookies registered in the cluster, the writable and the read only ones. Reading them also caches
+     * their addresses, so that the bookie client resolves them without waiting for the metadata store.
+     *
+     * @return the future of the ids of the registered bookies
+     */
+    CompletableFuture<Set<BookieId>> getRegisteredBookies() {
+        RegistrationClient registrationClient = metadataDriver.getRegistrationClient();
+        return registrationClient.getWritableBookies().thenCombine(registrationClient.getReadOnlyBookies(),
+                (writable, readOnly) -> {
+                    Set<BookieId> bookies = new HashSet<>(writable.getValue());
+                    bookies.addAll(readOnly.getValue());
+                    return bookies;
+                });
+    }
+
+    void close() {
+        bookieClient.close();
+        metadataDriver.close();
+        shutdownExecutors();
+    }
+
+    private void shutdownExecutors() {
+        scheduler.shutdown();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warn("The ledger fragment copy worker did not shutdown cleanly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        eventLoopGroup.shutdownGracefully();
+    }
+}
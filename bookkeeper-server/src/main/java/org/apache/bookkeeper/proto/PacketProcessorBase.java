@@ -38,6 +38,8 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
     BookieRequestHandler requestHandler;
     BookieRequestProcessor requestProcessor;
     long enqueueNanos;
+    // null if the request is not traced
+    RequestTrace trace;
 
     protected void init(T request, BookieRequestHandler requestHandler, BookieRequestProcessor requestProcessor) {
         this.request = request;
@@ -51,6 +53,32 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
         requestHandler = null;
         requestProcessor = null;
         enqueueNanos = -1;
+        if (trace != null) {
+            trace.recycle();
+            trace = null;
+        }
+    }
+
+    /**
+     * Start tracing the request, if it is sampled. The request is received when the IO thread starts to decode it.
+     */
+    protected void startTrace(RequestTrace.Op op, long ledgerId, long entryId) {
+        RequestTracer tracer = requestProcessor.getRequestTracer();
+        if (!tracer.isEnabled()) {
+            return;
+        }
+        long decodeStartNanos = requestHandler.getDecodeStartNanos();
+        trace = tracer.startTrace(op, ledgerId, entryId, decodeStartNanos > 0 ? decodeStartNanos : enqueueNanos);
+        if (trace != null && decodeStartNanos > 0) {
+            trace.mark(RequestTrace.Stage.DECODE, enqueueNanos);
+        }
+    }
+
+    protected void finishTrace(boolean success) {
+        if (trace != null) {
+            requestProcessor.getRequestTracer().finish(trace, success);
+            trace = null;
+        }
     }
 
     protected boolean isVersionCompatible() {
@@ -68,7 +96,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
 
     protected void sendWriteReqResponse(int rc, Object response, OpStatsLogger statsLogger) {
         sendResponse(rc, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(requestHandler.ctx().channel(), getAddRequestSize());
     }
 
     protected void sendReadReqResponse(int rc, Object response, OpStatsLogger statsLogger, boolean throttle) {
@@ -77,7 +105,14 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
         } else {
             sendResponse(rc, response, statsLogger);
         }
-        requestProcessor.onReadRequestFinish();
+        requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
+    }
+
+    /**
+     * @return the size the request was accounted for in {@link BookieRequestProcessor#onAddRequestStart}
+     */
+    protected long getAddRequestSize() {
+        return 0L;
     }
 
     protected void sendResponse(int rc, Object response, OpStatsLogger statsLogger) {
@@ -184,18 +219,21 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
             requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
                     .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
         }
+        if (trace != null) {
+            trace.mark(RequestTrace.Stage.QUEUE);
+        }
 
         if (!isVersionCompatible()) {
             sendResponse(BookieProtocol.EBADVERSION,
                          ResponseBuilder.buildErrorResponse(BookieProtocol.EBADVERSION, request),
                          requestProcessor.getRequestStats().getReadRequestStats());
             if (request instanceof BookieProtocol.ReadRequest) {
-                requestProcessor.onReadRequestFinish();
+                requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
             }
             if (request instanceof BookieProtocol.ParsedAddRequest) {
                 ((BookieProtocol.ParsedAddRequest) request).release();
                 request.recycle();
-                requestProcessor.onAddRequestFinish();
+                requestProcessor.onAddRequestFinish(requestHandler.ctx().channel(), getAddRequestSize());
             }
             return;
         }
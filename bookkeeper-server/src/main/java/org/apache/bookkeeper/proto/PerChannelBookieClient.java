@@ -74,7 +74,6 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -83,6 +82,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiPredicate;
+import java.util.function.LongPredicate;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import lombok.SneakyThrows;
@@ -98,6 +98,7 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyLedgerFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
@@ -108,6 +109,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRequest;
@@ -130,7 +132,6 @@ import org.apache.bookkeeper.tls.SecurityHandlerFactory.NodeType;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.StringUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
-import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -170,15 +171,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long readEntryTimeoutNanos;
     final int maxFrameSize;
     final long getBookieInfoTimeoutNanos;
+    final long copyLedgerFragmentTimeoutNanos;
     final int startTLSTimeout;
 
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
             ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().autoShrink(true).build();
 
-    // Map that hold duplicated read requests. The idea is to only use this map (synchronized) when there is a duplicate
-    // read request for the same ledgerId/entryId
-    private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
-        new SynchronizedHashMultiMap<>();
+    // Pending v2 entry requests, matched by (ledgerId, entryId, operation type) without allocating any key.
+    // Duplicated requests for the same entry are tracked by the table itself.
+    private final V2CompletionTable v2CompletionObjects = new V2CompletionTable();
 
     private final StatsLogger statsLogger;
     @StatsDoc(
@@ -258,6 +259,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final OpStatsLogger connectTimer;
     protected final OpStatsLogger getListOfEntriesOfLedgerCompletionOpLogger;
     protected final OpStatsLogger getListOfEntriesOfLedgerCompletionTimeoutOpLogger;
+    protected final OpStatsLogger copyLedgerFragmentOpLogger;
+    protected final OpStatsLogger copyLedgerFragmentTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.NETTY_EXCEPTION_CNT,
         help = "the number of exceptions received from this channel"
@@ -386,6 +389,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.addEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryTimeout());
         this.readEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getReadEntryTimeout());
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
+        this.copyLedgerFragmentTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getCopyLedgerFragmentTimeout());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
@@ -418,6 +422,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         startTLSTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_START_TLS_OP);
         getListOfEntriesOfLedgerCompletionTimeoutOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.TIMEOUT_GET_LIST_OF_ENTRIES_OF_LEDGER);
+        copyLedgerFragmentOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.COPY_LEDGER_FRAGMENT_OP);
+        copyLedgerFragmentTimeoutOpLogger = statsLogger
+                .getOpStatsLogger(BookKeeperClientStats.TIMEOUT_COPY_LEDGER_FRAGMENT);
         exceptionCounter = statsLogger.getCounter(BookKeeperClientStats.NETTY_EXCEPTION_CNT);
         connectTimer = statsLogger.getOpStatsLogger(BookKeeperClientStats.CLIENT_CONNECT_TIMER);
         addEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.ADD_OP_OUTSTANDING);
@@ -512,7 +519,31 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     protected long getNumPendingCompletionRequests() {
-        return completionObjects.size();
+        return completionObjects.size() + v2CompletionObjects.size();
+    }
+
+    /**
+     * Check whether a request of any ledger accepted by the filter is still waiting for its response on this
+     * channel. Requests queued while the channel is connecting are not matched by ledger, so they always count.
+     *
+     * <p>It walks all the pending completions, so it is only meant for infrequent checks.
+     */
+    boolean hasPendingRequests(LongPredicate ledgerFilter) {
+        synchronized (this) {
+            if (!pendingOps.isEmpty()) {
+                return true;
+            }
+        }
+        if (v2CompletionObjects.anyMatch(completion -> ledgerFilter.test(completion.ledgerId))) {
+            return true;
+        }
+        boolean[] found = new boolean[1];
+        completionObjects.forEach((key, completion) -> {
+            if (ledgerFilter.test(completion.ledgerId)) {
+                found[0] = true;
+            }
+        });
+        return found[0];
     }
 
     protected ChannelFuture connect() {
@@ -771,8 +802,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 cb.writeComplete(BKException.Code.IllegalOpException, ledgerId, entryId, bookieId, ctx);
                 return;
             }
-            completionKey = EntryCompletionKey.acquireV2Key(ledgerId, entryId, OperationType.ADD_ENTRY);
-
             if (toSend instanceof ByteBuf) {
                 ByteBuf byteBuf = ((ByteBuf) toSend).retainedDuplicate();
                 request = byteBuf;
@@ -822,40 +851,41 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        putCompletionKeyValue(completionKey,
-                              AddCompletion.acquireAddCompletion(completionKey,
-                                                   cb, ctx, ledgerId, entryId, this));
-        // addEntry times out on backpressure
-        writeAndFlush(channel, completionKey, request, allowFastFail, cleanupActionFailedBeforeWrite,
-                cleanupActionAfterWrite);
+        AddCompletion completion = AddCompletion.acquireAddCompletion(completionKey,
+                cb, ctx, ledgerId, entryId, this);
+        if (useV2WireProtocol) {
+            v2CompletionObjects.put(OperationType.ADD_ENTRY, completion);
+            // addEntry times out on backpressure
+            writeAndFlush(channel, completion, request, allowFastFail, cleanupActionFailedBeforeWrite,
+                    cleanupActionAfterWrite);
+        } else {
+            completionObjects.put(completionKey, completion);
+            // addEntry times out on backpressure
+            writeAndFlush(channel, completionKey, request, allowFastFail, cleanupActionFailedBeforeWrite,
+                    cleanupActionAfterWrite);
+        }
     }
 
+    /**
+     * Read the last add confirmed of a ledger. The v2 protocol has no such request, so it is always sent
+     * as a v3 request: clients using the v2 protocol send it on the channels enforcing v3.
+     */
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
-        Object request = null;
-        CompletionKey completionKey = null;
-        if (useV2WireProtocol) {
-            request = BookieProtocol.ReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
-                                                     ledgerId, 0, (short) 0, null);
-            completionKey = EntryCompletionKey.acquireV2Key(ledgerId, 0, OperationType.READ_LAC);
-        } else {
-            final long txnId = getTxnId();
-            completionKey = new TxnCompletionKey(txnId, OperationType.READ_LAC);
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.READ_LAC);
 
-            // Build the request and calculate the total size to be included in the packet.
-            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
-                    .setVersion(ProtocolVersion.VERSION_THREE)
-                    .setOperation(OperationType.READ_LAC)
-                    .setTxnId(txnId);
-            ReadLacRequest.Builder readLacBuilder = ReadLacRequest.newBuilder()
-                    .setLedgerId(ledgerId);
-            request = withRequestContext(Request.newBuilder())
-                    .setHeader(headerBuilder)
-                    .setReadLacRequest(readLacBuilder)
-                    .build();
-        }
-        putCompletionKeyValue(completionKey,
-                              new ReadLacCompletion(completionKey, cb,
-                                                    ctx, ledgerId, this));
+        // Build the request and calculate the total size to be included in the packet.
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.READ_LAC)
+                .setTxnId(txnId);
+        ReadLacRequest.Builder readLacBuilder = ReadLacRequest.newBuilder()
+                .setLedgerId(ledgerId);
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setReadLacRequest(readLacBuilder)
+                .build();
+        completionObjects.put(completionKey, new ReadLacCompletion(completionKey, cb, ctx, ledgerId, this));
         writeAndFlush(channel, completionKey, request);
     }
 
@@ -878,6 +908,39 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, getListOfEntriesOfLedgerRequest);
     }
 
+    void copyLedgerFragment(final long ledgerId, final byte[] masterKey, final long firstEntryId,
+                            final long lastEntryId, final List<String> ensemble, final int writeQuorumSize,
+                            final DataFormats.LedgerMetadataFormat.DigestType digestType, final byte[] password,
+                            CopyLedgerFragmentCallback cb, Object ctx) {
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.COPY_LEDGER_FRAGMENT);
+        completionObjects.put(completionKey,
+                              new CopyLedgerFragmentCompletion(completionKey, cb, ctx, ledgerId, this));
+
+        // Build the request
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.COPY_LEDGER_FRAGMENT)
+                .setTxnId(txnId);
+        CopyLedgerFragmentRequest.Builder copyLedgerFragmentBuilder = CopyLedgerFragmentRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
+                .setFirstEntryId(firstEntryId)
+                .setLastEntryId(lastEntryId)
+                .addAllEnsemble(ensemble)
+                .setWriteQuorumSize(writeQuorumSize)
+                .setDigestType(digestType.getNumber());
+        if (password != null) {
+            copyLedgerFragmentBuilder.setPassword(UnsafeByteOperations.unsafeWrap(password));
+        }
+
+        final Request copyLedgerFragmentRequest = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setCopyLedgerFragmentRequest(copyLedgerFragmentBuilder)
+                .build();
+        writeAndFlush(channel, completionKey, copyLedgerFragmentRequest);
+    }
+
     /**
      * Long Poll Reads.
      */
@@ -921,7 +984,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (useV2WireProtocol) {
             request = BookieProtocol.ReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
                     ledgerId, entryId, (short) flags, masterKey);
-            completionKey = EntryCompletionKey.acquireV2Key(ledgerId, entryId, OperationType.READ_ENTRY);
         } else {
             final long txnId = getTxnId();
             completionKey = new TxnCompletionKey(txnId, OperationType.READ_ENTRY);
@@ -981,9 +1043,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId, this);
-        putCompletionKeyValue(completionKey, readCompletion);
-
-        writeAndFlush(channel, completionKey, request, allowFastFail, null, null);
+        if (useV2WireProtocol) {
+            v2CompletionObjects.put(OperationType.READ_ENTRY, readCompletion);
+            writeAndFlush(channel, readCompletion, request, allowFastFail, null, null);
+        } else {
+            completionObjects.put(completionKey, readCompletion);
+            writeAndFlush(channel, completionKey, request, allowFastFail, null, null);
+        }
     }
 
     public void batchReadEntries(final long ledgerId,
@@ -1024,7 +1090,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
         BatchedReadCompletion readCompletion = new BatchedReadCompletion(
                 completionKey, cb, ctx, ledgerId, startEntryId, this);
-        putCompletionKeyValue(completionKey, readCompletion);
+        completionObjects.put(completionKey, readCompletion);
 
         writeAndFlush(channel, completionKey, request, allowFastFail, null, null);
     }
@@ -1060,7 +1126,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void checkTimeoutOnPendingOperations() {
         int timedOutOperations = completionObjects.removeIf(timeoutCheck);
 
-        timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
+        timedOutOperations += v2CompletionObjects.removeIf(CompletionValue::maybeTimeout);
 
         if (timedOutOperations > 0) {
             LOG.info("Timed-out {} operations to channel {} for {}",
@@ -1156,9 +1222,32 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                            final Object request,
                                final boolean allowFastFail, final Runnable cleanupActionFailedBeforeWrite,
                                final Runnable cleanupActionAfterWrite) {
+        writeAndFlush(channel, key, null, request, allowFastFail, cleanupActionFailedBeforeWrite,
+                cleanupActionAfterWrite);
+    }
+
+    private void writeAndFlush(final Channel channel,
+                               final CompletionValue v2Completion,
+                               final Object request,
+                               final boolean allowFastFail, final Runnable cleanupActionFailedBeforeWrite,
+                               final Runnable cleanupActionAfterWrite) {
+        writeAndFlush(channel, null, v2Completion, request, allowFastFail, cleanupActionFailedBeforeWrite,
+                cleanupActionAfterWrite);
+    }
+
+    /**
+     * Write a request whose completion is tracked either by {@code key} in the completion map, or, for the v2
+     * entry requests, by {@code v2Completion} itself in the v2 completion table.
+     */
+    private void writeAndFlush(final Channel channel,
+                               final CompletionKey key,
+                               final CompletionValue v2Completion,
+                               final Object request,
+                               final boolean allowFastFail, final Runnable cleanupActionFailedBeforeWrite,
+                               final Runnable cleanupActionAfterWrite) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
-            errorOut(key);
+            errorOut(key, v2Completion, BKException.Code.BookieHandleNotAvailableException);
             if (cleanupActionFailedBeforeWrite != null) {
                 cleanupActionFailedBeforeWrite.run();
             }
@@ -1175,7 +1264,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             LOG.warn("Operation {} failed: TooManyRequestsException",
                     StringUtils.requestToString(request));
 
-            errorOut(key, BKException.Code.TooManyRequestsException);
+            errorOut(key, v2Completion, BKException.Code.TooManyRequestsException);
             if (cleanupActionFailedBeforeWrite != null) {
                 cleanupActionFailedBeforeWrite.run();
             }
@@ -1189,9 +1278,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 try {
                     if (future.isSuccess()) {
                         nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                        CompletionValue completion = completionObjects.get(key);
-                        if (completion != null) {
-                            completion.setOutstanding();
+                        if (v2Completion == null) {
+                            CompletionValue completion = completionObjects.get(key);
+                            if (completion != null) {
+                                completion.setOutstanding();
+                            }
+                        } else if (v2CompletionObjects.contains(v2Completion)) {
+                            v2Completion.setOutstanding();
                         }
                     } else {
                         try {
@@ -1200,7 +1293,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                             LOG.warn("Failed to request to the bookie: {}", bookieId, ex);
                         }
                         nettyOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                        errorOut(key);
+                        errorOut(key, v2Completion, BKException.Code.BookieHandleNotAvailableException);
                     }
                 } finally {
                     if (cleanupActionAfterWrite != null) {
@@ -1211,7 +1304,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             channel.writeAndFlush(request, promise);
         } catch (Throwable e) {
             LOG.warn("Operation {} failed", StringUtils.requestToString(request), e);
-            errorOut(key);
+            errorOut(key, v2Completion, BKException.Code.BookieHandleNotAvailableException);
             if (cleanupActionFailedBeforeWrite != null) {
                 cleanupActionFailedBeforeWrite.run();
             }
@@ -1225,9 +1318,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         CompletionValue completion = completionObjects.remove(key);
         if (completion != null) {
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
@@ -1238,9 +1328,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         CompletionValue completion = completionObjects.remove(key);
         if (completion != null) {
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
+        }
+    }
+
+    private void errorOut(final CompletionKey key, final CompletionValue v2Completion, final int rc) {
+        if (v2Completion == null) {
+            errorOut(key, rc);
+        } else if (v2CompletionObjects.remove(v2Completion)) {
+            // only error out the completion if a response did not complete it in the meantime
+            v2Completion.errorOut(rc);
         }
     }
 
@@ -1269,11 +1365,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     void errorOutOutstandingEntries(int rc) {
-        Optional<CompletionKey> multikey = completionObjectsV2Conflicts.getAnyKey();
-        while (multikey.isPresent()) {
-            multikey.ifPresent(k -> errorOut(k, rc));
-            multikey = completionObjectsV2Conflicts.getAnyKey();
-        }
+        v2CompletionObjects.drain(completion -> completion.errorOut(rc));
         for (CompletionKey key : completionObjects.keys()) {
             errorOut(key, rc);
         }
@@ -1399,14 +1491,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         OperationType operationType = getOperationType(response.getOpCode());
         StatusCode status = getStatusCodeFromErrorCode(response.errorCode);
 
-        CompletionKey key;
+        CompletionValue completionValue;
         if (OperationType.BATCH_READ_ENTRY == operationType) {
-            key = new TxnCompletionKey(((BookieProtocol.BatchedReadResponse) response).getRequestId(), operationType);
+            completionValue = completionObjects.remove(new TxnCompletionKey(
+                    ((BookieProtocol.BatchedReadResponse) response).getRequestId(), operationType));
         } else {
-            key = EntryCompletionKey.acquireV2Key(response.ledgerId, response.entryId, operationType);
+            completionValue = v2CompletionObjects.remove(response.ledgerId, response.entryId, operationType);
         }
-        CompletionValue completionValue = getCompletionValue(key);
-        key.release();
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1651,23 +1742,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return new TxnCompletionKey(txnId, operationType);
     }
 
-    private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
-        CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
-        if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
-            // There's a pending read request on same ledger/entry. Use the multimap to track all of them
-            completionObjectsV2Conflicts.put(key, value);
-        }
-    }
-
-    private CompletionValue getCompletionValue(CompletionKey key) {
-        CompletionValue completionValue = completionObjects.remove(key);
-        if (completionValue == null) {
-            // If there's no completion object here, try in the multimap
-            completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
-        }
-        return completionValue;
-    }
-
     private long getTxnId() {
         return txnIdGenerator.incrementAndGet();
     }
@@ -44,7 +44,9 @@ class ReadCompletion extends CompletionValue {
             originalCallback.readEntryComplete(rc,
                     ledgerId1, entryId1,
                     buffer, originalCtx);
-            key.release();
+            if (key != null) {
+                key.release();
+            }
         };
     }
 
@@ -53,6 +53,7 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         rep.fenceThreadPool = fenceThreadPool;
         rep.throttleReadResponses = throttleReadResponses;
         requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+        rep.startTrace(RequestTrace.Op.READ, request.getLedgerId(), request.getEntryId());
         return rep;
     }
 
@@ -65,7 +66,7 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
-            requestProcessor.onReadRequestFinish();
+            requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
             recycle();
             return;
         }
@@ -134,6 +135,9 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     private void sendResponse(ReferenceCounted data, int errorCode, long startTimeNanos) {
         final RequestStats stats = requestProcessor.getRequestStats();
         final OpStatsLogger logger = stats.getReadEntryStats();
+        if (trace != null) {
+            trace.mark(RequestTrace.Stage.STORAGE_READ);
+        }
         BookieProtocol.Response response;
         if (errorCode == BookieProtocol.EOK) {
             logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
@@ -147,6 +151,10 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         }
 
         sendReadReqResponse(errorCode, response, stats.getReadRequestStats(), throttleReadResponses);
+        if (trace != null) {
+            trace.mark(RequestTrace.Stage.RESPONSE);
+            finishTrace(errorCode == BookieProtocol.EOK);
+        }
         recycle();
     }
 
@@ -255,7 +255,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
-            requestProcessor.onReadRequestFinish();
+            requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
             return;
         }
 
@@ -328,7 +328,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         sendResponse(response.getStatus(),
                      response.build(),
                      reqStats);
-        requestProcessor.onReadRequestFinish();
+        requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
     }
 
     //
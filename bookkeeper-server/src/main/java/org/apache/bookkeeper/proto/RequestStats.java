@@ -20,22 +20,27 @@
 package org.apache.bookkeeper.proto;
 
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY;
-import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED;
-import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_CHANNELS_PAUSED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_CHANNEL_PAUSE_TIME;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_IN_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_LEDGER_FRAGMENT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_LEDGER_FRAGMENT_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_LEDGER_FRAGMENT_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.PER_CORE_ADD_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.PER_CORE_ADD_ENTRIES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
-import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED;
-import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_CHANNELS_PAUSED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_CHANNEL_PAUSE_TIME;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_READ;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_WAIT;
@@ -77,9 +82,9 @@ public class RequestStats {
 
     final AtomicInteger addsInProgress = new AtomicInteger(0);
     final AtomicInteger maxAddsInProgress = new AtomicInteger(0);
-    final AtomicInteger addsBlocked = new AtomicInteger(0);
+    final AtomicInteger addChannelsPaused = new AtomicInteger(0);
     final AtomicInteger readsInProgress = new AtomicInteger(0);
-    final AtomicInteger readsBlocked = new AtomicInteger(0);
+    final AtomicInteger readChannelsPaused = new AtomicInteger(0);
     final AtomicInteger maxReadsInProgress = new AtomicInteger(0);
 
     @StatsDoc(
@@ -226,15 +231,15 @@ public class RequestStats {
     )
     final OpStatsLogger channelWriteStats;
     @StatsDoc(
-        name = ADD_ENTRY_BLOCKED,
-        help = "operation stats of AddEntry blocked on a bookie"
+        name = ADD_ENTRY_CHANNEL_PAUSE_TIME,
+        help = "time a channel stopped being read because of too many adds in progress on a bookie"
     )
-    final OpStatsLogger addEntryBlockedStats;
+    final OpStatsLogger addChannelPauseStats;
     @StatsDoc(
-        name = READ_ENTRY_BLOCKED,
-        help = "operation stats of ReadEntry blocked on a bookie"
+        name = READ_ENTRY_CHANNEL_PAUSE_TIME,
+        help = "time a channel stopped being read because of too many reads in progress on a bookie"
     )
-    final OpStatsLogger readEntryBlockedStats;
+    final OpStatsLogger readChannelPauseStats;
     @StatsDoc(
             name = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST,
             help = "request stats of GetListOfEntriesOfLedger on a bookie"
@@ -246,6 +251,32 @@ public class RequestStats {
             parent = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST
     )
     final OpStatsLogger getListOfEntriesOfLedgerStats;
+    @StatsDoc(
+        name = COPY_LEDGER_FRAGMENT_REQUEST,
+        help = "request stats of CopyLedgerFragment on a bookie"
+    )
+    final OpStatsLogger copyLedgerFragmentRequestStats;
+    @StatsDoc(
+        name = COPY_LEDGER_FRAGMENT,
+        help = "operation stats of CopyLedgerFragment",
+        parent = COPY_LEDGER_FRAGMENT_REQUEST
+    )
+    final OpStatsLogger copyLedgerFragmentStats;
+    @StatsDoc(
+        name = COPY_LEDGER_FRAGMENT_BYTES,
+        help = "bytes of the entries copied to a bookie by CopyLedgerFragment"
+    )
+    final Counter copyLedgerFragmentBytesCounter;
+    @StatsDoc(
+        name = PER_CORE_ADD_ENTRIES,
+        help = "entries received by each IO thread of a bookie in thread-per-core mode"
+    )
+    private final Counter perCoreAddEntriesCounter;
+    @StatsDoc(
+        name = PER_CORE_ADD_BYTES,
+        help = "bytes of the entries received by each IO thread of a bookie in thread-per-core mode"
+    )
+    private final Counter perCoreAddBytesCounter;
 
     public RequestStats(StatsLogger statsLogger) {
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
@@ -274,12 +305,18 @@ public class RequestStats {
         this.getBookieInfoRequestStats = statsLogger.getOpStatsLogger(GET_BOOKIE_INFO_REQUEST);
         this.channelWriteStats = statsLogger.getOpStatsLogger(CHANNEL_WRITE);
 
-        this.addEntryBlockedStats = statsLogger.getOpStatsLogger(ADD_ENTRY_BLOCKED_WAIT);
-        this.readEntryBlockedStats = statsLogger.getOpStatsLogger(READ_ENTRY_BLOCKED_WAIT);
+        this.addChannelPauseStats = statsLogger.getOpStatsLogger(ADD_ENTRY_CHANNEL_PAUSE_TIME);
+        this.readChannelPauseStats = statsLogger.getOpStatsLogger(READ_ENTRY_CHANNEL_PAUSE_TIME);
 
         this.getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER);
         this.getListOfEntriesOfLedgerRequestStats =
                 statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST);
+        this.copyLedgerFragmentStats = statsLogger.getOpStatsLogger(COPY_LEDGER_FRAGMENT);
+        this.copyLedgerFragmentRequestStats = statsLogger.getOpStatsLogger(COPY_LEDGER_FRAGMENT_REQUEST);
+        this.copyLedgerFragmentBytesCounter = statsLogger.getCounter(COPY_LEDGER_FRAGMENT_BYTES);
+
+        this.perCoreAddEntriesCounter = statsLogger.getThreadScopedCounter(PER_CORE_ADD_ENTRIES);
+        this.perCoreAddBytesCounter = statsLogger.getThreadScopedCounter(PER_CORE_ADD_BYTES);
 
         statsLogger.registerGauge(ADD_ENTRY_IN_PROGRESS, new Gauge<Number>() {
             @Override
@@ -293,7 +330,7 @@ public class RequestStats {
             }
         });
 
-        statsLogger.registerGauge(ADD_ENTRY_BLOCKED, new Gauge<Number>() {
+        statsLogger.registerGauge(ADD_ENTRY_CHANNELS_PAUSED, new Gauge<Number>() {
             @Override
             public Number getDefaultValue() {
                 return 0;
@@ -301,7 +338,7 @@ public class RequestStats {
 
             @Override
             public Number getSample() {
-                return addsBlocked;
+                return addChannelsPaused;
             }
         });
 
@@ -317,7 +354,7 @@ public class RequestStats {
             }
         });
 
-        statsLogger.registerGauge(READ_ENTRY_BLOCKED, new Gauge<Number>() {
+        statsLogger.registerGauge(READ_ENTRY_CHANNELS_PAUSED, new Gauge<Number>() {
             @Override
             public Number getDefaultValue() {
                 return 0;
@@ -325,7 +362,7 @@ public class RequestStats {
 
             @Override
             public Number getSample() {
-                return readsBlocked;
+                return readChannelsPaused;
             }
         });
     }
@@ -334,13 +371,13 @@ public class RequestStats {
     // Add requests
     //
 
-    void blockAddRequest() {
-        addsBlocked.incrementAndGet();
+    void pauseAddChannel() {
+        addChannelsPaused.incrementAndGet();
     }
 
-    void unblockAddRequest(long delayNanos) {
-        addEntryBlockedStats.registerSuccessfulEvent(delayNanos, TimeUnit.NANOSECONDS);
-        addsBlocked.decrementAndGet();
+    void resumeAddChannel(long pausedNanos) {
+        addChannelPauseStats.registerSuccessfulEvent(pausedNanos, TimeUnit.NANOSECONDS);
+        addChannelsPaused.decrementAndGet();
     }
 
     void trackAddRequest() {
@@ -352,6 +389,14 @@ public class RequestStats {
         addsInProgress.decrementAndGet();
     }
 
+    /**
+     * Record an add received by the current IO thread, which owns a core in thread-per-core mode.
+     */
+    void recordPerCoreAdd(long entrySize) {
+        perCoreAddEntriesCounter.inc();
+        perCoreAddBytesCounter.addCount(entrySize);
+    }
+
     int maxAddsInProgressCount() {
         return maxAddsInProgress.get();
     }
@@ -360,13 +405,13 @@ public class RequestStats {
     // Read requests
     //
 
-    void blockReadRequest() {
-        readsBlocked.incrementAndGet();
+    void pauseReadChannel() {
+        readChannelsPaused.incrementAndGet();
     }
 
-    void unblockReadRequest(long delayNanos) {
-        readEntryBlockedStats.registerSuccessfulEvent(delayNanos, TimeUnit.NANOSECONDS);
-        readsBlocked.decrementAndGet();
+    void resumeReadChannel(long pausedNanos) {
+        readChannelPauseStats.registerSuccessfulEvent(pausedNanos, TimeUnit.NANOSECONDS);
+        readChannelsPaused.decrementAndGet();
     }
 
     void trackReadRequest() {
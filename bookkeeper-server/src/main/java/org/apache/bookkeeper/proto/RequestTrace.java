@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.util.Recycler;
+import java.util.Arrays;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * The times at which a traced request went through its stages.
+ *
+ * <p>Each stage is marked when it ends, the stages that a request does not go through are never marked. The
+ * duration of a stage is the time since the end of the previous marked stage, or since the start of the request.
+ * The request moves from a thread to the other through queues, so a trace is only marked by a thread at a time.
+ *
+ * @see RequestTracer
+ */
+public final class RequestTrace {
+
+    /**
+     * The type of a traced request.
+     */
+    public enum Op {
+        ADD("add"),
+        READ("read");
+
+        private final String label;
+
+        Op(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * The stages of a request, in the order they are executed.
+     */
+    public enum Stage {
+        // the request is decoded by the Netty IO thread
+        DECODE("decode"),
+        // the request waits for a worker thread
+        QUEUE("queue"),
+        // the entry is added to the ledger storage
+        LEDGER_STORAGE("ledger_storage"),
+        // the entry waits for the journal thread
+        JOURNAL_QUEUE("journal_queue"),
+        // the entry is written to the journal and waits for the group commit to flush it
+        GROUP_COMMIT("group_commit"),
+        // the entry waits for the force write thread
+        FORCE_WRITE_QUEUE("force_write_queue"),
+        // the journal is synced to the disk
+        FSYNC("fsync"),
+        // the entry is read from the ledger storage
+        STORAGE_READ("storage_read"),
+        // the response is written to the channel
+        RESPONSE("response");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    static final Stage[] STAGES = Stage.values();
+
+    /**
+     * A request callback carrying the trace of its request, if the request is traced.
+     */
+    public interface Traceable {
+        /**
+         * @return the trace of the request, or null if the request is not traced
+         */
+        RequestTrace getTrace();
+    }
+
+    Op op;
+    long ledgerId;
+    long entryId;
+    long startNanos;
+    final long[] stageEndNanos = new long[STAGES.length];
+
+    static RequestTrace create(Op op, long ledgerId, long entryId, long startNanos) {
+        RequestTrace trace = RECYCLER.get();
+        trace.op = op;
+        trace.ledgerId = ledgerId;
+        trace.entryId = entryId;
+        trace.startNanos = startNanos;
+        return trace;
+    }
+
+    /**
+     * Mark the end of a stage.
+     */
+    public void mark(Stage stage) {
+        mark(stage, MathUtils.nowInNano());
+    }
+
+    public void mark(Stage stage, long nanos) {
+        stageEndNanos[stage.ordinal()] = nanos;
+    }
+
+    void recycle() {
+        op = null;
+        Arrays.fill(stageEndNanos, 0L);
+        recyclerHandle.recycle(this);
+    }
+
+    private final Recycler.Handle<RequestTrace> recyclerHandle;
+
+    private RequestTrace(Recycler.Handle<RequestTrace> recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
+    private static final Recycler<RequestTrace> RECYCLER = new Recycler<RequestTrace>() {
+        @Override
+        protected RequestTrace newObject(Recycler.Handle<RequestTrace> handle) {
+            return new RequestTrace(handle);
+        }
+    };
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_TRACE_OP_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_TRACE_STAGE_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_TRACE_STAGE_LATENCY;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * Traces a sample of the add and read requests.
+ *
+ * <p>The duration of each stage of the traced requests is reported to a latency metric per operation and stage,
+ * along with the total duration of the request. The traced requests slower than a threshold are kept in a ring
+ * buffer of the most recent ones.
+ *
+ * @see RequestTrace
+ */
+public class RequestTracer {
+
+    static final String TOTAL_STAGE_LABEL = "total";
+
+    private final int sampleRate;
+    private final long slowRequestThresholdNanos;
+
+    // [op][stage], the last one of each op is the total
+    private final OpStatsLogger[][] stageStats;
+
+    private final SlowRequest[] slowRequests;
+    private int nextSlowRequest = 0;
+
+    public RequestTracer(ServerConfiguration conf, StatsLogger statsLogger) {
+        this.sampleRate = Math.max(0, conf.getRequestTracingSampleRate());
+        this.slowRequestThresholdNanos = TimeUnit.MILLISECONDS.toNanos(conf.getRequestTracingSlowRequestThresholdMs());
+        this.slowRequests = new SlowRequest[Math.max(1, conf.getRequestTracingSlowRequestsCapacity())];
+
+        RequestTrace.Op[] ops = RequestTrace.Op.values();
+        this.stageStats = new OpStatsLogger[ops.length][];
+        if (sampleRate == 0) {
+            return;
+        }
+        for (RequestTrace.Op op : ops) {
+            StatsLogger opStatsLogger = statsLogger.scopeLabel(REQUEST_TRACE_OP_LABEL, op.getLabel());
+            OpStatsLogger[] stats = new OpStatsLogger[RequestTrace.STAGES.length + 1];
+            for (RequestTrace.Stage stage : RequestTrace.STAGES) {
+                stats[stage.ordinal()] = opStatsLogger.scopeLabel(REQUEST_TRACE_STAGE_LABEL, stage.getLabel())
+                        .getOpStatsLogger(REQUEST_TRACE_STAGE_LATENCY);
+            }
+            stats[RequestTrace.STAGES.length] = opStatsLogger.scopeLabel(REQUEST_TRACE_STAGE_LABEL, TOTAL_STAGE_LABEL)
+                    .getOpStatsLogger(REQUEST_TRACE_STAGE_LATENCY);
+            stageStats[op.ordinal()] = stats;
+        }
+    }
+
+    public boolean isEnabled() {
+        return sampleRate > 0;
+    }
+
+    /**
+     * Start the trace of a request, if it is sampled.
+     *
+     * @param startNanos when the request was received
+     * @return the trace of the request, or null if the request is not traced
+     */
+    RequestTrace startTrace(RequestTrace.Op op, long ledgerId, long entryId, long startNanos) {
+        if (sampleRate == 0 || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+            return null;
+        }
+        return RequestTrace.create(op, ledgerId, entryId, startNanos);
+    }
+
+    /**
+     * Report the durations of the stages of a request, then recycle its trace.
+     */
+    void finish(RequestTrace trace, boolean success) {
+        OpStatsLogger[] stats = stageStats[trace.op.ordinal()];
+        long previousEndNanos = trace.startNanos;
+        for (RequestTrace.Stage stage : RequestTrace.STAGES) {
+            long endNanos = trace.stageEndNanos[stage.ordinal()];
+            if (endNanos != 0L) {
+                register(stats[stage.ordinal()], endNanos - previousEndNanos, success);
+                previousEndNanos = endNanos;
+            }
+        }
+        long totalNanos = previousEndNanos - trace.startNanos;
+        register(stats[RequestTrace.STAGES.length], totalNanos, success);
+
+        if (totalNanos >= slowRequestThresholdNanos) {
+            addSlowRequest(new SlowRequest(trace, success, totalNanos));
+        }
+        trace.recycle();
+    }
+
+    private static void register(OpStatsLogger stats, long nanos, boolean success) {
+        if (success) {
+            stats.registerSuccessfulEvent(nanos, TimeUnit.NANOSECONDS);
+        } else {
+            stats.registerFailedEvent(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void addSlowRequest(SlowRequest request) {
+        slowRequests[nextSlowRequest] = request;
+        nextSlowRequest = (nextSlowRequest + 1) % slowRequests.length;
+    }
+
+    /**
+     * @return the most recent slow requests, the slowest first
+     */
+    public List<SlowRequest> getSlowRequests() {
+        List<SlowRequest> requests = new ArrayList<>(slowRequests.length);
+        synchronized (this) {
+            for (SlowRequest request : slowRequests) {
+                if (request != null) {
+                    requests.add(request);
+                }
+            }
+        }
+        requests.sort(Collections.reverseOrder(Comparator.comparingLong(SlowRequest::getTotalMicros)));
+        return requests;
+    }
+
+    /**
+     * A traced request slower than the threshold.
+     */
+    @Getter
+    public static class SlowRequest {
+        private final String op;
+        private final long ledgerId;
+        private final long entryId;
+        private final boolean success;
+        // wall clock time at which the request completed
+        private final long completionTimeMillis;
+        private final long totalMicros;
+        // duration of each stage the request went through
+        private final Map<String, Long> stageMicros = new LinkedHashMap<>();
+
+        SlowRequest(RequestTrace trace, boolean success, long totalNanos) {
+            this.op = trace.op.getLabel();
+            this.ledgerId = trace.ledgerId;
+            this.entryId = trace.entryId;
+            this.success = success;
+            this.completionTimeMillis = System.currentTimeMillis();
+            this.totalMicros = TimeUnit.NANOSECONDS.toMicros(totalNanos);
+            long previousEndNanos = trace.startNanos;
+            for (RequestTrace.Stage stage : RequestTrace.STAGES) {
+                long endNanos = trace.stageEndNanos[stage.ordinal()];
+                if (endNanos != 0L) {
+                    stageMicros.put(stage.getLabel(), TimeUnit.NANOSECONDS.toMicros(endNanos - previousEndNanos));
+                    previousEndNanos = endNanos;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+
+/**
+ * Registry of the completions pending on a v2 protocol channel.
+ *
+ * <p>V2 requests carry no transaction id, responses are matched back to their request by
+ * (ledgerId, entryId, operation type). The table is an open hash table with linear probing where the
+ * three components of the key are stored inline in primitive arrays, so registering and completing a
+ * request allocates neither a key object nor a map node.
+ *
+ * <p>Several requests for the same (ledgerId, entryId, operation type) may be pending at the same time
+ * (e.g. speculative reads of the same entry). They simply occupy different buckets of the same probe
+ * sequence and a response completes any one of them, which is what the protocol allows since the
+ * responses are indistinguishable.
+ *
+ * <p>The table is split into sections, each one guarded by its own lock, selected by the hash of the key.
+ */
+class V2CompletionTable {
+
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+
+    private static final int DEFAULT_EXPECTED_ITEMS = 256;
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final float FILL_FACTOR = 0.66f;
+    private static final float IDLE_FACTOR = 0.15f;
+
+    private final Section[] sections;
+
+    V2CompletionTable() {
+        this(DEFAULT_EXPECTED_ITEMS, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    V2CompletionTable(int expectedItems, int concurrencyLevel) {
+        checkArgument(concurrencyLevel > 0 && Integer.bitCount(concurrencyLevel) == 1,
+                "Concurrency level must be a power of two : %s", concurrencyLevel);
+        checkArgument(expectedItems >= concurrencyLevel,
+                "Expected items must be >= concurrency level : %s", expectedItems);
+        int perSectionCapacity = (int) (expectedItems / concurrencyLevel / FILL_FACTOR);
+        this.sections = new Section[concurrencyLevel];
+        for (int i = 0; i < concurrencyLevel; i++) {
+            sections[i] = new Section(perSectionCapacity);
+        }
+    }
+
+    /**
+     * Register a pending completion. The key is taken from the ledger id and entry id of the completion.
+     */
+    void put(OperationType operationType, CompletionValue completion) {
+        long h = hash(completion.ledgerId, completion.entryId);
+        getSection(h).put(completion.ledgerId, completion.entryId, operationType.getNumber(), completion, (int) h);
+    }
+
+    /**
+     * Remove one of the completions pending for the given key.
+     *
+     * @return the removed completion or null if none was pending
+     */
+    CompletionValue remove(long ledgerId, long entryId, OperationType operationType) {
+        long h = hash(ledgerId, entryId);
+        return getSection(h).remove(ledgerId, entryId, operationType.getNumber(), null, (int) h);
+    }
+
+    /**
+     * Remove the given completion, if it is still pending.
+     *
+     * @return true if the completion was pending and it has been removed
+     */
+    boolean remove(CompletionValue completion) {
+        long h = hash(completion.ledgerId, completion.entryId);
+        return getSection(h).remove(completion.ledgerId, completion.entryId, EMPTY, completion, (int) h) != null;
+    }
+
+    /**
+     * @return true if the given completion is still pending
+     */
+    boolean contains(CompletionValue completion) {
+        long h = hash(completion.ledgerId, completion.entryId);
+        return getSection(h).contains(completion, (int) h);
+    }
+
+    /**
+     * Remove all the completions matching the predicate. The predicate is evaluated while holding the lock of
+     * the section, so it must not call back into the table.
+     *
+     * @return the number of removed completions
+     */
+    int removeIf(Predicate<CompletionValue> predicate) {
+        int removed = 0;
+        for (Section s : sections) {
+            removed += s.removeIf(predicate);
+        }
+        return removed;
+    }
+
+    /**
+     * @return true if any of the pending completions matches the predicate. The predicate is evaluated while
+     * holding the lock of the section, so it must not call back into the table.
+     */
+    boolean anyMatch(Predicate<CompletionValue> predicate) {
+        for (Section s : sections) {
+            if (s.anyMatch(predicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove all the pending completions and pass them to the consumer, outside of any lock.
+     */
+    void drain(Consumer<CompletionValue> consumer) {
+        for (Section s : sections) {
+            List<CompletionValue> removed = s.drain();
+            for (int i = 0; i < removed.size(); i++) {
+                consumer.accept(removed.get(i));
+            }
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    private Section getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Section extends StampedLock {
+        private long[] ledgerIds;
+        private long[] entryIds;
+        private int[] operationTypes;
+        private CompletionValue[] values;
+
+        private final int initCapacity;
+        private int capacity;
+        private volatile int size;
+        private int usedBuckets;
+        private int resizeThresholdUp;
+        private int resizeThresholdBelow;
+
+        Section(int capacity) {
+            this.initCapacity = alignToPowerOfTwo(capacity);
+            allocate(initCapacity);
+        }
+
+        private void allocate(int newCapacity) {
+            this.capacity = newCapacity;
+            this.ledgerIds = new long[newCapacity];
+            this.entryIds = new long[newCapacity];
+            this.operationTypes = new int[newCapacity];
+            this.values = new CompletionValue[newCapacity];
+            this.usedBuckets = 0;
+            this.resizeThresholdUp = (int) (newCapacity * FILL_FACTOR);
+            this.resizeThresholdBelow = (int) (newCapacity * IDLE_FACTOR);
+        }
+
+        void put(long ledgerId, long entryId, int operationType, CompletionValue value, int keyHash) {
+            long stamp = writeLock();
+            try {
+                // Duplicated keys are legit, so the new completion goes in the first free bucket of the sequence
+                int bucket = keyHash & (capacity - 1);
+                while (operationTypes[bucket] != EMPTY && operationTypes[bucket] != DELETED) {
+                    bucket = (bucket + 1) & (capacity - 1);
+                }
+                if (operationTypes[bucket] == EMPTY) {
+                    ++usedBuckets;
+                }
+                ledgerIds[bucket] = ledgerId;
+                entryIds[bucket] = entryId;
+                operationTypes[bucket] = operationType;
+                values[bucket] = value;
+                ++size;
+
+                if (usedBuckets > resizeThresholdUp) {
+                    // Expand if the table is really full, otherwise only get rid of the deleted buckets
+                    rehash(size > resizeThresholdUp / 2 ? capacity * 2 : capacity);
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Remove either the first completion matching the key (when {@code expected} is null) or exactly the
+         * {@code expected} completion.
+         */
+        CompletionValue remove(long ledgerId, long entryId, int operationType, CompletionValue expected,
+                               int keyHash) {
+            long stamp = writeLock();
+            try {
+                int bucket = keyHash & (capacity - 1);
+                while (true) {
+                    int storedType = operationTypes[bucket];
+                    if (storedType == EMPTY) {
+                        return null;
+                    } else if (storedType != DELETED
+                            && ledgerIds[bucket] == ledgerId && entryIds[bucket] == entryId
+                            && (expected == null ? storedType == operationType : values[bucket] == expected)) {
+                        CompletionValue value = values[bucket];
+                        cleanBucket(bucket);
+                        --size;
+                        if (size < resizeThresholdBelow && capacity > initCapacity) {
+                            rehash(Math.max(capacity / 2, initCapacity));
+                        }
+                        return value;
+                    }
+                    bucket = (bucket + 1) & (capacity - 1);
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        boolean contains(CompletionValue expected, int keyHash) {
+            long stamp = readLock();
+            try {
+                int bucket = keyHash & (capacity - 1);
+                while (true) {
+                    int storedType = operationTypes[bucket];
+                    if (storedType == EMPTY) {
+                        return false;
+                    } else if (storedType != DELETED && values[bucket] == expected) {
+                        return true;
+                    }
+                    bucket = (bucket + 1) & (capacity - 1);
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        int removeIf(Predicate<CompletionValue> predicate) {
+            long stamp = writeLock();
+            int removed = 0;
+            try {
+                for (int bucket = 0; bucket < capacity; bucket++) {
+                    int storedType = operationTypes[bucket];
+                    if (storedType != EMPTY && storedType != DELETED && predicate.test(values[bucket])) {
+                        cleanBucket(bucket);
+                        ++removed;
+                    }
+                }
+                size -= removed;
+                if (removed > 0) {
+                    rehash(size < resizeThresholdBelow ? Math.max(capacity / 2, initCapacity) : capacity);
+                }
+                return removed;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        boolean anyMatch(Predicate<CompletionValue> predicate) {
+            long stamp = readLock();
+            try {
+                for (int bucket = 0; bucket < capacity; bucket++) {
+                    int storedType = operationTypes[bucket];
+                    if (storedType != EMPTY && storedType != DELETED && predicate.test(values[bucket])) {
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        List<CompletionValue> drain() {
+            long stamp = writeLock();
+            try {
+                List<CompletionValue> removed = new ArrayList<>(size);
+                for (int bucket = 0; bucket < capacity; bucket++) {
+                    int storedType = operationTypes[bucket];
+                    if (storedType != EMPTY && storedType != DELETED) {
+                        removed.add(values[bucket]);
+                    }
+                }
+                allocate(initCapacity);
+                size = 0;
+                return removed;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private void cleanBucket(int bucket) {
+            int nextInArray = (bucket + 1) & (capacity - 1);
+            values[bucket] = null;
+            if (operationTypes[nextInArray] == EMPTY) {
+                operationTypes[bucket] = EMPTY;
+                --usedBuckets;
+
+                // Cleanup all the buckets that were in `DELETED` state, so that we can reduce unnecessary expansions
+                int lastBucket = (bucket - 1) & (capacity - 1);
+                while (operationTypes[lastBucket] == DELETED) {
+                    operationTypes[lastBucket] = EMPTY;
+                    --usedBuckets;
+                    lastBucket = (lastBucket - 1) & (capacity - 1);
+                }
+            } else {
+                operationTypes[bucket] = DELETED;
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            long[] oldLedgerIds = ledgerIds;
+            long[] oldEntryIds = entryIds;
+            int[] oldOperationTypes = operationTypes;
+            CompletionValue[] oldValues = values;
+            int oldCapacity = capacity;
+
+            allocate(newCapacity);
+            for (int i = 0; i < oldCapacity; i++) {
+                int storedType = oldOperationTypes[i];
+                if (storedType != EMPTY && storedType != DELETED) {
+                    int bucket = (int) hash(oldLedgerIds[i], oldEntryIds[i]) & (newCapacity - 1);
+                    while (operationTypes[bucket] != EMPTY) {
+                        bucket = (bucket + 1) & (newCapacity - 1);
+                    }
+                    ledgerIds[bucket] = oldLedgerIds[i];
+                    entryIds[bucket] = oldEntryIds[i];
+                    operationTypes[bucket] = storedType;
+                    values[bucket] = oldValues[i];
+                    ++usedBuckets;
+                }
+            }
+        }
+    }
+
+    private static final long HashMixer = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+
+    static long hash(long ledgerId, long entryId) {
+        long hash = ledgerId * HashMixer;
+        hash ^= hash >>> R;
+        hash *= HashMixer;
+        hash += 31 + (entryId * HashMixer);
+        hash ^= hash >>> R;
+        hash *= HashMixer;
+        return hash;
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(Math.max(n, 2) - 1));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.VIRTUAL_THREAD_READS_PENDING;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.VIRTUAL_THREAD_READ_DISK_WAIT;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes read requests on virtual threads, one per request.
+ *
+ * <p>A read blocking on the disk only parks its virtual thread, so the number of reads waiting for the disk is
+ * not bounded by the number of read worker threads. The reads of the ledgers stored in the same ledger directory
+ * share a number of permits, so that a burst of cold reads cannot queue an unbounded number of IOs on a disk.
+ * Ledgers are assigned to directories as {@code DbLedgerStorage} does, by ledger id modulo the number of
+ * directories.
+ *
+ * <p>A read does not always unmount its virtual thread when it blocks: the index lookups of
+ * {@code DbLedgerStorage} run in RocksDB through JNI, and a virtual thread blocking inside a native frame or a
+ * {@code synchronized} section stays pinned to its carrier thread. The permits of the ledger directories are the
+ * only cap on the reads running at the same time, they have to be sized for the carriers of the virtual thread
+ * scheduler when the reads mostly pin.
+ *
+ * <p>Read requests are not executed in order. The reads that need to be ordered (fencing and high priority
+ * reads) are not executed here. As a {@link FairRequestScheduler.TaskExecutor}, every ledger directory is a
+ * thread, so that the fair scheduler hands each directory no more reads than it has permits.
+ *
+ * <p>Virtual threads are only available on JDK 21 or later, see {@link #isSupported()}.
+ */
+class VirtualThreadReadExecutor implements FairRequestScheduler.TaskExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadReadExecutor.class);
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method newThreadPerTaskExecutor = null;
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+        } catch (ReflectiveOperationException e) {
+            // JDK older than 21
+            newThreadPerTaskExecutor = null;
+        }
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    /**
+     * @return true if the JDK supports virtual threads
+     */
+    static boolean isSupported() {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore[] diskPermits;
+    private final int maxPendingRequests;
+    private final AtomicInteger pendingRequests = new AtomicInteger(0);
+    private final OpStatsLogger diskWaitStats;
+
+    /**
+     * @param name prefix of the names of the virtual threads
+     * @param numDisks number of ledger directories
+     * @param maxConcurrencyPerDisk max number of reads executed at the same time on a ledger directory
+     * @param maxPendingRequests max number of reads waiting or being executed, 0 == unlimited
+     */
+    VirtualThreadReadExecutor(String name, int numDisks, int maxConcurrencyPerDisk, int maxPendingRequests,
+                              StatsLogger statsLogger) {
+        this(newVirtualThreadPerTaskExecutor(name), numDisks, maxConcurrencyPerDisk, maxPendingRequests,
+                statsLogger);
+    }
+
+    @VisibleForTesting
+    VirtualThreadReadExecutor(ExecutorService executor, int numDisks, int maxConcurrencyPerDisk,
+                              int maxPendingRequests, StatsLogger statsLogger) {
+        this.executor = executor;
+        this.diskPermits = new Semaphore[Math.max(1, numDisks)];
+        for (int i = 0; i < diskPermits.length; i++) {
+            diskPermits[i] = new Semaphore(Math.max(1, maxConcurrencyPerDisk));
+        }
+        this.maxPendingRequests = maxPendingRequests;
+        this.diskWaitStats = statsLogger.getOpStatsLogger(VIRTUAL_THREAD_READ_DISK_WAIT);
+        statsLogger.registerGauge(VIRTUAL_THREAD_READS_PENDING, new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return pendingRequests.get();
+            }
+        });
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or later");
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Failed to create the virtual threads executor", e);
+        }
+    }
+
+    /**
+     * @return the number of ledger directories
+     */
+    @Override
+    public int getNumThreads() {
+        return diskPermits.length;
+    }
+
+    /**
+     * @return the ledger directory of the ledger
+     */
+    @Override
+    public int chooseThreadIndex(long ledgerId) {
+        return MathUtils.signSafeMod(ledgerId, diskPermits.length);
+    }
+
+    /**
+     * Execute a read of the given ledger.
+     *
+     * @throws RejectedExecutionException if there are too many reads pending or the executor is shut down
+     */
+    @Override
+    public void executeOrdered(long ledgerId, Runnable read) throws RejectedExecutionException {
+        int pending = pendingRequests.incrementAndGet();
+        if (maxPendingRequests > 0 && pending > maxPendingRequests) {
+            pendingRequests.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending read requests : " + pending);
+        }
+        final Semaphore permits = diskPermits[chooseThreadIndex(ledgerId)];
+        final long enqueueNanos = MathUtils.nowInNano();
+        try {
+            executor.execute(() -> {
+                // blocking here only parks the virtual thread
+                permits.acquireUninterruptibly();
+                try {
+                    diskWaitStats.registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos),
+                            TimeUnit.NANOSECONDS);
+                    read.run();
+                } catch (Throwable t) {
+                    LOG.error("Error while running read request of ledger {}", ledgerId, t);
+                } finally {
+                    permits.release();
+                    pendingRequests.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingRequests.decrementAndGet();
+            throw e;
+        }
+    }
+
+    void shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -34,23 +34,28 @@ import org.slf4j.LoggerFactory;
 /**
  * Processes add entry requests.
  */
-class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implements WriteCallback {
+class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implements WriteCallback,
+        RequestTrace.Traceable {
 
     private static final Logger LOG = LoggerFactory.getLogger(WriteEntryProcessor.class);
 
     long startTimeNanos;
+    int entrySize;
 
     @Override
     protected void reset() {
         super.reset();
         startTimeNanos = -1L;
+        entrySize = 0;
     }
 
     public static WriteEntryProcessor create(ParsedAddRequest request, BookieRequestHandler requestHandler,
                                              BookieRequestProcessor requestProcessor) {
         WriteEntryProcessor wep = RECYCLER.get();
         wep.init(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        wep.entrySize = request.getData().readableBytes();
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(), wep.entrySize);
+        wep.startTrace(RequestTrace.Op.ADD, request.getLedgerId(), request.getEntryId());
         return wep;
     }
 
@@ -63,6 +68,7 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
             sendWriteReqResponse(BookieProtocol.EREADONLY,
                          ResponseBuilder.buildErrorResponse(BookieProtocol.EREADONLY, request),
                          requestProcessor.getRequestStats().getAddRequestStats());
+            finishTrace(false);
             request.release();
             request.recycle();
             recycle();
@@ -110,6 +116,7 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
             sendWriteReqResponse(rc,
                          ResponseBuilder.buildErrorResponse(rc, request),
                          requestProcessor.getRequestStats().getAddRequestStats());
+            finishTrace(false);
             request.recycle();
             recycle();
         }
@@ -127,12 +134,26 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
         }
 
         requestHandler.prepareSendResponseV2(rc, request);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(requestHandler.ctx().channel(), entrySize);
+        if (trace != null) {
+            trace.mark(RequestTrace.Stage.RESPONSE);
+            finishTrace(BookieProtocol.EOK == rc);
+        }
 
         request.recycle();
         recycle();
     }
 
+    @Override
+    public RequestTrace getTrace() {
+        return trace;
+    }
+
+    @Override
+    protected long getAddRequestSize() {
+        return entrySize;
+    }
+
     @Override
     public String toString() {
         return String.format("WriteEntry(%d, %d)",
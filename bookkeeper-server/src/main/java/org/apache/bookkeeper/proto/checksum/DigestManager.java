@@ -20,6 +20,7 @@ package org.apache.bookkeeper.proto.checksum;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCounted;
@@ -65,6 +66,8 @@ public abstract class DigestManager {
             return internalUpdate(digest, buffer, offset, len);
         } else if (buffer.hasArray()) {
             return internalUpdate(digest, buffer.array(), buffer.arrayOffset() + offset, len);
+        } else if (buffer instanceof CompositeByteBuf) {
+            return updateComposite(digest, (CompositeByteBuf) buffer, offset, len);
         } else {
             UpdateContext updateContext = new UpdateContext(digest);
             ByteBufVisitor.visitBuffers(buffer, offset, len, byteBufVisitorCallback, updateContext);
@@ -72,6 +75,33 @@ public abstract class DigestManager {
         }
     }
 
+    /**
+     * Update the digest with every component of a composite buffer in a single pass, handing each
+     * direct or heap component straight to the digest implementation. Components that are neither
+     * (e.g. nested wrappers) go through {@link ByteBufVisitor} as any other buffer.
+     */
+    private int updateComposite(int digest, CompositeByteBuf buffer, int offset, int len) {
+        if (len == 0) {
+            return digest;
+        }
+        int cIndex = buffer.toComponentIndex(offset);
+        int remaining = len;
+        int position = offset;
+        while (remaining > 0) {
+            int componentStart = buffer.toByteIndex(cIndex);
+            ByteBuf component = buffer.internalComponent(cIndex);
+            int componentOffset = position - componentStart;
+            int componentLength = Math.min(remaining, component.capacity() - componentOffset);
+            if (componentLength > 0) {
+                digest = update(digest, component, componentOffset, componentLength);
+                remaining -= componentLength;
+                position += componentLength;
+            }
+            cIndex++;
+        }
+        return digest;
+    }
+
     abstract void populateValueAndReset(int digest, ByteBuf buffer);
 
     abstract boolean isInt32Digest();
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of requests in progress, adapting the limit to the latency of the requests.
+ *
+ * <p>The limit grows by one every limit successful requests, as long as their latency stays below twice the
+ * average latency, and shrinks by a tenth at each failed or slow request, so that the requests go as fast as the
+ * servers can serve them without queueing up on them.
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_RATIO = 0.9;
+    private static final double AVERAGE_LATENCY_WEIGHT = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    // guarded by this
+    private double limit;
+    private int inflight = 0;
+    private double averageLatencyNanos = -1;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Wait until a request can be started.
+     *
+     * @return false if no request could be started within the timeout
+     */
+    synchronized boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inflight >= (int) limit) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        }
+        inflight++;
+        return true;
+    }
+
+    /**
+     * Record the end of a request.
+     */
+    synchronized void release(long latencyNanos, boolean success) {
+        inflight--;
+        if (!success || (averageLatencyNanos > 0 && latencyNanos > LATENCY_TOLERANCE * averageLatencyNanos)) {
+            limit = Math.max(minLimit, limit * DECREASE_RATIO);
+        } else {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        if (success) {
+            averageLatencyNanos = averageLatencyNanos < 0 ? latencyNanos
+                    : (1 - AVERAGE_LATENCY_WEIGHT) * averageLatencyNanos + AVERAGE_LATENCY_WEIGHT * latencyNanos;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Record the end of a request whose latency is not a sample of the latency of the servers.
+     */
+    synchronized void release() {
+        inflight--;
+        notifyAll();
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+}
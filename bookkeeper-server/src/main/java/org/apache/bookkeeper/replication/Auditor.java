@@ -196,7 +196,11 @@ public class Auditor implements AutoCloseable {
         try {
             LedgerManagerFactory ledgerManagerFactory = bkc.getLedgerManagerFactory();
             ledgerManager = ledgerManagerFactory.newLedgerManager();
-            this.bookieLedgerIndexer = new BookieLedgerIndexer(ledgerManager);
+            if (conf.isAuditorIncrementalLedgerIndexEnabled()) {
+                this.bookieLedgerIndexer = new IncrementalBookieLedgerIndexer(ledgerManager, conf);
+            } else {
+                this.bookieLedgerIndexer = new BookieLedgerIndexer(ledgerManager);
+            }
 
             this.ledgerUnderreplicationManager = ledgerManagerFactory
                     .newLedgerUnderreplicationManager();
@@ -32,7 +32,6 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -41,12 +40,15 @@ import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeperAdmin;
 import org.apache.bookkeeper.client.RoundRobinDistributionSchedule;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Version.Occurred;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.zookeeper.AsyncCallback;
 import org.apache.zookeeper.AsyncCallback.VoidCallback;
@@ -56,11 +58,23 @@ import org.slf4j.LoggerFactory;
 public class AuditorReplicasCheckTask extends AuditorTask {
     private static final Logger LOG = LoggerFactory.getLogger(AuditorReplicasCheckTask.class);
 
+    // initial number of ledgers checked at the same time, it is then adapted to the latency of the bookies
     private static final int MAX_CONCURRENT_REPLICAS_CHECK_LEDGER_REQUESTS = 100;
     private static final int REPLICAS_CHECK_TIMEOUT_IN_SECS = 120;
     private static final BitSet EMPTY_BITSET = new BitSet();
 
     private final int zkOpTimeoutMs;
+    private final boolean incremental;
+    private final long maxAgeMs;
+    private final int maxInflightLedgers;
+
+    /*
+     * the ledgers found with all their replicas by the previous replicas
+     * checks, when the replicas check is incremental.
+     */
+    private final ConcurrentHashMap<Long, VerifiedLedger> verifiedLedgers = new ConcurrentHashMap<>();
+    private final AtomicInteger numLedgersSkipped = new AtomicInteger(0);
+    private long runs = 0;
 
     private final AtomicInteger numLedgersFoundHavingNoReplicaOfAnEntry;
     private final AtomicInteger numLedgersFoundHavingLessThanAQReplicasOfAnEntry;
@@ -75,6 +89,9 @@ public class AuditorReplicasCheckTask extends AuditorTask {
         super(conf, auditorStats, admin, ledgerManager,
                 ledgerUnderreplicationManager, shutdownTaskHandler, hasAuditCheckTask);
         this.zkOpTimeoutMs = conf.getZkTimeout() * 2;
+        this.incremental = conf.isAuditorReplicasCheckIncrementalEnabled();
+        this.maxAgeMs = TimeUnit.SECONDS.toMillis(conf.getAuditorReplicasCheckMaxAgeSec());
+        this.maxInflightLedgers = conf.getAuditorReplicasCheckMaxInflightLedgers();
         this.numLedgersFoundHavingNoReplicaOfAnEntry = new AtomicInteger(0);
         this.numLedgersFoundHavingLessThanAQReplicasOfAnEntry = new AtomicInteger(0);
         this.numLedgersFoundHavingLessThanWQReplicasOfAnEntry = new AtomicInteger(0);
@@ -169,7 +186,10 @@ public class AuditorReplicasCheckTask extends AuditorTask {
         ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies =
                 new ConcurrentHashMap<Long, MissingEntriesInfoOfLedger>();
         LedgerManager.LedgerRangeIterator ledgerRangeIterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
-        final Semaphore maxConcurrentSemaphore = new Semaphore(MAX_CONCURRENT_REPLICAS_CHECK_LEDGER_REQUESTS);
+        final AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+                MAX_CONCURRENT_REPLICAS_CHECK_LEDGER_REQUESTS, maxInflightLedgers / 10, maxInflightLedgers);
+        final long run = ++runs;
+        numLedgersSkipped.set(0);
         while (true) {
             LedgerManager.LedgerRange ledgerRange = null;
             try {
@@ -196,23 +216,14 @@ public class AuditorReplicasCheckTask extends AuditorTask {
 
             ReplicasCheckFinalCallback finalCB = new ReplicasCheckFinalCallback(resultCode, replicasCheckLatch);
             MultiCallback mcbForThisLedgerRange = new MultiCallback(numOfLedgersInRange, finalCB, null,
-                    BKException.Code.OK, BKException.Code.ReadException) {
-                @Override
-                public void processResult(int rc, String path, Object ctx) {
-                    try {
-                        super.processResult(rc, path, ctx);
-                    } finally {
-                        maxConcurrentSemaphore.release();
-                    }
-                }
-            };
+                    BKException.Code.OK, BKException.Code.ReadException);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Number of ledgers in the current LedgerRange : {}",
                         numOfLedgersInRange);
             }
             for (Long ledgerInRange : ledgersInRange) {
                 try {
-                    if (!maxConcurrentSemaphore.tryAcquire(REPLICAS_CHECK_TIMEOUT_IN_SECS, TimeUnit.SECONDS)) {
+                    if (!concurrencyLimiter.tryAcquire(REPLICAS_CHECK_TIMEOUT_IN_SECS, TimeUnit.SECONDS)) {
                         LOG.error("Timedout ({} secs) while waiting for acquiring semaphore",
                                 REPLICAS_CHECK_TIMEOUT_IN_SECS);
                         throw new ReplicationException.BKAuditException(
@@ -224,7 +235,14 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                     throw new ReplicationException.BKAuditException(
                             "Got InterruptedException while acquiring semaphore for replicascheck", ie);
                 }
-                if (checkUnderReplicationForReplicasCheck(ledgerInRange, mcbForThisLedgerRange)) {
+                VerifiedLedger verifiedLedger = verifiedLedgers.get(ledgerInRange);
+                if (verifiedLedger != null) {
+                    verifiedLedger.lastSeenRun = run;
+                }
+                LedgerCheckCallback ledgerCheckCallback = new LedgerCheckCallback(ledgerInRange, run,
+                        concurrencyLimiter, mcbForThisLedgerRange, ledgersWithMissingEntries,
+                        ledgersWithUnavailableBookies);
+                if (checkUnderReplicationForReplicasCheck(ledgerInRange, ledgerCheckCallback)) {
                     /*
                      * if ledger is marked underreplicated, then ignore this
                      * ledger for replicascheck.
@@ -233,7 +251,7 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                 }
                 ledgerManager.readLedgerMetadata(ledgerInRange)
                         .whenComplete(new ReadLedgerMetadataCallbackForReplicasCheck(ledgerInRange,
-                                mcbForThisLedgerRange, ledgersWithMissingEntries, ledgersWithUnavailableBookies));
+                                ledgerCheckCallback, ledgersWithMissingEntries, ledgersWithUnavailableBookies));
             }
             try {
                 /*
@@ -265,6 +283,12 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                         BKException.create(resultCodeIntValue));
             }
         }
+        if (incremental) {
+            // forget the deleted ledgers
+            verifiedLedgers.values().removeIf(verifiedLedger -> verifiedLedger.lastSeenRun != run);
+            LOG.info("Skipped the replicas check of {} ledgers verified recently, {} ledgers verified in total",
+                    numLedgersSkipped.get(), verifiedLedgers.size());
+        }
         try {
             ledgerUnderreplicationManager.setReplicasCheckCTime(System.currentTimeMillis());
         } catch (ReplicationException.NonRecoverableReplicationException nre) {
@@ -355,17 +379,17 @@ public class AuditorReplicasCheckTask extends AuditorTask {
     private class ReadLedgerMetadataCallbackForReplicasCheck
             implements BiConsumer<Versioned<LedgerMetadata>, Throwable> {
         private final long ledgerInRange;
-        private final MultiCallback mcbForThisLedgerRange;
+        private final LedgerCheckCallback ledgerCheckCallback;
         private final ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithMissingEntries;
         private final ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies;
 
         ReadLedgerMetadataCallbackForReplicasCheck(
                 long ledgerInRange,
-                MultiCallback mcbForThisLedgerRange,
+                LedgerCheckCallback ledgerCheckCallback,
                 ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithMissingEntries,
                 ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies) {
             this.ledgerInRange = ledgerInRange;
-            this.mcbForThisLedgerRange = mcbForThisLedgerRange;
+            this.ledgerCheckCallback = ledgerCheckCallback;
             this.ledgersWithMissingEntries = ledgersWithMissingEntries;
             this.ledgersWithUnavailableBookies = ledgersWithUnavailableBookies;
         }
@@ -379,11 +403,11 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                         LOG.debug("Ignoring replicas check of already deleted ledger {}",
                                 ledgerInRange);
                     }
-                    mcbForThisLedgerRange.processResult(BKException.Code.OK, null, null);
+                    ledgerCheckCallback.processResult(BKException.Code.OK, null, null);
                     return;
                 } else {
                     LOG.warn("Unable to read the ledger: {} information", ledgerInRange, exception);
-                    mcbForThisLedgerRange.processResult(BKException.getExceptionCode(exception), null, null);
+                    ledgerCheckCallback.processResult(BKException.getExceptionCode(exception), null, null);
                     return;
                 }
             }
@@ -395,7 +419,7 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                                     + "so skipping the replicas check analysis for now",
                             ledgerInRange);
                 }
-                mcbForThisLedgerRange.processResult(BKException.Code.OK, null, null);
+                ledgerCheckCallback.processResult(BKException.Code.OK, null, null);
                 return;
             }
 
@@ -405,10 +429,26 @@ public class AuditorReplicasCheckTask extends AuditorTask {
                     LOG.debug("Ledger: {} is closed but it doesn't has any entries, "
                             + "so skipping the replicas check", ledgerInRange);
                 }
-                mcbForThisLedgerRange.processResult(BKException.Code.OK, null, null);
+                ledgerCheckCallback.processResult(BKException.Code.OK, null, null);
                 return;
             }
 
+            if (incremental) {
+                VerifiedLedger verifiedLedger = verifiedLedgers.get(ledgerInRange);
+                if (verifiedLedger != null
+                        && verifiedLedger.metadataVersion.compare(metadataVer.getVersion()) == Occurred.CONCURRENTLY
+                        && !isReplicasCheckDue(ledgerInRange, verifiedLedger.lastCheckedTime)) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Ledger: {} didn't change since its replicas were verified, "
+                                + "so skipping the replicas check", ledgerInRange);
+                    }
+                    numLedgersSkipped.incrementAndGet();
+                    ledgerCheckCallback.processResult(BKException.Code.OK, null, null);
+                    return;
+                }
+            }
+            ledgerCheckCallback.checkingReplicas(metadataVer.getVersion());
+
             int writeQuorumSize = metadata.getWriteQuorumSize();
             int ackQuorumSize = metadata.getAckQuorumSize();
             int ensembleSize = metadata.getEnsembleSize();
@@ -421,7 +461,7 @@ public class AuditorReplicasCheckTask extends AuditorTask {
              * created for (ensembleSize * segments.size()) calls.
              */
             MultiCallback mcbForThisLedger = new MultiCallback(ensembleSize * segments.size(),
-                    mcbForThisLedgerRange, null, BKException.Code.OK, BKException.Code.ReadException);
+                    ledgerCheckCallback, null, BKException.Code.OK, BKException.Code.ReadException);
             HashMap<BookieId, List<BookieExpectedToContainSegmentInfo>> bookiesSegmentInfoMap =
                     new HashMap<BookieId, List<BookieExpectedToContainSegmentInfo>>();
             for (int segmentNum = 0; segmentNum < segments.size(); segmentNum++) {
@@ -640,6 +680,92 @@ public class AuditorReplicasCheckTask extends AuditorTask {
         }
     }
 
+    /**
+     * Whether a ledger verified at the given time has to be checked again. Each ledger is checked again at a
+     * time between half the max age and the max age after it was verified, depending on its id, so that the
+     * ledgers verified together are sampled across several runs instead of being checked all again at once.
+     */
+    private boolean isReplicasCheckDue(long ledgerId, long lastCheckedTime) {
+        long halfMaxAgeMs = maxAgeMs / 2;
+        long jitterMs = halfMaxAgeMs == 0 ? 0 : Math.floorMod(ledgerId * 0x9E3779B97F4A7C15L, halfMaxAgeMs);
+        return System.currentTimeMillis() - lastCheckedTime >= halfMaxAgeMs + jitterMs;
+    }
+
+    /**
+     * State of a ledger found with all its replicas.
+     */
+    private static class VerifiedLedger {
+        private final Version metadataVersion;
+        private final long lastCheckedTime;
+        // the last run of the replicas check that found the ledger in the metadata store
+        private volatile long lastSeenRun;
+
+        private VerifiedLedger(Version metadataVersion, long lastCheckedTime, long lastSeenRun) {
+            this.metadataVersion = metadataVersion;
+            this.lastCheckedTime = lastCheckedTime;
+            this.lastSeenRun = lastSeenRun;
+        }
+    }
+
+    /**
+     * Callback of the replicas check of a ledger. It releases the permit of the ledger, feeding the latency of
+     * the check to the concurrency limiter, and it remembers the ledger when it is found with all its replicas.
+     */
+    private class LedgerCheckCallback implements AsyncCallback.VoidCallback {
+        private final long ledgerId;
+        private final long run;
+        private final long startNanos;
+        private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+        private final VoidCallback mcbForThisLedgerRange;
+        private final ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithMissingEntries;
+        private final ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies;
+        // version of the metadata of the ledger, set if the bookies are asked for its entries
+        private volatile Version metadataVersion;
+
+        private LedgerCheckCallback(long ledgerId, long run, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                    VoidCallback mcbForThisLedgerRange,
+                                    ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithMissingEntries,
+                                    ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies) {
+            this.ledgerId = ledgerId;
+            this.run = run;
+            this.startNanos = MathUtils.nowInNano();
+            this.concurrencyLimiter = concurrencyLimiter;
+            this.mcbForThisLedgerRange = mcbForThisLedgerRange;
+            this.ledgersWithMissingEntries = ledgersWithMissingEntries;
+            this.ledgersWithUnavailableBookies = ledgersWithUnavailableBookies;
+        }
+
+        private void checkingReplicas(Version metadataVersion) {
+            this.metadataVersion = metadataVersion;
+        }
+
+        @Override
+        public void processResult(int rc, String path, Object ctx) {
+            try {
+                if (metadataVersion == null) {
+                    // only the metadata was read, the latency says nothing about the bookies
+                    concurrencyLimiter.release();
+                } else {
+                    concurrencyLimiter.release(MathUtils.elapsedNanos(startNanos), rc == BKException.Code.OK);
+                    if (incremental) {
+                        recordReplicasCheck(rc);
+                    }
+                }
+            } finally {
+                mcbForThisLedgerRange.processResult(rc, path, ctx);
+            }
+        }
+
+        private void recordReplicasCheck(int rc) {
+            if (rc != BKException.Code.OK || ledgersWithMissingEntries.containsKey(ledgerId)
+                    || ledgersWithUnavailableBookies.containsKey(ledgerId)) {
+                verifiedLedgers.remove(ledgerId);
+                return;
+            }
+            verifiedLedgers.put(ledgerId, new VerifiedLedger(metadataVersion, System.currentTimeMillis(), run));
+        }
+    }
+
     private static class ReplicasCheckFinalCallback implements AsyncCallback.VoidCallback {
         final AtomicInteger resultCode;
         final CountDownLatch replicasCheckLatch;
@@ -64,13 +64,10 @@ public class BookieLedgerIndexer {
         Processor<Long> ledgerProcessor = new Processor<Long>() {
                 @Override
                 public void process(Long ledgerId, AsyncCallback.VoidCallback iterCallback) {
-                    ledgerManager.readLedgerMetadata(ledgerId).whenComplete((metadata, exception) -> {
+                    ledgerManager.readLedgerBookies(ledgerId).whenComplete((bookies, exception) -> {
                                 if (exception == null) {
-                                    for (Map.Entry<Long, ? extends List<BookieId>> ensemble
-                                             : metadata.getValue().getAllEnsembles().entrySet()) {
-                                        for (BookieId bookie : ensemble.getValue()) {
-                                            putLedger(bookie2ledgersMap, bookie.toString(), ledgerId);
-                                        }
+                                    for (BookieId bookie : bookies) {
+                                        putLedger(bookie2ledgersMap, bookie.toString(), ledgerId);
                                     }
                                     iterCallback.processResult(BKException.Code.OK, null, null);
                                 } else if (BKException.getExceptionCode(exception)
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Maps;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataChangeListener;
+import org.apache.bookkeeper.replication.ReplicationException.BKAuditException;
+import org.apache.bookkeeper.util.collections.LedgerIdBitmap;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bookie vs its ledgers index kept in memory and updated from the ledger metadata change stream.
+ *
+ * <p>The index is built once with a scan of all the ledgers, then each change of the metadata of a ledger is
+ * applied to it as it is notified, so a bookie check neither lists the ledgers nor reads their metadata. The
+ * ledgers of each bookie are kept in a {@link LedgerIdBitmap}, and nothing is kept per ledger, so applying a
+ * change goes through the bookies of the index.
+ *
+ * <p>When the changes cannot be resumed, e.g. because the metadata store compacted them, the index is built
+ * again from a scan at the next bookie check. The changes notified while the index is built are applied in
+ * order once the scan is done, as they are at least as recent as the metadata read by the scan.
+ *
+ * <p>The index can be saved to a snapshot file after each bookie check, along with the revision of the last
+ * change applied to it, so that an auditor which restarts resumes from that revision instead of scanning all
+ * the ledgers again.
+ *
+ * <p>With a ledger manager without a change stream, the index is built from a scan at each bookie check, as
+ * {@link BookieLedgerIndexer} does.
+ */
+public class IncrementalBookieLedgerIndexer extends BookieLedgerIndexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalBookieLedgerIndexer.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x424c4958;
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private final LedgerManager ledgerManager;
+    private final File snapshotFile;
+    private final LedgerMetadataChangeListener changeListener = new ChangeListener();
+
+    // guarded by this
+    private Map<String, LedgerIdBitmap> bookieToLedgers = new HashMap<>();
+    private boolean registered = false;
+    private boolean changeStreamSupported = true;
+    private boolean rebuildNeeded = true;
+    // the number of times the changes could not be resumed, a rebuild is done again if it changes meanwhile
+    private long resets = 0;
+    // the changes notified while the index is rebuilt, null when it is not
+    private List<Change> pendingChanges = null;
+    // the revision of the last change applied to the index, or buffered to be applied once it is rebuilt
+    private long lastRevision = -1L;
+
+    /**
+     * A change of the bookies of a ledger.
+     */
+    private static final class Change {
+        private final long ledgerId;
+        // null if the ledger was deleted
+        private final Set<String> bookies;
+
+        Change(long ledgerId, Set<String> bookies) {
+            this.ledgerId = ledgerId;
+            this.bookies = bookies;
+        }
+    }
+
+    private final class ChangeListener implements LedgerMetadataChangeListener {
+        @Override
+        public void onChanged(long ledgerId, Versioned<LedgerMetadata> metadata, long revision) {
+            Set<String> bookies = metadata == null ? null : getBookies(metadata.getValue());
+            synchronized (IncrementalBookieLedgerIndexer.this) {
+                lastRevision = revision;
+                if (pendingChanges != null) {
+                    pendingChanges.add(new Change(ledgerId, bookies));
+                } else {
+                    applyChange(ledgerId, bookies);
+                }
+            }
+        }
+
+        @Override
+        public void onReset(long revision) {
+            LOG.info("The ledger metadata changes cannot be resumed, rebuilding the ledger index from revision {}",
+                    revision);
+            synchronized (IncrementalBookieLedgerIndexer.this) {
+                resets++;
+                rebuildNeeded = true;
+                lastRevision = revision;
+                // the changes buffered so far are older than the scan which is about to be done
+                pendingChanges = new ArrayList<>();
+            }
+        }
+    }
+
+    public IncrementalBookieLedgerIndexer(LedgerManager ledgerManager, ServerConfiguration conf) {
+        super(ledgerManager);
+        this.ledgerManager = ledgerManager;
+        String snapshotPath = conf.getAuditorLedgerIndexSnapshotPath();
+        this.snapshotFile = snapshotPath == null || snapshotPath.isEmpty() ? null : new File(snapshotPath);
+    }
+
+    @Override
+    public Map<String, Set<Long>> getBookieToLedgerIndex() throws BKAuditException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        if (!registerChangeListener()) {
+            return super.getBookieToLedgerIndex();
+        }
+        rebuildIfNeeded();
+        saveSnapshot();
+
+        synchronized (this) {
+            long numLedgers = 0;
+            long sizeInBytes = 0;
+            for (LedgerIdBitmap ledgers : bookieToLedgers.values()) {
+                numLedgers += ledgers.cardinality();
+                sizeInBytes += ledgers.sizeInBytes();
+            }
+            LOG.info("Got the index of {} ledger replicas on {} bookies at revision {} in {} ms,"
+                    + " the index takes {} bytes", numLedgers, bookieToLedgers.size(), lastRevision,
+                    stopwatch.elapsed(TimeUnit.MILLISECONDS), sizeInBytes);
+            // the ledgers of a bookie are only copied out of the index when they are needed
+            return Maps.asMap(new HashSet<>(bookieToLedgers.keySet()), this::getLedgers);
+        }
+    }
+
+    private synchronized Set<Long> getLedgers(String bookie) {
+        LedgerIdBitmap ledgers = bookieToLedgers.get(bookie);
+        if (ledgers == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> result = new HashSet<>();
+        ledgers.forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Register the change listener, from the revision of the snapshot if there is one.
+     *
+     * @return false if the ledger manager has no change stream
+     */
+    private boolean registerChangeListener() throws BKAuditException {
+        long fromRevision;
+        synchronized (this) {
+            if (registered || !changeStreamSupported) {
+                return changeStreamSupported;
+            }
+            loadSnapshot();
+            if (rebuildNeeded) {
+                pendingChanges = new ArrayList<>();
+            }
+            fromRevision = lastRevision;
+        }
+        try {
+            ledgerManager.registerLedgerMetadataChangeListener(fromRevision, changeListener).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BKAuditException("Interrupted while registering the ledger metadata change listener", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                LOG.info("{}, the ledger index is rebuilt at each bookie check", e.getCause().getMessage());
+                synchronized (this) {
+                    changeStreamSupported = false;
+                    pendingChanges = null;
+                    bookieToLedgers = new HashMap<>();
+                }
+                return false;
+            }
+            throw new BKAuditException("Failed to register the ledger metadata change listener", e.getCause());
+        }
+        synchronized (this) {
+            registered = true;
+        }
+        return true;
+    }
+
+    /**
+     * Build the index from a scan of all the ledgers, if it is not built yet or the changes could not be resumed.
+     */
+    private void rebuildIfNeeded() throws BKAuditException {
+        while (true) {
+            long scanResets;
+            synchronized (this) {
+                if (!rebuildNeeded) {
+                    return;
+                }
+                scanResets = resets;
+            }
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            Map<String, Set<Long>> scanned = super.getBookieToLedgerIndex();
+            synchronized (this) {
+                if (resets != scanResets) {
+                    // the changes after the scan could not be resumed either
+                    continue;
+                }
+                Map<String, LedgerIdBitmap> index = new HashMap<>();
+                for (Map.Entry<String, Set<Long>> entry : scanned.entrySet()) {
+                    LedgerIdBitmap ledgers = new LedgerIdBitmap();
+                    entry.getValue().forEach(ledgers::add);
+                    index.put(entry.getKey(), ledgers);
+                }
+                bookieToLedgers = index;
+                for (Change change : pendingChanges) {
+                    applyChange(change.ledgerId, change.bookies);
+                }
+                LOG.info("Rebuilt the ledger index of {} bookies in {} ms, and applied the {} changes notified"
+                        + " meanwhile", bookieToLedgers.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS),
+                        pendingChanges.size());
+                pendingChanges = null;
+                rebuildNeeded = false;
+                return;
+            }
+        }
+    }
+
+    private static Set<String> getBookies(LedgerMetadata metadata) {
+        Set<String> bookies = new HashSet<>();
+        for (List<BookieId> ensemble : metadata.getAllEnsembles().values()) {
+            for (BookieId bookie : ensemble) {
+                bookies.add(bookie.toString());
+            }
+        }
+        return bookies;
+    }
+
+    // must be called holding the lock
+    private void applyChange(long ledgerId, Set<String> bookies) {
+        Iterator<Map.Entry<String, LedgerIdBitmap>> iterator = bookieToLedgers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, LedgerIdBitmap> entry = iterator.next();
+            if ((bookies == null || !bookies.contains(entry.getKey())) && entry.getValue().remove(ledgerId)
+                    && entry.getValue().isEmpty()) {
+                iterator.remove();
+            }
+        }
+        if (bookies != null) {
+            for (String bookie : bookies) {
+                bookieToLedgers.computeIfAbsent(bookie, b -> new LedgerIdBitmap()).add(ledgerId);
+            }
+        }
+    }
+
+    // must be called holding the lock
+    private void loadSnapshot() {
+        if (snapshotFile == null || !snapshotFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != SNAPSHOT_MAGIC || version != SNAPSHOT_VERSION) {
+                throw new IOException("Unknown ledger index snapshot format " + magic + " version " + version);
+            }
+            long revision = in.readLong();
+            int numBookies = in.readInt();
+            Map<String, LedgerIdBitmap> index = new HashMap<>();
+            for (int i = 0; i < numBookies; i++) {
+                String bookie = in.readUTF();
+                index.put(bookie, LedgerIdBitmap.deserialize(in));
+            }
+            bookieToLedgers = index;
+            lastRevision = revision;
+            rebuildNeeded = false;
+            LOG.info("Loaded the ledger index of {} bookies at revision {} from {}", index.size(), revision,
+                    snapshotFile);
+        } catch (IOException ioe) {
+            LOG.warn("Failed to load the ledger index snapshot {}, rebuilding the index", snapshotFile, ioe);
+        }
+    }
+
+    private synchronized void saveSnapshot() {
+        // the index cannot be resumed before the first change tells the revision it is at
+        if (snapshotFile == null || rebuildNeeded || lastRevision < 0) {
+            return;
+        }
+        File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(lastRevision);
+                out.writeInt(bookieToLedgers.size());
+                for (Map.Entry<String, LedgerIdBitmap> entry : bookieToLedgers.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().serialize(out);
+                }
+            }
+            Files.move(tmpFile.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ioe) {
+            LOG.warn("Failed to save the ledger index snapshot {}", snapshotFile, ioe);
+        }
+    }
+}
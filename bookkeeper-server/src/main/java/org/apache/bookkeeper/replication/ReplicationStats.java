@@ -61,6 +61,10 @@ public interface ReplicationStats {
     String NUM_BYTES_WRITTEN = "NUM_BYTES_WRITTEN";
     String READ_DATA_LATENCY = "READ_DATA_LATENCY";
     String WRITE_DATA_LATENCY = "WRITE_DATA_LATENCY";
+    String REPLICATION_THROUGHPUT_BYTES = "REPLICATION_THROUGHPUT_BYTES";
+    String REPLICATION_PENDING_ENTRIES = "REPLICATION_PENDING_ENTRIES";
+    String REPLICATION_ETA_SECONDS = "REPLICATION_ETA_SECONDS";
+    String NUM_LEDGERS_BEING_REPLICATED = "NUM_LEDGERS_BEING_REPLICATED";
     String REPLICATE_EXCEPTION = "exceptions";
     String NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER = "NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER";
     String NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION = "NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION";
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.replication;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_FULL_OR_PARTIAL_LEDGERS_REPLICATED;
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_BEING_REPLICATED;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_NOT_ADHERING_PLACEMENT_LEDGERS_REPLICATED;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATE_EXCEPTION;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WORKER_SCOPE;
@@ -37,7 +38,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +48,7 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -75,6 +76,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.replication.ReplicationException.CompatibilityException;
 import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -85,7 +87,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * ReplicationWorker will take the fragments one by one from
- * ZKLedgerUnderreplicationManager and replicates to it.
+ * ZKLedgerUnderreplicationManager and replicates to it. The worker runs a
+ * thread per ledger it re-replicates at the same time.
  */
 @StatsDoc(
     name = REPLICATION_WORKER_SCOPE,
@@ -104,7 +107,7 @@ public class ReplicationWorker implements Runnable {
     private final LedgerChecker ledgerChecker;
     private final BookKeeper bkc;
     private final boolean ownBkc;
-    private final Thread workerThread;
+    private final List<Thread> workerThreads;
     private final long rwRereplicateBackoffMs;
     private final long openLedgerRereplicationGracePeriod;
     private final Timer pendingReplicationTimer;
@@ -145,6 +148,7 @@ public class ReplicationWorker implements Runnable {
             help = "the number of not adhering placement policy ledgers re-replicated"
     )
     private final Counter numNotAdheringPlacementLedgersReplicated;
+    private final AtomicInteger numLedgersBeingReplicated = new AtomicInteger();
     private final Map<String, Counter> exceptionCounters;
     final LoadingCache<Long, AtomicInteger> replicationFailedLedgers;
     final LoadingCache<Long, ConcurrentSkipListSet<Long>> unableToReadEntriesForReplication;
@@ -193,7 +197,12 @@ public class ReplicationWorker implements Runnable {
         this.ledgerManager = bkc.getLedgerManagerFactory().newLedgerManager();
         this.admin = new BookKeeperAdmin(bkc, statsLogger, new ClientConfiguration(conf));
         this.ledgerChecker = new LedgerChecker(bkc);
-        this.workerThread = new BookieThread(this, "ReplicationWorker");
+        int concurrentLedgers = Math.max(1, conf.getReplicationWorkerConcurrentLedgers());
+        this.workerThreads = new ArrayList<>(concurrentLedgers);
+        for (int i = 0; i < concurrentLedgers; i++) {
+            workerThreads.add(new BookieThread(this,
+                    concurrentLedgers == 1 ? "ReplicationWorker" : "ReplicationWorker-" + i));
+        }
         this.openLedgerRereplicationGracePeriod = conf
                 .getOpenLedgerRereplicationGracePeriod();
         this.lockReleaseOfFailedLedgerGracePeriod = conf.getLockReleaseOfFailedLedgerGracePeriod();
@@ -228,7 +237,18 @@ public class ReplicationWorker implements Runnable {
                 .getCounter(NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION);
         this.numNotAdheringPlacementLedgersReplicated = this.statsLogger
                 .getCounter(NUM_NOT_ADHERING_PLACEMENT_LEDGERS_REPLICATED);
-        this.exceptionCounters = new HashMap<String, Counter>();
+        this.statsLogger.registerGauge(NUM_LEDGERS_BEING_REPLICATED, new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return numLedgersBeingReplicated.get();
+            }
+        });
+        this.exceptionCounters = new ConcurrentHashMap<String, Counter>();
         this.onReadEntryFailureCallback = (ledgerid, entryid) -> {
             numEntriesUnableToReadForReplication.inc();
             unableToReadEntriesForReplication.getUnchecked(ledgerid).add(entryid);
@@ -239,12 +259,15 @@ public class ReplicationWorker implements Runnable {
      * Start the replication worker.
      */
     public void start() {
-        this.workerThread.start();
+        // set before the threads run, a thread shutting down the worker must not be undone by a thread starting
+        workerRunning = true;
+        for (Thread workerThread : workerThreads) {
+            workerThread.start();
+        }
     }
 
     @Override
     public void run() {
-        workerRunning = true;
         while (workerRunning) {
             try {
                 if (!rereplicate()) {
@@ -298,9 +321,11 @@ public class ReplicationWorker implements Runnable {
 
         Stopwatch stopwatch = Stopwatch.createStarted();
         boolean success = false;
+        numLedgersBeingReplicated.incrementAndGet();
         try {
             success = rereplicate(ledgerIdToReplicate);
         } finally {
+            numLedgersBeingReplicated.decrementAndGet();
             long latencyMillis = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
             if (success) {
                 rereplicateOpStats.registerSuccessfulEvent(latencyMillis, TimeUnit.MILLISECONDS);
@@ -771,8 +796,15 @@ public class ReplicationWorker implements Runnable {
         LOG.info("Shutting down ReplicationWorker");
         this.pendingReplicationTimer.cancel();
         try {
-            this.workerThread.interrupt();
-            this.workerThread.join();
+            for (Thread workerThread : workerThreads) {
+                workerThread.interrupt();
+            }
+            for (Thread workerThread : workerThreads) {
+                // a worker thread might be shutting down the worker
+                if (workerThread != Thread.currentThread()) {
+                    workerThread.join();
+                }
+            }
         } catch (InterruptedException e) {
             LOG.error("Interrupted during shutting down replication worker : ",
                     e);
@@ -801,7 +833,15 @@ public class ReplicationWorker implements Runnable {
      */
     @VisibleForTesting
     public boolean isRunning() {
-        return workerRunning && workerThread.isAlive();
+        if (!workerRunning) {
+            return false;
+        }
+        for (Thread workerThread : workerThreads) {
+            if (!workerThread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -829,12 +869,7 @@ public class ReplicationWorker implements Runnable {
     }
 
     private Counter getExceptionCounter(String name) {
-        Counter counter = this.exceptionCounters.get(name);
-        if (counter == null) {
-            counter = this.exceptionLogger.getCounter(name);
-            this.exceptionCounters.put(name, counter);
-        }
-        return counter;
+        return this.exceptionCounters.computeIfAbsent(name, this.exceptionLogger::getCounter);
     }
 
 }
@@ -25,6 +25,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_INDEX_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_LEDGER_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SLAB_ALLOCATOR_SCOPE;
 import static org.apache.bookkeeper.bookie.BookieImpl.newBookieImpl;
 import static org.apache.bookkeeper.bookie.LegacyCookieValidation.newLegacyCookieValidation;
 import static org.apache.bookkeeper.client.BookKeeperClientStats.CLIENT_SCOPE;
@@ -62,9 +63,11 @@ import org.apache.bookkeeper.bookie.datainteg.DataIntegrityCookieValidation;
 import org.apache.bookkeeper.bookie.datainteg.DataIntegrityService;
 import org.apache.bookkeeper.bookie.datainteg.EntryCopier;
 import org.apache.bookkeeper.bookie.datainteg.EntryCopierImpl;
+import org.apache.bookkeeper.bookie.stats.SlabAllocatorStats;
 import org.apache.bookkeeper.client.BookKeeper;
 import org.apache.bookkeeper.client.BookKeeperAdmin;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
+import org.apache.bookkeeper.common.allocator.impl.ByteBufAllocatorImpl;
 import org.apache.bookkeeper.common.component.AutoCloseableLifecycleComponent;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher;
 import org.apache.bookkeeper.common.component.LifecycleComponentStack;
@@ -351,6 +354,11 @@ public class EmbeddedServer {
                     allocatorWithOomHandler = new ByteBuffAllocatorWrapper(allocator);
                 }
             }
+            if (allocator instanceof ByteBufAllocatorImpl
+                    && ((ByteBufAllocatorImpl) allocator).getSlabAllocator() != null) {
+                new SlabAllocatorStats(((ByteBufAllocatorImpl) allocator).getSlabAllocator(),
+                        bookieStats.scope(SLAB_ALLOCATOR_SCOPE));
+            }
 
             if (uncleanShutdownDetection == null) {
                 uncleanShutdownDetection = new UncleanShutdownDetectionImpl(ledgerDirsManager);
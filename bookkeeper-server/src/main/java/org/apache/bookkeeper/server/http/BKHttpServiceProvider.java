@@ -60,6 +60,7 @@ import org.apache.bookkeeper.server.http.service.LostBookieRecoveryDelayService;
 import org.apache.bookkeeper.server.http.service.MetricsService;
 import org.apache.bookkeeper.server.http.service.ReadLedgerEntryService;
 import org.apache.bookkeeper.server.http.service.RecoveryBookieService;
+import org.apache.bookkeeper.server.http.service.RequestTracesService;
 import org.apache.bookkeeper.server.http.service.ResumeCompactionService;
 import org.apache.bookkeeper.server.http.service.SuspendCompactionService;
 import org.apache.bookkeeper.server.http.service.TriggerAuditService;
@@ -238,6 +239,8 @@ public class BKHttpServiceProvider implements HttpServiceProvider {
                 return new ResumeCompactionService(bookieServer);
             case TRIGGER_ENTRY_LOCATION_COMPACT:
                 return new TriggerLocationCompactService(bookieServer);
+            case REQUEST_TRACES:
+                return new RequestTracesService(configuration, bookieServer);
 
             // autorecovery
             case AUTORECOVERY_STATUS:
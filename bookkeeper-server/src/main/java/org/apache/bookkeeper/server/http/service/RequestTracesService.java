@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.server.http.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import org.apache.bookkeeper.common.util.JsonUtil;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.http.HttpServer;
+import org.apache.bookkeeper.http.service.HttpEndpointService;
+import org.apache.bookkeeper.http.service.HttpServiceRequest;
+import org.apache.bookkeeper.http.service.HttpServiceResponse;
+import org.apache.bookkeeper.proto.BookieServer;
+import org.apache.bookkeeper.proto.RequestTracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HttpEndpointService that handle get the slowest recent traced requests.
+ *
+ * <p>The requests are only traced when requestTracingSampleRate is set. The output would be like:
+ *        [ {
+ *           "op" : "add",
+ *           "ledgerId" : 12,
+ *           "entryId" : 345,
+ *           "success" : true,
+ *           "completionTimeMillis" : 1544578144944,
+ *           "totalMicros" : 15230,
+ *           "stageMicros" : {
+ *             "decode" : 8,
+ *             "queue" : 21,
+ *             "ledger_storage" : 35,
+ *             "journal_queue" : 40,
+ *             "group_commit" : 1210,
+ *             "force_write_queue" : 2,
+ *             "fsync" : 13890,
+ *             "response" : 24
+ *           }
+ *         } ]
+ */
+public class RequestTracesService implements HttpEndpointService {
+
+    static final Logger LOG = LoggerFactory.getLogger(RequestTracesService.class);
+
+    protected ServerConfiguration conf;
+    protected BookieServer bookieServer;
+
+    public RequestTracesService(ServerConfiguration conf, BookieServer bookieServer) {
+        checkNotNull(conf);
+        checkNotNull(bookieServer);
+        this.conf = conf;
+        this.bookieServer = bookieServer;
+    }
+
+    @Override
+    public HttpServiceResponse handle(HttpServiceRequest request) throws Exception {
+        HttpServiceResponse response = new HttpServiceResponse();
+
+        if (HttpServer.Method.GET == request.getMethod()) {
+            List<RequestTracer.SlowRequest> slowRequests = bookieServer.getBookieRequestProcessor()
+                .getRequestTracer().getSlowRequests();
+
+            String jsonResponse = JsonUtil.toJson(slowRequests);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("output body:" + jsonResponse);
+            }
+            response.setBody(jsonResponse);
+            response.setCode(HttpServer.StatusCode.OK);
+            return response;
+        } else {
+            response.setCode(HttpServer.StatusCode.NOT_FOUND);
+            response.setBody("Only support GET method to retrieve the traces of the slow requests.");
+            return response;
+        }
+    }
+}
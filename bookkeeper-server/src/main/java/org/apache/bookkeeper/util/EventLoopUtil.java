@@ -47,7 +47,13 @@ public class EventLoopUtil {
     }
 
     public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        EventLoopGroup eventLoopGroup =
+                getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        if (conf.isThreadPerCoreEnabled() && !conf.isBusyWaitEnabled()) {
+            // in thread-per-core mode every IO thread owns a core, even when not spinning
+            acquireCores(eventLoopGroup, conf.getServerNumIOThreads());
+        }
+        return eventLoopGroup;
     }
 
     public static EventLoopGroup getServerAcceptorGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
@@ -81,16 +87,7 @@ public class EventLoopUtil {
                         () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
 
                 // Enable CPU affinity on IO threads
-                for (int i = 0; i < numThreads; i++) {
-                    eventLoopGroup.next().submit(() -> {
-                        try {
-                            CpuAffinity.acquireCore();
-                        } catch (Throwable t) {
-                            log.warn("Failed to acquire CPU core for thread {} err {} {}",
-                                    Thread.currentThread().getName(), t.getMessage(), t);
-                        }
-                    });
-                }
+                acquireCores(eventLoopGroup, numThreads);
 
                 return eventLoopGroup;
             } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
@@ -99,4 +96,17 @@ public class EventLoopUtil {
             }
         }
     }
+
+    private static void acquireCores(EventLoopGroup eventLoopGroup, int numThreads) {
+        for (int i = 0; i < numThreads; i++) {
+            eventLoopGroup.next().submit(() -> {
+                try {
+                    CpuAffinity.acquireCore();
+                } catch (Throwable t) {
+                    log.warn("Failed to acquire CPU core for thread {} err {} {}",
+                            Thread.currentThread().getName(), t.getMessage(), t);
+                }
+            });
+        }
+    }
 }
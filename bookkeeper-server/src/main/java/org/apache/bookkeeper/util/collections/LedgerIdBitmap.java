@@ -0,0 +1,364 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Compressed bitmap of ledger ids.
+ *
+ * <p>The ids are partitioned by their high 48 bits into chunks of 65536 ids, in the same way as roaring bitmaps.
+ * A chunk with few ids keeps them as a sorted array of their low 16 bits, which takes 2 bytes per id, and it is
+ * turned into a bitmap of 8KB when it grows over 4096 ids. Ledger ids are allocated sequentially, so the ids of
+ * the ledgers stored on a bookie end up in a few dense chunks, and the bitmap takes a fraction of the memory of a
+ * set of boxed longs.
+ *
+ * <p>Items <strong>MUST</strong> be &gt;= 0. This class is not thread safe.
+ */
+public class LedgerIdBitmap {
+
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private static final byte ARRAY_CONTAINER = 0;
+    private static final byte BITMAP_CONTAINER = 1;
+
+    private final TreeMap<Long, Container> containers = new TreeMap<>();
+    private long cardinality = 0;
+
+    /**
+     * Add a ledger id.
+     *
+     * @return true if the id was not in the bitmap
+     */
+    public boolean add(long ledgerId) {
+        Long key = ledgerId >>> 16;
+        Container container = containers.get(key);
+        if (container == null) {
+            container = new ArrayContainer();
+            containers.put(key, container);
+        }
+        char low = (char) ledgerId;
+        if (container.contains(low)) {
+            return false;
+        }
+        if (container instanceof ArrayContainer && container.cardinality() == ARRAY_MAX_SIZE) {
+            container = ((ArrayContainer) container).toBitmap();
+            containers.put(key, container);
+        }
+        container.add(low);
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Remove a ledger id.
+     *
+     * @return true if the id was in the bitmap
+     */
+    public boolean remove(long ledgerId) {
+        Long key = ledgerId >>> 16;
+        Container container = containers.get(key);
+        if (container == null || !container.remove((char) ledgerId)) {
+            return false;
+        }
+        cardinality--;
+        int size = container.cardinality();
+        if (size == 0) {
+            containers.remove(key);
+        } else if (container instanceof BitmapContainer && size <= ARRAY_MAX_SIZE / 2) {
+            containers.put(key, ((BitmapContainer) container).toArray());
+        }
+        return true;
+    }
+
+    public boolean contains(long ledgerId) {
+        Container container = containers.get(ledgerId >>> 16);
+        return container != null && container.contains((char) ledgerId);
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public void clear() {
+        containers.clear();
+        cardinality = 0;
+    }
+
+    /**
+     * Iterate over the ledger ids, in ascending order.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (Map.Entry<Long, Container> e : containers.entrySet()) {
+            e.getValue().forEach(e.getKey() << 16, consumer);
+        }
+    }
+
+    /**
+     * @return the number of bytes taken by the ids
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (Container container : containers.values()) {
+            size += container.sizeInBytes();
+        }
+        return size;
+    }
+
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(containers.size());
+        for (Map.Entry<Long, Container> e : containers.entrySet()) {
+            out.writeLong(e.getKey());
+            e.getValue().serialize(out);
+        }
+    }
+
+    public static LedgerIdBitmap deserialize(DataInput in) throws IOException {
+        LedgerIdBitmap bitmap = new LedgerIdBitmap();
+        int numContainers = in.readInt();
+        for (int i = 0; i < numContainers; i++) {
+            long key = in.readLong();
+            byte type = in.readByte();
+            Container container;
+            if (type == ARRAY_CONTAINER) {
+                container = ArrayContainer.deserialize(in);
+            } else if (type == BITMAP_CONTAINER) {
+                container = BitmapContainer.deserialize(in);
+            } else {
+                throw new IOException("Unknown container type " + type);
+            }
+            if (container.cardinality() > 0) {
+                bitmap.containers.put(key, container);
+                bitmap.cardinality += container.cardinality();
+            }
+        }
+        return bitmap;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        forEach(id -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(id);
+        });
+        return sb.append(']').toString();
+    }
+
+    private abstract static class Container {
+        abstract void add(char low);
+
+        abstract boolean remove(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract void forEach(long high, LongConsumer consumer);
+
+        abstract long sizeInBytes();
+
+        abstract void serialize(DataOutput out) throws IOException;
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        void add(char low) {
+            int idx = Arrays.binarySearch(values, 0, size, low);
+            if (idx >= 0) {
+                return;
+            }
+            idx = -idx - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX_SIZE, size * 2));
+            }
+            System.arraycopy(values, idx, values, idx + 1, size - idx);
+            values[idx] = low;
+            size++;
+        }
+
+        @Override
+        boolean remove(char low) {
+            int idx = Arrays.binarySearch(values, 0, size, low);
+            if (idx < 0) {
+                return false;
+            }
+            System.arraycopy(values, idx + 1, values, idx, size - idx - 1);
+            size--;
+            return true;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        void forEach(long high, LongConsumer consumer) {
+            for (int i = 0; i < size; i++) {
+                consumer.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 2L * values.length;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        void serialize(DataOutput out) throws IOException {
+            out.writeByte(ARRAY_CONTAINER);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeChar(values[i]);
+            }
+        }
+
+        static ArrayContainer deserialize(DataInput in) throws IOException {
+            int size = in.readInt();
+            if (size < 0 || size > ARRAY_MAX_SIZE) {
+                throw new IOException("Invalid array container size " + size);
+            }
+            char[] values = new char[Math.max(4, size)];
+            for (int i = 0; i < size; i++) {
+                values[i] = in.readChar();
+            }
+            return new ArrayContainer(values, size);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[BITMAP_WORDS];
+        private int cardinality;
+
+        @Override
+        void add(char low) {
+            long mask = 1L << low;
+            int idx = low >>> 6;
+            if ((words[idx] & mask) == 0) {
+                words[idx] |= mask;
+                cardinality++;
+            }
+        }
+
+        @Override
+        boolean remove(char low) {
+            long mask = 1L << low;
+            int idx = low >>> 6;
+            if ((words[idx] & mask) == 0) {
+                return false;
+            }
+            words[idx] &= ~mask;
+            cardinality--;
+            return true;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void forEach(long high, LongConsumer consumer) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    consumer.accept(high | ((long) i << 6) | bit);
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 8L * BITMAP_WORDS;
+        }
+
+        ArrayContainer toArray() {
+            char[] values = new char[Math.max(4, cardinality)];
+            int[] size = new int[1];
+            forEach(0L, id -> values[size[0]++] = (char) id);
+            return new ArrayContainer(values, size[0]);
+        }
+
+        @Override
+        void serialize(DataOutput out) throws IOException {
+            out.writeByte(BITMAP_CONTAINER);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        static BitmapContainer deserialize(DataInput in) throws IOException {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = in.readLong();
+                bitmap.words[i] = word;
+                bitmap.cardinality += Long.bitCount(word);
+            }
+            return bitmap;
+        }
+    }
+}
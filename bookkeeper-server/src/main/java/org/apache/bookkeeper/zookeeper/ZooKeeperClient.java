@@ -41,6 +41,7 @@ import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.zookeeper.ZooWorker.ZooCallable;
+import org.apache.zookeeper.AddWatchMode;
 import org.apache.zookeeper.AsyncCallback.ACLCallback;
 import org.apache.zookeeper.AsyncCallback.Children2Callback;
 import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
@@ -58,6 +59,7 @@ import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.Watcher.Event.EventType;
 import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.Watcher.WatcherType;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.data.ACL;
 import org.apache.zookeeper.data.Stat;
@@ -104,6 +106,8 @@ public class ZooKeeperClient extends ZooKeeper implements Watcher, AutoCloseable
     private final OpStatsLogger getACLStats;
     private final OpStatsLogger setACLStats;
     private final OpStatsLogger syncStats;
+    private final OpStatsLogger addWatchStats;
+    private final OpStatsLogger removeWatchesStats;
     private final OpStatsLogger createClientStats;
 
     private final Callable<ZooKeeper> clientCreator = new Callable<ZooKeeper>() {
@@ -313,6 +317,8 @@ public class ZooKeeperClient extends ZooKeeper implements Watcher, AutoCloseable
         getACLStats = scopedStatsLogger.getOpStatsLogger("get_acl");
         setACLStats = scopedStatsLogger.getOpStatsLogger("set_acl");
         syncStats = scopedStatsLogger.getOpStatsLogger("sync");
+        addWatchStats = scopedStatsLogger.getOpStatsLogger("add_watch");
+        removeWatchesStats = scopedStatsLogger.getOpStatsLogger("remove_watches");
     }
 
     @Override
@@ -864,6 +870,54 @@ public class ZooKeeperClient extends ZooKeeper implements Watcher, AutoCloseable
         }, operationRetryPolicy, rateLimiter, existsStats);
     }
 
+    @Override
+    public void addWatch(final String basePath, final Watcher watcher, final AddWatchMode mode)
+            throws KeeperException, InterruptedException {
+        ZooWorker.syncCallWithRetries(this, new ZooCallable<Void>() {
+
+            @Override
+            public Void call() throws KeeperException, InterruptedException {
+                ZooKeeper zkHandle = zk.get();
+                if (null == zkHandle) {
+                    ZooKeeperClient.super.addWatch(basePath, watcher, mode);
+                } else {
+                    zkHandle.addWatch(basePath, watcher, mode);
+                }
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("addWatch (%s, watcher = %s, mode = %s)", basePath, watcher, mode);
+            }
+
+        }, operationRetryPolicy, rateLimiter, addWatchStats);
+    }
+
+    @Override
+    public void removeWatches(final String path, final Watcher watcher, final WatcherType watcherType,
+                              final boolean local) throws InterruptedException, KeeperException {
+        ZooWorker.syncCallWithRetries(this, new ZooCallable<Void>() {
+
+            @Override
+            public Void call() throws KeeperException, InterruptedException {
+                ZooKeeper zkHandle = zk.get();
+                if (null == zkHandle) {
+                    ZooKeeperClient.super.removeWatches(path, watcher, watcherType, local);
+                } else {
+                    zkHandle.removeWatches(path, watcher, watcherType, local);
+                }
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("removeWatches (%s, watcher = %s, type = %s)", path, watcher, watcherType);
+            }
+
+        }, operationRetryPolicy, rateLimiter, removeWatchesStats);
+    }
+
     @Override
     public void exists(final String path, final Watcher watcher, final StatCallback cb, final Object context) {
         final Runnable proc = new ZkRetryRunnable(operationRetryPolicy, rateLimiter, existsStats) {
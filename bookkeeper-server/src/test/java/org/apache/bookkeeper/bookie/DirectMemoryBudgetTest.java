@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class DirectMemoryBudgetTest {
+
+    private final DirectMemoryBudget budget = new DirectMemoryBudget(1000, NullStatsLogger.INSTANCE);
+    private final CountDownLatch shrinkStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseShrink = new CountDownLatch(1);
+    private final AtomicInteger shrinks = new AtomicInteger();
+    private final AtomicReference<Thread> shrinkThread = new AtomicReference<>();
+    private final AtomicReference<DirectMemoryBudget.Consumer> cache = new AtomicReference<>();
+
+    @AfterEach
+    public void teardown() throws Exception {
+        releaseShrink.countDown();
+        budget.shutdown();
+    }
+
+    private DirectMemoryBudget.Consumer registerCache() {
+        cache.set(budget.register("cache", bytes -> {
+            shrinks.incrementAndGet();
+            shrinkThread.set(Thread.currentThread());
+            shrinkStarted.countDown();
+            try {
+                releaseShrink.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long released = Math.min(bytes, cache.get().getUsed());
+            cache.get().release(released);
+            return released;
+        }));
+        return cache.get();
+    }
+
+    @Test
+    public void testShrinkInBackground() throws Exception {
+        DirectMemoryBudget.Consumer cacheBudget = registerCache();
+        assertTrue(cacheBudget.reserve(800));
+        DirectMemoryBudget.Consumer requests = budget.register("requests", null);
+        assertTrue(requests.reserve(100));
+        assertEquals(0, shrinks.get());
+
+        // the reservation is over the budget, it does not wait for the cache to shrink
+        assertFalse(requests.reserve(200));
+        assertTrue(shrinkStarted.await(30, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), shrinkThread.get());
+        assertTrue(budget.isOverLimit());
+        assertFalse(requests.reserve(50));
+        assertFalse(requests.tryReserve(10));
+        assertEquals(1150, budget.getUsed());
+
+        releaseShrink.countDown();
+        Awaitility.await().until(() -> !budget.isOverLimit());
+        assertEquals(350, requests.getUsed());
+        assertEquals(budget.getUsed() - 350, cacheBudget.getUsed());
+        // the reservations made while the cache was shrinking are coalesced
+        assertTrue(shrinks.get() <= 2, "shrinks " + shrinks.get());
+    }
+
+    @Test
+    public void testShrinkableConsumerDoesNotShrink() throws Exception {
+        DirectMemoryBudget.Consumer cacheBudget = registerCache();
+        assertTrue(cacheBudget.reserve(1000));
+        assertFalse(cacheBudget.tryReserve(100));
+        assertFalse(cacheBudget.reserve(100));
+        assertFalse(shrinkStarted.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, shrinks.get());
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        DirectMemoryBudget unlimited = new DirectMemoryBudget(0, NullStatsLogger.INSTANCE);
+        DirectMemoryBudget.Consumer requests = unlimited.register("requests", null);
+        assertTrue(requests.reserve(Long.MAX_VALUE / 2));
+        assertTrue(requests.tryReserve(1000));
+        assertFalse(unlimited.isOverLimit());
+        unlimited.shutdown();
+    }
+
+    @Test
+    public void testReserveAfterShutdown() throws Exception {
+        registerCache().reserve(1000);
+        budget.shutdown();
+        DirectMemoryBudget.Consumer requests = budget.register("requests", null);
+        assertFalse(requests.reserve(100));
+        assertEquals(0, shrinks.get());
+    }
+}
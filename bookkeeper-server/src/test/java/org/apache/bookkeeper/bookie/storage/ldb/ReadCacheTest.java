@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.DirectMemoryBudget;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ReadCacheTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int ENTRY_SIZE = 64;
+    private static final int ENTRIES_PER_SEGMENT = SEGMENT_SIZE / ENTRY_SIZE;
+
+    // the direct buffers allocated by the cache, the copies returned by get() are heap buffers
+    private final AtomicInteger directAllocations = new AtomicInteger();
+    private final UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(false) {
+        @Override
+        public ByteBuf directBuffer(int initialCapacity, int maxCapacity) {
+            directAllocations.incrementAndGet();
+            return super.directBuffer(initialCapacity, maxCapacity);
+        }
+    };
+
+    private DirectMemoryBudget budget;
+    private DirectMemoryBudget.Consumer readCacheBudget;
+    private ReadCache cache;
+    private long nextEntryId = 0;
+
+    @BeforeEach
+    public void setup() {
+        cache = new ReadCache(allocator, 4 * SEGMENT_SIZE, SEGMENT_SIZE);
+        budget = new DirectMemoryBudget(4 * SEGMENT_SIZE, NullStatsLogger.INSTANCE);
+        readCacheBudget = budget.register("read_cache", cache::shrink);
+        cache.setMemoryBudget(readCacheBudget);
+        assertEquals(4 * SEGMENT_SIZE, readCacheBudget.getUsed());
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        cache.close();
+        assertEquals(0, readCacheBudget.getUsed());
+        budget.shutdown();
+    }
+
+    private void putSegments(int segments) {
+        for (int i = 0; i < segments * ENTRIES_PER_SEGMENT; i++) {
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE).writeLong(nextEntryId).writeZero(ENTRY_SIZE - Long.BYTES);
+            cache.put(1L, nextEntryId++, entry);
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testShrinkReleasesOldestSegments() {
+        putSegments(4);
+        assertEquals(4 * ENTRIES_PER_SEGMENT, cache.count());
+
+        assertEquals(2 * SEGMENT_SIZE, cache.shrink(2 * SEGMENT_SIZE));
+        assertEquals(2 * SEGMENT_SIZE, readCacheBudget.getUsed());
+        assertEquals(2 * ENTRIES_PER_SEGMENT, cache.count());
+        // the entries of the two oldest segments are gone, the most recent ones are still there
+        assertFalse(cache.hasEntry(1L, 0L));
+        assertFalse(cache.hasEntry(1L, 2 * ENTRIES_PER_SEGMENT - 1));
+        ByteBuf entry = cache.get(1L, nextEntryId - 1);
+        assertNotNull(entry);
+        assertEquals(nextEntryId - 1, entry.readLong());
+        entry.release();
+
+        // the current segment is always kept
+        assertEquals(SEGMENT_SIZE, cache.shrink(10 * SEGMENT_SIZE));
+        assertEquals(0, cache.shrink(SEGMENT_SIZE));
+        assertEquals(SEGMENT_SIZE, readCacheBudget.getUsed());
+        assertTrue(cache.hasEntry(1L, nextEntryId - 1));
+    }
+
+    @Test
+    public void testRegrowWithinBudget() {
+        putSegments(4);
+        cache.shrink(2 * SEGMENT_SIZE);
+        int initialAllocations = directAllocations.get();
+
+        // the budget is taken by another consumer, the cache rotates over the segments it still has
+        DirectMemoryBudget.Consumer other = budget.register("other", null);
+        assertTrue(other.reserve(2 * SEGMENT_SIZE));
+        putSegments(2);
+        assertEquals(2 * SEGMENT_SIZE, readCacheBudget.getUsed());
+        assertEquals(2 * ENTRIES_PER_SEGMENT, cache.count());
+        assertEquals(initialAllocations, directAllocations.get());
+
+        // once there is room again, the released segments are allocated again with the allocator of the cache
+        other.release(2 * SEGMENT_SIZE);
+        putSegments(2);
+        assertEquals(4 * SEGMENT_SIZE, readCacheBudget.getUsed());
+        assertEquals(initialAllocations + 2, directAllocations.get());
+        putSegments(1);
+        assertEquals(4 * ENTRIES_PER_SEGMENT, cache.count());
+        assertTrue(cache.hasEntry(1L, nextEntryId - 1));
+        assertTrue(cache.hasEntry(1L, nextEntryId - 4 * ENTRIES_PER_SEGMENT));
+    }
+}
@@ -393,6 +393,28 @@ public class WriteCachePutTest {
         assertUnsuccessfulInsertion(sut, oldState);
     }
 
+    @Test
+    public void testHasRoomFor() {
+        WriteCache sut = new WriteCache(allocator, 1024);
+        try {
+            Assertions.assertTrue(sut.hasRoomFor(1024));
+            Assertions.assertFalse(sut.hasRoomFor(1025));
+            ByteBuf buf = Unpooled.buffer(512);
+            ByteBufferUtils.populate(buf, 512);
+            Assertions.assertTrue(sut.put(1, 0, buf));
+            Assertions.assertTrue(sut.hasRoomFor(512));
+            // the entries are aligned to 64 bytes in the cache
+            Assertions.assertFalse(sut.hasRoomFor(513));
+            Assertions.assertTrue(sut.put(1, 1, buf));
+            Assertions.assertFalse(sut.hasRoomFor(1));
+            Assertions.assertFalse(sut.put(1, 2, Unpooled.buffer(1).writeByte(0)));
+            sut.clear();
+            Assertions.assertTrue(sut.hasRoomFor(1024));
+        } finally {
+            sut.close();
+        }
+    }
+
     private void assertUnsuccessfulInsertion(WriteCache cache, WriteCacheVisibleState old) {
         old.assertEquals(cache);
     }
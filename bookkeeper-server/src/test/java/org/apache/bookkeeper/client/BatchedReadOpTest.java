@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+public class BatchedReadOpTest {
+
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final int NUM_ENTRIES = 16;
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+    private ExecutorService verificationExecutor;
+    private DigestManager digestManager;
+    private LedgerHandle lh;
+    private ClientContext clientCtx;
+    private OrderedExecutor mainWorkerPool;
+    private BookieClient bookieClient;
+    private BookKeeperClientStats clientStats;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        verificationExecutor = Executors.newFixedThreadPool(4);
+        digestManager = DigestManager.instantiate(1L, PASSWORD, DigestType.CRC32C,
+                UnpooledByteBufAllocator.DEFAULT, false);
+
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getEnsembleSize()).thenReturn(3);
+        when(metadata.getWriteQuorumSize()).thenReturn(3);
+        when(metadata.getAckQuorumSize()).thenReturn(2);
+        doAnswer(invocation -> ensemble).when(metadata).getEnsembleAt(anyLong());
+        DistributionSchedule.WriteSet writeSet = mock(DistributionSchedule.WriteSet.class);
+        when(writeSet.size()).thenReturn(3);
+        when(writeSet.get(anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(writeSet.indexOf(anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+        lh = mock(LedgerHandle.class);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getWriteSetForReadOperation(anyLong())).thenReturn(writeSet);
+        when(lh.getDigestManager()).thenReturn(digestManager);
+
+        mainWorkerPool = mock(OrderedExecutor.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(mainWorkerPool).executeOrdered(anyLong(), any(Runnable.class));
+        bookieClient = mock(BookieClient.class);
+        clientStats = mock(BookKeeperClientStats.class, RETURNS_DEEP_STUBS);
+        ClientConfiguration conf = new ClientConfiguration()
+                .setFirstSpeculativeReadTimeout(0)
+                .setBatchReadDigestVerificationThreads(4)
+                .setBatchReadDigestVerificationMinEntries(2);
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getClientStats()).thenReturn(clientStats);
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getDigestVerificationExecutor()).thenReturn(verificationExecutor);
+    }
+
+    @AfterEach
+    public void teardown() {
+        verificationExecutor.shutdownNow();
+    }
+
+    private static byte[] data(long entryId) {
+        return ("entry-" + entryId).getBytes(UTF_8);
+    }
+
+    /**
+     * A batch read response as sent by the bookies, for the entries from 0.
+     */
+    private ByteBufList response() {
+        ByteBufList bufList = ByteBufList.get();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            byte[] data = data(entryId);
+            ByteBufList packaged = (ByteBufList) digestManager.computeDigestAndPackageForSending(entryId,
+                    entryId - 1, data.length * (entryId + 1), Unpooled.wrappedBuffer(data), PASSWORD,
+                    BookieProtocol.FLAG_NONE);
+            bufList.add(ByteBufList.coalesce(packaged));
+            packaged.release();
+        }
+        return bufList;
+    }
+
+    /**
+     * Wait for the read sent to the bookie at the given ensemble index, and return its context.
+     */
+    private ReadOpBase.ReadContext sentRead(BatchedReadOp op, int bookieIndex) {
+        ArgumentCaptor<Object> ctx = ArgumentCaptor.forClass(Object.class);
+        verify(bookieClient, timeout(30_000)).batchReadEntries(eq(ensemble.get(bookieIndex)), anyLong(),
+                eq(0L), eq(NUM_ENTRIES), anyLong(), eq(op), ctx.capture(), anyInt());
+        return (ReadOpBase.ReadContext) ctx.getValue();
+    }
+
+    private static void respond(BatchedReadOp op, ReadOpBase.ReadContext ctx, ByteBufList bufList) {
+        op.readEntriesComplete(BKException.Code.OK, 1L, 0L, bufList, ctx);
+        // the connection releases the response once the callback returns
+        bufList.release();
+    }
+
+    private static void assertEntries(BatchedReadOp op) throws Exception {
+        try (LedgerEntries entries = op.future().get(30, TimeUnit.SECONDS)) {
+            long entryId = 0;
+            for (LedgerEntry entry : entries) {
+                assertEquals(entryId, entry.getEntryId());
+                assertEquals(data(entryId).length * (entryId + 1), entry.getLength());
+                assertArrayEquals(data(entryId), entry.getEntryBytes());
+                entryId++;
+            }
+            assertEquals(NUM_ENTRIES, entryId);
+        }
+    }
+
+    @Test
+    public void testParallelVerification() throws Exception {
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 0L, NUM_ENTRIES, Long.MAX_VALUE, false);
+        op.initiate();
+        ByteBufList bufList = response();
+        respond(op, sentRead(op, 0), bufList);
+        assertEntries(op);
+        verify(mainWorkerPool, times(1)).executeOrdered(anyLong(), any(Runnable.class));
+    }
+
+    @Test
+    public void testDigestMismatchRetriesNextReplica() throws Exception {
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 0L, NUM_ENTRIES, Long.MAX_VALUE, false);
+        op.initiate();
+        ByteBufList corrupted = response();
+        ByteBuf corruptedEntry = corrupted.getBuffer(NUM_ENTRIES / 2);
+        int lastByte = corruptedEntry.writerIndex() - 1;
+        corruptedEntry.setByte(lastByte, corruptedEntry.getByte(lastByte) ^ 0xff);
+        respond(op, sentRead(op, 0), corrupted);
+
+        // the mismatching response is dropped, and the entries are read from the next replica
+        ReadOpBase.ReadContext retry = sentRead(op, 1);
+        verify(clientStats.getReadOpDmCounter(), times(1)).inc();
+        assertEquals(0, corrupted.refCnt());
+        assertFalse(op.future().isDone());
+        respond(op, retry, response());
+        assertEntries(op);
+    }
+
+    @Test
+    public void testCompletionRejected() throws Exception {
+        doThrow(new RejectedExecutionException("shut down"))
+                .when(mainWorkerPool).executeOrdered(anyLong(), any(Runnable.class));
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 0L, NUM_ENTRIES, Long.MAX_VALUE, false);
+        op.initiate();
+        ByteBufList bufList = response();
+        List<ByteBuf> buffers = Arrays.asList(bufList.getBuffer(0), bufList.getBuffer(NUM_ENTRIES - 1));
+        respond(op, sentRead(op, 0), bufList);
+
+        // the read fails rather than delivering the entries off the ledger thread
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> op.future().get(30, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.InterruptedException, ((BKException) e.getCause()).getCode());
+        assertEquals(0, bufList.refCnt());
+        for (ByteBuf buffer : buffers) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void testCompletionRejectedOnClosedClient() throws Exception {
+        doThrow(new RejectedExecutionException("shut down"))
+                .when(mainWorkerPool).executeOrdered(anyLong(), any(Runnable.class));
+        when(bookieClient.isClosed()).thenReturn(true);
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 0L, NUM_ENTRIES, Long.MAX_VALUE, false);
+        op.initiate();
+        respond(op, sentRead(op, 0), response());
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> op.future().get(30, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.ClientClosedException, ((BKException) e.getCause()).getCode());
+    }
+
+    @Test
+    public void testRangesVerifiedOnceWhenVerificationRejected() throws Exception {
+        ExecutorService rejecting = Executors.newSingleThreadExecutor();
+        rejecting.shutdown();
+        when(clientCtx.getDigestVerificationExecutor()).thenReturn(rejecting);
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 0L, NUM_ENTRIES, Long.MAX_VALUE, false);
+        op.initiate();
+        respond(op, sentRead(op, 0), response());
+        assertEntries(op);
+    }
+}
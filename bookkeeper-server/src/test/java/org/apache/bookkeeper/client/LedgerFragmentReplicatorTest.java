@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LedgerFragmentReplicatorTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 16;
+
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+    private final BookieId bookie2 = BookieId.parse("bookie2:3181");
+    private final BookieId bookie3 = BookieId.parse("bookie3:3181");
+    private final BookieId newBookie = BookieId.parse("bookie4:3181");
+    private final List<BookieId> ensemble = Arrays.asList(bookie1, bookie2, bookie3);
+
+    // the range reads issued by the replicator, completed by the tests
+    private final List<PendingRead> reads = new CopyOnWriteArrayList<>();
+    private final List<Long> failedEntries = new CopyOnWriteArrayList<>();
+    private final ClientConfiguration conf = new ClientConfiguration();
+    private BookieClient bookieClient;
+    private BookKeeper bkc;
+    private LedgerHandle lh;
+
+    private static class PendingRead {
+        final long startEntryId;
+        final long endEntryId;
+        final AsyncCallback.ReadCallback cb;
+
+        PendingRead(long startEntryId, long endEntryId, AsyncCallback.ReadCallback cb) {
+            this.startEntryId = startEntryId;
+            this.endEntryId = endEntryId;
+            this.cb = cb;
+        }
+    }
+
+    @BeforeEach
+    public void setup() {
+        conf.setRereplicationEntryBatchSize(10);
+        conf.setRereplicationRangeReadEnabled(true);
+
+        bookieClient = mock(BookieClient.class);
+        // the new bookie acknowledges the writes right away
+        doAnswer(invocation -> {
+            WriteCallback cb = invocation.getArgument(5);
+            cb.writeComplete(BKException.Code.OK, invocation.getArgument(1), invocation.getArgument(3),
+                    invocation.getArgument(0), invocation.getArgument(6));
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+        bkc = mock(BookKeeper.class);
+        when(bkc.getConf()).thenReturn(conf);
+        when(bkc.getBookieClient()).thenReturn(bookieClient);
+
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        NavigableMap<Long, List<BookieId>> ensembles = new TreeMap<>();
+        ensembles.put(0L, ensemble);
+        when(metadata.isClosed()).thenReturn(true);
+        when(metadata.getEnsembleSize()).thenReturn(3);
+        when(metadata.getWriteQuorumSize()).thenReturn(3);
+        when(metadata.getEnsembleAt(anyLong())).thenReturn(ensemble);
+        doAnswer(invocation -> ensembles).when(metadata).getAllEnsembles();
+
+        DigestManager digestManager = mock(DigestManager.class);
+        when(digestManager.computeDigestAndPackageForSending(anyLong(), anyLong(), anyLong(), any(), any(),
+                anyInt())).thenAnswer(invocation -> Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE));
+        lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getDistributionSchedule()).thenReturn(new RoundRobinDistributionSchedule(3, 2, 3));
+        when(lh.getLedgerKey()).thenReturn(new byte[0]);
+        when(lh.getDigestManager()).thenReturn(digestManager);
+        doAnswer(invocation -> {
+            reads.add(new PendingRead(invocation.getArgument(0), invocation.getArgument(1),
+                    invocation.getArgument(2)));
+            return null;
+        }).when(lh).asyncReadEntries(anyLong(), anyLong(), any(), any());
+    }
+
+    private CompletableFuture<Integer> replicate(long lastEntryId) throws Exception {
+        when(lh.getLastAddConfirmed()).thenReturn(lastEntryId);
+        LedgerFragment fragment = new LedgerFragment(lh, 0, lastEntryId, Collections.singleton(0));
+        LedgerFragmentReplicator replicator = new LedgerFragmentReplicator(bkc, conf);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        replicator.replicate(lh, fragment, (rc, path, ctx) -> result.complete(rc),
+                Collections.singleton(newBookie), (ledgerId, entryId) -> failedEntries.add(entryId));
+        return result;
+    }
+
+    private List<PendingRead> outstandingRangeReads(List<PendingRead> completed) {
+        return reads.stream()
+                .filter(read -> read.endEntryId > read.startEntryId && !completed.contains(read))
+                .collect(Collectors.toList());
+    }
+
+    private void completeRead(PendingRead read) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = read.startEntryId; entryId <= read.endEntryId; entryId++) {
+            entries.add(new LedgerEntry(LedgerEntryImpl.create(LEDGER_ID, entryId, ENTRY_SIZE,
+                    Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE))));
+        }
+        read.cb.readComplete(BKException.Code.OK, lh, Collections.enumeration(entries), null);
+    }
+
+    @Test
+    public void testInflightBatches() throws Exception {
+        conf.setRereplicationMaxInflightBatches(2);
+        CompletableFuture<Integer> result = replicate(39);
+
+        // the 4 batches are replicated 2 at a time, each one with a range read
+        List<PendingRead> completed = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<PendingRead> outstanding = outstandingRangeReads(completed);
+            assertEquals(i < 3 ? 2 : 1, outstanding.size());
+            assertFalse(result.isDone());
+            PendingRead read = outstanding.get(0);
+            assertEquals(9, read.endEntryId - read.startEntryId);
+            completeRead(read);
+            completed.add(read);
+        }
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+        assertEquals(4, reads.size());
+        verify(bookieClient, times(40)).addEntry(eq(newBookie), eq(LEDGER_ID), any(), anyLong(), any(), any(),
+                any(), anyInt(), anyBoolean(), any());
+        assertTrue(failedEntries.isEmpty());
+    }
+
+    @Test
+    public void testSequentialBatchesByDefault() throws Exception {
+        CompletableFuture<Integer> result = replicate(29);
+        List<PendingRead> completed = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            List<PendingRead> outstanding = outstandingRangeReads(completed);
+            assertEquals(1, outstanding.size());
+            completeRead(outstanding.get(0));
+            completed.add(outstanding.get(0));
+        }
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    public void testFailedBatchStopsReplication() throws Exception {
+        conf.setRereplicationMaxInflightBatches(2);
+        CompletableFuture<Integer> result = replicate(39);
+        List<PendingRead> outstanding = outstandingRangeReads(Collections.emptyList());
+        assertEquals(2, outstanding.size());
+        PendingRead failed = outstanding.get(0);
+        PendingRead succeeded = outstanding.get(1);
+
+        // the range read fails, the entries are read one by one to find the ones which cannot be read
+        failed.cb.readComplete(BKException.Code.BookieHandleNotAvailableException, lh, null, null);
+        List<PendingRead> entryReads = reads.stream()
+                .filter(read -> read.endEntryId == read.startEntryId)
+                .collect(Collectors.toList());
+        assertEquals(10, entryReads.size());
+        for (PendingRead read : entryReads) {
+            read.cb.readComplete(BKException.Code.BookieHandleNotAvailableException, lh, null, null);
+        }
+        assertEquals(10, failedEntries.size());
+
+        // no more batch is started, the replication fails once the batch in progress completes
+        assertEquals(1, outstandingRangeReads(Collections.singletonList(failed)).size());
+        assertFalse(result.isDone());
+        completeRead(succeeded);
+        assertEquals(BKException.Code.LedgerRecoveryException, result.get(10, TimeUnit.SECONDS).intValue());
+        assertEquals(2, reads.stream().filter(read -> read.endEntryId > read.startEntryId).count());
+    }
+}
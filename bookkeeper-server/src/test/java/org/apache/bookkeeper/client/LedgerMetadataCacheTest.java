@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LedgerMetadataCacheTest {
+
+    // the reads of the ledger manager in progress, completed by the tests
+    private final Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> reads = new ConcurrentHashMap<>();
+    private final Map<Long, LedgerMetadataListener> listeners = new ConcurrentHashMap<>();
+    private LedgerManager ledgerManager;
+
+    @BeforeEach
+    public void setup() {
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.readLedgerMetadataAndRegisterListener(anyLong(), any())).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            listeners.put(ledgerId, invocation.getArgument(1));
+            CompletableFuture<Versioned<LedgerMetadata>> read = new CompletableFuture<>();
+            reads.put(ledgerId, read);
+            return read;
+        });
+    }
+
+    private LedgerMetadataCache createCache(int maxSize, int prefetchMaxOutstandingReads) {
+        return new LedgerMetadataCache(ledgerManager, maxSize, prefetchMaxOutstandingReads, NullStatsLogger.INSTANCE);
+    }
+
+    private static Versioned<LedgerMetadata> metadata(long version) {
+        return new Versioned<>(mock(LedgerMetadata.class), new LongVersion(version));
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        LedgerMetadataCache cache = createCache(10, 1);
+        CompletableFuture<Versioned<LedgerMetadata>> miss = cache.readLedgerMetadata(1L);
+        assertFalse(miss.isDone());
+        Versioned<LedgerMetadata> metadata = metadata(1);
+        reads.get(1L).complete(metadata);
+        assertSame(metadata, miss.get());
+        assertEquals(1, cache.size());
+
+        // the hit does not read the metadata again, and the listener is registered by the read of the miss
+        assertSame(metadata, cache.readLedgerMetadata(1L).get());
+        verify(ledgerManager, times(1)).readLedgerMetadataAndRegisterListener(eq(1L), any());
+        verify(ledgerManager, never()).readLedgerMetadata(anyLong());
+        verify(ledgerManager, never()).registerLedgerMetadataListener(anyLong(), any());
+    }
+
+    @Test
+    public void testConcurrentMissesCoalesced() throws Exception {
+        LedgerMetadataCache cache = createCache(10, 1);
+        CompletableFuture<Versioned<LedgerMetadata>> first = cache.readLedgerMetadata(1L);
+        CompletableFuture<Versioned<LedgerMetadata>> second = cache.readLedgerMetadata(1L);
+        verify(ledgerManager, times(1)).readLedgerMetadataAndRegisterListener(eq(1L), any());
+
+        Versioned<LedgerMetadata> metadata = metadata(1);
+        reads.get(1L).complete(metadata);
+        assertSame(metadata, first.get());
+        assertSame(metadata, second.get());
+    }
+
+    @Test
+    public void testFailedReadNotCached() throws Exception {
+        LedgerMetadataCache cache = createCache(10, 1);
+        CompletableFuture<Versioned<LedgerMetadata>> read = cache.readLedgerMetadata(1L);
+        reads.get(1L).completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+        assertTrue(read.isCompletedExceptionally());
+        assertEquals(0, cache.size());
+
+        // the next access reads the metadata again
+        cache.readLedgerMetadata(1L);
+        verify(ledgerManager, times(2)).readLedgerMetadataAndRegisterListener(eq(1L), any());
+    }
+
+    @Test
+    public void testListenerUpdates() throws Exception {
+        LedgerMetadataCache cache = createCache(10, 1);
+        cache.readLedgerMetadata(1L);
+        Versioned<LedgerMetadata> v2 = metadata(2);
+        reads.get(1L).complete(v2);
+        LedgerMetadataListener listener = listeners.get(1L);
+
+        // a newer version replaces the cached one, an older one is ignored
+        Versioned<LedgerMetadata> v3 = metadata(3);
+        listener.onChanged(1L, v3);
+        assertSame(v3, cache.readLedgerMetadata(1L).get());
+        listener.onChanged(1L, v2);
+        assertSame(v3, cache.readLedgerMetadata(1L).get());
+
+        // the deletion of the ledger invalidates it
+        listener.onChanged(1L, null);
+        assertEquals(0, cache.size());
+        verify(ledgerManager).unregisterLedgerMetadataListener(1L, listener);
+    }
+
+    @Test
+    public void testChangeNotifiedBeforeReadCompletes() throws Exception {
+        LedgerMetadataCache cache = createCache(10, 1);
+        CompletableFuture<Versioned<LedgerMetadata>> read = cache.readLedgerMetadata(1L);
+        Versioned<LedgerMetadata> v3 = metadata(3);
+        listeners.get(1L).onChanged(1L, v3);
+        reads.get(1L).complete(metadata(2));
+
+        // the read returns what it read, but the cache keeps the newer version
+        assertEquals(new LongVersion(2), read.get().getVersion());
+        assertSame(v3, cache.readLedgerMetadata(1L).get());
+        verify(ledgerManager, never()).unregisterLedgerMetadataListener(anyLong(), any());
+    }
+
+    @Test
+    public void testEvictionUnregistersListener() throws Exception {
+        LedgerMetadataCache cache = createCache(1, 1);
+        cache.readLedgerMetadata(1L);
+        reads.get(1L).complete(metadata(1));
+        cache.readLedgerMetadata(2L);
+        reads.get(2L).complete(metadata(1));
+
+        assertEquals(1, cache.size());
+        verify(ledgerManager).unregisterLedgerMetadataListener(1L, listeners.get(1L));
+        verify(ledgerManager, never()).unregisterLedgerMetadataListener(eq(2L), any());
+
+        // a change of the evicted ledger notified before the listener was unregistered does not cache it again
+        listeners.get(1L).onChanged(1L, metadata(2));
+        assertEquals(1, cache.size());
+        verify(ledgerManager, times(2)).unregisterLedgerMetadataListener(1L, listeners.get(1L));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        LedgerMetadataCache cache = createCache(10, 1);
+        cache.readLedgerMetadata(1L);
+        reads.get(1L).complete(metadata(1));
+        cache.invalidate(1L);
+        assertEquals(0, cache.size());
+        verify(ledgerManager).unregisterLedgerMetadataListener(1L, listeners.get(1L));
+
+        cache.readLedgerMetadata(1L);
+        verify(ledgerManager, times(2)).readLedgerMetadataAndRegisterListener(eq(1L), any());
+    }
+
+    @Test
+    public void testPrefetchBoundsOutstandingReads() throws Exception {
+        LedgerMetadataCache cache = createCache(100, 3);
+        cache.readLedgerMetadata(0L);
+        reads.get(0L).complete(metadata(1));
+        List<Long> ledgerIds = LongStream.range(0, 10).boxed().collect(Collectors.toList());
+
+        CompletableFuture<Void> prefetch = cache.prefetch(ledgerIds);
+        // the cached ledger is skipped, and no more than 3 reads are in progress at a time
+        List<Long> completed = new ArrayList<>();
+        completed.add(0L);
+        while (completed.size() < ledgerIds.size()) {
+            List<Long> outstanding = reads.entrySet().stream()
+                    .filter(e -> !e.getValue().isDone())
+                    .map(Map.Entry::getKey)
+                    .sorted()
+                    .collect(Collectors.toList());
+            assertFalse(outstanding.isEmpty());
+            assertTrue(outstanding.size() <= 3, "outstanding " + outstanding);
+            assertFalse(prefetch.isDone());
+            long ledgerId = outstanding.get(0);
+            if (ledgerId == 5L) {
+                // the ledgers that cannot be read are skipped
+                reads.get(ledgerId).completeExceptionally(new BKException.BKNoSuchLedgerExistsException());
+            } else {
+                reads.get(ledgerId).complete(metadata(1));
+            }
+            completed.add(ledgerId);
+        }
+        prefetch.get();
+        assertEquals(9, cache.size());
+        verify(ledgerManager, times(1)).readLedgerMetadataAndRegisterListener(eq(0L), any());
+    }
+
+    @Test
+    public void testReadCompletedAfterClose() throws Exception {
+        LedgerMetadataCache cache = createCache(10, 1);
+        CompletableFuture<Versioned<LedgerMetadata>> read = cache.readLedgerMetadata(1L);
+        cache.close();
+        Versioned<LedgerMetadata> metadata = metadata(1);
+        reads.get(1L).complete(metadata);
+        assertSame(metadata, read.get());
+        assertEquals(0, cache.size());
+        verify(ledgerManager).unregisterLedgerMetadataListener(1L, listeners.get(1L));
+    }
+}
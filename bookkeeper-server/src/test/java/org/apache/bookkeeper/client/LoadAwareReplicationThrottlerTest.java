@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.jupiter.api.Test;
+
+public class LoadAwareReplicationThrottlerTest {
+
+    private static final int RATE = 1000;
+    private static final double DELTA = 0.001;
+
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+    private final BookieId bookie2 = BookieId.parse("bookie2:3181");
+    private final BookieId bookie3 = BookieId.parse("bookie3:3181");
+
+    @Test
+    public void testSingleSourceGetsWholeRate() {
+        LoadAwareReplicationThrottler throttler = new LoadAwareReplicationThrottler(RATE);
+        throttler.acquire(bookie1, 1);
+        assertEquals(RATE, throttler.getRate(bookie1), DELTA);
+
+        throttler.recordRead(bookie1, 1000, 10);
+        throttler.resetRate(2 * RATE);
+        assertEquals(2 * RATE, throttler.getRate(bookie1), DELTA);
+    }
+
+    @Test
+    public void testRateSharedByReadTimes() {
+        LoadAwareReplicationThrottler throttler = new LoadAwareReplicationThrottler(RATE);
+        throttler.acquire(bookie1, 1);
+        throttler.acquire(bookie2, 1);
+        // no read time is known yet, the rate is shared evenly
+        assertEquals(RATE / 2, throttler.getRate(bookie1), DELTA);
+        assertEquals(RATE / 2, throttler.getRate(bookie2), DELTA);
+
+        // bookie2 takes 3 times longer to serve a byte, it gets a third of the share of bookie1
+        throttler.recordRead(bookie1, 1000, 100);
+        throttler.recordRead(bookie2, 3000, 100);
+        throttler.resetRate(RATE + 1);
+        throttler.resetRate(RATE);
+        assertEquals(750, throttler.getRate(bookie1), DELTA);
+        assertEquals(250, throttler.getRate(bookie2), DELTA);
+
+        // a bookie not read from yet gets the average share of the others
+        throttler.acquire(bookie3, 1);
+        assertEquals(RATE / 3.0, throttler.getRate(bookie3), DELTA);
+        assertEquals(RATE, throttler.getRate(bookie1) + throttler.getRate(bookie2) + throttler.getRate(bookie3),
+                DELTA);
+        assertEquals(3 * throttler.getRate(bookie2), throttler.getRate(bookie1), DELTA);
+    }
+
+    @Test
+    public void testReadTimesSmoothed() {
+        LoadAwareReplicationThrottler throttler = new LoadAwareReplicationThrottler(RATE);
+        throttler.acquire(bookie1, 1);
+        throttler.acquire(bookie2, 1);
+        throttler.recordRead(bookie1, 1000, 100);
+        throttler.recordRead(bookie2, 1000, 100);
+
+        // a single slow read of bookie2 moves its read time by a fifth: 10 + 0.2 * (100 - 10) = 28 nanos per byte
+        throttler.recordRead(bookie2, 10000, 100);
+        throttler.resetRate(RATE + 1);
+        throttler.resetRate(RATE);
+        assertEquals(RATE * 28.0 / 38.0, throttler.getRate(bookie1), DELTA);
+        assertEquals(RATE * 10.0 / 38.0, throttler.getRate(bookie2), DELTA);
+    }
+
+    @Test
+    public void testReadOfUnknownSourceIgnored() {
+        LoadAwareReplicationThrottler throttler = new LoadAwareReplicationThrottler(RATE);
+        throttler.recordRead(bookie1, 1000, 100);
+        assertEquals(0, throttler.getRate(bookie1), DELTA);
+
+        throttler.acquire(bookie1, 1);
+        throttler.acquire(bookie2, 1);
+        // an empty read does not give a read time
+        throttler.recordRead(bookie1, 1000, 0);
+        throttler.recordRead(bookie2, 1000, 100);
+        throttler.resetRate(RATE + 1);
+        throttler.resetRate(RATE);
+        assertEquals(RATE / 2, throttler.getRate(bookie1), DELTA);
+        assertEquals(RATE / 2, throttler.getRate(bookie2), DELTA);
+    }
+}
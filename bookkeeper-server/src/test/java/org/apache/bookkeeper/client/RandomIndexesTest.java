@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.apache.bookkeeper.client.TopologyAwareEnsemblePlacementPolicy.RandomIndexes;
+import org.junit.jupiter.api.Test;
+
+public class RandomIndexesTest {
+
+    private static void assertDrawsEveryIndexOnce(RandomIndexes indexes, int size) {
+        BitSet drawn = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            assertTrue(indexes.hasNext());
+            int index = indexes.next();
+            assertTrue(index >= 0 && index < size, "index " + index + " out of " + size);
+            assertFalse(drawn.get(index), "index " + index + " drawn twice");
+            drawn.set(index);
+        }
+        assertFalse(indexes.hasNext());
+        assertThrows(NoSuchElementException.class, indexes::next);
+    }
+
+    /**
+     * Pearson's chi-squared statistic of the counts of the outcomes, which are all expected equally often.
+     */
+    private static double chiSquared(Map<String, Integer> counts, int numOutcomes, int numDraws) {
+        assertEquals(numOutcomes, counts.size(), "outcomes never drawn");
+        double expected = (double) numDraws / numOutcomes;
+        double chiSquared = 0;
+        for (int count : counts.values()) {
+            chiSquared += (count - expected) * (count - expected) / expected;
+        }
+        return chiSquared;
+    }
+
+    @Test
+    public void testDrawsEveryIndexOnce() {
+        int[] sizes = { 0, 1, 2, 7, 100, 3, 1000, 10 };
+        for (int size : sizes) {
+            // partial draws of other sizes leave the reused indexes ready for the next draw
+            try (RandomIndexes partial = RandomIndexes.draw(size / 2)) {
+                for (int i = 0; i < size / 4; i++) {
+                    partial.next();
+                }
+            }
+            try (RandomIndexes indexes = RandomIndexes.draw(size)) {
+                assertDrawsEveryIndexOnce(indexes, size);
+            }
+        }
+    }
+
+    @Test
+    public void testNestedDraws() {
+        try (RandomIndexes outer = RandomIndexes.draw(50)) {
+            BitSet drawn = new BitSet(50);
+            for (int i = 0; i < 50; i++) {
+                int index = outer.next();
+                assertFalse(drawn.get(index));
+                drawn.set(index);
+                try (RandomIndexes inner = RandomIndexes.draw(20)) {
+                    assertDrawsEveryIndexOnce(inner, 20);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPermutationsUniform() {
+        // all the 24 orders of 4 indexes are drawn equally often
+        int numDraws = 240_000;
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < numDraws; i++) {
+            StringBuilder order = new StringBuilder();
+            try (RandomIndexes indexes = RandomIndexes.draw(4)) {
+                while (indexes.hasNext()) {
+                    order.append(indexes.next());
+                }
+            }
+            counts.merge(order.toString(), 1, Integer::sum);
+        }
+        // 23 degrees of freedom, exceeded with a probability below 1e-5
+        double chiSquared = chiSquared(counts, 24, numDraws);
+        assertTrue(chiSquared < 64, "chi-squared " + chiSquared + " of " + counts);
+    }
+
+    @Test
+    public void testPartialDrawsUniform() {
+        // all the 90 ordered pairs of 10 indexes are drawn equally often
+        int numDraws = 180_000;
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < numDraws; i++) {
+            try (RandomIndexes indexes = RandomIndexes.draw(10)) {
+                counts.merge(indexes.next() + "," + indexes.next(), 1, Integer::sum);
+            }
+        }
+        // 89 degrees of freedom, exceeded with a probability below 1e-5
+        double chiSquared = chiSquared(counts, 90, numDraws);
+        assertTrue(chiSquared < 160, "chi-squared " + chiSquared + " of " + counts);
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.jute.Record;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.MultiCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.DeleteRequest;
+import org.apache.zookeeper.proto.SetDataRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AbstractZkLedgerManagerBatchTest {
+
+    private static final int NUM_LEDGERS = 10;
+    private static final int BATCH_SIZE = 4;
+    private static final long CTIME = 1_700_000_000_000L;
+
+    private static final class Znode {
+        private final byte[] data;
+        private final int version;
+
+        Znode(byte[] data, int version) {
+            this.data = data;
+            this.version = version;
+        }
+
+        Stat stat() {
+            Stat stat = new Stat();
+            stat.setVersion(version);
+            stat.setCtime(CTIME);
+            return stat;
+        }
+    }
+
+    private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
+    private final Map<String, Znode> znodes = new ConcurrentHashMap<>();
+    private final List<List<Op>> multis = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger singleOps = new AtomicInteger();
+    private volatile boolean dropConnectionOnMulti;
+
+    private ZooKeeper zk;
+    private FlatLedgerManager ledgerManager;
+
+    @BeforeEach
+    public void setup() {
+        zk = mock(ZooKeeper.class);
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            DataCallback cb = invocation.getArgument(2);
+            singleOps.incrementAndGet();
+            Znode znode = znodes.get(path);
+            if (znode == null) {
+                cb.processResult(Code.NONODE.intValue(), path, null, null, null);
+            } else {
+                cb.processResult(Code.OK.intValue(), path, null, znode.data, znode.stat());
+            }
+            return null;
+        }).when(zk).getData(anyString(), nullable(Watcher.class), any(DataCallback.class), any());
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            StatCallback cb = invocation.getArgument(3);
+            singleOps.incrementAndGet();
+            Code rc = check(path, invocation.getArgument(2));
+            if (rc == Code.OK) {
+                Znode znode = new Znode(invocation.getArgument(1), znodes.get(path).version + 1);
+                znodes.put(path, znode);
+                cb.processResult(rc.intValue(), path, null, znode.stat());
+            } else {
+                cb.processResult(rc.intValue(), path, null, null);
+            }
+            return null;
+        }).when(zk).setData(anyString(), any(byte[].class), anyInt(), any(StatCallback.class), any());
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            VoidCallback cb = invocation.getArgument(2);
+            singleOps.incrementAndGet();
+            Code rc = check(path, invocation.getArgument(1));
+            if (rc == Code.OK) {
+                znodes.remove(path);
+            }
+            cb.processResult(rc.intValue(), path, null);
+            return null;
+        }).when(zk).delete(anyString(), anyInt(), any(VoidCallback.class), any());
+        doAnswer(invocation -> {
+            List<Op> ops = new ArrayList<>();
+            invocation.<Iterable<Op>>getArgument(0).forEach(ops::add);
+            MultiCallback cb = invocation.getArgument(1);
+            multis.add(ops);
+            if (dropConnectionOnMulti && ops.size() > 1) {
+                cb.processResult(Code.CONNECTIONLOSS.intValue(), null, null, null);
+            } else {
+                multi(ops, cb);
+            }
+            return null;
+        }).when(zk).multi(anyIterable(), any(MultiCallback.class), any());
+
+        ClientConfiguration conf = new ClientConfiguration()
+                .setLedgerMetadataBatchSize(BATCH_SIZE)
+                .setLedgerMetadataBatchMaxInflight(2);
+        ledgerManager = new FlatLedgerManager(conf, zk);
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        ledgerManager.close();
+    }
+
+    private Code check(String path, int version) {
+        Znode znode = znodes.get(path);
+        if (znode == null) {
+            return Code.NONODE;
+        } else if (version != -1 && version != znode.version) {
+            return Code.BADVERSION;
+        }
+        return Code.OK;
+    }
+
+    /**
+     * A multi read returns the result of every read, while a multi write or delete is applied only if all of its
+     * operations succeed.
+     */
+    private void multi(List<Op> ops, MultiCallback cb) {
+        List<OpResult> results = new ArrayList<>(ops.size());
+        Code rc = Code.OK;
+        for (Op op : ops) {
+            Record request = op.toRequestRecord();
+            Code opRc = Code.OK;
+            if (request instanceof SetDataRequest) {
+                opRc = check(op.getPath(), ((SetDataRequest) request).getVersion());
+            } else if (request instanceof DeleteRequest) {
+                opRc = check(op.getPath(), ((DeleteRequest) request).getVersion());
+            } else {
+                Znode znode = znodes.get(op.getPath());
+                results.add(znode == null ? new OpResult.ErrorResult(Code.NONODE.intValue())
+                        : new OpResult.GetDataResult(znode.data, znode.stat()));
+            }
+            if (rc == Code.OK) {
+                rc = opRc;
+            }
+        }
+        if (!results.isEmpty()) {
+            cb.processResult(Code.OK.intValue(), null, null, results);
+            return;
+        }
+        if (rc != Code.OK) {
+            boolean failed = false;
+            for (Op op : ops) {
+                Code opRc = check(op.getPath(), op.toRequestRecord() instanceof SetDataRequest
+                        ? ((SetDataRequest) op.toRequestRecord()).getVersion()
+                        : ((DeleteRequest) op.toRequestRecord()).getVersion());
+                if (!failed && opRc != Code.OK) {
+                    failed = true;
+                    results.add(new OpResult.ErrorResult(opRc.intValue()));
+                } else {
+                    results.add(new OpResult.ErrorResult(
+                            failed ? Code.RUNTIMEINCONSISTENCY.intValue() : Code.OK.intValue()));
+                }
+            }
+            cb.processResult(rc.intValue(), null, null, results);
+            return;
+        }
+        for (Op op : ops) {
+            Record request = op.toRequestRecord();
+            if (request instanceof SetDataRequest) {
+                Znode znode = new Znode(((SetDataRequest) request).getData(), znodes.get(op.getPath()).version + 1);
+                znodes.put(op.getPath(), znode);
+                results.add(new OpResult.SetDataResult(znode.stat()));
+            } else {
+                znodes.remove(op.getPath());
+                results.add(new OpResult.DeleteResult());
+            }
+        }
+        cb.processResult(Code.OK.intValue(), null, null, results);
+    }
+
+    private static LedgerMetadata metadata(long ledgerId, int customMetadataSize) {
+        List<BookieId> ensemble = Arrays.asList(
+                BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+        return LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withDigestType(DigestType.CRC32C)
+                .withPassword("password".getBytes(UTF_8))
+                .withCreationTime(CTIME)
+                .storingCreationTime(true)
+                .withCustomMetadata(Collections.singletonMap("payload", new byte[customMetadataSize]))
+                .newEnsembleEntry(0L, ensemble)
+                .build();
+    }
+
+    private Map<Long, Versioned<LedgerMetadata>> createLedgers(int numLedgers, int customMetadataSize)
+            throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> ledgers = new HashMap<>();
+        for (long ledgerId = 1; ledgerId <= numLedgers; ledgerId++) {
+            LedgerMetadata metadata = metadata(ledgerId, customMetadataSize);
+            znodes.put(ledgerManager.getLedgerPath(ledgerId), new Znode(serDe.serialize(metadata), 0));
+            ledgers.put(ledgerId, new Versioned<>(metadata, new LongVersion(0)));
+        }
+        return ledgers;
+    }
+
+    private static int payloadSize(LedgerMetadata metadata) {
+        return metadata.getCustomMetadata().get("payload").length;
+    }
+
+    private int storedPayloadSize(long ledgerId) throws Exception {
+        return payloadSize(serDe.parseConfig(znodes.get(ledgerManager.getLedgerPath(ledgerId)).data, ledgerId,
+                Optional.of(CTIME)));
+    }
+
+    private static <T> T result(CompletableFuture<T> future) throws Exception {
+        return future.get(30, TimeUnit.SECONDS);
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        return assertThrows(ExecutionException.class, () -> result(future)).getCause();
+    }
+
+    @Test
+    public void testReadInBatches() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> ledgers = createLedgers(NUM_LEDGERS, 16);
+        List<Long> ledgerIds = new ArrayList<>(ledgers.keySet());
+        ledgerIds.add(NUM_LEDGERS + 1L);
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> read = ledgerManager.readLedgersMetadata(ledgerIds);
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            Versioned<LedgerMetadata> metadata = result(read.get(ledgerId));
+            assertEquals(ledgers.get(ledgerId).getValue().getAllEnsembles(), metadata.getValue().getAllEnsembles());
+            assertEquals(16, payloadSize(metadata.getValue()));
+            assertEquals(new LongVersion(0), metadata.getVersion());
+        }
+        assertInstanceOf(BKException.BKNoSuchLedgerExistsOnMetadataServerException.class,
+                failure(read.get(NUM_LEDGERS + 1L)));
+        assertEquals(3, multis.size());
+        assertEquals(0, singleOps.get());
+    }
+
+    @Test
+    public void testReadOneByOneOnConnectionLoss() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> ledgers = createLedgers(NUM_LEDGERS, 16);
+        dropConnectionOnMulti = true;
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> read =
+                ledgerManager.readLedgersMetadata(ledgers.keySet());
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            assertEquals(16, payloadSize(result(read.get(ledgerId)).getValue()));
+        }
+        assertEquals(3, multis.size());
+        assertEquals(NUM_LEDGERS, singleOps.get());
+    }
+
+    @Test
+    public void testWriteInBatches() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> ledgers = createLedgers(NUM_LEDGERS, 16);
+        Map<Long, Versioned<LedgerMetadata>> updates = new HashMap<>();
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            updates.put(ledgerId, new Versioned<>(metadata(ledgerId, 32), ledgers.get(ledgerId).getVersion()));
+        }
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> written = ledgerManager.writeLedgersMetadata(updates);
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            assertEquals(new LongVersion(1), result(written.get(ledgerId)).getVersion());
+            assertEquals(32, storedPayloadSize(ledgerId));
+        }
+        assertEquals(3, multis.size());
+        assertEquals(0, singleOps.get());
+    }
+
+    @Test
+    public void testWriteOneByOneAfterFailedMulti() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> ledgers = createLedgers(BATCH_SIZE, 16);
+        Map<Long, Versioned<LedgerMetadata>> updates = new HashMap<>();
+        for (long ledgerId = 1; ledgerId <= BATCH_SIZE; ledgerId++) {
+            updates.put(ledgerId, new Versioned<>(metadata(ledgerId, 32), ledgers.get(ledgerId).getVersion()));
+        }
+        // the metadata of the second ledger was updated concurrently
+        znodes.put(ledgerManager.getLedgerPath(2L), new Znode(serDe.serialize(metadata(2L, 64)), 1));
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> written = ledgerManager.writeLedgersMetadata(updates);
+        for (long ledgerId = 1; ledgerId <= BATCH_SIZE; ledgerId++) {
+            if (ledgerId == 2L) {
+                assertInstanceOf(BKException.BKMetadataVersionException.class, failure(written.get(ledgerId)));
+                assertEquals(64, storedPayloadSize(ledgerId));
+            } else {
+                assertEquals(new LongVersion(1), result(written.get(ledgerId)).getVersion());
+                assertEquals(32, storedPayloadSize(ledgerId));
+            }
+        }
+        assertEquals(1, multis.size());
+        assertEquals(BATCH_SIZE, singleOps.get());
+    }
+
+    @Test
+    public void testWriteFailsOnConnectionLoss() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> ledgers = createLedgers(BATCH_SIZE, 16);
+        dropConnectionOnMulti = true;
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> written = ledgerManager.writeLedgersMetadata(ledgers);
+        for (long ledgerId = 1; ledgerId <= BATCH_SIZE; ledgerId++) {
+            // the multi may have been applied, so it is not retried
+            assertInstanceOf(BKException.ZKException.class, failure(written.get(ledgerId)));
+        }
+        assertEquals(0, singleOps.get());
+    }
+
+    @Test
+    public void testWriteMultisBoundedBySize() throws Exception {
+        // only two ledgers of a batch fit in a multi
+        int customMetadataSize = AbstractZkLedgerManager.MAX_MULTI_WRITE_BYTES / 3;
+        Map<Long, Versioned<LedgerMetadata>> ledgers = createLedgers(BATCH_SIZE, customMetadataSize);
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> written = ledgerManager.writeLedgersMetadata(ledgers);
+        for (long ledgerId = 1; ledgerId <= BATCH_SIZE; ledgerId++) {
+            assertEquals(new LongVersion(1), result(written.get(ledgerId)).getVersion());
+        }
+        assertEquals(2, multis.size());
+        for (List<Op> ops : multis) {
+            int bytes = 0;
+            for (Op op : ops) {
+                bytes += ((SetDataRequest) op.toRequestRecord()).getData().length;
+            }
+            assertTrue(bytes <= AbstractZkLedgerManager.MAX_MULTI_WRITE_BYTES, "multi of " + bytes + " bytes");
+        }
+    }
+
+    @Test
+    public void testRemoveOneByOneAfterFailedMulti() throws Exception {
+        createLedgers(NUM_LEDGERS, 16);
+        // the third ledger was already removed
+        znodes.remove(ledgerManager.getLedgerPath(3L));
+        Map<Long, Version> versions = new HashMap<>();
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            versions.put(ledgerId, new LongVersion(0));
+        }
+
+        Map<Long, CompletableFuture<Void>> removed = ledgerManager.removeLedgersMetadata(versions);
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            result(removed.get(ledgerId));
+            assertFalse(znodes.containsKey(ledgerManager.getLedgerPath(ledgerId)));
+        }
+        assertEquals(3, multis.size());
+        // only the ledgers of the failed multi are removed one by one
+        assertEquals(BATCH_SIZE, singleOps.get());
+    }
+}
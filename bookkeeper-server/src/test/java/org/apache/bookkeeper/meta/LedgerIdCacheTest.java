@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.BookKeeperConstants;
+import org.apache.bookkeeper.util.ZkUtils;
+import org.apache.bookkeeper.zookeeper.ZooKeeperClient;
+import org.apache.commons.io.FileUtils;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LedgerIdCacheTest {
+
+    private static final String LEDGERS_ROOT = "/ledgers";
+    private static final int SESSION_TIMEOUT_MS = 10000;
+    private static final int TICK_TIME_MS = 500;
+
+    // 2 ledgers of the legacy layout under the same znode, 1 under another one, and 1 of the long layout
+    private static final long LONG_LEDGER_ID = Integer.MAX_VALUE + 1L;
+    private static final long[] LEDGERS = {1L, 2L, 10001L, LONG_LEDGER_ID};
+    private static final List<String> NODES = Arrays.asList(LEDGERS_ROOT,
+            LEDGERS_ROOT + "/00", LEDGERS_ROOT + "/00/0000", LEDGERS_ROOT + "/00/0001",
+            LEDGERS_ROOT + "/000", LEDGERS_ROOT + "/000/0000", LEDGERS_ROOT + "/000/0000/0021",
+            LEDGERS_ROOT + "/000/0000/0021/4748");
+
+    private File dataDir;
+    private ServerCnxnFactory serverFactory;
+    private int port;
+    private ZooKeeperClient adminZk;
+    private ZooKeeperClient zk;
+    private HierarchicalLedgerManager ledgerManager;
+    private LedgerIdCache cache;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dataDir = Files.createTempDirectory("ledgerIdCache").toFile();
+        startServer(0);
+        adminZk = newClient();
+        zk = spy(newClient());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setMetadataServiceUri("zk+hierarchical://127.0.0.1:" + port + LEDGERS_ROOT);
+        ledgerManager = new HierarchicalLedgerManager(conf, adminZk);
+        adminZk.create(LEDGERS_ROOT, new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        // the special znodes under the root are skipped
+        adminZk.create(LEDGERS_ROOT + "/" + BookKeeperConstants.AVAILABLE_NODE, new byte[0], Ids.OPEN_ACL_UNSAFE,
+                CreateMode.PERSISTENT);
+        adminZk.create(LEDGERS_ROOT + "/" + LegacyHierarchicalLedgerManager.IDGEN_ZNODE, new byte[0],
+                Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        for (long ledgerId : LEDGERS) {
+            createLedger(ledgerId);
+        }
+        cache = new LedgerIdCache(new HierarchicalLedgerManager(conf, zk), zk, SESSION_TIMEOUT_MS);
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        cache.close();
+        ledgerManager.close();
+        zk.close();
+        adminZk.close();
+        serverFactory.shutdown();
+        FileUtils.deleteDirectory(dataDir);
+    }
+
+    private void startServer(int serverPort) throws Exception {
+        ZooKeeperServer server = new ZooKeeperServer(dataDir, dataDir, TICK_TIME_MS);
+        serverFactory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", serverPort), 100);
+        serverFactory.startup(server);
+        port = serverFactory.getLocalPort();
+    }
+
+    private ZooKeeperClient newClient() throws Exception {
+        return ZooKeeperClient.newBuilder()
+                .connectString("127.0.0.1:" + port)
+                .sessionTimeoutMs(SESSION_TIMEOUT_MS)
+                .build();
+    }
+
+    private void createLedger(long ledgerId) throws Exception {
+        ZkUtils.createFullPathOptimistic(adminZk, ledgerManager.getLedgerPath(ledgerId), "metadata".getBytes(UTF_8),
+                Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+    }
+
+    private void deleteLedger(long ledgerId) throws Exception {
+        // the parent znodes left empty are deleted too, like the ledger manager does
+        ZkUtils.deleteFullPathOptimistic(adminZk, ledgerManager.getLedgerPath(ledgerId), -1);
+    }
+
+    private long[] getLedgerIds() throws Exception {
+        return cache.getLedgerIds().get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testInitialBuild() throws Exception {
+        assertArrayEquals(LEDGERS, getLedgerIds());
+        for (String node : NODES) {
+            verify(zk).getChildren(node, false);
+        }
+
+        // nothing changed, nothing is listed again
+        clearInvocations(zk);
+        assertArrayEquals(LEDGERS, getLedgerIds());
+        verify(zk, never()).getChildren(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testLedgersCreatedAndDeleted() throws Exception {
+        assertArrayEquals(LEDGERS, getLedgerIds());
+        clearInvocations(zk);
+
+        // a ledger under an existing znode, one under new znodes, and the last ledger of a znode is deleted
+        createLedger(3L);
+        createLedger(20001L);
+        deleteLedger(10001L);
+        assertArrayEquals(new long[] {1L, 2L, 3L, 20001L, LONG_LEDGER_ID}, getLedgerIds());
+
+        // only the znodes whose children changed are listed
+        verify(zk, atLeastOnce()).getChildren(LEDGERS_ROOT + "/00/0000", false);
+        verify(zk, atLeastOnce()).getChildren(LEDGERS_ROOT + "/00/0002", false);
+        verify(zk, never()).getChildren(eq(LEDGERS_ROOT), anyBoolean());
+        verify(zk, never()).getChildren(eq(LEDGERS_ROOT + "/000/0000/0021/4748"), anyBoolean());
+
+        // the deleted znode is created again
+        createLedger(10002L);
+        assertArrayEquals(new long[] {1L, 2L, 3L, 10002L, 20001L, LONG_LEDGER_ID}, getLedgerIds());
+    }
+
+    @Test
+    public void testMetadataUpdatesIgnored() throws Exception {
+        assertArrayEquals(LEDGERS, getLedgerIds());
+        clearInvocations(zk);
+
+        for (long ledgerId : LEDGERS) {
+            adminZk.setData(ledgerManager.getLedgerPath(ledgerId), "updated".getBytes(UTF_8), -1);
+        }
+        assertArrayEquals(LEDGERS, getLedgerIds());
+        verify(zk, never()).getChildren(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testResyncAfterDisconnect() throws Exception {
+        assertArrayEquals(LEDGERS, getLedgerIds());
+        clearInvocations(zk);
+
+        // the session survives the restart of the server, but the events sent while disconnected may be lost
+        serverFactory.shutdown();
+        startServer(port);
+        createLedger(3L);
+        assertArrayEquals(new long[] {1L, 2L, 3L, 10001L, LONG_LEDGER_ID}, getLedgerIds());
+        for (String node : NODES) {
+            verify(zk, atLeastOnce()).getChildren(node, false);
+        }
+    }
+
+    @Test
+    public void testResyncAfterSessionExpiry() throws Exception {
+        assertArrayEquals(LEDGERS, getLedgerIds());
+
+        // expire the session by closing another client using it, the watches go away with it
+        long sessionId = zk.getSessionId();
+        ZooKeeper expirer = new ZooKeeper("127.0.0.1:" + port, SESSION_TIMEOUT_MS, event -> { },
+                sessionId, zk.getSessionPasswd());
+        expirer.close();
+        Awaitility.await().until(() -> zk.getState().isConnected() && zk.getSessionId() != sessionId);
+
+        // the changes made before the cache lists the znodes again are only seen by listing them
+        createLedger(3L);
+        deleteLedger(10001L);
+        deleteLedger(LONG_LEDGER_ID);
+        assertArrayEquals(new long[] {1L, 2L, 3L}, getLedgerIds());
+
+        // the watches are set again on the new session
+        createLedger(4L);
+        assertArrayEquals(new long[] {1L, 2L, 3L, 4L}, getLedgerIds());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.meta.LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3;
+import static org.apache.bookkeeper.meta.LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.LedgerMetadataUtils;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.LedgerMetadata.State;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.jupiter.api.Test;
+
+public class LedgerMetadataSerDeTest {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final long CTIME = 1_700_000_000_000L;
+
+    private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
+
+    private static BookieId bookie(int i) {
+        return BookieId.parse("bookie-" + i + ".example.com:3181");
+    }
+
+    private static LedgerMetadataBuilder builder(int formatVersion) {
+        return LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withMetadataFormatVersion(formatVersion)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withDigestType(DigestType.CRC32C)
+                .withPassword("password".getBytes(UTF_8))
+                .withCreationTime(CTIME)
+                .storingCreationTime(true)
+                .newEnsembleEntry(0L, Arrays.asList(bookie(1), bookie(2), bookie(3)));
+    }
+
+    /**
+     * A closed ledger with several ensembles sharing bookies, and custom metadata.
+     */
+    private static LedgerMetadata closedLedger(int formatVersion) {
+        Map<String, byte[]> customMetadata = new HashMap<>();
+        customMetadata.put("application", "test".getBytes(UTF_8));
+        customMetadata.put("empty", new byte[0]);
+        customMetadata.put("binary", new byte[] { 0, -1, (byte) 0x80, 0x7F });
+        return builder(formatVersion)
+                .newEnsembleEntry(100L, Arrays.asList(bookie(4), bookie(2), bookie(3)))
+                .newEnsembleEntry(1_000_000L, Arrays.asList(bookie(4), bookie(5), bookie(3)))
+                .newEnsembleEntry(1_000_001L, Arrays.asList(bookie(1), bookie(5), bookie(6)))
+                .withCustomMetadata(customMetadata)
+                .withCToken(-42L)
+                .withClosedState()
+                .withLastEntryId(1_234_567L)
+                .withLength(987_654_321L)
+                .build();
+    }
+
+    private static void assertMetadataEquals(LedgerMetadata expected, LedgerMetadata actual) {
+        assertEquals(expected.getLedgerId(), actual.getLedgerId());
+        assertEquals(expected.getMetadataFormatVersion(), actual.getMetadataFormatVersion());
+        assertEquals(expected.getEnsembleSize(), actual.getEnsembleSize());
+        assertEquals(expected.getWriteQuorumSize(), actual.getWriteQuorumSize());
+        assertEquals(expected.getAckQuorumSize(), actual.getAckQuorumSize());
+        assertEquals(expected.getState(), actual.getState());
+        if (expected.getState() == State.CLOSED) {
+            assertEquals(expected.getLastEntryId(), actual.getLastEntryId());
+            assertEquals(expected.getLength(), actual.getLength());
+        }
+        assertEquals(expected.getAllEnsembles(), actual.getAllEnsembles());
+        assertEquals(expected.getDigestType(), actual.getDigestType());
+        assertArrayEquals(expected.getPassword(), actual.getPassword());
+        assertEquals(expected.getCtime(), actual.getCtime());
+        assertEquals(LedgerMetadataUtils.shouldStoreCtime(expected), LedgerMetadataUtils.shouldStoreCtime(actual));
+        assertEquals(expected.getCToken(), actual.getCToken());
+        assertEquals(expected.getCustomMetadata().keySet(), actual.getCustomMetadata().keySet());
+        for (Map.Entry<String, byte[]> entry : expected.getCustomMetadata().entrySet()) {
+            assertArrayEquals(entry.getValue(), actual.getCustomMetadata().get(entry.getKey()), entry.getKey());
+        }
+    }
+
+    private LedgerMetadata roundTrip(LedgerMetadata metadata) throws IOException {
+        return serDe.parseConfig(serDe.serialize(metadata), LEDGER_ID, Optional.empty());
+    }
+
+    @Test
+    public void testRoundTripClosedLedger() throws Exception {
+        LedgerMetadata metadata = closedLedger(METADATA_FORMAT_VERSION_4);
+        assertEquals(4, metadata.getAllEnsembles().size());
+        assertMetadataEquals(metadata, roundTrip(metadata));
+    }
+
+    @Test
+    public void testRoundTripOpenLedger() throws Exception {
+        LedgerMetadata metadata = builder(METADATA_FORMAT_VERSION_4)
+                .newEnsembleEntry(10L, Arrays.asList(bookie(1), bookie(7), bookie(3)))
+                .build();
+        LedgerMetadata parsed = roundTrip(metadata);
+        assertEquals(State.OPEN, parsed.getState());
+        assertTrue(parsed.getCustomMetadata().isEmpty());
+        assertMetadataEquals(metadata, parsed);
+    }
+
+    @Test
+    public void testRoundTripInRecoveryLedger() throws Exception {
+        LedgerMetadata metadata = builder(METADATA_FORMAT_VERSION_4).withInRecoveryState().build();
+        assertMetadataEquals(metadata, roundTrip(metadata));
+    }
+
+    @Test
+    public void testMetadataStoreCtime() throws Exception {
+        LedgerMetadata metadata = builder(METADATA_FORMAT_VERSION_4).storingCreationTime(false).build();
+        byte[] serialized = serDe.serialize(metadata);
+        LedgerMetadata parsed = serDe.parseConfig(serialized, LEDGER_ID, Optional.of(CTIME + 1));
+        assertEquals(CTIME + 1, parsed.getCtime());
+        assertFalse(LedgerMetadataUtils.shouldStoreCtime(parsed));
+    }
+
+    @Test
+    public void testVersion3Compatibility() throws Exception {
+        LedgerMetadata v3 = closedLedger(METADATA_FORMAT_VERSION_3);
+        LedgerMetadata v4 = closedLedger(METADATA_FORMAT_VERSION_4);
+
+        // the metadata stored with the previous format is still parsed as before
+        LedgerMetadata parsedV3 = roundTrip(v3);
+        assertMetadataEquals(v3, parsedV3);
+
+        // and it is the same metadata once rewritten with the compact format
+        LedgerMetadata rewritten = LedgerMetadataBuilder.from(parsedV3)
+                .withMetadataFormatVersion(METADATA_FORMAT_VERSION_4)
+                .withCToken(parsedV3.getCToken())
+                .build();
+        byte[] serializedV4 = serDe.serialize(rewritten);
+        assertMetadataEquals(v4, serDe.parseConfig(serializedV4, LEDGER_ID, Optional.empty()));
+        assertTrue(serializedV4.length < serDe.serialize(v3).length);
+    }
+
+    @Test
+    public void testTruncatedMetadata() throws Exception {
+        byte[] serialized = serDe.serialize(closedLedger(METADATA_FORMAT_VERSION_4));
+        for (int length = 0; length < serialized.length; length++) {
+            byte[] truncated = Arrays.copyOf(serialized, length);
+            assertThrows(IOException.class, () -> serDe.parseConfig(truncated, LEDGER_ID, Optional.empty()),
+                    "length " + length);
+        }
+    }
+
+    @Test
+    public void testParseBookies() throws Exception {
+        Set<BookieId> expected = new HashSet<>();
+        for (int i = 1; i <= 6; i++) {
+            expected.add(bookie(i));
+        }
+        for (int formatVersion : new int[] { METADATA_FORMAT_VERSION_3, METADATA_FORMAT_VERSION_4 }) {
+            byte[] serialized = serDe.serialize(closedLedger(formatVersion));
+            assertEquals(expected, serDe.parseBookies(serialized, LEDGER_ID), "version " + formatVersion);
+        }
+        LedgerMetadata open = builder(METADATA_FORMAT_VERSION_4).withInRecoveryState().build();
+        assertEquals(new HashSet<>(Arrays.asList(bookie(1), bookie(2), bookie(3))),
+                serDe.parseBookies(serDe.serialize(open), LEDGER_ID));
+
+        // the compact metadata truncated within the first bookie id, which follows the 30 bytes of the header and
+        // the quorum sizes and the state, is rejected
+        byte[] serialized = serDe.serialize(closedLedger(METADATA_FORMAT_VERSION_4));
+        assertThrows(IOException.class, () -> serDe.parseBookies(Arrays.copyOf(serialized, 50), LEDGER_ID));
+    }
+
+    @Test
+    public void testEnsemblesShareBookieIds() throws Exception {
+        LedgerMetadata parsed = roundTrip(closedLedger(METADATA_FORMAT_VERSION_4));
+        List<BookieId> first = parsed.getAllEnsembles().get(0L);
+        List<BookieId> second = parsed.getAllEnsembles().get(100L);
+        // the bookie ids are parsed once, and shared by the ensembles
+        assertSame(first.get(1), second.get(1));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.ChannelGroup;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BookieRequestProcessorTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private final List<Long> addedEntries = new CopyOnWriteArrayList<>();
+    private final List<Thread> addThreads = new CopyOnWriteArrayList<>();
+    private final CountDownLatch releaseFirstAdd = new CountDownLatch(1);
+    private final AtomicBoolean canAddWithoutBlocking = new AtomicBoolean(true);
+    private Bookie bookie;
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor processor;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        bookie = mock(Bookie.class);
+        when(bookie.canAddEntryWithoutBlocking(anyLong(), anyInt()))
+                .thenAnswer(invocation -> canAddWithoutBlocking.get());
+        doAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            long entryId = entry.getLong(8);
+            addedEntries.add(entryId);
+            addThreads.add(Thread.currentThread());
+            if (entryId == 0) {
+                releaseFirstAdd.await();
+            }
+            return null;
+        }).when(bookie).addEntry(any(), anyBoolean(), any(), any(), any());
+
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(new EmbeddedChannel());
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        ServerConfiguration conf = new ServerConfiguration()
+                .setThreadPerCoreEnabled(true)
+                .setNumAddWorkerThreads(1);
+        processor = new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE, null,
+                UnpooledByteBufAllocator.DEFAULT, mock(ChannelGroup.class));
+    }
+
+    @AfterEach
+    public void teardown() {
+        releaseFirstAdd.countDown();
+        processor.close();
+    }
+
+    private void add(long entryId) {
+        ByteBuf data = Unpooled.buffer(16).writeLong(LEDGER_ID).writeLong(entryId);
+        processor.processRequest(BookieProtocol.ParsedAddRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                LEDGER_ID, entryId, BookieProtocol.FLAG_NONE, new byte[0], data), requestHandler);
+        data.release();
+    }
+
+    private void awaitAddWorkerIdle() throws Exception {
+        processor.getWriteThreadPool().submitOrdered(LEDGER_ID, () -> null).get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testAddsOnIoThreadStayInOrder() throws Exception {
+        Thread ioThread = Thread.currentThread();
+
+        // the journal or the ledger storage is full, the add is handed to the add worker threads
+        canAddWithoutBlocking.set(false);
+        add(0);
+        Awaitility.await().until(() -> addedEntries.size() == 1);
+        assertNotSame(ioThread, addThreads.get(0));
+
+        // there is room again, but the add must not overtake the one still being executed
+        canAddWithoutBlocking.set(true);
+        add(1);
+        add(2);
+        assertEquals(1, addedEntries.size());
+
+        releaseFirstAdd.countDown();
+        Awaitility.await().until(() -> addedEntries.size() == 3);
+        awaitAddWorkerIdle();
+        assertEquals(Arrays.asList(0L, 1L, 2L), addedEntries);
+        assertNotSame(ioThread, addThreads.get(1));
+        assertNotSame(ioThread, addThreads.get(2));
+
+        // once the add worker threads executed them, the adds run on the IO thread again
+        add(3);
+        assertEquals(4, addedEntries.size());
+        assertSame(ioThread, addThreads.get(3));
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyLedgerFragmentResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CopyLedgerFragmentProcessorV3Test {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final int NUM_ENTRIES = 10;
+
+    private static final BookieId REPLACED = BookieId.parse("127.0.0.1:3181");
+    private static final BookieId BOOKIE_1 = BookieId.parse("127.0.0.2:3181");
+    private static final BookieId BOOKIE_2 = BookieId.parse("127.0.0.3:3181");
+    private static final BookieId BOOKIE_3 = BookieId.parse("127.0.0.4:3181");
+    private static final BookieId UNREGISTERED = BookieId.parse("10.0.0.1:3181");
+
+    private final ByteBufAllocator allocator = UnpooledByteBufAllocator.DEFAULT;
+    private final Set<BookieId> registeredBookies =
+            new HashSet<>(Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2, BOOKIE_3));
+    // the entries stored by each bookie which can be read from
+    private final Map<BookieId, Map<Long, byte[]>> storedEntries = new HashMap<>();
+    private final List<BookieId> readBookies = new ArrayList<>();
+    // the first entries of the batch reads, and the max number of entries a bookie returns for a batch read
+    private final List<Long> batchReadStarts = new CopyOnWriteArrayList<>();
+    private int maxBatchReadEntries = Integer.MAX_VALUE;
+    private boolean failBatchReads = false;
+    private final Map<Long, byte[]> copiedEntries = new HashMap<>();
+    private final AtomicReference<Response> response = new AtomicReference<>();
+    private final ServerConfiguration serverConf = new ServerConfiguration();
+    private CompletableFuture<Set<BookieId>> registeredBookiesLookup;
+    private int writeQuorumSize = 2;
+
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        Channel channel = mock(Channel.class);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.writeAndFlush(any())).thenAnswer(invocation -> {
+            response.set(invocation.getArgument(0));
+            return mock(ChannelFuture.class);
+        });
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+
+        Bookie bookie = mock(Bookie.class);
+        doAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            WriteCallback cb = invocation.getArgument(1);
+            long entryId = entry.getLong(entry.readerIndex() + Long.BYTES);
+            copiedEntries.put(entryId, ByteBufUtil.getBytes(entry));
+            entry.release();
+            cb.writeComplete(BookieProtocol.EOK, LEDGER_ID, entryId, null, invocation.getArgument(2));
+            return null;
+        }).when(bookie).recoveryAddEntry(any(), any(), any(), any());
+
+        BookieClient bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            BookieId address = invocation.getArgument(0);
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            readBookies.add(address);
+            byte[] entry = storedEntries.getOrDefault(address, new HashMap<>()).get(entryId);
+            if (entry == null) {
+                cb.readEntryComplete(BKException.Code.NoSuchEntryException, LEDGER_ID, entryId, null,
+                        invocation.getArgument(4));
+            } else {
+                ByteBuf buffer = Unpooled.wrappedBuffer(entry);
+                cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId, buffer, invocation.getArgument(4));
+                buffer.release();
+            }
+            return null;
+        }).when(bookieClient).readEntry(any(BookieId.class), anyLong(), anyLong(), any(), any(), anyInt());
+        doAnswer(invocation -> {
+            BookieId address = invocation.getArgument(0);
+            long startEntryId = invocation.getArgument(2);
+            int maxCount = invocation.getArgument(3);
+            BatchedReadEntryCallback cb = invocation.getArgument(5);
+            batchReadStarts.add(startEntryId);
+            Map<Long, byte[]> entries = storedEntries.getOrDefault(address, new HashMap<>());
+            ByteBufList buffers = null;
+            for (long entryId = startEntryId; !failBatchReads && entries.containsKey(entryId)
+                    && entryId < startEntryId + Math.min(maxCount, maxBatchReadEntries); entryId++) {
+                ByteBuf buffer = Unpooled.wrappedBuffer(entries.get(entryId));
+                if (buffers == null) {
+                    buffers = ByteBufList.get(buffer);
+                } else {
+                    buffers.add(buffer);
+                }
+            }
+            if (buffers == null) {
+                cb.readEntriesComplete(BKException.Code.NoSuchEntryException, LEDGER_ID, startEntryId, null,
+                        invocation.getArgument(6));
+            } else {
+                cb.readEntriesComplete(BKException.Code.OK, LEDGER_ID, startEntryId, buffers,
+                        invocation.getArgument(6));
+                buffers.release();
+            }
+            return null;
+        }).when(bookieClient).batchReadEntries(any(BookieId.class), anyLong(), anyLong(), anyInt(), anyLong(), any(),
+                any(), anyInt());
+
+        // the copies run on the thread completing the lookup of the registered bookies
+        OrderedExecutor executor = mock(OrderedExecutor.class);
+        when(executor.chooseThread(anyLong())).thenReturn(MoreExecutors.newDirectExecutorService());
+        registeredBookiesLookup = CompletableFuture.completedFuture(registeredBookies);
+        LedgerFragmentCopyClient copyClient = mock(LedgerFragmentCopyClient.class);
+        when(copyClient.getBookieClient()).thenReturn(bookieClient);
+        when(copyClient.getExecutor()).thenReturn(executor);
+        when(copyClient.getRegisteredBookies()).thenAnswer(invocation -> registeredBookiesLookup);
+
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getServerCfg()).thenReturn(serverConf);
+        when(requestProcessor.getAllocator()).thenReturn(allocator);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getFragmentCopyClient()).thenReturn(copyClient);
+    }
+
+    private byte[] newEntry(DigestManager digestManager, long entryId) {
+        ByteBuf data = Unpooled.wrappedBuffer(("entry-" + entryId).getBytes(UTF_8));
+        ByteBuf entry = ByteBufList.coalesce((ByteBufList) digestManager.computeDigestAndPackageForSending(
+                entryId, entryId - 1, 0L, data, PASSWORD, BookieProtocol.FLAG_NONE));
+        try {
+            return ByteBufUtil.getBytes(entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * Store the entries on the bookies of their write sets, in an ensemble of 3 bookies.
+     *
+     * @return the entries stored
+     */
+    private Map<Long, byte[]> storeEntries(DigestType digestType, List<BookieId> ensemble) throws Exception {
+        DigestManager digestManager = DigestManager.instantiate(LEDGER_ID, PASSWORD, digestType, allocator, false);
+        Map<Long, byte[]> entries = new HashMap<>();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            byte[] entry = newEntry(digestManager, entryId);
+            entries.put(entryId, entry);
+            for (int i = 0; i < writeQuorumSize; i++) {
+                BookieId bookie = ensemble.get((int) ((entryId + i) % ensemble.size()));
+                storedEntries.computeIfAbsent(bookie, k -> new HashMap<>()).put(entryId, entry);
+            }
+        }
+        return entries;
+    }
+
+    private Response copy(DigestType digestType, List<BookieId> ensemble, BookieId replaced) {
+        startCopy(digestType, ensemble, replaced);
+        Response resp = response.get();
+        assertNotNull(resp);
+        return resp;
+    }
+
+    private void startCopy(DigestType digestType, List<BookieId> ensemble, BookieId replaced) {
+        CopyLedgerFragmentRequest.Builder copyRequest = CopyLedgerFragmentRequest.newBuilder()
+                .setLedgerId(LEDGER_ID)
+                .setMasterKey(ByteString.copyFrom(PASSWORD))
+                .setFirstEntryId(0L)
+                .setLastEntryId(NUM_ENTRIES - 1)
+                .setWriteQuorumSize(writeQuorumSize)
+                .setDigestType(digestType.getNumber())
+                .setPassword(ByteString.copyFrom(PASSWORD));
+        for (BookieId bookie : ensemble) {
+            copyRequest.addEnsemble(bookie.equals(replaced) ? "" : bookie.toString());
+        }
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.COPY_LEDGER_FRAGMENT)
+                        .setTxnId(1L))
+                .setCopyLedgerFragmentRequest(copyRequest)
+                .build();
+        new CopyLedgerFragmentProcessorV3(request, requestHandler, requestProcessor).run();
+    }
+
+    @Test
+    public void testCopyEntries() throws Exception {
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        Map<Long, byte[]> entries = storeEntries(DigestType.CRC32C, ensemble);
+        storedEntries.remove(REPLACED);
+
+        Response resp = copy(DigestType.CRC32C, ensemble, REPLACED);
+        assertEquals(StatusCode.EOK, resp.getStatus());
+        CopyLedgerFragmentResponse copyResponse = resp.getCopyLedgerFragmentResponse();
+        assertEquals(NUM_ENTRIES, copyResponse.getNumEntriesCopied());
+        assertEquals(NUM_ENTRIES, copiedEntries.size());
+        long numBytes = 0;
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertArrayEquals(entries.get(entryId), copiedEntries.get(entryId));
+            numBytes += entries.get(entryId).length;
+        }
+        assertEquals(numBytes, copyResponse.getNumBytesCopied());
+        assertFalse(readBookies.contains(REPLACED));
+    }
+
+    @Test
+    public void testCorruptedEntryReadFromNextBookie() throws Exception {
+        // none of the bookies is replaced, the entries are copied to a new bookie
+        List<BookieId> ensemble = Arrays.asList(BOOKIE_1, BOOKIE_2, BOOKIE_3);
+        Map<Long, byte[]> entries = storeEntries(DigestType.HMAC, ensemble);
+        // the copies of bookie 1 are corrupted
+        Map<Long, byte[]> corrupted = new HashMap<>();
+        for (Map.Entry<Long, byte[]> e : storedEntries.get(BOOKIE_1).entrySet()) {
+            byte[] entry = e.getValue().clone();
+            entry[entry.length - 1] ^= 0x01;
+            corrupted.put(e.getKey(), entry);
+        }
+        storedEntries.put(BOOKIE_1, corrupted);
+
+        Response resp = copy(DigestType.HMAC, ensemble, null);
+        assertEquals(StatusCode.EOK, resp.getStatus());
+        assertTrue(readBookies.contains(BOOKIE_1));
+        assertEquals(NUM_ENTRIES, copiedEntries.size());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertArrayEquals(entries.get(entryId), copiedEntries.get(entryId));
+        }
+    }
+
+    @Test
+    public void testCorruptedEntryNotCopied() throws Exception {
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        storeEntries(DigestType.CRC32, ensemble);
+        storedEntries.remove(REPLACED);
+        // entry 0 is stored on the replaced bookie and bookie 1, so bookie 1 has its only readable copy
+        byte[] entry = storedEntries.get(BOOKIE_1).get(0L).clone();
+        entry[entry.length - 1] ^= 0x01;
+        storedEntries.get(BOOKIE_1).put(0L, entry);
+
+        Response resp = copy(DigestType.CRC32, ensemble, REPLACED);
+        assertEquals(StatusCode.ENOENTRY, resp.getStatus());
+        assertFalse(copiedEntries.containsKey(0L));
+    }
+
+    @Test
+    public void testEntriesOfAnotherLedgerNotCopied() throws Exception {
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        DigestManager digestManager = DigestManager.instantiate(LEDGER_ID + 1, PASSWORD, DigestType.CRC32C,
+                allocator, false);
+        for (BookieId bookie : ensemble) {
+            Map<Long, byte[]> entries = new HashMap<>();
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                entries.put(entryId, newEntry(digestManager, entryId));
+            }
+            storedEntries.put(bookie, entries);
+        }
+
+        Response resp = copy(DigestType.CRC32C, ensemble, REPLACED);
+        assertEquals(StatusCode.ENOENTRY, resp.getStatus());
+        assertTrue(copiedEntries.isEmpty());
+    }
+
+    @Test
+    public void testUnregisteredBookiesNotRead() throws Exception {
+        List<BookieId> ensemble = Arrays.asList(BOOKIE_1, UNREGISTERED, BOOKIE_2);
+        storeEntries(DigestType.CRC32C, ensemble);
+
+        Response resp = copy(DigestType.CRC32C, ensemble, null);
+        // every entry has a copy on a registered bookie
+        assertEquals(StatusCode.EOK, resp.getStatus());
+        assertEquals(NUM_ENTRIES, copiedEntries.size());
+        assertFalse(readBookies.contains(UNREGISTERED));
+    }
+
+    @Test
+    public void testNoRegisteredBookie() throws Exception {
+        List<BookieId> ensemble = Arrays.asList(REPLACED, UNREGISTERED, UNREGISTERED);
+        storeEntries(DigestType.CRC32C, ensemble);
+
+        Response resp = copy(DigestType.CRC32C, ensemble, REPLACED);
+        assertEquals(StatusCode.EBADREQ, resp.getStatus());
+        assertTrue(readBookies.isEmpty());
+    }
+
+    @Test
+    public void testUnknownDigestType() throws Exception {
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        storeEntries(DigestType.CRC32C, ensemble);
+
+        CopyLedgerFragmentRequest.Builder copyRequest = CopyLedgerFragmentRequest.newBuilder()
+                .setLedgerId(LEDGER_ID)
+                .setMasterKey(ByteString.copyFrom(PASSWORD))
+                .setFirstEntryId(0L)
+                .setLastEntryId(NUM_ENTRIES - 1)
+                .setWriteQuorumSize(2)
+                .setDigestType(Integer.MAX_VALUE)
+                .addAllEnsemble(Arrays.asList("", BOOKIE_1.toString(), BOOKIE_2.toString()));
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.COPY_LEDGER_FRAGMENT)
+                        .setTxnId(1L))
+                .setCopyLedgerFragmentRequest(copyRequest)
+                .build();
+        new CopyLedgerFragmentProcessorV3(request, requestHandler, requestProcessor).run();
+        assertEquals(StatusCode.EBADREQ, response.get().getStatus());
+        assertTrue(readBookies.isEmpty());
+    }
+
+    @Test
+    public void testCopyNotEnabled() throws Exception {
+        when(requestProcessor.getFragmentCopyClient()).thenReturn(null);
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        storeEntries(DigestType.CRC32C, ensemble);
+
+        Response resp = copy(DigestType.CRC32C, ensemble, REPLACED);
+        assertEquals(StatusCode.EBADREQ, resp.getStatus());
+        assertTrue(readBookies.isEmpty());
+    }
+
+    @Test
+    public void testRegisteredBookiesLookedUpAsynchronously() throws Exception {
+        registeredBookiesLookup = new CompletableFuture<>();
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        storeEntries(DigestType.CRC32C, ensemble);
+
+        // the copy does not wait for the lookup
+        startCopy(DigestType.CRC32C, ensemble, REPLACED);
+        assertNull(response.get());
+        assertTrue(readBookies.isEmpty());
+
+        registeredBookiesLookup.complete(registeredBookies);
+        assertEquals(StatusCode.EOK, response.get().getStatus());
+        assertEquals(NUM_ENTRIES, copiedEntries.size());
+    }
+
+    @Test
+    public void testRegisteredBookiesLookupFailure() throws Exception {
+        registeredBookiesLookup = new CompletableFuture<>();
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        storeEntries(DigestType.CRC32C, ensemble);
+
+        startCopy(DigestType.CRC32C, ensemble, REPLACED);
+        registeredBookiesLookup.completeExceptionally(new BKException.MetaStoreException());
+        assertEquals(StatusCode.EIO, response.get().getStatus());
+        assertTrue(readBookies.isEmpty());
+    }
+
+    @Test
+    public void testBatchReads() throws Exception {
+        // every bookie stores all the entries, they are read by batches
+        writeQuorumSize = 3;
+        serverConf.setLedgerFragmentCopyMaxInflightEntries(4);
+        maxBatchReadEntries = 3;
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        Map<Long, byte[]> entries = storeEntries(DigestType.CRC32C, ensemble);
+        storedEntries.remove(REPLACED);
+
+        Response resp = copy(DigestType.CRC32C, ensemble, REPLACED);
+        assertEquals(StatusCode.EOK, resp.getStatus());
+        assertEquals(NUM_ENTRIES, resp.getCopyLedgerFragmentResponse().getNumEntriesCopied());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertArrayEquals(entries.get(entryId), copiedEntries.get(entryId));
+        }
+        // the entries the bookie did not return in a batch are read with the next batches, none is read twice
+        assertTrue(readBookies.isEmpty());
+        assertTrue(batchReadStarts.size() < NUM_ENTRIES, "batch reads " + batchReadStarts);
+        for (int i = 1; i < batchReadStarts.size(); i++) {
+            assertTrue(batchReadStarts.get(i) > batchReadStarts.get(i - 1), "batch reads " + batchReadStarts);
+        }
+    }
+
+    @Test
+    public void testBatchReadFailureFallsBackToEntryReads() throws Exception {
+        writeQuorumSize = 3;
+        failBatchReads = true;
+        List<BookieId> ensemble = Arrays.asList(REPLACED, BOOKIE_1, BOOKIE_2);
+        Map<Long, byte[]> entries = storeEntries(DigestType.CRC32C, ensemble);
+        storedEntries.remove(REPLACED);
+
+        Response resp = copy(DigestType.CRC32C, ensemble, REPLACED);
+        assertEquals(StatusCode.EOK, resp.getStatus());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertArrayEquals(entries.get(entryId), copiedEntries.get(entryId));
+        }
+        // a single batch read was tried
+        assertEquals(1, batchReadStarts.size());
+        assertFalse(readBookies.isEmpty());
+        assertFalse(readBookies.contains(REPLACED));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongPredicate;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.Test;
+
+public class DefaultPerChannelBookieClientPoolTest {
+
+    private static final BookieId BOOKIE = BookieId.parse("bookie-1:3181");
+
+    /**
+     * A channel keeping the requests registered in it per ledger, until the test completes them.
+     */
+    private static final class FakeChannel {
+        private final PerChannelBookieClient pcbc = mock(PerChannelBookieClient.class);
+        private final Map<Long, AtomicInteger> pending = new ConcurrentHashMap<>();
+        private final AtomicLong numPending = new AtomicLong();
+
+        FakeChannel() {
+            when(pcbc.isWritable()).thenReturn(true);
+            when(pcbc.getNumPendingCompletionRequests()).thenAnswer(invocation -> numPending.get());
+            when(pcbc.hasPendingRequests(any())).thenAnswer(invocation -> {
+                LongPredicate filter = invocation.getArgument(0);
+                return pending.keySet().stream().anyMatch(filter::test);
+            });
+            doAnswer(invocation -> {
+                invocation.<GenericCallback<PerChannelBookieClient>>getArgument(0)
+                        .operationComplete(BKException.Code.OK, pcbc);
+                return null;
+            }).when(pcbc).connectIfNeededAndDoOp(any());
+        }
+
+        void register(long ledgerId) {
+            pending.computeIfAbsent(ledgerId, k -> new AtomicInteger()).incrementAndGet();
+            numPending.incrementAndGet();
+        }
+
+        boolean hasPending(long ledgerId) {
+            return pending.containsKey(ledgerId);
+        }
+
+        /**
+         * Complete the requests of a ledger, which are only sent and completed by a single thread.
+         */
+        void complete(long ledgerId, boolean all) {
+            AtomicInteger count = pending.get(ledgerId);
+            if (count == null) {
+                return;
+            }
+            int completed = all ? count.get() : 1;
+            if (count.addAndGet(-completed) == 0) {
+                pending.remove(ledgerId);
+            }
+            numPending.addAndGet(-completed);
+        }
+    }
+
+    private final List<FakeChannel> channels = new CopyOnWriteArrayList<>();
+
+    private DefaultPerChannelBookieClientPool createPool(int coreSize, int maxSize, long congestionThreshold)
+            throws Exception {
+        PerChannelBookieClientFactory factory = mock(PerChannelBookieClientFactory.class);
+        when(factory.create(any(), any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            FakeChannel channel = new FakeChannel();
+            channels.add(channel);
+            return channel.pcbc;
+        });
+        ClientConfiguration conf = new ClientConfiguration()
+                .setChannelCongestionPendingRequestsThreshold(congestionThreshold);
+        return new DefaultPerChannelBookieClientPool(conf, factory, BOOKIE, coreSize, maxSize,
+                NullStatsLogger.INSTANCE);
+    }
+
+    private FakeChannel channelOf(PerChannelBookieClient pcbc) {
+        for (FakeChannel channel : channels) {
+            if (channel.pcbc == pcbc) {
+                return channel;
+            }
+        }
+        throw new AssertionError("unknown channel " + pcbc);
+    }
+
+    /**
+     * Send a request of the ledger, and return the channel it was registered in.
+     */
+    private FakeChannel send(DefaultPerChannelBookieClientPool pool, long ledgerId) {
+        AtomicReference<FakeChannel> sentTo = new AtomicReference<>();
+        pool.obtain((rc, pcbc) -> {
+            FakeChannel channel = channelOf(pcbc);
+            channel.register(ledgerId);
+            sentTo.set(channel);
+        }, ledgerId);
+        return sentTo.get();
+    }
+
+    @Test
+    public void testStripeStaysWhileRequestsInFlight() throws Exception {
+        DefaultPerChannelBookieClientPool pool = createPool(1, 2, 2);
+        long ledgerId = 1L;
+        long otherLedgerId = 2L;
+        FakeChannel first = channels.get(0);
+
+        assertSame(first, send(pool, ledgerId));
+        assertSame(first, send(pool, ledgerId));
+        // the channel is congested, but the stripe has requests in flight on it
+        assertSame(first, send(pool, ledgerId));
+        assertEquals(1, channels.size());
+
+        first.complete(ledgerId, true);
+        assertSame(first, send(pool, otherLedgerId));
+        assertSame(first, send(pool, otherLedgerId));
+        TimeUnit.MILLISECONDS.sleep(2);
+        // nothing of the stripe is in flight anymore, it moves to a new channel
+        FakeChannel second = send(pool, ledgerId);
+        assertEquals(2, channels.size());
+        assertSame(channels.get(1), second);
+        assertSame(second, send(pool, ledgerId));
+        assertSame(first, send(pool, otherLedgerId));
+        pool.close(false);
+    }
+
+    @Test
+    public void testOrderingAcrossStripeMoves() throws Exception {
+        DefaultPerChannelBookieClientPool pool = createPool(1, 4, 4);
+        int numThreads = 8;
+        int ledgersPerThread = 4;
+        AtomicInteger moves = new AtomicInteger();
+        List<String> violations = new CopyOnWriteArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            // two threads share each stripe, with ledgers of their own
+            long[] ledgers = new long[ledgersPerThread];
+            for (int j = 0; j < ledgersPerThread; j++) {
+                ledgers[j] = t / 2 + (long) DefaultPerChannelBookieClientPool.NUM_STRIPES * (t * ledgersPerThread + j);
+            }
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Map<Long, FakeChannel> lastChannel = new HashMap<>();
+                while (moves.get() < 100 && System.nanoTime() < deadline) {
+                    long ledgerId = ledgers[random.nextInt(ledgers.length)];
+                    FakeChannel previous = lastChannel.get(ledgerId);
+                    FakeChannel channel = send(pool, ledgerId);
+                    if (previous != null && previous != channel) {
+                        moves.incrementAndGet();
+                        if (previous.hasPending(ledgerId)) {
+                            violations.add("ledger " + ledgerId + " moved with requests in flight");
+                        }
+                    }
+                    lastChannel.put(ledgerId, channel);
+                    if (random.nextInt(8) == 0) {
+                        for (long id : ledgers) {
+                            for (FakeChannel c : channels) {
+                                c.complete(id, true);
+                            }
+                        }
+                    } else if (random.nextBoolean()) {
+                        channel.complete(ledgers[random.nextInt(ledgers.length)], false);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pool.close(false);
+        assertTrue(violations.isEmpty(), violations.toString());
+        assertTrue(moves.get() > 0, "no stripe moved");
+        assertTrue(channels.size() > 1);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.Test;
+
+public class FairRequestSchedulerTest {
+
+    // the tasks handed to each thread of the executor, run by the test
+    private final List<Queue<Runnable>> threads = new ArrayList<>();
+    private final StringBuilder executed = new StringBuilder();
+
+    private FairRequestScheduler createScheduler(int numThreads, int maxTasksInFlightPerThread,
+                                                 int maxQueuedTasksPerClass, String... classWeights) {
+        OrderedExecutor executor = mock(OrderedExecutor.class);
+        for (int i = 0; i < numThreads; i++) {
+            threads.add(new ArrayDeque<>());
+        }
+        when(executor.getNumThreads()).thenReturn(numThreads);
+        when(executor.chooseThreadIndex(anyLong()))
+                .thenAnswer(invocation -> (int) (invocation.<Long>getArgument(0) % numThreads));
+        doAnswer(invocation -> {
+            long key = invocation.getArgument(0);
+            threads.get((int) (key % numThreads)).add(invocation.getArgument(1));
+            return null;
+        }).when(executor).executeOrdered(anyLong(), any(Runnable.class));
+        return new FairRequestScheduler("test", executor, maxTasksInFlightPerThread, maxQueuedTasksPerClass,
+                classWeights, NullStatsLogger.INSTANCE);
+    }
+
+    private static Channel client(String host) {
+        return new EmbeddedChannel() {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return InetSocketAddress.createUnresolved(host, 3181);
+            }
+        };
+    }
+
+    private void schedule(FairRequestScheduler scheduler, Channel channel, long key, String name) {
+        scheduler.executeOrdered(channel, key, () -> executed.append(name), () -> executed.append('!'));
+    }
+
+    private void runNext(int thread) {
+        threads.get(thread).poll().run();
+    }
+
+    @Test
+    public void testMaxTasksInFlightPerThread() {
+        FairRequestScheduler scheduler = createScheduler(2, 2, 100);
+        Channel flooding = client("client-a");
+        Channel other = client("client-b");
+
+        for (int i = 0; i < 10; i++) {
+            schedule(scheduler, flooding, 0, "a");
+        }
+        // the requests of the flooding client for its thread come after the ones already queued
+        schedule(scheduler, flooding, 1, "c");
+        assertEquals(2, threads.get(0).size());
+        assertEquals(0, threads.get(1).size());
+
+        // the other thread is idle, so the request of the other client does not wait
+        schedule(scheduler, other, 1, "b");
+        assertEquals(1, threads.get(1).size());
+        runNext(1);
+        assertEquals("b", executed.toString());
+
+        // a request done on a thread lets the next one for that thread through
+        runNext(0);
+        assertEquals(2, threads.get(0).size());
+        for (int i = 0; i < 9; i++) {
+            runNext(0);
+        }
+        assertEquals(0, threads.get(0).size());
+        assertEquals(1, threads.get(1).size());
+        runNext(1);
+        assertEquals("baaaaaaaaaac", executed.toString());
+    }
+
+    @Test
+    public void testWeightedRoundRobin() {
+        FairRequestScheduler scheduler = createScheduler(1, 1, 100, "client-a:2");
+        Channel blocking = client("client-c");
+        Channel heavy = client("client-a");
+        Channel light = client("client-b");
+
+        schedule(scheduler, blocking, 0, "C");
+        for (int i = 0; i < 6; i++) {
+            schedule(scheduler, heavy, 0, "A");
+        }
+        for (int i = 0; i < 6; i++) {
+            schedule(scheduler, light, 0, "B");
+        }
+        assertEquals(1, threads.get(0).size());
+        while (!threads.get(0).isEmpty()) {
+            runNext(0);
+        }
+        // client-a has weight 2, so it gets two requests executed per round
+        assertEquals("CAABAABAABBBB", executed.toString());
+    }
+
+    @Test
+    public void testTooManyQueuedRequests() {
+        FairRequestScheduler scheduler = createScheduler(1, 1, 2);
+        Channel channel = client("client-a");
+        Channel other = client("client-b");
+
+        // one request handed to the executor, and two queued
+        schedule(scheduler, channel, 0, "a");
+        schedule(scheduler, channel, 0, "a");
+        schedule(scheduler, channel, 0, "a");
+        assertThrows(RejectedExecutionException.class, () -> schedule(scheduler, channel, 0, "a"));
+        // the queue of the other client is not full
+        schedule(scheduler, other, 0, "b");
+        while (!threads.get(0).isEmpty()) {
+            runNext(0);
+        }
+        assertEquals("aaba", executed.toString());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class InFlightRequestLimiterTest {
+
+    /**
+     * Counts the channels the limiter paused and resumed.
+     */
+    private static final class CountingListener implements InFlightRequestLimiter.Listener {
+        final AtomicInteger paused = new AtomicInteger();
+        final AtomicInteger resumed = new AtomicInteger();
+
+        @Override
+        public void onChannelPaused() {
+            paused.incrementAndGet();
+        }
+
+        @Override
+        public void onChannelResumed(long pausedNanos) {
+            assertTrue(pausedNanos >= 0);
+            resumed.incrementAndGet();
+        }
+    }
+
+    private static boolean isPaused(Channel channel) {
+        return !channel.config().isAutoRead();
+    }
+
+    @Test
+    public void testPauseAtLimitAndResume() {
+        CountingListener listener = new CountingListener();
+        InFlightRequestLimiter limiter = new InFlightRequestLimiter("adds", 4, 0, listener);
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        // up to the limit, the channel keeps being read
+        for (int i = 0; i < 4; i++) {
+            limiter.onRequestStart(channel, 1);
+            assertFalse(isPaused(channel));
+        }
+        limiter.onRequestStart(channel, 1);
+        assertTrue(isPaused(channel));
+        assertEquals(1, limiter.getPausedChannels());
+        assertEquals(1, listener.paused.get());
+
+        // it is resumed once the requests in progress are back under half the limit
+        limiter.onRequestFinish(channel, 1);
+        limiter.onRequestFinish(channel, 1);
+        assertTrue(isPaused(channel));
+        limiter.onRequestFinish(channel, 1);
+        assertFalse(isPaused(channel));
+        assertEquals(0, limiter.getPausedChannels());
+        assertEquals(1, listener.resumed.get());
+
+        limiter.onRequestFinish(channel, 1);
+        limiter.onRequestFinish(channel, 1);
+        assertFalse(isPaused(channel));
+        assertEquals(1, listener.paused.get());
+    }
+
+    @Test
+    public void testSingleChannelNotPausedUnderLimit() {
+        CountingListener listener = new CountingListener();
+        InFlightRequestLimiter limiter = new InFlightRequestLimiter("adds", 0, 1000, listener);
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        for (int i = 0; i < 10; i++) {
+            limiter.onRequestStart(channel, 100);
+            assertFalse(isPaused(channel));
+        }
+        limiter.onRequestStart(channel, 1);
+        assertTrue(isPaused(channel));
+    }
+
+    @Test
+    public void testFairnessAcrossChannels() {
+        CountingListener listener = new CountingListener();
+        InFlightRequestLimiter limiter = new InFlightRequestLimiter("adds", 0, 1000, listener);
+        EmbeddedChannel heavy = new EmbeddedChannel();
+        EmbeddedChannel light = new EmbeddedChannel();
+
+        for (int i = 0; i < 3; i++) {
+            limiter.onRequestStart(heavy, 200);
+        }
+        limiter.onRequestStart(light, 10);
+        assertFalse(isPaused(heavy));
+        assertFalse(isPaused(light));
+
+        // past half the limit, the channel holding most of the bytes in progress is paused first
+        limiter.onRequestStart(heavy, 100);
+        assertTrue(isPaused(heavy));
+        assertFalse(isPaused(light));
+
+        // the light channel keeps being read up to the limit
+        for (int i = 0; i < 29; i++) {
+            limiter.onRequestStart(light, 10);
+            assertFalse(isPaused(light));
+        }
+        limiter.onRequestStart(light, 10);
+        assertTrue(isPaused(light));
+        assertEquals(2, limiter.getPausedChannels());
+
+        // both are resumed once back under half the limit
+        limiter.onRequestFinish(heavy, 200);
+        limiter.onRequestFinish(heavy, 200);
+        assertTrue(isPaused(heavy));
+        assertTrue(isPaused(light));
+        limiter.onRequestFinish(heavy, 200);
+        assertFalse(isPaused(heavy));
+        assertFalse(isPaused(light));
+        assertEquals(2, listener.resumed.get());
+    }
+
+    @Test
+    public void testChannelPausedByBothLimiters() {
+        CountingListener listener = new CountingListener();
+        InFlightRequestLimiter adds = new InFlightRequestLimiter("adds", 1, 0, listener);
+        InFlightRequestLimiter reads = new InFlightRequestLimiter("reads", 1, 0, listener);
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        adds.onRequestStart(channel, 1);
+        adds.onRequestStart(channel, 1);
+        reads.onRequestStart(channel, 1);
+        reads.onRequestStart(channel, 1);
+        assertTrue(isPaused(channel));
+        assertEquals(2, listener.paused.get());
+
+        // auto-read is only enabled again once neither limiter holds the channel
+        adds.onRequestFinish(channel, 1);
+        adds.onRequestFinish(channel, 1);
+        assertTrue(isPaused(channel));
+        reads.onRequestFinish(channel, 1);
+        reads.onRequestFinish(channel, 1);
+        assertFalse(isPaused(channel));
+        assertEquals(2, listener.resumed.get());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.jupiter.api.Test;
+
+public class RequestTracerTest {
+
+    // the stats of each op and stage, keyed by "op/stage/"
+    private final Map<String, OpStatsLogger> stageStats = new ConcurrentHashMap<>();
+
+    private StatsLogger statsLogger(String labels) {
+        StatsLogger statsLogger = mock(StatsLogger.class);
+        when(statsLogger.scopeLabel(anyString(), anyString()))
+                .thenAnswer(invocation -> statsLogger(labels + invocation.getArgument(1) + "/"));
+        when(statsLogger.getOpStatsLogger(anyString()))
+                .thenAnswer(invocation -> stageStats.computeIfAbsent(labels, k -> mock(OpStatsLogger.class)));
+        return statsLogger;
+    }
+
+    private RequestTracer createTracer(int sampleRate, long slowRequestThresholdMs, int slowRequestsCapacity) {
+        ServerConfiguration conf = new ServerConfiguration()
+                .setRequestTracingSampleRate(sampleRate)
+                .setRequestTracingSlowRequestThresholdMs(slowRequestThresholdMs)
+                .setRequestTracingSlowRequestsCapacity(slowRequestsCapacity);
+        return new RequestTracer(conf, statsLogger(""));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Trace an add which starts at 0, waits 1ms for a worker thread, is added to the ledger storage in 2ms and
+     * responded to after {@code totalMillis}.
+     */
+    private static RequestTrace traceAdd(RequestTracer tracer, long entryId, long totalMillis) {
+        RequestTrace trace = tracer.startTrace(RequestTrace.Op.ADD, 1L, entryId, 0L);
+        assertNotNull(trace);
+        trace.mark(RequestTrace.Stage.QUEUE, millis(1));
+        trace.mark(RequestTrace.Stage.LEDGER_STORAGE, millis(3));
+        trace.mark(RequestTrace.Stage.RESPONSE, millis(totalMillis));
+        return trace;
+    }
+
+    @Test
+    public void testDisabled() {
+        RequestTracer tracer = createTracer(0, 10, 8);
+        assertFalse(tracer.isEnabled());
+        for (int i = 0; i < 1000; i++) {
+            assertNull(tracer.startTrace(RequestTrace.Op.READ, 1L, i, 0L));
+        }
+        // no stats are registered when tracing is disabled
+        assertTrue(stageStats.isEmpty());
+        assertTrue(tracer.getSlowRequests().isEmpty());
+    }
+
+    @Test
+    public void testSampling() {
+        RequestTracer tracer = createTracer(1, 10, 8);
+        assertTrue(tracer.isEnabled());
+        for (int i = 0; i < 1000; i++) {
+            RequestTrace trace = tracer.startTrace(RequestTrace.Op.READ, 1L, i, 0L);
+            assertNotNull(trace);
+            tracer.finish(trace, true);
+        }
+
+        tracer = createTracer(10, 10, 8);
+        int traced = 0;
+        for (int i = 0; i < 100_000; i++) {
+            RequestTrace trace = tracer.startTrace(RequestTrace.Op.READ, 1L, i, 0L);
+            if (trace != null) {
+                traced++;
+                tracer.finish(trace, true);
+            }
+        }
+        // about one request out of 10
+        assertTrue(traced > 9_000 && traced < 11_000, "traced " + traced);
+    }
+
+    @Test
+    public void testStageLatencies() {
+        RequestTracer tracer = createTracer(1, 1000, 8);
+        tracer.finish(traceAdd(tracer, 0L, 20), true);
+
+        // each stage is measured from the end of the previous one
+        verify(stageStats.get("add/queue/")).registerSuccessfulEvent(millis(1), TimeUnit.NANOSECONDS);
+        verify(stageStats.get("add/ledger_storage/")).registerSuccessfulEvent(millis(2), TimeUnit.NANOSECONDS);
+        verify(stageStats.get("add/response/")).registerSuccessfulEvent(millis(17), TimeUnit.NANOSECONDS);
+        verify(stageStats.get("add/total/")).registerSuccessfulEvent(millis(20), TimeUnit.NANOSECONDS);
+        // the stages the request did not go through are not reported
+        verifyNoInteractions(stageStats.get("add/fsync/"));
+        verifyNoInteractions(stageStats.get("read/total/"));
+
+        tracer.finish(traceAdd(tracer, 1L, 5), false);
+        verify(stageStats.get("add/total/")).registerFailedEvent(millis(5), TimeUnit.NANOSECONDS);
+        // not slow enough to be retained
+        assertTrue(tracer.getSlowRequests().isEmpty());
+    }
+
+    @Test
+    public void testSlowRequestsRetained() {
+        RequestTracer tracer = createTracer(1, 10, 3);
+        tracer.finish(traceAdd(tracer, 0L, 9), true);
+        assertTrue(tracer.getSlowRequests().isEmpty());
+
+        tracer.finish(traceAdd(tracer, 1L, 10), true);
+        List<RequestTracer.SlowRequest> slowRequests = tracer.getSlowRequests();
+        assertEquals(1, slowRequests.size());
+        RequestTracer.SlowRequest slowRequest = slowRequests.get(0);
+        assertEquals("add", slowRequest.getOp());
+        assertEquals(1L, slowRequest.getLedgerId());
+        assertEquals(1L, slowRequest.getEntryId());
+        assertTrue(slowRequest.isSuccess());
+        assertEquals(10_000L, slowRequest.getTotalMicros());
+        Map<String, Long> expectedStages = new LinkedHashMap<>();
+        expectedStages.put("queue", 1_000L);
+        expectedStages.put("ledger_storage", 2_000L);
+        expectedStages.put("response", 7_000L);
+        assertEquals(expectedStages, slowRequest.getStageMicros());
+
+        // only the most recent ones are retained, the slowest first
+        tracer.finish(traceAdd(tracer, 2L, 50), false);
+        tracer.finish(traceAdd(tracer, 3L, 30), true);
+        tracer.finish(traceAdd(tracer, 4L, 40), true);
+        slowRequests = tracer.getSlowRequests();
+        assertEquals(3, slowRequests.size());
+        assertEquals(Arrays.asList(2L, 4L, 3L), Arrays.asList(slowRequests.get(0).getEntryId(),
+                slowRequests.get(1).getEntryId(), slowRequests.get(2).getEntryId()));
+        assertFalse(slowRequests.get(0).isSuccess());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadReadExecutorTest {
+
+    // platform threads stand for the virtual threads, so that the test runs on any JDK
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final Semaphore gate = new Semaphore(0);
+
+    @AfterEach
+    public void teardown() {
+        gate.release(1000);
+        threads.shutdownNow();
+    }
+
+    private VirtualThreadReadExecutor createExecutor(int numDisks, int maxConcurrencyPerDisk, int maxPending) {
+        return new VirtualThreadReadExecutor(threads, numDisks, maxConcurrencyPerDisk, maxPending,
+                NullStatsLogger.INSTANCE);
+    }
+
+    private Runnable blockingRead(List<String> started, String name) {
+        return () -> {
+            started.add(name);
+            gate.acquireUninterruptibly();
+        };
+    }
+
+    @Test
+    public void testConcurrencyCappedPerDisk() throws Exception {
+        VirtualThreadReadExecutor executor = createExecutor(2, 2, 0);
+        assertEquals(2, executor.getNumThreads());
+        assertEquals(0, executor.chooseThreadIndex(4L));
+        assertEquals(1, executor.chooseThreadIndex(5L));
+        List<String> started = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            executor.executeOrdered(0L, blockingRead(started, "disk-0"));
+        }
+        Awaitility.await().until(() -> started.size() == 2);
+
+        // the other disk is not held back by the reads waiting for the first one
+        CountDownLatch otherDisk = new CountDownLatch(1);
+        executor.executeOrdered(1L, otherDisk::countDown);
+        assertTrue(otherDisk.await(30, TimeUnit.SECONDS));
+        assertEquals(2, started.size());
+
+        gate.release(1);
+        Awaitility.await().until(() -> started.size() == 3);
+        gate.release(3);
+        Awaitility.await().until(() -> started.size() == 5);
+    }
+
+    @Test
+    public void testMaxPendingRequests() throws Exception {
+        VirtualThreadReadExecutor executor = createExecutor(1, 1, 3);
+        List<String> started = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            executor.executeOrdered(i, blockingRead(started, "read"));
+        }
+        assertThrows(RejectedExecutionException.class, () -> executor.executeOrdered(3L, () -> { }));
+
+        gate.release(3);
+        Awaitility.await().until(() -> started.size() == 3);
+        // the permits and the pending count are released once the reads are done, even if they fail
+        AtomicInteger failed = new AtomicInteger();
+        Awaitility.await().ignoreException(RejectedExecutionException.class).untilAsserted(
+                () -> executor.executeOrdered(3L, () -> {
+                    failed.incrementAndGet();
+                    throw new IllegalStateException("read failed");
+                }));
+        Awaitility.await().until(() -> failed.get() == 1);
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            Awaitility.await().ignoreException(RejectedExecutionException.class).untilAsserted(
+                    () -> executor.executeOrdered(0L, done::countDown));
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testScheduledFairlyAcrossClients() throws Exception {
+        VirtualThreadReadExecutor executor = createExecutor(2, 2, 0);
+        FairRequestScheduler scheduler = new FairRequestScheduler("read", executor, 2, 100, null,
+                NullStatsLogger.INSTANCE);
+        Channel flooding = client("client-a");
+        Channel other = client("client-b");
+        List<String> started = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.executeOrdered(flooding, 0L, blockingRead(started, "a"), () -> { });
+        }
+        Awaitility.await().until(() -> started.size() == 2);
+        // a read of the other client for the same disk waits in its own queue, not behind the flooding client
+        scheduler.executeOrdered(other, 2L, blockingRead(started, "b"), () -> { });
+        gate.release(11);
+        Awaitility.await().until(() -> started.size() == 11);
+        assertTrue(started.indexOf("b") < 5, started.toString());
+    }
+
+    private static Channel client(String host) {
+        return new EmbeddedChannel() {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return InetSocketAddress.createUnresolved(host, 3181);
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto.checksum;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Random;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.junit.jupiter.api.Test;
+
+public class CompositeDigestTest {
+
+    private static final Random RANDOM = new Random(0x5eed);
+    private static final int[] FRAGMENT_SIZES = { 1, 7, 100, 4096, 3, 65537 };
+
+    private static byte[] digest(DigestManager dm, ByteBuf buffer, int offset, int len) {
+        int digest = dm.update(0, buffer, offset, len);
+        ByteBuf out = Unpooled.buffer();
+        try {
+            dm.populateValueAndReset(digest, out);
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    private static ByteBuf fragment(byte[] data, int offset, int len, int kind) {
+        switch (kind % 3) {
+        case 0:
+            ByteBuf direct = Unpooled.directBuffer(len);
+            direct.writeBytes(data, offset, len);
+            return direct;
+        case 1:
+            return Unpooled.wrappedBuffer(data, offset, len);
+        default:
+            // a nested composite, which is neither direct nor array backed
+            CompositeByteBuf nested = Unpooled.compositeBuffer();
+            int half = len / 2;
+            nested.addComponent(true, Unpooled.wrappedBuffer(data, offset, half));
+            ByteBuf rest = Unpooled.directBuffer(len - half);
+            rest.writeBytes(data, offset + half, len - half);
+            nested.addComponent(true, rest);
+            return nested;
+        }
+    }
+
+    private static void assertCompositeDigests(DigestType digestType, int firstKind) throws Exception {
+        DigestManager dm = DigestManager.instantiate(1L, "password".getBytes(UTF_8), digestType,
+                UnpooledByteBufAllocator.DEFAULT, false);
+        int size = 0;
+        for (int fragmentSize : FRAGMENT_SIZES) {
+            size += fragmentSize;
+        }
+        byte[] data = new byte[size];
+        RANDOM.nextBytes(data);
+        ByteBuf contiguous = Unpooled.wrappedBuffer(data);
+        CompositeByteBuf composite = Unpooled.compositeBuffer(FRAGMENT_SIZES.length);
+        try {
+            int offset = 0;
+            for (int i = 0; i < FRAGMENT_SIZES.length; i++) {
+                composite.addComponent(true, fragment(data, offset, FRAGMENT_SIZES[i], firstKind + i));
+                offset += FRAGMENT_SIZES[i];
+            }
+            int[][] ranges = {
+                { 0, size },
+                { 0, 0 },
+                { 1, size - 1 },
+                // within a single component
+                { 108, 4000 },
+                // crossing several component boundaries
+                { 5, 4200 },
+                { 4100, size - 4100 },
+            };
+            for (int[] range : ranges) {
+                assertArrayEquals(digest(dm, contiguous, range[0], range[1]),
+                        digest(dm, composite, range[0], range[1]),
+                        digestType + " digest of bytes [" + range[0] + ", " + (range[0] + range[1]) + ")");
+            }
+        } finally {
+            contiguous.release();
+            composite.release();
+        }
+    }
+
+    @Test
+    public void testCompositeDigests() throws Exception {
+        for (DigestType digestType : DigestType.values()) {
+            for (int firstKind = 0; firstKind < 3; firstKind++) {
+                assertCompositeDigests(digestType, firstKind);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static void acquireAll(AdaptiveConcurrencyLimiter limiter, int permits) throws Exception {
+        for (int i = 0; i < permits; i++) {
+            assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testInitialLimitWithinBounds() {
+        assertEquals(10, new AdaptiveConcurrencyLimiter(10, 1, 100).getLimit());
+        assertEquals(50, new AdaptiveConcurrencyLimiter(100, 1, 50).getLimit());
+        assertEquals(5, new AdaptiveConcurrencyLimiter(0, 5, 10).getLimit());
+        // the limits are at least one
+        assertEquals(1, new AdaptiveConcurrencyLimiter(0, 0, 0).getLimit());
+    }
+
+    @Test
+    public void testAcquireUpToLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 1, 3);
+        acquireAll(limiter, 3);
+        assertFalse(limiter.tryAcquire(10, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testReleaseWakesUpWaiter() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        acquireAll(limiter, 1);
+        CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                acquired.complete(limiter.tryAcquire(1, TimeUnit.MINUTES));
+            } catch (InterruptedException e) {
+                acquired.completeExceptionally(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        assertFalse(acquired.isDone());
+        limiter.release(LATENCY_NANOS, true);
+        assertTrue(acquired.get(1, TimeUnit.MINUTES));
+        waiter.join();
+    }
+
+    @Test
+    public void testGrowsWithFastRequests() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        // the limit grows by one every limit requests at the usual latency
+        for (int i = 0; i < 10; i++) {
+            acquireAll(limiter, 1);
+            limiter.release(LATENCY_NANOS, true);
+        }
+        assertEquals(10, limiter.getLimit(), "limit after 10 requests");
+        acquireAll(limiter, 1);
+        limiter.release(LATENCY_NANOS, true);
+        assertEquals(11, limiter.getLimit());
+
+        for (int i = 0; i < 10_000; i++) {
+            acquireAll(limiter, 1);
+            limiter.release(LATENCY_NANOS, true);
+        }
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    public void testShrinksOnFailures() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 5, 100);
+        acquireAll(limiter, 1);
+        limiter.release(LATENCY_NANOS, false);
+        assertEquals(90, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            acquireAll(limiter, 1);
+            limiter.release(LATENCY_NANOS, false);
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testShrinksOnSlowRequests() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 1, 100);
+        for (int i = 0; i < 10; i++) {
+            acquireAll(limiter, 1);
+            limiter.release(LATENCY_NANOS, true);
+        }
+        int limit = limiter.getLimit();
+        // a request slightly slower than usual is tolerated
+        acquireAll(limiter, 1);
+        limiter.release(LATENCY_NANOS * 3 / 2, true);
+        assertTrue(limiter.getLimit() >= limit);
+        // a request more than twice slower than usual shrinks the limit
+        acquireAll(limiter, 1);
+        limiter.release(LATENCY_NANOS * 10, true);
+        assertTrue(limiter.getLimit() < limit);
+    }
+
+    @Test
+    public void testReleaseWithoutLatency() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 100);
+        acquireAll(limiter, 2);
+        limiter.release();
+        limiter.release();
+        assertEquals(2, limiter.getLimit());
+        acquireAll(limiter, 2);
+        assertFalse(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataChangeListener;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
+import org.apache.bookkeeper.replication.ReplicationException.BKAuditException;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.zookeeper.AsyncCallback;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IncrementalBookieLedgerIndexerTest {
+
+    // the bookies of the ledgers in the metadata store
+    private final Map<Long, Set<BookieId>> ledgers = new ConcurrentHashMap<>();
+    private final AtomicReference<LedgerMetadataChangeListener> changeListener = new AtomicReference<>();
+    // run by a scan, once the ledgers are listed and before their bookies are read
+    private final AtomicReference<Runnable> onScan = new AtomicReference<>();
+    private LedgerManager ledgerManager;
+
+    @TempDir
+    File tempDir;
+
+    @BeforeEach
+    public void setup() {
+        ledgers.put(1L, bookies("b1", "b2"));
+        ledgers.put(2L, bookies("b2", "b3"));
+        ledgerManager = createLedgerManager(CompletableFuture.completedFuture(null));
+    }
+
+    private LedgerManager createLedgerManager(CompletableFuture<Void> registration) {
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.registerLedgerMetadataChangeListener(anyLong(), any())).thenAnswer(invocation -> {
+            changeListener.set(invocation.getArgument(1));
+            return registration;
+        });
+        doAnswer(invocation -> {
+            Processor<Long> processor = invocation.getArgument(0);
+            AsyncCallback.VoidCallback finalCb = invocation.getArgument(1);
+            List<Long> ledgerIds = ledgers.keySet().stream().sorted().collect(Collectors.toList());
+            Runnable scanAction = onScan.getAndSet(null);
+            if (scanAction != null) {
+                scanAction.run();
+            }
+            for (Long ledgerId : ledgerIds) {
+                processor.process(ledgerId, (rc, path, ctx) -> { });
+            }
+            finalCb.processResult(BKException.Code.OK, null, null);
+            return null;
+        }).when(ledgerManager).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+        when(ledgerManager.readLedgerBookies(anyLong())).thenAnswer(invocation -> {
+            Set<BookieId> bookies = ledgers.get((Long) invocation.getArgument(0));
+            return bookies == null
+                    ? FutureUtils.exception(new BKException.BKNoSuchLedgerExistsOnMetadataServerException())
+                    : CompletableFuture.completedFuture(bookies);
+        });
+        return ledgerManager;
+    }
+
+    private IncrementalBookieLedgerIndexer createIndexer(LedgerManager ledgerManager, String snapshotPath) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAuditorLedgerIndexSnapshotPath(snapshotPath);
+        return new IncrementalBookieLedgerIndexer(ledgerManager, conf);
+    }
+
+    private static Set<BookieId> bookies(String... bookies) {
+        return Arrays.stream(bookies).map(BookieId::parse).collect(Collectors.toSet());
+    }
+
+    private static Versioned<LedgerMetadata> metadata(long ledgerId, String... ensemble) {
+        List<BookieId> bookies = Arrays.stream(ensemble).map(BookieId::parse).collect(Collectors.toList());
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withEnsembleSize(bookies.size())
+                .withWriteQuorumSize(bookies.size())
+                .withAckQuorumSize(bookies.size())
+                .newEnsembleEntry(0L, bookies)
+                .build();
+        return new Versioned<>(metadata, new LongVersion(1));
+    }
+
+    /**
+     * @return the ledgers of each bookie, as expected from the index
+     */
+    private static Map<String, Set<Long>> index(Object... bookieAndLedgers) {
+        Map<String, Set<Long>> index = new TreeMap<>();
+        for (int i = 0; i < bookieAndLedgers.length; i += 2) {
+            index.put((String) bookieAndLedgers[i], new HashSet<>(Arrays.asList((Long[]) bookieAndLedgers[i + 1])));
+        }
+        return index;
+    }
+
+    private static Map<String, Set<Long>> copy(Map<String, Set<Long>> index) {
+        return new TreeMap<>(index);
+    }
+
+    @Test
+    public void testIndexFollowsChanges() throws Exception {
+        IncrementalBookieLedgerIndexer indexer = createIndexer(ledgerManager, null);
+        assertEquals(index("b1", new Long[] { 1L }, "b2", new Long[] { 1L, 2L }, "b3", new Long[] { 2L }),
+                copy(indexer.getBookieToLedgerIndex()));
+        verify(ledgerManager).registerLedgerMetadataChangeListener(eq(-1L), any());
+
+        LedgerMetadataChangeListener listener = changeListener.get();
+        // a new ledger, a ledger re-replicated from b1 to b4, and a deleted ledger
+        listener.onChanged(3L, metadata(3L, "b3", "b4"), 10L);
+        listener.onChanged(1L, metadata(1L, "b4", "b2"), 11L);
+        listener.onChanged(2L, null, 12L);
+        assertEquals(index("b2", new Long[] { 1L }, "b3", new Long[] { 3L }, "b4", new Long[] { 1L, 3L }),
+                copy(indexer.getBookieToLedgerIndex()));
+
+        // the ledgers are listed and read only once, to build the index
+        verify(ledgerManager, times(1)).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+        verify(ledgerManager, times(2)).readLedgerBookies(anyLong());
+        verify(ledgerManager, times(1)).registerLedgerMetadataChangeListener(anyLong(), any());
+    }
+
+    @Test
+    public void testChangesDuringBuildAreApplied() throws Exception {
+        IncrementalBookieLedgerIndexer indexer = createIndexer(ledgerManager, null);
+        onScan.set(() -> {
+            // ledger 1 is listed but deleted before it is read, ledger 2 is read after it changed
+            ledgers.remove(1L);
+            changeListener.get().onChanged(1L, null, 10L);
+            ledgers.put(2L, bookies("b3", "b4"));
+            changeListener.get().onChanged(2L, metadata(2L, "b3", "b4"), 11L);
+            changeListener.get().onChanged(3L, metadata(3L, "b5"), 12L);
+        });
+        assertEquals(index("b3", new Long[] { 2L }, "b4", new Long[] { 2L }, "b5", new Long[] { 3L }),
+                copy(indexer.getBookieToLedgerIndex()));
+    }
+
+    @Test
+    public void testResetRebuildsIndex() throws Exception {
+        IncrementalBookieLedgerIndexer indexer = createIndexer(ledgerManager, null);
+        indexer.getBookieToLedgerIndex();
+
+        // the changes until the reset are lost, the index is built again from the metadata store
+        ledgers.put(3L, bookies("b4"));
+        changeListener.get().onReset(20L);
+        changeListener.get().onChanged(4L, metadata(4L, "b5"), 21L);
+        assertEquals(index("b1", new Long[] { 1L }, "b2", new Long[] { 1L, 2L }, "b3", new Long[] { 2L },
+                "b4", new Long[] { 3L }, "b5", new Long[] { 4L }), copy(indexer.getBookieToLedgerIndex()));
+        verify(ledgerManager, times(2)).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+
+        indexer.getBookieToLedgerIndex();
+        verify(ledgerManager, times(2)).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testWithoutChangeStream() throws Exception {
+        LedgerManager ledgerManager = createLedgerManager(
+                FutureUtils.exception(new UnsupportedOperationException("no change stream")));
+        IncrementalBookieLedgerIndexer indexer = createIndexer(ledgerManager, null);
+        assertEquals(index("b1", new Long[] { 1L }, "b2", new Long[] { 1L, 2L }, "b3", new Long[] { 2L }),
+                copy(indexer.getBookieToLedgerIndex()));
+        ledgers.remove(1L);
+        assertEquals(index("b2", new Long[] { 2L }, "b3", new Long[] { 2L }), copy(indexer.getBookieToLedgerIndex()));
+
+        // each bookie check scans the ledgers, the registration is not attempted again
+        verify(ledgerManager, times(2)).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+        verify(ledgerManager, times(1)).registerLedgerMetadataChangeListener(anyLong(), any());
+    }
+
+    @Test
+    public void testRegistrationFailureRetried() throws Exception {
+        LedgerManager ledgerManager = createLedgerManager(
+                FutureUtils.exception(new BKException.MetaStoreException()));
+        IncrementalBookieLedgerIndexer indexer = createIndexer(ledgerManager, null);
+        assertThrows(BKAuditException.class, indexer::getBookieToLedgerIndex);
+        assertThrows(BKAuditException.class, indexer::getBookieToLedgerIndex);
+        verify(ledgerManager, times(2)).registerLedgerMetadataChangeListener(anyLong(), any());
+    }
+
+    @Test
+    public void testResumeFromSnapshot() throws Exception {
+        String snapshotPath = new File(tempDir, "ledger-index").getPath();
+        IncrementalBookieLedgerIndexer indexer = createIndexer(ledgerManager, snapshotPath);
+        indexer.getBookieToLedgerIndex();
+        // not saved until the revision of the index is known
+        assertEquals(Collections.emptyList(), Arrays.asList(tempDir.list()));
+        changeListener.get().onChanged(3L, metadata(3L, "b4"), 30L);
+        Map<String, Set<Long>> expected = index("b1", new Long[] { 1L }, "b2", new Long[] { 1L, 2L },
+                "b3", new Long[] { 2L }, "b4", new Long[] { 3L });
+        assertEquals(expected, copy(indexer.getBookieToLedgerIndex()));
+
+        // a restarted auditor resumes from the revision of the snapshot, without scanning the ledgers
+        LedgerManager restartedLedgerManager = createLedgerManager(CompletableFuture.completedFuture(null));
+        IncrementalBookieLedgerIndexer restarted = createIndexer(restartedLedgerManager, snapshotPath);
+        assertEquals(expected, copy(restarted.getBookieToLedgerIndex()));
+        verify(restartedLedgerManager).registerLedgerMetadataChangeListener(eq(30L), any());
+        verify(restartedLedgerManager, times(0)).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+
+        changeListener.get().onChanged(1L, null, 31L);
+        Map<String, Set<Long>> afterDelete = new HashMap<>(expected);
+        afterDelete.remove("b1");
+        afterDelete.put("b2", Collections.singleton(2L));
+        assertEquals(afterDelete, new HashMap<>(restarted.getBookieToLedgerIndex()));
+    }
+}
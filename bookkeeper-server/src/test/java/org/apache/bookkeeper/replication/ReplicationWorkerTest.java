@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManagerFactory;
+import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
+import org.apache.bookkeeper.replication.ReplicationException.NonRecoverableReplicationException;
+import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ReplicationWorkerTest {
+
+    private static final int CONCURRENT_LEDGERS = 3;
+
+    // the threads asking for a ledger to re-replicate, and the ones waiting for it until they are interrupted
+    private final Set<Thread> workerThreads = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> waitingThreads = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch allWaiting = new CountDownLatch(CONCURRENT_LEDGERS);
+    private final CountDownLatch noLedger = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private LedgerUnderreplicationManager underreplicationManager;
+    private BookKeeper bkc;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        conf.setReplicationWorkerConcurrentLedgers(CONCURRENT_LEDGERS);
+        conf.setRwRereplicateBackoffMs(10);
+        underreplicationManager = mock(LedgerUnderreplicationManager.class);
+        LedgerManagerFactory ledgerManagerFactory = mock(LedgerManagerFactory.class);
+        when(ledgerManagerFactory.newLedgerUnderreplicationManager()).thenReturn(underreplicationManager);
+        when(ledgerManagerFactory.newLedgerManager()).thenReturn(mock(LedgerManager.class));
+        bkc = mock(BookKeeper.class);
+        when(bkc.getLedgerManagerFactory()).thenReturn(ledgerManagerFactory);
+    }
+
+    private long waitForLedger() throws UnavailableException {
+        waitingThreads.add(Thread.currentThread());
+        allWaiting.countDown();
+        try {
+            noLedger.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnavailableException("Interrupted while waiting for a ledger", e);
+        }
+        throw new UnavailableException("No ledger");
+    }
+
+    @Test
+    public void testConcurrentLedgers() throws Exception {
+        when(underreplicationManager.getLedgerToRereplicate()).thenAnswer(invocation -> waitForLedger());
+        ReplicationWorker rw = new ReplicationWorker(conf, bkc, false, NullStatsLogger.INSTANCE);
+        rw.start();
+
+        // each thread waits for a ledger of its own
+        assertTrue(allWaiting.await(30, TimeUnit.SECONDS));
+        assertEquals(CONCURRENT_LEDGERS, waitingThreads.size());
+        assertTrue(rw.isRunning());
+
+        rw.shutdown();
+        assertFalse(rw.isRunning());
+        for (Thread thread : waitingThreads) {
+            assertFalse(thread.isAlive());
+        }
+        verify(underreplicationManager, times(1)).close();
+    }
+
+    @Test
+    public void testNonRecoverableFailureStopsAllThreads() throws Exception {
+        when(underreplicationManager.getLedgerToRereplicate()).thenAnswer(invocation -> {
+            workerThreads.add(Thread.currentThread());
+            if (calls.incrementAndGet() == CONCURRENT_LEDGERS) {
+                throw new NonRecoverableReplicationException("Non recoverable");
+            }
+            return waitForLedger();
+        });
+        ReplicationWorker rw = new ReplicationWorker(conf, bkc, false, NullStatsLogger.INSTANCE);
+        rw.start();
+
+        // the thread failing shuts down the worker, the other threads stop too
+        Awaitility.await().until(() -> workerThreads.size() == CONCURRENT_LEDGERS
+                && workerThreads.stream().noneMatch(Thread::isAlive));
+        assertEquals(CONCURRENT_LEDGERS - 1, waitingThreads.size());
+        assertFalse(rw.isRunning());
+        verify(underreplicationManager, times(1)).close();
+        rw.shutdown();
+        verify(underreplicationManager, times(1)).close();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.server.http.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.common.util.JsonUtil;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.http.HttpServer;
+import org.apache.bookkeeper.http.service.HttpServiceRequest;
+import org.apache.bookkeeper.http.service.HttpServiceResponse;
+import org.apache.bookkeeper.proto.BookieRequestProcessor;
+import org.apache.bookkeeper.proto.BookieServer;
+import org.apache.bookkeeper.proto.RequestTracer;
+import org.junit.jupiter.api.Test;
+
+public class RequestTracesServiceTest {
+
+    private static RequestTracesService createService(List<RequestTracer.SlowRequest> slowRequests) {
+        RequestTracer tracer = mock(RequestTracer.class);
+        when(tracer.getSlowRequests()).thenReturn(slowRequests);
+        BookieRequestProcessor processor = mock(BookieRequestProcessor.class);
+        when(processor.getRequestTracer()).thenReturn(tracer);
+        BookieServer bookieServer = mock(BookieServer.class);
+        when(bookieServer.getBookieRequestProcessor()).thenReturn(processor);
+        return new RequestTracesService(new ServerConfiguration(), bookieServer);
+    }
+
+    private static RequestTracer.SlowRequest slowRequest(String op, long entryId, long totalMicros) {
+        RequestTracer.SlowRequest slowRequest = mock(RequestTracer.SlowRequest.class);
+        when(slowRequest.getOp()).thenReturn(op);
+        when(slowRequest.getLedgerId()).thenReturn(1L);
+        when(slowRequest.getEntryId()).thenReturn(entryId);
+        when(slowRequest.isSuccess()).thenReturn(true);
+        when(slowRequest.getTotalMicros()).thenReturn(totalMicros);
+        when(slowRequest.getStageMicros()).thenReturn(Collections.singletonMap("fsync", totalMicros));
+        return slowRequest;
+    }
+
+    @Test
+    public void testGetSlowRequests() throws Exception {
+        RequestTracesService service = createService(
+                Arrays.asList(slowRequest("add", 2L, 30_000L), slowRequest("read", 3L, 20_000L)));
+        HttpServiceResponse response = service.handle(
+                new HttpServiceRequest(null, HttpServer.Method.GET, Collections.emptyMap()));
+        assertEquals(HttpServer.StatusCode.OK.getValue(), response.getStatusCode());
+
+        List<?> slowRequests = JsonUtil.fromJson(response.getBody(), List.class);
+        assertEquals(2, slowRequests.size());
+        Map<?, ?> first = (Map<?, ?>) slowRequests.get(0);
+        assertEquals("add", first.get("op"));
+        assertEquals(1, first.get("ledgerId"));
+        assertEquals(2, first.get("entryId"));
+        assertEquals(true, first.get("success"));
+        assertEquals(30_000, first.get("totalMicros"));
+        assertEquals(Collections.singletonMap("fsync", 30_000), first.get("stageMicros"));
+        assertEquals("read", ((Map<?, ?>) slowRequests.get(1)).get("op"));
+    }
+
+    @Test
+    public void testNoSlowRequests() throws Exception {
+        RequestTracesService service = createService(Collections.emptyList());
+        HttpServiceResponse response = service.handle(
+                new HttpServiceRequest(null, HttpServer.Method.GET, Collections.emptyMap()));
+        assertEquals(HttpServer.StatusCode.OK.getValue(), response.getStatusCode());
+        assertTrue(JsonUtil.fromJson(response.getBody(), List.class).isEmpty());
+    }
+
+    @Test
+    public void testOnlyGet() throws Exception {
+        RequestTracesService service = createService(Collections.emptyList());
+        HttpServiceResponse response = service.handle(
+                new HttpServiceRequest(null, HttpServer.Method.POST, Collections.emptyMap()));
+        assertEquals(HttpServer.StatusCode.NOT_FOUND.getValue(), response.getStatusCode());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+public class LedgerIdBitmapTest {
+
+    private static final Random RANDOM = new Random(0x5eed);
+
+    private static void assertBitmapEquals(TreeSet<Long> expected, LedgerIdBitmap bitmap) {
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+        List<Long> ids = new ArrayList<>();
+        bitmap.forEach(ids::add);
+        // the ids are iterated in ascending order
+        assertEquals(new ArrayList<>(expected), ids);
+    }
+
+    private static LedgerIdBitmap serializeAndDeserialize(LedgerIdBitmap bitmap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            bitmap.serialize(out);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return LedgerIdBitmap.deserialize(in);
+        }
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        LedgerIdBitmap bitmap = new LedgerIdBitmap();
+        assertTrue(bitmap.isEmpty());
+        assertTrue(bitmap.add(1L));
+        assertFalse(bitmap.add(1L));
+        assertTrue(bitmap.add(65536L));
+        assertTrue(bitmap.add(Long.MAX_VALUE));
+        assertTrue(bitmap.contains(1L));
+        assertTrue(bitmap.contains(65536L));
+        assertTrue(bitmap.contains(Long.MAX_VALUE));
+        assertFalse(bitmap.contains(0L));
+        assertFalse(bitmap.contains(65537L));
+        assertEquals(3, bitmap.cardinality());
+
+        assertTrue(bitmap.remove(65536L));
+        assertFalse(bitmap.remove(65536L));
+        assertFalse(bitmap.remove(2L));
+        assertFalse(bitmap.contains(65536L));
+        assertEquals(2, bitmap.cardinality());
+
+        bitmap.clear();
+        assertTrue(bitmap.isEmpty());
+        assertFalse(bitmap.contains(1L));
+    }
+
+    @Test
+    public void testDenseChunk() throws Exception {
+        // enough ids in a single chunk for it to be turned into a bitmap, and back into an array
+        LedgerIdBitmap bitmap = new LedgerIdBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        long base = 7L << 16;
+        for (long id = base; id < base + 10_000; id++) {
+            bitmap.add(id);
+            expected.add(id);
+        }
+        assertBitmapEquals(expected, bitmap);
+        assertTrue(bitmap.sizeInBytes() <= 8 * 1024);
+        assertBitmapEquals(expected, serializeAndDeserialize(bitmap));
+
+        for (long id = base; id < base + 9_000; id++) {
+            assertTrue(bitmap.remove(id));
+            expected.remove(id);
+        }
+        assertBitmapEquals(expected, bitmap);
+        assertTrue(bitmap.sizeInBytes() < 8 * 1024);
+        assertBitmapEquals(expected, serializeAndDeserialize(bitmap));
+    }
+
+    @Test
+    public void testRandomOperations() throws Exception {
+        LedgerIdBitmap bitmap = new LedgerIdBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            // mostly sequential ids spread over a few chunks, with some sparse ones
+            long id = RANDOM.nextInt(10) == 0 ? RANDOM.nextLong() & Long.MAX_VALUE : RANDOM.nextInt(300_000);
+            if (RANDOM.nextInt(3) == 0) {
+                assertEquals(expected.remove(id), bitmap.remove(id), "remove " + id);
+            } else {
+                assertEquals(expected.add(id), bitmap.add(id), "add " + id);
+            }
+        }
+        assertBitmapEquals(expected, bitmap);
+        for (long id : expected) {
+            assertTrue(bitmap.contains(id));
+        }
+        assertBitmapEquals(expected, serializeAndDeserialize(bitmap));
+    }
+
+    @Test
+    public void testSerializeEmpty() throws Exception {
+        assertBitmapEquals(new TreeSet<>(), serializeAndDeserialize(new LedgerIdBitmap()));
+    }
+}
@@ -33,7 +33,11 @@ import io.etcd.jetcd.options.GetOption;
 import io.etcd.jetcd.options.PutOption;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -44,11 +48,14 @@ import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerMetadataBatches;
 import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
 import org.apache.bookkeeper.metadata.etcd.helpers.KeyIterator;
 import org.apache.bookkeeper.metadata.etcd.helpers.KeyStream;
 import org.apache.bookkeeper.metadata.etcd.helpers.ValueStream;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataChangeListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.Processor;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
@@ -73,15 +80,24 @@ class EtcdLedgerManager implements LedgerManager {
             ConcurrentLongHashMap.<ValueStream<LedgerMetadata>>newBuilder().build();
     private final ConcurrentMap<LedgerMetadataListener, LedgerMetadataConsumer> listeners =
         new ConcurrentHashMap<>();
+    private final LedgerMetadataChangeStream changeStream;
+
+    private final int batchSize;
+    private final int batchMaxInflight;
 
     private volatile boolean closed = false;
 
     EtcdLedgerManager(Client client,
-                      String scope) {
+                      String scope,
+                      int batchSize,
+                      int batchMaxInflight) {
         this.client = client;
         this.kvClient = client.getKVClient();
         this.scope = scope;
         this.watchClient = new EtcdWatchClient(client);
+        this.changeStream = new LedgerMetadataChangeStream(kvClient, watchClient, serDe, scope);
+        this.batchSize = batchSize;
+        this.batchMaxInflight = batchMaxInflight;
     }
 
     private boolean isClosed() {
@@ -216,22 +232,7 @@ class EtcdLedgerManager implements LedgerManager {
         ByteSequence ledgerKeyBs = ByteSequence.from(ledgerKey, StandardCharsets.UTF_8);
         log.info("read ledger metadata under key {}", ledgerKey);
         kvClient.get(ledgerKeyBs)
-            .thenAccept(getResp -> {
-                if (getResp.getCount() > 0) {
-                    KeyValue kv = getResp.getKvs().get(0);
-                    byte[] data = kv.getValue().getBytes();
-                    try {
-                        LedgerMetadata metadata = serDe.parseConfig(data, ledgerId, Optional.empty());
-                        promise.complete(new Versioned<>(metadata, new LongVersion(kv.getModRevision())));
-                    } catch (IOException ioe) {
-                        log.error("Could not parse ledger metadata for ledger : {}", ledgerId, ioe);
-                        promise.completeExceptionally(new BKException.MetaStoreException());
-                        return;
-                    }
-                } else {
-                    promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsException());
-                }
-            })
+            .thenAccept(getResp -> completeReadLedgerMetadata(ledgerId, getResp, promise))
             .exceptionally(cause -> {
                     promise.completeExceptionally(new BKException.MetaStoreException());
                     return null;
@@ -239,6 +240,23 @@ class EtcdLedgerManager implements LedgerManager {
         return promise;
     }
 
+    private void completeReadLedgerMetadata(long ledgerId, GetResponse getResp,
+                                            CompletableFuture<Versioned<LedgerMetadata>> promise) {
+        if (getResp.getCount() > 0) {
+            KeyValue kv = getResp.getKvs().get(0);
+            byte[] data = kv.getValue().getBytes();
+            try {
+                LedgerMetadata metadata = serDe.parseConfig(data, ledgerId, Optional.empty());
+                promise.complete(new Versioned<>(metadata, new LongVersion(kv.getModRevision())));
+            } catch (IOException ioe) {
+                log.error("Could not parse ledger metadata for ledger : {}", ledgerId, ioe);
+                promise.completeExceptionally(new BKException.MetaStoreException());
+            }
+        } else {
+            promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsException());
+        }
+    }
+
     @Override
     public CompletableFuture<Versioned<LedgerMetadata>> writeLedgerMetadata(long ledgerId, LedgerMetadata metadata,
                                                                             Version currentVersion) {
@@ -294,6 +312,174 @@ class EtcdLedgerManager implements LedgerManager {
         return promise;
     }
 
+    /**
+     * Read the ledgers in batches, each one with a single transaction.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readLedgersMetadata(Collection<Long> ledgerIds) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises = new HashMap<>();
+        for (Long ledgerId : ledgerIds) {
+            promises.put(ledgerId, new CompletableFuture<>());
+        }
+        LedgerMetadataBatches.run(new ArrayList<>(promises.keySet()), batchSize, batchMaxInflight, batch -> {
+            io.etcd.jetcd.op.Op[] gets = new io.etcd.jetcd.op.Op[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                gets[i] = io.etcd.jetcd.op.Op.get(getLedgerKey(batch.get(i)), GetOption.DEFAULT);
+            }
+            kvClient.txn()
+                .Then(gets)
+                .commit()
+                .thenAccept(resp -> {
+                    List<GetResponse> getResps = resp.getGetResponses();
+                    for (int i = 0; i < batch.size(); i++) {
+                        completeReadLedgerMetadata(batch.get(i), getResps.get(i), promises.get(batch.get(i)));
+                    }
+                })
+                .exceptionally(cause -> failBatch(batch, promises));
+            return allOf(batch, promises);
+        });
+        return promises;
+    }
+
+    /**
+     * Write the ledgers in batches, each one with a single transaction.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgersMetadata(
+            Map<Long, Versioned<LedgerMetadata>> ledgers) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises = new HashMap<>();
+        for (Long ledgerId : ledgers.keySet()) {
+            promises.put(ledgerId, new CompletableFuture<>());
+        }
+        LedgerMetadataBatches.run(new ArrayList<>(promises.keySet()), batchSize, batchMaxInflight, batch -> {
+            List<Long> ledgersInTxn = new ArrayList<>(batch.size());
+            List<Cmp> cmps = new ArrayList<>(batch.size());
+            List<io.etcd.jetcd.op.Op> puts = new ArrayList<>(batch.size());
+            for (Long ledgerId : batch) {
+                Versioned<LedgerMetadata> versioned = ledgers.get(ledgerId);
+                Version currentVersion = versioned.getVersion();
+                if (Version.NEW == currentVersion || !(currentVersion instanceof LongVersion)) {
+                    promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataVersionException());
+                    continue;
+                }
+                final ByteSequence valueBs;
+                try {
+                    valueBs = ByteSequence.from(serDe.serialize(versioned.getValue()));
+                } catch (IOException ioe) {
+                    promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
+                    continue;
+                }
+                ByteSequence ledgerKeyBs = getLedgerKey(ledgerId);
+                cmps.add(new Cmp(
+                    ledgerKeyBs,
+                    Cmp.Op.EQUAL,
+                    CmpTarget.modRevision(((LongVersion) currentVersion).getLongVersion())));
+                puts.add(io.etcd.jetcd.op.Op.put(ledgerKeyBs, valueBs, PutOption.DEFAULT));
+                ledgersInTxn.add(ledgerId);
+            }
+            if (ledgersInTxn.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            kvClient.txn()
+                .If(cmps.toArray(new Cmp[0]))
+                .Then(puts.toArray(new io.etcd.jetcd.op.Op[0]))
+                .commit()
+                .thenAccept(resp -> {
+                    for (Long ledgerId : ledgersInTxn) {
+                        Versioned<LedgerMetadata> versioned = ledgers.get(ledgerId);
+                        if (resp.isSucceeded()) {
+                            promises.get(ledgerId).complete(new Versioned<>(versioned.getValue(),
+                                new LongVersion(resp.getHeader().getRevision())));
+                        } else {
+                            // one of the ledgers changed, so none was written: write the ledgers one by one
+                            FutureUtils.proxyTo(
+                                writeLedgerMetadata(ledgerId, versioned.getValue(), versioned.getVersion()),
+                                promises.get(ledgerId));
+                        }
+                    }
+                })
+                .exceptionally(cause -> failBatch(ledgersInTxn, promises));
+            return allOf(batch, promises);
+        });
+        return promises;
+    }
+
+    /**
+     * Remove the ledgers in batches, each one with a single transaction.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Void>> removeLedgersMetadata(Map<Long, Version> ledgers) {
+        Map<Long, CompletableFuture<Void>> promises = new HashMap<>();
+        for (Long ledgerId : ledgers.keySet()) {
+            promises.put(ledgerId, new CompletableFuture<>());
+        }
+        LedgerMetadataBatches.run(new ArrayList<>(promises.keySet()), batchSize, batchMaxInflight, batch -> {
+            List<Long> ledgersInTxn = new ArrayList<>(batch.size());
+            List<Cmp> cmps = new ArrayList<>(batch.size());
+            List<io.etcd.jetcd.op.Op> deletes = new ArrayList<>(batch.size());
+            for (Long ledgerId : batch) {
+                Version version = ledgers.get(ledgerId);
+                ByteSequence ledgerKeyBs = getLedgerKey(ledgerId);
+                if (Version.NEW == version) {
+                    log.error("Request to delete ledger {} metadata with version set to the initial one", ledgerId);
+                    promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataVersionException());
+                    continue;
+                } else if (Version.ANY == version) {
+                    cmps.add(new Cmp(ledgerKeyBs, Cmp.Op.GREATER, CmpTarget.createRevision(0L)));
+                } else if (version instanceof LongVersion) {
+                    cmps.add(new Cmp(ledgerKeyBs, Cmp.Op.EQUAL,
+                        CmpTarget.modRevision(((LongVersion) version).getLongVersion())));
+                } else {
+                    log.info("Not an instance of LongVersion : {}", ledgerId);
+                    promises.get(ledgerId).completeExceptionally(new BKException.BKMetadataVersionException());
+                    continue;
+                }
+                deletes.add(io.etcd.jetcd.op.Op.delete(ledgerKeyBs, DeleteOption.DEFAULT));
+                ledgersInTxn.add(ledgerId);
+            }
+            if (ledgersInTxn.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            kvClient.txn()
+                .If(cmps.toArray(new Cmp[0]))
+                .Then(deletes.toArray(new io.etcd.jetcd.op.Op[0]))
+                .commit()
+                .thenAccept(resp -> {
+                    for (Long ledgerId : ledgersInTxn) {
+                        if (resp.isSucceeded()) {
+                            promises.get(ledgerId).complete(null);
+                        } else {
+                            // one of the ledgers changed or doesn't exist, so none was removed: remove them one by one
+                            FutureUtils.proxyTo(removeLedgerMetadata(ledgerId, ledgers.get(ledgerId)),
+                                promises.get(ledgerId));
+                        }
+                    }
+                })
+                .exceptionally(cause -> failBatch(ledgersInTxn, promises));
+            return allOf(batch, promises);
+        });
+        return promises;
+    }
+
+    private ByteSequence getLedgerKey(long ledgerId) {
+        return ByteSequence.from(EtcdUtils.getLedgerKey(scope, ledgerId), StandardCharsets.UTF_8);
+    }
+
+    private static <T> Void failBatch(List<Long> batch, Map<Long, CompletableFuture<T>> promises) {
+        for (Long ledgerId : batch) {
+            promises.get(ledgerId).completeExceptionally(new BKException.MetaStoreException());
+        }
+        return null;
+    }
+
+    private static <T> CompletableFuture<Void> allOf(List<Long> batch, Map<Long, CompletableFuture<T>> promises) {
+        CompletableFuture<?>[] promisesOfBatch = new CompletableFuture<?>[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            promisesOfBatch[i] = promises.get(batch.get(i));
+        }
+        return CompletableFuture.allOf(promisesOfBatch);
+    }
+
     private LedgerMetadataConsumer listenerToConsumer(long ledgerId,
                                                       LedgerMetadataListener listener,
                                                       Consumer<Long> onDeletedConsumer) {
@@ -381,6 +567,17 @@ class EtcdLedgerManager implements LedgerManager {
         }
     }
 
+    @Override
+    public CompletableFuture<Void> registerLedgerMetadataChangeListener(long fromRevision,
+                                                                        LedgerMetadataChangeListener listener) {
+        return changeStream.register(fromRevision, listener);
+    }
+
+    @Override
+    public void unregisterLedgerMetadataChangeListener(LedgerMetadataChangeListener listener) {
+        changeStream.unregister(listener);
+    }
+
     @Override
     public void asyncProcessLedgers(Processor<Long> processor,
                                     VoidCallback finalCb,
@@ -472,6 +669,7 @@ class EtcdLedgerManager implements LedgerManager {
             }
             closed = true;
         }
+        changeStream.close();
         watchClient.close();
     }
 }
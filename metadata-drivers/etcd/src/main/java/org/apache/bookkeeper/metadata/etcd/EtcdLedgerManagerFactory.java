@@ -44,6 +44,8 @@ class EtcdLedgerManagerFactory implements LedgerManagerFactory {
 
     private String scope;
     private Client client;
+    private int batchSize;
+    private int batchMaxInflight;
 
     @Override
     public int getCurrentVersion() {
@@ -68,6 +70,8 @@ class EtcdLedgerManagerFactory implements LedgerManagerFactory {
             throw new IOException("Invalid metadata service uri", e);
         }
         this.client = etcdLayoutManager.getClient();
+        this.batchSize = conf.getLedgerMetadataBatchSize();
+        this.batchMaxInflight = conf.getLedgerMetadataBatchMaxInflight();
         return this;
     }
 
@@ -84,7 +88,7 @@ class EtcdLedgerManagerFactory implements LedgerManagerFactory {
 
     @Override
     public LedgerManager newLedgerManager() {
-        return new EtcdLedgerManager(client, scope);
+        return new EtcdLedgerManager(client, scope, batchSize, batchMaxInflight);
     }
 
     @Override
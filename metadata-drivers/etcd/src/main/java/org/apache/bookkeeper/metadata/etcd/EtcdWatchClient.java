@@ -346,6 +346,13 @@ public class EtcdWatchClient implements AutoCloseable {
         if (watcher == null) {
             return;
         }
+        if (response.getCompactRevision() != 0) {
+            // the revision to watch on was compacted
+            watcher.notifyWatchResponse(new WatchResponseWithError(
+                EtcdExceptionFactory
+                    .newCompactedException(response.getCompactRevision())));
+            return;
+        }
         String reason = response.getCancelReason();
         if (Strings.isNullOrEmpty(reason)) {
             watcher.notifyWatchResponse(new WatchResponseWithError(newEtcdException(
@@ -61,6 +61,7 @@ public class EtcdWatcher implements AutoCloseable {
                 EtcdWatchClient owner) {
         this.key = key;
         this.watchOption = watchOption;
+        this.revision = watchOption.getRevision();
         this.executor = executor;
         this.owner = owner;
         this.consumers = new CopyOnWriteArraySet<>();
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.metadata.etcd;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.KeyValue;
+import io.etcd.jetcd.common.exception.CompactedException;
+import io.etcd.jetcd.common.exception.EtcdExceptionFactory;
+import io.etcd.jetcd.options.GetOption;
+import io.etcd.jetcd.options.WatchOption;
+import io.etcd.jetcd.watch.WatchEvent;
+import io.etcd.jetcd.watch.WatchResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataChangeListener;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+
+/**
+ * A stream of the changes of the metadata of all the ledgers, read from a single range watch over the ledgers
+ * keys and shared by all its listeners.
+ *
+ * <p>Each listener resumes from the revision of the last change it processed. The watch starts from the oldest
+ * revision among the listeners, and a listener is only told about the changes after its own revision, so a
+ * listener resuming from an older revision restarts the watch without repeating changes to the others. If the
+ * revision to resume from was compacted, the listeners behind the compaction are reset. A listener is also reset
+ * at the revision of a change whose metadata could not be parsed, instead of skipping it.
+ *
+ * <p>The listeners are triggered from the watch thread, while holding the lock of the stream, so they should hand
+ * over any blocking work.
+ */
+@Slf4j
+class LedgerMetadataChangeStream implements AutoCloseable {
+
+    private static final class Subscriber {
+        private final LedgerMetadataChangeListener listener;
+        // the revision of the last change the listener was told about
+        private long revision;
+
+        Subscriber(LedgerMetadataChangeListener listener, long revision) {
+            this.listener = listener;
+            this.revision = revision;
+        }
+    }
+
+    private static final class Change {
+        private final long ledgerId;
+        private final Versioned<LedgerMetadata> metadata;
+        private final long revision;
+        // false if the metadata of the change could not be parsed
+        private final boolean parsed;
+
+        Change(long ledgerId, Versioned<LedgerMetadata> metadata, long revision, boolean parsed) {
+            this.ledgerId = ledgerId;
+            this.metadata = metadata;
+            this.revision = revision;
+            this.parsed = parsed;
+        }
+    }
+
+    private final KV kvClient;
+    private final EtcdWatchClient watchClient;
+    private final LedgerMetadataSerDe serDe;
+    private final ByteSequence beginKey;
+    private final ByteSequence endKey;
+    private final Map<LedgerMetadataChangeListener, Subscriber> subscribers = new HashMap<>();
+    // the consumer of the current watch, the responses of the previous watches are dropped
+    private WatchConsumer watchConsumer = null;
+    private CompletableFuture<EtcdWatcher> watchFuture = null;
+    // the revision of the last change read from the watch
+    private long revision = -1L;
+    private boolean closed = false;
+
+    LedgerMetadataChangeStream(KV kvClient,
+                               EtcdWatchClient watchClient,
+                               LedgerMetadataSerDe serDe,
+                               String scope) {
+        this.kvClient = kvClient;
+        this.watchClient = watchClient;
+        this.serDe = serDe;
+        this.beginKey = ByteSequence.from(EtcdUtils.getLedgerKey(scope, 0L), StandardCharsets.UTF_8);
+        this.endKey = ByteSequence.from(EtcdUtils.getLedgerKey(scope, Long.MAX_VALUE), StandardCharsets.UTF_8);
+    }
+
+    CompletableFuture<Void> register(long fromRevision, LedgerMetadataChangeListener listener) {
+        if (fromRevision >= 0) {
+            return subscribe(fromRevision, listener);
+        }
+        return kvClient.get(beginKey, GetOption.newBuilder()
+                .withRange(endKey)
+                .withCountOnly(true)
+                .build())
+            .thenCompose(getResp -> subscribe(getResp.getHeader().getRevision(), listener));
+    }
+
+    private synchronized CompletableFuture<Void> subscribe(long fromRevision, LedgerMetadataChangeListener listener) {
+        if (closed) {
+            return FutureUtils.exception(EtcdExceptionFactory.newClosedWatchClientException());
+        }
+        if (null != subscribers.putIfAbsent(listener, new Subscriber(listener, fromRevision))) {
+            return FutureUtils.Void();
+        }
+        if (null == watchFuture || fromRevision < revision) {
+            return watch().thenApply(watcher -> null);
+        }
+        return FutureUtils.Void();
+    }
+
+    synchronized void unregister(LedgerMetadataChangeListener listener) {
+        if (null != subscribers.remove(listener) && subscribers.isEmpty()) {
+            unwatch();
+        }
+    }
+
+    private synchronized CompletableFuture<EtcdWatcher> watch() {
+        long startRevision = Long.MAX_VALUE;
+        for (Subscriber subscriber : subscribers.values()) {
+            startRevision = Math.min(startRevision, subscriber.revision + 1);
+        }
+        unwatch();
+        WatchConsumer consumer = new WatchConsumer();
+        CompletableFuture<EtcdWatcher> future = watchClient.watch(beginKey, WatchOption.newBuilder()
+                .withRange(endKey)
+                .withRevision(startRevision)
+                .build(), consumer);
+        watchConsumer = consumer;
+        watchFuture = future;
+        revision = startRevision - 1;
+        return future.whenComplete((watcher, cause) -> {
+            if (null != cause) {
+                synchronized (LedgerMetadataChangeStream.this) {
+                    if (watchConsumer == consumer) {
+                        watchConsumer = null;
+                        watchFuture = null;
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized void unwatch() {
+        CompletableFuture<EtcdWatcher> oldWatchFuture = watchFuture;
+        watchConsumer = null;
+        watchFuture = null;
+        if (null != oldWatchFuture) {
+            oldWatchFuture.thenCompose(EtcdWatcher::closeAsync);
+        }
+    }
+
+    private List<Change> toChanges(WatchResponse response) {
+        List<Change> changes = new ArrayList<>(response.getEvents().size());
+        for (WatchEvent event : response.getEvents()) {
+            KeyValue kv = event.getKeyValue();
+            String key = kv.getKey().toString(StandardCharsets.UTF_8);
+            long ledgerId;
+            try {
+                ledgerId = EtcdUtils.parseLedgerKey(key).getLeastSignificantBits();
+            } catch (IllegalArgumentException iae) {
+                log.warn("Ignored the change of the invalid ledger key {}", key);
+                continue;
+            }
+            switch (event.getEventType()) {
+                case PUT:
+                    try {
+                        LedgerMetadata metadata = serDe.parseConfig(kv.getValue().getBytes(), ledgerId,
+                            Optional.empty());
+                        changes.add(new Change(ledgerId,
+                            new Versioned<>(metadata, new LongVersion(kv.getModRevision())), kv.getModRevision(),
+                            true));
+                    } catch (IOException | RuntimeException e) {
+                        log.error("Could not parse ledger metadata for ledger : {}", ledgerId, e);
+                        changes.add(new Change(ledgerId, null, kv.getModRevision(), false));
+                    }
+                    break;
+                case DELETE:
+                    changes.add(new Change(ledgerId, null, kv.getModRevision(), true));
+                    break;
+                default:
+                    // ignore
+                    break;
+            }
+        }
+        return changes;
+    }
+
+    private synchronized void processChanges(WatchConsumer consumer, List<Change> changes) {
+        if (closed || consumer != watchConsumer || changes.isEmpty()) {
+            return;
+        }
+        // the changes of a revision are never split among responses, so the last one is a safe checkpoint
+        long lastRevision = changes.get(changes.size() - 1).revision;
+        for (Subscriber subscriber : subscribers.values()) {
+            long fromRevision = subscriber.revision;
+            for (Change change : changes) {
+                if (change.revision <= fromRevision) {
+                    continue;
+                }
+                try {
+                    if (change.parsed) {
+                        subscriber.listener.onChanged(change.ledgerId, change.metadata, change.revision);
+                    } else {
+                        // the change can't be told, so the listener rebuilds its state from a scan instead
+                        subscriber.listener.onReset(change.revision);
+                    }
+                } catch (Exception e) {
+                    log.error("Ledger metadata change listener {} failed on ledger {}",
+                        subscriber.listener, change.ledgerId, e);
+                }
+            }
+            subscriber.revision = Math.max(fromRevision, lastRevision);
+        }
+        revision = Math.max(revision, lastRevision);
+    }
+
+    private synchronized void processError(WatchConsumer consumer, Throwable cause) {
+        if (closed || consumer != watchConsumer) {
+            return;
+        }
+        if (cause instanceof CompactedException) {
+            long compactedRevision = ((CompactedException) cause).getCompactedRevision();
+            log.warn("Ledger metadata changes were compacted up to revision {}", compactedRevision);
+            for (Subscriber subscriber : subscribers.values()) {
+                if (subscriber.revision + 1 < compactedRevision) {
+                    subscriber.revision = compactedRevision - 1;
+                    try {
+                        subscriber.listener.onReset(subscriber.revision);
+                    } catch (Exception e) {
+                        log.error("Ledger metadata change listener {} failed on reset", subscriber.listener, e);
+                    }
+                }
+            }
+        } else {
+            log.warn("Ledger metadata change watch failed, watching again : {}", cause.getMessage());
+        }
+        if (!subscribers.isEmpty()) {
+            watch();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribers.clear();
+            unwatch();
+        }
+    }
+
+    private class WatchConsumer implements BiConsumer<WatchResponse, Throwable> {
+
+        @Override
+        public void accept(WatchResponse response, Throwable cause) {
+            if (null != cause) {
+                processError(this, cause);
+            } else {
+                processChanges(this, toChanges(response));
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.metadata.etcd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.KeyValue;
+import io.etcd.jetcd.common.exception.EtcdExceptionFactory;
+import io.etcd.jetcd.kv.GetResponse;
+import io.etcd.jetcd.options.GetOption;
+import io.etcd.jetcd.options.WatchOption;
+import io.etcd.jetcd.watch.WatchEvent;
+import io.etcd.jetcd.watch.WatchEvent.EventType;
+import io.etcd.jetcd.watch.WatchResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataChangeListener;
+import org.apache.bookkeeper.replication.IncrementalBookieLedgerIndexer;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.zookeeper.AsyncCallback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LedgerMetadataChangeStreamTest {
+
+    private static final String SCOPE = "/test-scope";
+
+    /**
+     * A watch opened on the fake watch client.
+     */
+    private static final class Watch {
+        private final long revision;
+        private final BiConsumer<WatchResponse, Throwable> consumer;
+        private final EtcdWatcher watcher;
+
+        Watch(long revision, BiConsumer<WatchResponse, Throwable> consumer, EtcdWatcher watcher) {
+            this.revision = revision;
+            this.consumer = consumer;
+            this.watcher = watcher;
+        }
+    }
+
+    /**
+     * A listener recording the changes it is told about.
+     */
+    private static final class RecordingListener implements LedgerMetadataChangeListener {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onChanged(long ledgerId, Versioned<LedgerMetadata> metadata, long revision) {
+            events.add((metadata == null ? "removed " : "changed ") + ledgerId + "@" + revision);
+        }
+
+        @Override
+        public void onReset(long revision) {
+            events.add("reset@" + revision);
+        }
+    }
+
+    private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
+    private final List<Watch> watches = new ArrayList<>();
+    private KV kvClient;
+    private EtcdWatchClient watchClient;
+    private LedgerMetadataChangeStream stream;
+
+    @BeforeEach
+    public void setup() {
+        kvClient = mock(KV.class);
+        watchClient = mock(EtcdWatchClient.class);
+        doAnswer(invocation -> {
+            WatchOption option = invocation.getArgument(1);
+            EtcdWatcher watcher = mock(EtcdWatcher.class);
+            when(watcher.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+            watches.add(new Watch(option.getRevision(), invocation.getArgument(2), watcher));
+            return CompletableFuture.completedFuture(watcher);
+        }).when(watchClient).watch(any(ByteSequence.class), any(WatchOption.class), any());
+        stream = new LedgerMetadataChangeStream(kvClient, watchClient, serDe, SCOPE);
+    }
+
+    @AfterEach
+    public void teardown() {
+        stream.close();
+    }
+
+    private Watch lastWatch() {
+        return watches.get(watches.size() - 1);
+    }
+
+    private void register(long fromRevision, LedgerMetadataChangeListener listener) throws Exception {
+        stream.register(fromRevision, listener).get(30, TimeUnit.SECONDS);
+    }
+
+    private byte[] metadata(long ledgerId) throws Exception {
+        return serDe.serialize(LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withDigestType(DigestType.CRC32C)
+                .withPassword("password".getBytes(UTF_8))
+                .withCreationTime(1_700_000_000_000L)
+                .storingCreationTime(true)
+                .newEnsembleEntry(0L, Arrays.asList(
+                        BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"),
+                        BookieId.parse("bookie-3:3181")))
+                .build());
+    }
+
+    private static WatchEvent event(EventType type, long ledgerId, byte[] value, long revision) {
+        KeyValue kv = mock(KeyValue.class);
+        when(kv.getKey()).thenReturn(ByteSequence.from(EtcdUtils.getLedgerKey(SCOPE, ledgerId), UTF_8));
+        when(kv.getValue()).thenReturn(ByteSequence.from(value));
+        when(kv.getModRevision()).thenReturn(revision);
+        WatchEvent event = mock(WatchEvent.class);
+        when(event.getEventType()).thenReturn(type);
+        when(event.getKeyValue()).thenReturn(kv);
+        return event;
+    }
+
+    /**
+     * A response putting the metadata of the ledger numbered like the revision, for each revision of the range.
+     */
+    private WatchResponse puts(long fromRevision, long toRevision) throws Exception {
+        List<WatchEvent> events = new ArrayList<>();
+        for (long revision = fromRevision; revision <= toRevision; revision++) {
+            events.add(event(EventType.PUT, revision, metadata(revision), revision));
+        }
+        return response(events);
+    }
+
+    private static WatchResponse response(List<WatchEvent> events) {
+        WatchResponse response = mock(WatchResponse.class);
+        when(response.getEvents()).thenReturn(events);
+        return response;
+    }
+
+    @Test
+    public void testRegisterFromCurrentRevision() throws Exception {
+        GetResponse getResponse = mock(GetResponse.class, RETURNS_DEEP_STUBS);
+        when(getResponse.getHeader().getRevision()).thenReturn(42L);
+        when(kvClient.get(any(ByteSequence.class), any(GetOption.class)))
+                .thenReturn(CompletableFuture.completedFuture(getResponse));
+
+        RecordingListener listener = new RecordingListener();
+        register(-1L, listener);
+        assertEquals(1, watches.size());
+        assertEquals(43L, lastWatch().revision);
+
+        lastWatch().consumer.accept(puts(43L, 44L), null);
+        assertEquals(Arrays.asList("changed 43@43", "changed 44@44"), listener.events);
+    }
+
+    @Test
+    public void testListenersOnlyToldAboutNewerChanges() throws Exception {
+        RecordingListener behind = new RecordingListener();
+        RecordingListener ahead = new RecordingListener();
+        register(10L, behind);
+        register(12L, ahead);
+        // the watch from the oldest revision is shared
+        assertEquals(1, watches.size());
+        assertEquals(11L, lastWatch().revision);
+
+        lastWatch().consumer.accept(puts(11L, 13L), null);
+        lastWatch().consumer.accept(response(Collections.singletonList(
+                event(EventType.DELETE, 11L, new byte[0], 14L))), null);
+        assertEquals(Arrays.asList("changed 11@11", "changed 12@12", "changed 13@13", "removed 11@14"),
+                behind.events);
+        assertEquals(Arrays.asList("changed 13@13", "removed 11@14"), ahead.events);
+    }
+
+    @Test
+    public void testWatchAgainFromOlderRevision() throws Exception {
+        RecordingListener first = new RecordingListener();
+        register(10L, first);
+        Watch oldWatch = lastWatch();
+        oldWatch.consumer.accept(puts(11L, 13L), null);
+
+        RecordingListener second = new RecordingListener();
+        register(5L, second);
+        assertEquals(2, watches.size());
+        assertEquals(6L, lastWatch().revision);
+        verify(oldWatch.watcher, times(1)).closeAsync();
+
+        // the responses of the previous watch are dropped
+        oldWatch.consumer.accept(puts(14L, 14L), null);
+        lastWatch().consumer.accept(puts(6L, 14L), null);
+        assertEquals(Arrays.asList("changed 11@11", "changed 12@12", "changed 13@13", "changed 14@14"),
+                first.events);
+        assertEquals(9, second.events.size());
+        assertEquals("changed 6@6", second.events.get(0));
+        assertEquals("changed 14@14", second.events.get(8));
+    }
+
+    @Test
+    public void testResetOnCompaction() throws Exception {
+        RecordingListener behind = new RecordingListener();
+        RecordingListener ahead = new RecordingListener();
+        register(10L, behind);
+        register(20L, ahead);
+
+        lastWatch().consumer.accept(null, EtcdExceptionFactory.newCompactedException(15L));
+        assertEquals(Collections.singletonList("reset@14"), behind.events);
+        assertTrue(ahead.events.isEmpty());
+        // the watch resumes from the compacted revision
+        assertEquals(2, watches.size());
+        assertEquals(15L, lastWatch().revision);
+
+        lastWatch().consumer.accept(puts(15L, 21L), null);
+        assertEquals(8, behind.events.size());
+        assertEquals(Collections.singletonList("changed 21@21"), ahead.events);
+    }
+
+    @Test
+    public void testResetOnUnparseableMetadata() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        register(10L, listener);
+
+        lastWatch().consumer.accept(response(Arrays.asList(
+                event(EventType.PUT, 11L, metadata(11L), 11L),
+                event(EventType.PUT, 12L, "not ledger metadata".getBytes(UTF_8), 12L),
+                event(EventType.PUT, 13L, metadata(13L), 13L))), null);
+        assertEquals(Arrays.asList("changed 11@11", "reset@12", "changed 13@13"), listener.events);
+    }
+
+    @Test
+    public void testAuditorIndexFollowsStream() throws Exception {
+        GetResponse getResponse = mock(GetResponse.class, RETURNS_DEEP_STUBS);
+        when(getResponse.getHeader().getRevision()).thenReturn(42L);
+        when(kvClient.get(any(ByteSequence.class), any(GetOption.class)))
+                .thenReturn(CompletableFuture.completedFuture(getResponse));
+        // the ledger manager of the auditor, with no ledger when the index is first built
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.registerLedgerMetadataChangeListener(anyLong(), any())).thenAnswer(
+                invocation -> stream.register(invocation.getArgument(0), invocation.getArgument(1)));
+        doAnswer(invocation -> {
+            AsyncCallback.VoidCallback finalCb = invocation.getArgument(1);
+            finalCb.processResult(BKException.Code.OK, null, null);
+            return null;
+        }).when(ledgerManager).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+        IncrementalBookieLedgerIndexer indexer = new IncrementalBookieLedgerIndexer(ledgerManager,
+                new ServerConfiguration());
+        assertTrue(indexer.getBookieToLedgerIndex().isEmpty());
+        assertEquals(1, watches.size());
+
+        lastWatch().consumer.accept(puts(43L, 44L), null);
+        Map<String, Set<Long>> index = indexer.getBookieToLedgerIndex();
+        assertEquals(3, index.size());
+        assertEquals(new HashSet<>(Arrays.asList(43L, 44L)), index.get("bookie-1:3181"));
+
+        lastWatch().consumer.accept(response(Collections.singletonList(
+                event(EventType.DELETE, 43L, new byte[0], 45L))), null);
+        assertEquals(Collections.singleton(44L), indexer.getBookieToLedgerIndex().get("bookie-2:3181"));
+        // the index is not scanned again
+        verify(ledgerManager, times(1)).asyncProcessLedgers(any(), any(), any(), anyInt(), anyInt());
+    }
+}
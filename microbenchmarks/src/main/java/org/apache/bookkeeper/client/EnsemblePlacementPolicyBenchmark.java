@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.DNSToSwitchMapping;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for choosing the ensemble of a new ledger with the rack aware placement policy, over clusters of
+ * different sizes spread over racks of {@link #BOOKIES_PER_RACK} bookies.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class EnsemblePlacementPolicyBenchmark {
+
+    private static final int BOOKIES_PER_RACK = 10;
+
+    /**
+     * A static mapping of the bookies hosts to their racks.
+     */
+    static class StaticRackMapping implements DNSToSwitchMapping {
+        private final Map<String, String> racks = new HashMap<>();
+
+        @Override
+        public List<String> resolve(List<String> names) {
+            List<String> resolved = new ArrayList<>(names.size());
+            for (String name : names) {
+                resolved.add(racks.getOrDefault(name, NetworkTopology.DEFAULT_REGION_AND_RACK));
+            }
+            return resolved;
+        }
+
+        @Override
+        public void reloadCachedMappings() {
+            // no-op
+        }
+    }
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({ "100", "1000", "5000" })
+        private int numBookies;
+
+        @Param({ "3", "5" })
+        private int ensembleSize;
+
+        private HashedWheelTimer timer;
+        private RackawareEnsemblePlacementPolicy policy;
+        private final Set<BookieId> excludeBookies = Collections.emptySet();
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            StaticRackMapping rackMapping = new StaticRackMapping();
+            Set<BookieId> bookies = new HashSet<>();
+            for (int i = 0; i < numBookies; i++) {
+                // ip addresses, so the bookies addresses are resolved without any dns lookup
+                String host = "10.0." + (i / 256) + "." + (i % 256);
+                rackMapping.racks.put(host, "/rack-" + (i / BOOKIES_PER_RACK));
+                bookies.add(new BookieSocketAddress(host, 3181).toBookieId());
+            }
+            timer = new HashedWheelTimer();
+            policy = new RackawareEnsemblePlacementPolicy();
+            policy.initialize(new ClientConfiguration(), Optional.of(rackMapping), timer,
+                    SettableFeatureProvider.DISABLE_ALL, NullStatsLogger.INSTANCE,
+                    BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+            policy.onClusterChanged(bookies, Collections.emptySet());
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            policy.uninitalize();
+            timer.stop();
+        }
+    }
+
+    @Benchmark
+    public List<BookieId> newEnsemble(TestState s) throws Exception {
+        int writeQuorumSize = Math.min(3, s.ensembleSize);
+        return s.policy.newEnsemble(s.ensembleSize, writeQuorumSize, 2, null, s.excludeBookies).getResult();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.common;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.bookkeeper.common.allocator.impl.SlabByteBufAllocator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the Netty pooled allocator and the slab allocator, with entry-sized buffers.
+ *
+ * <p>Each thread keeps a window of live buffers and replaces a random one at each operation, so that buffers of
+ * different sizes are interleaved as with the entries of different ledgers. At the end of each iteration, the
+ * memory held by the allocator is compared to the memory requested by the live buffers, to show the
+ * fragmentation of the pool. They are reported as the {@code allocatedMB}, {@code liveMB} and
+ * {@code fragmentation} secondary results.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ByteBufAllocatorBenchmark {
+
+    private static final int LIVE_BUFFERS = 256;
+    private static final int SIZES = 64 * 1024;
+
+    /**
+     * The allocator, shared by all the threads.
+     */
+    @State(Scope.Benchmark)
+    public static class AllocatorState {
+
+        @Param({ "PooledDirect", "SlabDirect" })
+        private String allocatorType;
+
+        // "small" is 100 B - 4 KB, "mixed" is 100 B - 1 MB, "large" is 100 KB - 5 MB
+        @Param({ "small", "mixed", "large" })
+        private String sizes;
+
+        private PooledByteBufAllocator pooledAllocator;
+        private SlabByteBufAllocator slabAllocator;
+        private ByteBufAllocator allocator;
+        private final LongAdder liveBytes = new LongAdder();
+        private final AtomicInteger fragmentationReporters = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            pooledAllocator = new PooledByteBufAllocator(true /* preferDirect */);
+            if ("SlabDirect".equals(allocatorType)) {
+                slabAllocator = new SlabByteBufAllocator(pooledAllocator);
+                allocator = slabAllocator;
+            } else {
+                allocator = pooledAllocator;
+            }
+        }
+
+        int nextSize(Random random) {
+            switch (sizes) {
+            case "small":
+                return 100 + random.nextInt(4 * 1024 - 100);
+            case "large":
+                return 100 * 1024 + random.nextInt(5 * 1024 * 1024 - 100 * 1024);
+            default:
+                // mostly small entries, with a long tail of large ones
+                int maxSize = random.nextInt(10) == 0 ? 1024 * 1024 : 16 * 1024;
+                return 100 + random.nextInt(maxSize - 100);
+            }
+        }
+
+        long allocatedBytes() {
+            long allocatedBytes = pooledAllocator.metric().usedDirectMemory();
+            if (slabAllocator != null) {
+                allocatedBytes += slabAllocator.pooledDirectMemory();
+            }
+            return allocatedBytes;
+        }
+    }
+
+    /**
+     * The memory held by the allocator at the end of an iteration. The counters of the threads are summed, so only
+     * one of them reports the shared allocator.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FragmentationCounters {
+
+        public long allocatedMB;
+        public long liveMB;
+        // allocated / live
+        public double fragmentation;
+
+        private boolean reporter;
+
+        @Setup(Level.Trial)
+        public void setup(AllocatorState allocatorState) {
+            reporter = allocatorState.fragmentationReporters.getAndIncrement() == 0;
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            allocatedMB = 0;
+            liveMB = 0;
+            fragmentation = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void measure(AllocatorState allocatorState) {
+            if (!reporter) {
+                return;
+            }
+            long allocatedBytes = allocatorState.allocatedBytes();
+            long liveBytes = allocatorState.liveBytes.sum();
+            allocatedMB = allocatedBytes >> 20;
+            liveMB = liveBytes >> 20;
+            fragmentation = liveBytes > 0 ? (double) allocatedBytes / liveBytes : 0;
+        }
+    }
+
+    /**
+     * The live buffers of a thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final ByteBuf[] buffers = new ByteBuf[LIVE_BUFFERS];
+        private final int[] sizes = new int[SIZES];
+        private final int[] slots = new int[SIZES];
+        private int next = 0;
+
+        @Setup(Level.Trial)
+        public void setup(AllocatorState allocatorState) {
+            Random random = new Random();
+            for (int i = 0; i < SIZES; i++) {
+                sizes[i] = allocatorState.nextSize(random);
+                slots[i] = random.nextInt(LIVE_BUFFERS);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown(AllocatorState allocatorState) {
+            for (int i = 0; i < LIVE_BUFFERS; i++) {
+                if (buffers[i] != null) {
+                    allocatorState.liveBytes.add(-buffers[i].capacity());
+                    buffers[i].release();
+                    buffers[i] = null;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public ByteBuf allocateAndRelease(AllocatorState allocatorState, ThreadState threadState,
+                                      FragmentationCounters fragmentationCounters) {
+        int i = threadState.next;
+        threadState.next = (i + 1) & (SIZES - 1);
+        int size = threadState.sizes[i];
+        int slot = threadState.slots[i];
+
+        ByteBuf previous = threadState.buffers[slot];
+        if (previous != null) {
+            allocatorState.liveBytes.add(-previous.capacity());
+            previous.release();
+        }
+        ByteBuf buf = allocatorState.allocator.directBuffer(size, size);
+        buf.writerIndex(size);
+        allocatorState.liveBytes.add(size);
+        threadState.buffers[slot] = buf;
+        return buf;
+    }
+}
@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
@@ -54,6 +55,11 @@ public class OrderedExecutorBenchmark {
             "OrderedExecutor", () -> OrderedExecutor.newBuilder().numThreads(1).build(),
             "OrderedScheduler", () -> OrderedScheduler.newSchedulerBuilder().numThreads(1).build());
 
+    private static Map<String, Supplier<OrderedExecutor>> orderedProviders = ImmutableMap.of(
+            "OrderedExecutor", () -> OrderedExecutor.newBuilder().numThreads(4).build(),
+            "MailboxOrderedExecutor",
+            () -> OrderedExecutor.newBuilder().numThreads(4).enableWorkStealing(true).build());
+
     /**
      * State holder of the test.
     */
@@ -80,4 +86,43 @@ public class OrderedExecutorBenchmark {
         s.executor.submit(() -> {
         }).get();
     }
+
+    /**
+     * State holder of the ordered executions test.
+     */
+    @State(Scope.Benchmark)
+    public static class OrderedTestState {
+        @Param({"OrderedExecutor", "MailboxOrderedExecutor"})
+        private String executorName;
+
+        // percentage of the tasks submitted with the same (hot) key
+        @Param({"0", "50"})
+        private int hotKeyPercent;
+
+        private OrderedExecutor executor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor = orderedProviders.get(executorName).get();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void submitOrderedAndWait(OrderedTestState s) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long key = random.nextInt(100) < s.hotKeyPercent ? 0L : random.nextLong(1, Long.MAX_VALUE);
+        s.executor.submitOrdered(key, () -> {
+            // a bit of work, so that a hot key keeps its thread busy
+            long x = key;
+            for (int i = 0; i < 1000; i++) {
+                x = x * 31 + i;
+            }
+            return x;
+        }).get();
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.meta;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.shims.zk.ZooKeeperServerShim;
+import org.apache.bookkeeper.shims.zk.ZooKeeperServerShimFactory;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.bookkeeper.zookeeper.ZooKeeperClient;
+import org.apache.commons.io.FileUtils;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.ZooDefs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for reading and writing the metadata of many ledgers one by one or in batches, against an
+ * in-process ZooKeeper server.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerManagerBatchBenchmark {
+
+    private static final String LEDGERS_ROOT_PATH = "/ledgers";
+    private static final int NUM_LEDGERS = 1000;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({ "1", "10", "100" })
+        private int batchSize;
+
+        @Param({ "1", "4" })
+        private int batchMaxInflight;
+
+        private File zkDir;
+        private ZooKeeperServerShim zkServer;
+        private ZooKeeperClient zk;
+        private LedgerManager lm;
+        private final List<Long> ledgerIds = new ArrayList<>();
+        private final Map<Long, Versioned<LedgerMetadata>> ledgers = new HashMap<>();
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            zkDir = Files.createTempDirectory("ledger-manager-batch-benchmark").toFile();
+            int zkPort;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                zkPort = socket.getLocalPort();
+            }
+            zkServer = ZooKeeperServerShimFactory.createServer(zkDir, zkDir, zkPort, 1000);
+            zkServer.start();
+            zk = ZooKeeperClient.newBuilder()
+                    .connectString("127.0.0.1:" + zkPort)
+                    .sessionTimeoutMs(30000)
+                    .build();
+            zk.create(LEDGERS_ROOT_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+
+            ClientConfiguration conf = new ClientConfiguration();
+            conf.setMetadataServiceUri("zk+hierarchical://127.0.0.1:" + zkPort + LEDGERS_ROOT_PATH);
+            conf.setLedgerMetadataBatchSize(batchSize);
+            conf.setLedgerMetadataBatchMaxInflight(batchMaxInflight);
+            lm = new HierarchicalLedgerManager(conf, zk);
+
+            List<BookieId> ensemble = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                ensemble.add(BookieId.parse("bookie-" + i + ".bookkeeper.example.com:3181"));
+            }
+            for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+                LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                        .withId(ledgerId)
+                        .withEnsembleSize(3)
+                        .withWriteQuorumSize(3)
+                        .withAckQuorumSize(2)
+                        .withDigestType(DigestType.CRC32C)
+                        .withPassword("password".getBytes(StandardCharsets.UTF_8))
+                        .newEnsembleEntry(0L, ensemble)
+                        .build();
+                ledgerIds.add(ledgerId);
+                ledgers.put(ledgerId, lm.createLedgerMetadata(ledgerId, metadata).get());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            lm.close();
+            zk.close();
+            zkServer.stop();
+            FileUtils.deleteDirectory(zkDir);
+        }
+    }
+
+    @Benchmark
+    public void readOneByOne(TestState s) throws Exception {
+        List<CompletableFuture<Versioned<LedgerMetadata>>> reads = new ArrayList<>(s.ledgerIds.size());
+        for (Long ledgerId : s.ledgerIds) {
+            reads.add(s.lm.readLedgerMetadata(ledgerId));
+        }
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).get();
+    }
+
+    @Benchmark
+    public void readBatched(TestState s) throws Exception {
+        CompletableFuture.allOf(s.lm.readLedgersMetadata(s.ledgerIds).values().toArray(new CompletableFuture<?>[0]))
+                .get();
+    }
+
+    @Benchmark
+    public void writeOneByOne(TestState s) throws Exception {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writes = new HashMap<>();
+        for (Map.Entry<Long, Versioned<LedgerMetadata>> e : s.ledgers.entrySet()) {
+            writes.put(e.getKey(),
+                    s.lm.writeLedgerMetadata(e.getKey(), e.getValue().getValue(), e.getValue().getVersion()));
+        }
+        for (Map.Entry<Long, CompletableFuture<Versioned<LedgerMetadata>>> e : writes.entrySet()) {
+            s.ledgers.put(e.getKey(), e.getValue().get());
+        }
+    }
+
+    @Benchmark
+    public void writeBatched(TestState s) throws Exception {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writes =
+                s.lm.writeLedgersMetadata(new HashMap<>(s.ledgers));
+        for (Map.Entry<Long, CompletableFuture<Versioned<LedgerMetadata>>> e : writes.entrySet()) {
+            s.ledgers.put(e.getKey(), e.getValue().get());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.meta;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for parsing the ledger metadata in the different format versions.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerMetadataSerDeBenchmark {
+
+    private static final long LEDGER_ID = 1234L;
+    private static final int ENSEMBLE_SIZE = 3;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Thread)
+    public static class TestState {
+
+        @Param({ "2", "3", "4" })
+        private int formatVersion;
+
+        @Param({ "1", "20" })
+        private int numEnsembles;
+
+        private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
+        private byte[] serialized;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            List<BookieId> bookies = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                bookies.add(BookieId.parse("bookie-" + i + ".bookkeeper.example.com:3181"));
+            }
+            LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
+                    .withId(LEDGER_ID)
+                    .withMetadataFormatVersion(formatVersion)
+                    .withEnsembleSize(ENSEMBLE_SIZE)
+                    .withWriteQuorumSize(ENSEMBLE_SIZE)
+                    .withAckQuorumSize(2)
+                    .withDigestType(DigestType.CRC32C)
+                    .withPassword("password".getBytes(StandardCharsets.UTF_8))
+                    .withCreationTime(System.currentTimeMillis())
+                    .storingCreationTime(true);
+            // every ensemble change replaces a bookie
+            List<BookieId> ensemble = new ArrayList<>(bookies.subList(0, ENSEMBLE_SIZE));
+            for (int i = 0; i < numEnsembles; i++) {
+                builder.newEnsembleEntry(i * 10_000L, new ArrayList<>(ensemble));
+                ensemble.set(i % ENSEMBLE_SIZE, bookies.get((ENSEMBLE_SIZE + i) % bookies.size()));
+            }
+            LedgerMetadata metadata = builder.withClosedState()
+                    .withLastEntryId(numEnsembles * 10_000L - 1)
+                    .withLength(numEnsembles * 10_000L * 1024)
+                    .build();
+            serialized = serDe.serialize(metadata);
+        }
+    }
+
+    @Benchmark
+    public LedgerMetadata parseConfig(TestState s) throws Exception {
+        return s.serDe.parseConfig(s.serialized, LEDGER_ID, Optional.empty());
+    }
+
+    @Benchmark
+    public Set<BookieId> parseBookies(TestState s) throws Exception {
+        return s.serDe.parseBookies(s.serialized, LEDGER_ID);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.util.Recycler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
+import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the registry of the pending v2 requests of a channel. Every invocation registers a
+ * read and completes the one registered {@code inFlight} invocations earlier, as the responses of a busy
+ * channel would. One request every {@code duplicateEvery} reads an entry that is already pending.
+ *
+ * <p>{@code table} uses {@link V2CompletionTable}, {@code map} uses a {@link ConcurrentOpenHashMap} keyed by
+ * recycled key objects with a {@link SynchronizedHashMultiMap} holding the duplicated requests.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class V2CompletionTableBenchmark {
+
+    interface Registry {
+        void put(long ledgerId, long entryId, CompletionValue completion);
+
+        CompletionValue remove(long ledgerId, long entryId);
+    }
+
+    static class TableRegistry implements Registry {
+        private final V2CompletionTable table = new V2CompletionTable();
+
+        @Override
+        public void put(long ledgerId, long entryId, CompletionValue completion) {
+            table.put(OperationType.READ_ENTRY, completion);
+        }
+
+        @Override
+        public CompletionValue remove(long ledgerId, long entryId) {
+            return table.remove(ledgerId, entryId, OperationType.READ_ENTRY);
+        }
+    }
+
+    static class MapRegistry implements Registry {
+        private final ConcurrentOpenHashMap<Key, CompletionValue> completions =
+                ConcurrentOpenHashMap.<Key, CompletionValue>newBuilder().autoShrink(true).build();
+        private final SynchronizedHashMultiMap<Key, CompletionValue> conflicts = new SynchronizedHashMultiMap<>();
+
+        @Override
+        public void put(long ledgerId, long entryId, CompletionValue completion) {
+            Key key = Key.acquire(ledgerId, entryId);
+            if (completions.putIfAbsent(key, completion) != null) {
+                conflicts.put(key, completion);
+            }
+        }
+
+        @Override
+        public CompletionValue remove(long ledgerId, long entryId) {
+            Key key = Key.acquire(ledgerId, entryId);
+            try {
+                CompletionValue completion = completions.remove(key);
+                if (completion == null) {
+                    completion = conflicts.removeAny(key).orElse(null);
+                }
+                return completion;
+            } finally {
+                key.recycle();
+            }
+        }
+    }
+
+    static final class Key {
+        private static final Recycler<Key> RECYCLER = new Recycler<Key>() {
+            @Override
+            protected Key newObject(Recycler.Handle<Key> handle) {
+                return new Key(handle);
+            }
+        };
+
+        private final Recycler.Handle<Key> handle;
+        long ledgerId;
+        long entryId;
+
+        private Key(Recycler.Handle<Key> handle) {
+            this.handle = handle;
+        }
+
+        static Key acquire(long ledgerId, long entryId) {
+            Key key = RECYCLER.get();
+            key.ledgerId = ledgerId;
+            key.entryId = entryId;
+            return key;
+        }
+
+        void recycle() {
+            handle.recycle(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return ledgerId == that.ledgerId && entryId == that.entryId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId);
+        }
+    }
+
+    static final class NoopCompletion extends CompletionValue {
+        NoopCompletion(long ledgerId, long entryId) {
+            super("Read", null, ledgerId, entryId, null);
+        }
+
+        @Override
+        public void errorOut() {
+        }
+
+        @Override
+        public void errorOut(int rc) {
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+        }
+    }
+
+    /**
+     * State holder of the benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class RegistryState {
+        @Param({"table", "map"})
+        public String registry;
+
+        @Param({"1000"})
+        public int inFlight;
+
+        @Param({"100"})
+        public int duplicateEvery;
+
+        Registry impl;
+        final AtomicLong sequence = new AtomicLong(0);
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            sequence.set(0);
+            impl = "table".equals(registry) ? new TableRegistry() : new MapRegistry();
+        }
+    }
+
+    /**
+     * Per-thread ledger, so that the threads never complete each other requests.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        long ledgerId;
+        long nextEntryId;
+        NoopCompletion[] completions;
+
+        @Setup(Level.Iteration)
+        public void setup(RegistryState s) {
+            ledgerId = s.sequence.incrementAndGet();
+            nextEntryId = 0;
+            completions = new NoopCompletion[s.inFlight];
+        }
+    }
+
+    @Benchmark
+    public CompletionValue registerAndComplete(RegistryState s, ThreadState t) {
+        long entryId = t.nextEntryId++;
+        if (s.duplicateEvery > 0 && entryId % s.duplicateEvery == 0 && entryId > 0) {
+            // read again the entry that was requested right before
+            entryId = entryId - 1;
+        }
+        int slot = (int) (t.nextEntryId % s.inFlight);
+        CompletionValue completed = null;
+        NoopCompletion previous = t.completions[slot];
+        if (previous != null) {
+            completed = s.impl.remove(previous.ledgerId, previous.entryId);
+        }
+        NoopCompletion completion = new NoopCompletion(t.ledgerId, entryId);
+        t.completions[slot] = completion;
+        s.impl.put(t.ledgerId, entryId, completion);
+        return completed;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the latency of cold reads executed on the read worker threads or on virtual threads.
+ *
+ * <p>A cold read is simulated by parking the thread for {@code diskLatencyMicros}, as a read blocked on the
+ * disk would. The sample time mode reports the percentiles of the latency, from the submission of the read
+ * to its completion. {@code virtual} requires JDK 21 or later.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.SampleTime)
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class VirtualThreadReadBenchmark {
+
+    /**
+     * State holder of the benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class ReadState {
+        @Param({"platform", "virtual"})
+        public String executor;
+
+        // number of read worker threads of the platform pool
+        @Param({"8"})
+        public int numThreads;
+
+        @Param({"4"})
+        public int numDisks;
+
+        @Param({"16"})
+        public int maxConcurrencyPerDisk;
+
+        @Param({"200"})
+        public int diskLatencyMicros;
+
+        OrderedExecutor readThreadPool;
+        VirtualThreadReadExecutor virtualThreads;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            if ("virtual".equals(executor)) {
+                virtualThreads = new VirtualThreadReadExecutor("read", numDisks, maxConcurrencyPerDisk, 0,
+                        NullStatsLogger.INSTANCE);
+            } else {
+                readThreadPool = OrderedExecutor.newBuilder().numThreads(numThreads).name("read").build();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            if (virtualThreads != null) {
+                virtualThreads.shutdown(10, TimeUnit.SECONDS);
+            }
+            if (readThreadPool != null) {
+                readThreadPool.shutdown();
+            }
+        }
+
+        void execute(long ledgerId, Runnable read) {
+            if (virtualThreads != null) {
+                virtualThreads.executeOrdered(ledgerId, read);
+            } else {
+                readThreadPool.executeOrdered(ledgerId, read);
+            }
+        }
+    }
+
+    @Benchmark
+    public void coldRead(ReadState s) throws Exception {
+        long ledgerId = ThreadLocalRandom.current().nextLong(1, 100_000);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        s.execute(ledgerId, () -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(s.diskLatencyMicros));
+            done.complete(null);
+        });
+        done.get();
+    }
+}
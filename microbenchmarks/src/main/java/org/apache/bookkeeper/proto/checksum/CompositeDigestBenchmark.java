@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for CRC32C digests over payloads split in several fragments, as they are
+ * received from the network or assembled by the application: composite buffers mixing direct and
+ * heap components, and {@link ByteBufList}.
+ * To run:
+ * build project from command line.
+ * execute ./run.sh
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+public class CompositeDigestBenchmark {
+
+    /**
+     * Layout of the fragments of the payload.
+     */
+    public enum Layout {
+        DIRECT,
+        HEAP,
+        MIXED
+    }
+
+    /**
+     * State holder of the benchmark.
+     */
+    @State(Scope.Thread)
+    public static class CompositeState {
+
+        @Param({"1024", "16384", "131072", "1048576"})
+        public int entrySize;
+
+        @Param({"1", "4", "16"})
+        public int fragments;
+
+        @Param
+        public Layout layout;
+
+        private DigestManager dm;
+        private CompositeByteBuf composite;
+        private ByteBufList list;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws Exception {
+            dm = DigestManager.instantiate(ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE),
+                    "password".getBytes(StandardCharsets.UTF_8), DigestType.CRC32C,
+                    PooledByteBufAllocator.DEFAULT, true);
+
+            composite = PooledByteBufAllocator.DEFAULT.compositeBuffer(fragments);
+            list = ByteBufList.get();
+            int fragmentSize = entrySize / fragments;
+            for (int i = 0; i < fragments; i++) {
+                int size = i == fragments - 1 ? entrySize - fragmentSize * (fragments - 1) : fragmentSize;
+                boolean direct = layout == Layout.DIRECT || (layout == Layout.MIXED && i % 2 == 0);
+                ByteBuf fragment = direct
+                        ? PooledByteBufAllocator.DEFAULT.directBuffer(size, size)
+                        : Unpooled.buffer(size, size);
+                byte[] data = new byte[size];
+                ThreadLocalRandom.current().nextBytes(data);
+                fragment.writeBytes(data);
+                composite.addComponent(true, fragment.retain());
+                list.add(fragment);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            composite.release();
+            list.release();
+        }
+    }
+
+    @Benchmark
+    public int compositeByteBuf(CompositeState s) {
+        return s.dm.update(0, s.composite, s.composite.readerIndex(), s.composite.readableBytes());
+    }
+
+    @Benchmark
+    public int byteBufList(CompositeState s) {
+        int digest = 0;
+        for (int i = 0; i < s.list.size(); i++) {
+            ByteBuf buffer = s.list.getBuffer(i);
+            digest = s.dm.update(digest, buffer, buffer.readerIndex(), buffer.readableBytes());
+        }
+        return digest;
+    }
+}
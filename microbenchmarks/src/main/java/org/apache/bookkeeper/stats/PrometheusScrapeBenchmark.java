@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.stats;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.prometheus.client.CollectorRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.prometheus.PrometheusMetricsProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmarks for a scrape of the Prometheus metrics.
+ *
+ * <p>Run with {@code -prof gc} to get the bytes allocated per scrape.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class PrometheusScrapeBenchmark {
+
+    /**
+     * State holder of the benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class ScrapeState {
+        // number of each of the counters, gauges and op stats loggers
+        @Param({"1000", "10000"})
+        public int numMetrics;
+
+        PrometheusMetricsProvider provider;
+        ByteBuf buffer;
+        OutputStream nullStream;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            provider = new PrometheusMetricsProvider(new CollectorRegistry());
+            StatsLogger root = provider.getStatsLogger("bookie");
+            for (int i = 0; i < numMetrics; i++) {
+                StatsLogger logger = root.scopeLabel("ledgerDir", "/data/" + (i % 16))
+                        .scopeLabel("id", Integer.toString(i));
+                logger.getCounter("counter").addCount(i);
+                final int value = i;
+                logger.registerGauge("gauge", new Gauge<Number>() {
+                    @Override
+                    public Number getDefaultValue() {
+                        return 0;
+                    }
+
+                    @Override
+                    public Number getSample() {
+                        return value;
+                    }
+                });
+                logger.getOpStatsLogger("latency").registerSuccessfulEvent(i, TimeUnit.MICROSECONDS);
+            }
+            buffer = ByteBufAllocator.DEFAULT.heapBuffer();
+            nullStream = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            buffer.release();
+        }
+    }
+
+    @Benchmark
+    public void scrapeToBuffer(ScrapeState s, Blackhole bh) {
+        s.buffer.clear();
+        s.provider.writeAllMetrics(s.buffer);
+        bh.consume(s.buffer.readableBytes());
+    }
+
+    @Benchmark
+    public void scrapeToStream(ScrapeState s) throws IOException {
+        s.provider.writeAllMetrics(s.nullStream);
+    }
+
+    @Benchmark
+    public void scrapeToWriter(ScrapeState s, Blackhole bh) throws IOException {
+        StringWriter writer = new StringWriter();
+        s.provider.writeAllMetrics(writer);
+        bh.consume(writer.getBuffer().length());
+    }
+}
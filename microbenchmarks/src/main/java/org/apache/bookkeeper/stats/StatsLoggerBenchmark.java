@@ -25,6 +25,7 @@ import java.util.function.Supplier;
 import org.apache.bookkeeper.stats.codahale.CodahaleMetricsProvider;
 import org.apache.bookkeeper.stats.codahale.FastCodahaleMetricsProvider;
 import org.apache.bookkeeper.stats.prometheus.PrometheusMetricsProvider;
+import org.apache.commons.configuration2.PropertiesConfiguration;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Level;
@@ -51,6 +52,16 @@ public class StatsLoggerBenchmark {
 
     static {
         providers.put("Prometheus", PrometheusMetricsProvider::new);
+        providers.put("PrometheusHistogram", () -> {
+            PropertiesConfiguration conf = new PropertiesConfiguration();
+            conf.setProperty(PrometheusMetricsProvider.PROMETHEUS_STATS_HTTP_ENABLE, false);
+            conf.setProperty("exposeDefaultJVMMetrics", false);
+            conf.setProperty(PrometheusMetricsProvider.PROMETHEUS_STATS_LATENCY_COLLECTOR,
+                    PrometheusMetricsProvider.LATENCY_COLLECTOR_HISTOGRAM);
+            PrometheusMetricsProvider provider = new PrometheusMetricsProvider();
+            provider.start(conf);
+            return provider;
+        });
         providers.put("Codahale", CodahaleMetricsProvider::new);
         providers.put("FastCodahale", FastCodahaleMetricsProvider::new);
     }
@@ -60,7 +71,7 @@ public class StatsLoggerBenchmark {
      */
     @State(Scope.Benchmark)
     public static class LoggerState {
-        @Param({"Prometheus", "Codahale", "FastCodahale", "Twitter", "Ostrich"})
+        @Param({"Prometheus", "PrometheusHistogram", "Codahale", "FastCodahale", "Twitter", "Ostrich"})
         private String statsProvider;
 
         private Counter counter;
@@ -86,4 +97,9 @@ public class StatsLoggerBenchmark {
     public void recordLatency(LoggerState s) {
         s.opStats.registerSuccessfulValue(System.nanoTime() - s.startTime);
     }
+
+    @Benchmark
+    public void recordEvent(LoggerState s) {
+        s.opStats.registerSuccessfulEvent(System.nanoTime() - s.startTime, TimeUnit.NANOSECONDS);
+    }
 }
@@ -26,13 +26,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.StampedLock;
-import org.apache.bookkeeper.stats.OpStatsData;
-import org.apache.bookkeeper.stats.OpStatsLogger;
 
 /**
  * OpStatsLogger implementation that uses DataSketches library to calculate the approximated latency quantiles.
  */
-public class DataSketchesOpStatsLogger implements OpStatsLogger {
+public class DataSketchesOpStatsLogger extends SummaryOpStatsLogger {
 
     /*
      * Use 2 rotating thread local accessor so that we can safely swap them.
@@ -52,15 +50,10 @@ public class DataSketchesOpStatsLogger implements OpStatsLogger {
     private final LongAdder successSumAdder = new LongAdder();
     private final LongAdder failSumAdder = new LongAdder();
 
-    private Map<String, String> labels;
-
-    // used for lazy registration for thread scoped metrics
-    private boolean threadInitialized;
-
     public DataSketchesOpStatsLogger(Map<String, String> labels) {
+        super(labels);
         this.current = new ThreadLocalAccessor();
         this.replacement = new ThreadLocalAccessor();
-        this.labels = labels;
     }
 
     @Override
@@ -128,17 +121,6 @@ public class DataSketchesOpStatsLogger implements OpStatsLogger {
     }
 
     @Override
-    public OpStatsData toOpStatsData() {
-        // Not relevant as we don't use JMX here
-        throw new UnsupportedOperationException();
-    }
-
-    @Override
-    public void clear() {
-        // Not relevant as we don't use JMX here
-        throw new UnsupportedOperationException();
-    }
-
     public void rotateLatencyCollection() {
         // Swap current with replacement
         ThreadLocalAccessor local = current;
@@ -163,32 +145,22 @@ public class DataSketchesOpStatsLogger implements OpStatsLogger {
         failResult = aggregateFail.getResultAndReset();
     }
 
+    @Override
     public long getCount(boolean success) {
         return success ? successCountAdder.sum() : failCountAdder.sum();
     }
 
+    @Override
     public long getSum(boolean success) {
         return success ? successSumAdder.sum() : failSumAdder.sum();
     }
 
+    @Override
     public double getQuantileValue(boolean success, double quantile) {
         DoublesSketch s = success ? successResult : failResult;
         return s != null ? s.getQuantile(quantile) : Double.NaN;
     }
 
-    public Map<String, String> getLabels() {
-        return labels;
-    }
-
-    public boolean isThreadInitialized() {
-        return threadInitialized;
-    }
-
-    public void initializeThread(Map<String, String> labels) {
-        this.labels = labels;
-        this.threadInitialized = true;
-    }
-
     private static class LocalData {
         private final DoublesSketch successSketch = new DoublesSketchBuilder().build();
         private final DoublesSketch failSketch = new DoublesSketchBuilder().build();
@@ -215,6 +187,6 @@ public class DataSketchesOpStatsLogger implements OpStatsLogger {
 
     @Override
     public String toString() {
-        return "DataSketchesOpStatsLogger{labels=" + labels + ", id=" + System.identityHashCode(this) + "}";
+        return "DataSketchesOpStatsLogger{labels=" + getLabels() + ", id=" + System.identityHashCode(this) + "}";
     }
 }
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats.prometheus;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Map;
+
+/**
+ * The name and the labels of a metric, encoded in the Prometheus text format.
+ *
+ * <p>Each sample line starts with the name and the labels of the metric, followed by the value. The start of each
+ * line is encoded once, up to the space before the value, and kept with the metric, so that a scrape only has to
+ * write the values.
+ */
+final class EncodedMetric {
+
+    private final String name;
+    private final Map<String, String> labels;
+
+    // "# TYPE name type\n"
+    final byte[] typeLine;
+    // "name{labels} ", one per sample
+    final byte[][] samplePrefixes;
+
+    private EncodedMetric(String name, Map<String, String> labels, String type, byte[][] samplePrefixes) {
+        this.name = name;
+        this.labels = labels;
+        this.typeLine = ("# TYPE " + name + " " + type + "\n").getBytes(UTF_8);
+        this.samplePrefixes = samplePrefixes;
+    }
+
+    /**
+     * @return true if this encodes the given name and labels. Labels are only replaced, never modified, so they are
+     *         compared by reference.
+     */
+    boolean isFor(String name, Map<String, String> labels) {
+        return this.labels == labels && this.name.equals(name);
+    }
+
+    /**
+     * Encode a counter or a gauge, which have a single sample.
+     */
+    static EncodedMetric simple(String name, Map<String, String> labels, String type) {
+        StringBuilder sb = new StringBuilder(name);
+        if (!labels.isEmpty()) {
+            sb.append('{');
+            appendLabels(sb, labels);
+            sb.append('}');
+        }
+        sb.append(' ');
+        return new EncodedMetric(name, labels, type, new byte[][] { sb.toString().getBytes(UTF_8) });
+    }
+
+    /**
+     * Encode a summary. For each of success false and true, there is a sample for each of the quantiles, then one
+     * for the count and one for the sum.
+     */
+    static EncodedMetric summary(String name, Map<String, String> labels, double[] quantiles) {
+        byte[][] prefixes = new byte[2 * (quantiles.length + 2)][];
+        int i = 0;
+        for (Boolean success : new Boolean[] { false, true }) {
+            for (double quantile : quantiles) {
+                prefixes[i++] = summarySample(name, "", labels, "success=\"" + success + "\",quantile=\""
+                        + quantile + "\"");
+            }
+            prefixes[i++] = summarySample(name, "_count", labels, "success=\"" + success + "\"");
+            prefixes[i++] = summarySample(name, "_sum", labels, "success=\"" + success + "\"");
+        }
+        return new EncodedMetric(name, labels, "summary", prefixes);
+    }
+
+    private static byte[] summarySample(String name, String suffix, Map<String, String> labels, String ownLabels) {
+        StringBuilder sb = new StringBuilder(name).append(suffix).append('{').append(ownLabels);
+        if (!labels.isEmpty()) {
+            sb.append(", ");
+            appendLabels(sb, labels);
+        }
+        sb.append("} ");
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private static void appendLabels(StringBuilder sb, Map<String, String> labels) {
+        boolean isFirst = true;
+        for (Map.Entry<String, String> e : labels.entrySet()) {
+            if (!isFirst) {
+                sb.append(',');
+            }
+            isFirst = false;
+            sb.append(e.getKey()).append("=\"");
+            appendEscaped(sb, e.getValue());
+            sb.append('"');
+        }
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
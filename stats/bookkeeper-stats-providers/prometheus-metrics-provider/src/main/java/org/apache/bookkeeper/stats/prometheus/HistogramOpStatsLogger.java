@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats.prometheus;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OpStatsLogger implementation that records the values in log-linear histograms, with a fixed set of buckets.
+ *
+ * <p>Every thread records in its own buckets, which only that thread writes, so recording a value is a plain
+ * increment with no lock and no CAS. The rotation reads the buckets of all the threads and publishes the
+ * difference with the counts read at the previous rotation, so the threads never reset their buckets and
+ * never wait for the rotation. The buckets of a thread that has terminated are folded into shared counts, at
+ * the latest by the next rotation, so threads coming and going do not leak buckets.
+ *
+ * <p>The values lower than {@link #SUB_BUCKETS} have a bucket each, and every greater power of two is covered by
+ * {@code SUB_BUCKETS / 2} linear sub-buckets, so the quantiles have a relative error of at most
+ * {@code 1 / SUB_BUCKETS}. Latencies are recorded in microseconds, values with three decimal digits.
+ */
+public class HistogramOpStatsLogger extends SummaryOpStatsLogger {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+    private static final int HALF_SUB_BUCKET_BITS = SUB_BUCKET_BITS - 1;
+
+    // the values greater than MAX_VALUE are recorded in the last bucket
+    static final int MAX_VALUE_BITS = 47;
+    static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    static final int NUM_BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+    // recorded units per reported unit
+    private static final long SCALE = 1000;
+
+    private final Recorder success = new Recorder();
+    private final Recorder fail = new Recorder();
+
+    private final LongAdder successCountAdder = new LongAdder();
+    private final LongAdder failCountAdder = new LongAdder();
+
+    private final LongAdder successSumAdder = new LongAdder();
+    private final LongAdder failSumAdder = new LongAdder();
+
+    public HistogramOpStatsLogger(Map<String, String> labels) {
+        super(labels);
+    }
+
+    @Override
+    public void registerFailedEvent(long eventLatency, TimeUnit unit) {
+        long micros = unit.toMicros(eventLatency);
+
+        failCountAdder.increment();
+        failSumAdder.add(micros / SCALE);
+        fail.record(micros);
+    }
+
+    @Override
+    public void registerSuccessfulEvent(long eventLatency, TimeUnit unit) {
+        long micros = unit.toMicros(eventLatency);
+
+        successCountAdder.increment();
+        successSumAdder.add(micros / SCALE);
+        success.record(micros);
+    }
+
+    @Override
+    public void registerSuccessfulValue(long value) {
+        successCountAdder.increment();
+        successSumAdder.add(value);
+        success.record(scale(value));
+    }
+
+    @Override
+    public void registerFailedValue(long value) {
+        failCountAdder.increment();
+        failSumAdder.add(value);
+        fail.record(scale(value));
+    }
+
+    @Override
+    public void rotateLatencyCollection() {
+        success.rotate();
+        fail.rotate();
+    }
+
+    @Override
+    public long getCount(boolean success) {
+        return success ? successCountAdder.sum() : failCountAdder.sum();
+    }
+
+    @Override
+    public long getSum(boolean success) {
+        return success ? successSumAdder.sum() : failSumAdder.sum();
+    }
+
+    @Override
+    public double getQuantileValue(boolean success, double quantile) {
+        return (success ? this.success : this.fail).getQuantile(quantile);
+    }
+
+    private static long scale(long value) {
+        return value >= MAX_VALUE / SCALE ? MAX_VALUE : value * SCALE;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        // keep the SUB_BUCKET_BITS most significant bits of the value
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << HALF_SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the value in the middle of the range of the bucket
+     */
+    static double bucketValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> HALF_SUB_BUCKET_BITS) - 1;
+        long lowest = (long) ((index & (HALF_SUB_BUCKETS - 1)) + HALF_SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1) / 2.0;
+    }
+
+    /**
+     * The buckets written by a single thread.
+     */
+    private static final class ThreadBuckets {
+        final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+        private final WeakReference<Thread> owner;
+
+        ThreadBuckets(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+    }
+
+    private static final class Recorder {
+        private final Set<ThreadBuckets> threadBuckets = ConcurrentHashMap.newKeySet();
+        // the counts of the threads that have gone
+        private final AtomicLongArray retiredBuckets = new AtomicLongArray(NUM_BUCKETS);
+        private final FastThreadLocal<ThreadBuckets> localBuckets = new FastThreadLocal<ThreadBuckets>() {
+
+            @Override
+            protected ThreadBuckets initialValue() throws Exception {
+                ThreadBuckets buckets = new ThreadBuckets(Thread.currentThread());
+                threadBuckets.add(buckets);
+                return buckets;
+            }
+
+            @Override
+            protected void onRemoval(ThreadBuckets buckets) throws Exception {
+                // only called on exit by the threads cleaning up their FastThreadLocals, the others are retired
+                // by the rotation once they have terminated
+                retire(buckets);
+            }
+        };
+
+        // the counts read at the previous rotation, only accessed when rotating
+        private long[] previousTotals = new long[NUM_BUCKETS];
+
+        private volatile long[] interval;
+        private volatile long intervalCount;
+
+        void record(long value) {
+            AtomicLongArray buckets = localBuckets.get().counts;
+            int index = bucketIndex(value);
+            // single writer, no need for an atomic increment
+            buckets.lazySet(index, buckets.get(index) + 1);
+        }
+
+        private void retire(ThreadBuckets buckets) {
+            if (threadBuckets.remove(buckets)) {
+                for (int i = 0; i < NUM_BUCKETS; i++) {
+                    retiredBuckets.addAndGet(i, buckets.counts.get(i));
+                }
+            }
+        }
+
+        synchronized void rotate() {
+            for (ThreadBuckets buckets : threadBuckets) {
+                if (!buckets.isOwnerAlive()) {
+                    // a terminated thread won't write its buckets anymore
+                    retire(buckets);
+                }
+            }
+            long[] totals = new long[NUM_BUCKETS];
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                totals[i] = retiredBuckets.get(i);
+            }
+            for (ThreadBuckets buckets : threadBuckets) {
+                for (int i = 0; i < NUM_BUCKETS; i++) {
+                    totals[i] += buckets.counts.get(i);
+                }
+            }
+
+            long[] counts = new long[NUM_BUCKETS];
+            long count = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                // a thread going away while rotating may be counted twice, or not at all, for an interval
+                counts[i] = Math.max(0, totals[i] - previousTotals[i]);
+                count += counts[i];
+            }
+            previousTotals = totals;
+
+            interval = counts;
+            intervalCount = count;
+        }
+
+        double getQuantile(double quantile) {
+            long[] counts = interval;
+            long count = intervalCount;
+            if (counts == null || count == 0) {
+                return Double.NaN;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketValue(i) / SCALE;
+                }
+            }
+            return bucketValue(NUM_BUCKETS - 1) / SCALE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramOpStatsLogger{labels=" + getLabels() + ", id=" + System.identityHashCode(this) + "}";
+    }
+}
@@ -35,6 +35,9 @@ public class LongAdderCounter implements Counter {
     // used for lazy registration for thread scoped metric
     private boolean threadInitialized;
 
+    // name and labels encoded by the last scrape
+    private volatile EncodedMetric encoded;
+
     public LongAdderCounter(Map<String, String> labels) {
         this.labels = labels;
     }
@@ -86,4 +89,12 @@ public class LongAdderCounter implements Counter {
         this.labels = labels;
         this.threadInitialized = true;
     }
+
+    EncodedMetric getEncoded() {
+        return encoded;
+    }
+
+    void setEncoded(EncodedMetric encoded) {
+        this.encoded = encoded;
+    }
 }
@@ -18,6 +18,8 @@ package org.apache.bookkeeper.stats.prometheus;
 
 // CHECKSTYLE.OFF: IllegalImport
 import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.PlatformDependent;
 import io.prometheus.client.Collector;
@@ -29,6 +31,8 @@ import io.prometheus.client.hotspot.MemoryPoolsExports;
 import io.prometheus.client.hotspot.StandardExports;
 import io.prometheus.client.hotspot.ThreadExports;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.lang.management.BufferPoolMXBean;
 import java.lang.management.ManagementFactory;
@@ -36,6 +40,7 @@ import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -75,16 +80,29 @@ public class PrometheusMetricsProvider implements StatsProvider {
     public static final String PROMETHEUS_STATS_LATENCY_ROLLOVER_SECONDS = "prometheusStatsLatencyRolloverSeconds";
     public static final int DEFAULT_PROMETHEUS_STATS_LATENCY_ROLLOVER_SECONDS = 60;
 
+    /*
+     * How the quantiles of the OpStatsLoggers are computed: "datasketches" or "histogram".
+     */
+    public static final String PROMETHEUS_STATS_LATENCY_COLLECTOR = "prometheusStatsLatencyCollector";
+    public static final String LATENCY_COLLECTOR_DATASKETCHES = "datasketches";
+    public static final String LATENCY_COLLECTOR_HISTOGRAM = "histogram";
+    public static final String DEFAULT_PROMETHEUS_STATS_LATENCY_COLLECTOR = LATENCY_COLLECTOR_DATASKETCHES;
+
+    // bytes of the metrics buffered before writing them to the output stream
+    static final int WRITE_CHUNK_SIZE = 64 * 1024;
+
     final CollectorRegistry registry;
 
     Server server;
 
+    private volatile boolean histogramLatencyCollector = false;
+
     /*
      * These acts a registry of the metrics defined in this provider
      */
     final ConcurrentMap<ScopeContext, LongAdderCounter> counters = new ConcurrentHashMap<>();
     final ConcurrentMap<ScopeContext, SimpleGauge<? extends Number>> gauges = new ConcurrentHashMap<>();
-    final ConcurrentMap<ScopeContext, DataSketchesOpStatsLogger> opStats = new ConcurrentHashMap<>();
+    final ConcurrentMap<ScopeContext, SummaryOpStatsLogger> opStats = new ConcurrentHashMap<>();
     final ConcurrentMap<ScopeContext, ThreadScopedDataSketchesStatsLogger> threadScopedOpStats =
             new ConcurrentHashMap<>();
     final ConcurrentMap<ScopeContext, ThreadScopedLongAdderCounter> threadScopedCounters =
@@ -100,6 +118,14 @@ public class PrometheusMetricsProvider implements StatsProvider {
 
     @Override
     public void start(Configuration conf) {
+        String latencyCollector = conf.getString(PROMETHEUS_STATS_LATENCY_COLLECTOR,
+                DEFAULT_PROMETHEUS_STATS_LATENCY_COLLECTOR);
+        if (LATENCY_COLLECTOR_HISTOGRAM.equalsIgnoreCase(latencyCollector)) {
+            histogramLatencyCollector = true;
+        } else if (!LATENCY_COLLECTOR_DATASKETCHES.equalsIgnoreCase(latencyCollector)) {
+            log.warn("Unknown latency collector {}, using {}", latencyCollector, LATENCY_COLLECTOR_DATASKETCHES);
+        }
+
         boolean httpEnabled = conf.getBoolean(PROMETHEUS_STATS_HTTP_ENABLE, DEFAULT_PROMETHEUS_STATS_HTTP_ENABLE);
         boolean bkHttpServerEnabled = conf.getBoolean("httpServerEnabled", false);
         boolean exposeDefaultJVMMetrics = conf.getBoolean("exposeDefaultJVMMetrics", true);
@@ -177,13 +203,50 @@ public class PrometheusMetricsProvider implements StatsProvider {
 
     @Override
     public void writeAllMetrics(Writer writer) throws IOException {
+        ByteBuf buffer = ByteBufAllocator.DEFAULT.heapBuffer(2 * WRITE_CHUNK_SIZE);
+        try {
+            SimpleTextOutputStream stream = new SimpleTextOutputStream(buffer, writer, WRITE_CHUNK_SIZE);
+            writeAllMetrics(stream);
+            stream.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Write all the metrics to the given stream, without keeping more than {@link #WRITE_CHUNK_SIZE} bytes of them in
+     * memory. The {@link Writer} variant does the same.
+     */
+    public void writeAllMetrics(OutputStream out) throws IOException {
+        ByteBuf buffer = ByteBufAllocator.DEFAULT.heapBuffer(2 * WRITE_CHUNK_SIZE);
+        try {
+            SimpleTextOutputStream stream = new SimpleTextOutputStream(buffer, out, WRITE_CHUNK_SIZE);
+            writeAllMetrics(stream);
+            stream.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Append all the metrics to the given buffer.
+     */
+    public void writeAllMetrics(ByteBuf buffer) {
+        writeAllMetrics(new SimpleTextOutputStream(buffer));
+    }
+
+    private void writeAllMetrics(SimpleTextOutputStream stream) {
         PrometheusTextFormat prometheusTextFormat = new PrometheusTextFormat();
-        PrometheusTextFormat.writeMetricsCollectedByPrometheusClient(writer, registry);
+        PrometheusTextFormat.writeMetricsCollectedByPrometheusClient(stream, registry);
 
-        gauges.forEach((sc, gauge) -> prometheusTextFormat.writeGauge(writer, sc.getScope(), gauge));
-        counters.forEach((sc, counter) -> prometheusTextFormat.writeCounter(writer, sc.getScope(), counter));
+        gauges.forEach((sc, gauge) -> prometheusTextFormat.writeGauge(stream, sc.getScope(), gauge));
+        counters.forEach((sc, counter) -> prometheusTextFormat.writeCounter(stream, sc.getScope(), counter));
         opStats.forEach((sc, opStatLogger) ->
-                prometheusTextFormat.writeOpStat(writer, sc.getScope(), opStatLogger));
+                prometheusTextFormat.writeOpStat(stream, sc.getScope(), opStatLogger));
     }
 
     @Override
@@ -199,6 +262,10 @@ public class PrometheusMetricsProvider implements StatsProvider {
         return Collector.sanitizeMetricName(completeName);
     }
 
+    SummaryOpStatsLogger newOpStatsLogger(Map<String, String> labels) {
+        return histogramLatencyCollector ? new HistogramOpStatsLogger(labels) : new DataSketchesOpStatsLogger(labels);
+    }
+
     @VisibleForTesting
     void rotateLatencyCollection() {
         opStats.forEach((name, metric) -> {
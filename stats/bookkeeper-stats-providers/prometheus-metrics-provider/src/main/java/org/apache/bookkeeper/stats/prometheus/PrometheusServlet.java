@@ -18,7 +18,7 @@ package org.apache.bookkeeper.stats.prometheus;
 
 import io.prometheus.client.exporter.common.TextFormat;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -41,12 +41,12 @@ public class PrometheusServlet extends HttpServlet {
         resp.setStatus(HttpServletResponse.SC_OK);
         resp.setContentType(TextFormat.CONTENT_TYPE_004);
 
-        Writer writer = resp.getWriter();
+        OutputStream out = resp.getOutputStream();
         try {
-            provider.writeAllMetrics(writer);
-            writer.flush();
+            provider.writeAllMetrics(out);
+            out.flush();
         } finally {
-            writer.close();
+            out.close();
         }
     }
 
@@ -42,7 +42,7 @@ public class PrometheusStatsLogger implements StatsLogger {
 
     @Override
     public OpStatsLogger getOpStatsLogger(String name) {
-        return provider.opStats.computeIfAbsent(scopeContext(name), x -> new DataSketchesOpStatsLogger(labels));
+        return provider.opStats.computeIfAbsent(scopeContext(name), x -> provider.newOpStatsLogger(labels));
     }
 
     @Override
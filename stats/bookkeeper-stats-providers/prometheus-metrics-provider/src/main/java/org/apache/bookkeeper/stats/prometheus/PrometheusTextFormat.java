@@ -20,49 +20,49 @@ import io.prometheus.client.Collector;
 import io.prometheus.client.Collector.MetricFamilySamples;
 import io.prometheus.client.Collector.MetricFamilySamples.Sample;
 import io.prometheus.client.CollectorRegistry;
-import java.io.IOException;
-import java.io.Writer;
 import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 /**
  * Logic to write metrics in Prometheus text format.
+ *
+ * <p>The names and the labels of the metrics are encoded once and cached with the metrics, see
+ * {@link EncodedMetric}, so a scrape only formats the values.
  */
 public class PrometheusTextFormat {
 
+    private static final double[] QUANTILES = { 0.5, 0.75, 0.95, 0.99, 0.999, 0.9999, 1.0 };
+
     Set<String> metricNameSet = new HashSet<>();
 
-    void writeGauge(Writer w, String name, SimpleGauge<? extends Number> gauge) {
+    void writeGauge(SimpleTextOutputStream w, String name, SimpleGauge<? extends Number> gauge) {
         // Example:
         // # TYPE bookie_storage_entries_count gauge
         // bookie_storage_entries_count 519
-        try {
-            writeType(w, name, "gauge");
-            w.append(name);
-            writeLabels(w, gauge.getLabels());
-            w.append(' ').append(gauge.getSample().toString()).append('\n');
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        EncodedMetric encoded = gauge.getEncoded();
+        if (encoded == null || !encoded.isFor(name, gauge.getLabels())) {
+            encoded = EncodedMetric.simple(name, gauge.getLabels(), "gauge");
+            gauge.setEncoded(encoded);
         }
+        writeType(w, name, encoded);
+        w.write(encoded.samplePrefixes[0]).write(gauge.getSample()).write('\n');
     }
 
-    void writeCounter(Writer w, String name, LongAdderCounter counter) {
+    void writeCounter(SimpleTextOutputStream w, String name, LongAdderCounter counter) {
         // Example:
         // # TYPE jvm_threads_started_total counter
         // jvm_threads_started_total 59
-        try {
-            writeType(w, name, "counter");
-            w.append(name);
-            writeLabels(w, counter.getLabels());
-            w.append(' ').append(counter.get().toString()).append('\n');
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        EncodedMetric encoded = counter.getEncoded();
+        if (encoded == null || !encoded.isFor(name, counter.getLabels())) {
+            encoded = EncodedMetric.simple(name, counter.getLabels(), "counter");
+            counter.setEncoded(encoded);
         }
+        writeType(w, name, encoded);
+        w.write(encoded.samplePrefixes[0]).write(counter.get().longValue()).write('\n');
     }
 
-    void writeOpStat(Writer w, String name, DataSketchesOpStatsLogger opStat) {
+    void writeOpStat(SimpleTextOutputStream w, String name, SummaryOpStatsLogger opStat) {
         // Example:
         // # TYPE bookie_journal_JOURNAL_ADD_ENTRY summary
         // bookie_journal_JOURNAL_ADD_ENTRY{success="false",quantile="0.5",} NaN
@@ -83,104 +83,31 @@ public class PrometheusTextFormat {
         // bookie_journal_JOURNAL_ADD_ENTRY{success="true",quantile="1.0",} 10.902
         // bookie_journal_JOURNAL_ADD_ENTRY_count{success="true",} 658.0
         // bookie_journal_JOURNAL_ADD_ENTRY_sum{success="true",} 1265.0800000000002
-        try {
-            writeType(w, name, "summary");
-            writeQuantile(w, opStat, name, false, 0.5);
-            writeQuantile(w, opStat, name, false, 0.75);
-            writeQuantile(w, opStat, name, false, 0.95);
-            writeQuantile(w, opStat, name, false, 0.99);
-            writeQuantile(w, opStat, name, false, 0.999);
-            writeQuantile(w, opStat, name, false, 0.9999);
-            writeQuantile(w, opStat, name, false, 1.0);
-            writeCount(w, opStat, name, false);
-            writeSum(w, opStat, name, false);
-
-            writeQuantile(w, opStat, name, true, 0.5);
-            writeQuantile(w, opStat, name, true, 0.75);
-            writeQuantile(w, opStat, name, true, 0.95);
-            writeQuantile(w, opStat, name, true, 0.99);
-            writeQuantile(w, opStat, name, true, 0.999);
-            writeQuantile(w, opStat, name, true, 0.9999);
-            writeQuantile(w, opStat, name, true, 1.0);
-            writeCount(w, opStat, name, true);
-            writeSum(w, opStat, name, true);
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private void writeLabels(Writer w, Map<String, String> labels) throws IOException {
-        if (labels.isEmpty()) {
-            return;
-        }
-
-        w.append('{');
-        writeLabelsNoBraces(w, labels);
-        w.append('}');
-    }
-
-    private void writeLabelsNoBraces(Writer w, Map<String, String> labels) throws IOException {
-        if (labels.isEmpty()) {
-            return;
+        EncodedMetric encoded = opStat.getEncoded();
+        if (encoded == null || !encoded.isFor(name, opStat.getLabels())) {
+            encoded = EncodedMetric.summary(name, opStat.getLabels(), QUANTILES);
+            opStat.setEncoded(encoded);
         }
+        writeType(w, name, encoded);
 
-        boolean isFirst = true;
-        for (Map.Entry<String, String> e : labels.entrySet()) {
-            if (!isFirst) {
-                w.append(',');
+        int i = 0;
+        for (int s = 0; s < 2; s++) {
+            boolean success = s == 1;
+            for (double quantile : QUANTILES) {
+                w.write(encoded.samplePrefixes[i++]).write(opStat.getQuantileValue(success, quantile)).write('\n');
             }
-            isFirst = false;
-            w.append(e.getKey())
-                    .append("=\"")
-                    .append(e.getValue())
-                    .append('"');
-        }
-    }
-
-    private void writeQuantile(Writer w, DataSketchesOpStatsLogger opStat, String name, Boolean success,
-            double quantile) throws IOException {
-        w.append(name)
-                .append("{success=\"").append(success.toString())
-                .append("\",quantile=\"").append(Double.toString(quantile))
-                .append("\"");
-        if (!opStat.getLabels().isEmpty()) {
-            w.append(", ");
-            writeLabelsNoBraces(w, opStat.getLabels());
-        }
-        w.append("} ")
-                .append(Double.toString(opStat.getQuantileValue(success, quantile))).append('\n');
-    }
-
-    private void writeCount(Writer w, DataSketchesOpStatsLogger opStat, String name, Boolean success)
-            throws IOException {
-        w.append(name).append("_count{success=\"").append(success.toString()).append("\"");
-        if (!opStat.getLabels().isEmpty()) {
-            w.append(", ");
-            writeLabelsNoBraces(w, opStat.getLabels());
-        }
-        w.append("} ")
-                .append(Long.toString(opStat.getCount(success))).append('\n');
-    }
-
-    private void writeSum(Writer w, DataSketchesOpStatsLogger opStat, String name, Boolean success)
-            throws IOException {
-        w.append(name).append("_sum{success=\"").append(success.toString()).append("\"");
-        if (!opStat.getLabels().isEmpty()) {
-            w.append(", ");
-            writeLabelsNoBraces(w, opStat.getLabels());
+            w.write(encoded.samplePrefixes[i++]).write(opStat.getCount(success)).write('\n');
+            w.write(encoded.samplePrefixes[i++]).write(opStat.getSum(success)).write('\n');
         }
-        w.append("} ")
-                .append(Double.toString(opStat.getSum(success))).append('\n');
     }
 
-    static void writeMetricsCollectedByPrometheusClient(Writer w, CollectorRegistry registry) throws IOException {
+    static void writeMetricsCollectedByPrometheusClient(SimpleTextOutputStream w, CollectorRegistry registry) {
         Enumeration<MetricFamilySamples> metricFamilySamples = registry.metricFamilySamples();
         while (metricFamilySamples.hasMoreElements()) {
             MetricFamilySamples metricFamily = metricFamilySamples.nextElement();
             // Write type of metric
-            w.append("# TYPE ").append(metricFamily.name).append(getTypeNameSuffix(metricFamily.type)).append(' ')
-                    .append(getTypeStr(metricFamily.type)).write('\n');
+            w.write("# TYPE ").write(metricFamily.name).write(getTypeNameSuffix(metricFamily.type)).write(' ')
+                    .write(getTypeStr(metricFamily.type)).write('\n');
 
             for (int i = 0; i < metricFamily.samples.size(); i++) {
                 Sample sample = metricFamily.samples.get(i);
@@ -197,7 +124,7 @@ public class PrometheusTextFormat {
                 }
 
                 w.write("} ");
-                w.write(Collector.doubleToGoString(sample.value));
+                w.write(sample.value);
                 w.write('\n');
             }
         }
@@ -227,12 +154,10 @@ public class PrometheusTextFormat {
         }
     }
 
-    void writeType(Writer w, String name, String type) throws IOException {
-        if (metricNameSet.contains(name)) {
-            return;
+    void writeType(SimpleTextOutputStream w, String name, EncodedMetric encoded) {
+        if (metricNameSet.add(name)) {
+            w.write(encoded.typeLine);
         }
-        metricNameSet.add(name);
-        w.append("# TYPE ").append(name).append(" ").append(type).append("\n");
     }
 
 }
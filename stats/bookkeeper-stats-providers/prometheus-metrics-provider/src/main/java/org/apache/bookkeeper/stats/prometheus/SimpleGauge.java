@@ -27,6 +27,9 @@ public class SimpleGauge<T extends Number> {
     private final Map<String, String> labels;
     private final Gauge<T> gauge;
 
+    // name and labels encoded by the last scrape
+    private volatile EncodedMetric encoded;
+
     public SimpleGauge(final Gauge<T> gauge, Map<String, String> labels) {
         this.gauge = gauge;
         this.labels = labels;
@@ -39,4 +42,12 @@ public class SimpleGauge<T extends Number> {
     public Map<String, String> getLabels() {
         return labels;
     }
+
+    EncodedMetric getEncoded() {
+        return encoded;
+    }
+
+    void setEncoded(EncodedMetric encoded) {
+        this.encoded = encoded;
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats.prometheus;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes text to a {@link ByteBuf}, formatting the numbers without allocating.
+ *
+ * <p>When an {@link OutputStream} or a {@link Writer} is given, the buffer is written to it every time it holds
+ * more than {@code flushThreshold} bytes, so that the whole text never has to be kept in memory.
+ *
+ * <p>The absolute values of doubles in [{@code 1e-3}, {@code 1e12}) are rounded to 6 fraction digits, and written
+ * without fraction when they are integral. The others are written with {@link Double#toString(double)}.
+ */
+public class SimpleTextOutputStream {
+
+    // the doubles in [MIN_FIXED_POINT, MAX_FIXED_POINT) are rounded to FRACTION_DIGITS fraction digits, the
+    // others are written with Double.toString()
+    private static final int FRACTION_DIGITS = 6;
+    private static final long FRACTION_SCALE = 1_000_000L;
+    private static final double MAX_FIXED_POINT = 1e12;
+    private static final double MIN_FIXED_POINT = 1e-3;
+
+    private static final byte[] NAN = {'N', 'a', 'N'};
+    private static final byte[] POSITIVE_INFINITY = {'+', 'I', 'n', 'f'};
+    private static final byte[] NEGATIVE_INFINITY = {'-', 'I', 'n', 'f'};
+
+    private final ByteBuf buffer;
+    private final OutputStream out;
+    private final Writer writer;
+    private final int flushThreshold;
+
+    public SimpleTextOutputStream(ByteBuf buffer) {
+        this(buffer, null, null, 0);
+    }
+
+    public SimpleTextOutputStream(ByteBuf buffer, OutputStream out, int flushThreshold) {
+        this(buffer, out, null, flushThreshold);
+    }
+
+    public SimpleTextOutputStream(ByteBuf buffer, Writer writer, int flushThreshold) {
+        this(buffer, null, writer, flushThreshold);
+    }
+
+    private SimpleTextOutputStream(ByteBuf buffer, OutputStream out, Writer writer, int flushThreshold) {
+        this.buffer = buffer;
+        this.out = out;
+        this.writer = writer;
+        this.flushThreshold = flushThreshold;
+    }
+
+    public SimpleTextOutputStream write(byte[] a) {
+        buffer.writeBytes(a);
+        maybeFlush();
+        return this;
+    }
+
+    public SimpleTextOutputStream write(char c) {
+        buffer.writeByte((byte) c);
+        return this;
+    }
+
+    public SimpleTextOutputStream write(String s) {
+        ByteBufUtil.writeUtf8(buffer, s);
+        maybeFlush();
+        return this;
+    }
+
+    public SimpleTextOutputStream write(Number n) {
+        if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+            return write(n.longValue());
+        }
+        return write(n.doubleValue());
+    }
+
+    public SimpleTextOutputStream write(long n) {
+        if (n == Long.MIN_VALUE) {
+            return write(Long.toString(n));
+        }
+        if (n < 0) {
+            buffer.writeByte('-');
+            n = -n;
+        }
+        int digits = 1;
+        for (long x = n; x >= 10; x /= 10) {
+            digits++;
+        }
+        buffer.ensureWritable(digits);
+        int idx = buffer.writerIndex() + digits - 1;
+        for (int i = 0; i < digits; i++, n /= 10) {
+            buffer.setByte(idx - i, (int) ('0' + n % 10));
+        }
+        buffer.writerIndex(buffer.writerIndex() + digits);
+        return this;
+    }
+
+    public SimpleTextOutputStream write(double d) {
+        if (Double.isNaN(d)) {
+            buffer.writeBytes(NAN);
+            return this;
+        } else if (Double.isInfinite(d)) {
+            buffer.writeBytes(d > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+            return this;
+        }
+
+        double abs = Math.abs(d);
+        if (d == (long) d && abs < MAX_FIXED_POINT) {
+            return write((long) d);
+        } else if (abs >= MAX_FIXED_POINT || abs < MIN_FIXED_POINT) {
+            return write(Double.toString(d));
+        }
+
+        long scaled = Math.round(abs * FRACTION_SCALE);
+        if (d < 0) {
+            buffer.writeByte('-');
+        }
+        write(scaled / FRACTION_SCALE);
+        long fraction = scaled % FRACTION_SCALE;
+        if (fraction != 0) {
+            int digits = FRACTION_DIGITS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            buffer.writeByte('.');
+            // leading zeros of the fraction
+            for (; fraction < pow10(digits - 1); digits--) {
+                buffer.writeByte('0');
+            }
+            write(fraction);
+        }
+        return this;
+    }
+
+    /**
+     * Write the buffered text to the output stream or the writer, if any.
+     */
+    public void flush() {
+        if ((out == null && writer == null) || !buffer.isReadable()) {
+            return;
+        }
+        try {
+            if (out != null) {
+                buffer.readBytes(out, buffer.readableBytes());
+            } else {
+                // only flushed after whole strings, so the buffer never ends in the middle of a character
+                writer.write(buffer.toString(UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    private void maybeFlush() {
+        if ((out != null || writer != null) && buffer.readableBytes() >= flushThreshold) {
+            flush();
+        }
+    }
+}
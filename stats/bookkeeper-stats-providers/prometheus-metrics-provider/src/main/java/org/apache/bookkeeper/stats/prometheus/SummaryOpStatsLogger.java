@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats.prometheus;
+
+import java.util.Map;
+import org.apache.bookkeeper.stats.OpStatsData;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+
+/**
+ * OpStatsLogger exposed as a Prometheus summary: the quantiles of the values recorded in the last rotation
+ * interval, plus the total count and sum of the values.
+ *
+ * <p>Latencies are recorded in milliseconds, values as they are.
+ */
+public abstract class SummaryOpStatsLogger implements OpStatsLogger {
+
+    private Map<String, String> labels;
+
+    // used for lazy registration for thread scoped metrics
+    private boolean threadInitialized;
+
+    // name and labels encoded by the last scrape
+    private volatile EncodedMetric encoded;
+
+    protected SummaryOpStatsLogger(Map<String, String> labels) {
+        this.labels = labels;
+    }
+
+    /**
+     * Publish the quantiles of the values recorded since the previous rotation and start a new interval.
+     */
+    public abstract void rotateLatencyCollection();
+
+    public abstract long getCount(boolean success);
+
+    public abstract long getSum(boolean success);
+
+    /**
+     * @return the quantile of the values recorded in the last interval, {@code NaN} if no value was recorded
+     */
+    public abstract double getQuantileValue(boolean success, double quantile);
+
+    @Override
+    public OpStatsData toOpStatsData() {
+        // Not relevant as we don't use JMX here
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        // Not relevant as we don't use JMX here
+        throw new UnsupportedOperationException();
+    }
+
+    public Map<String, String> getLabels() {
+        return labels;
+    }
+
+    public boolean isThreadInitialized() {
+        return threadInitialized;
+    }
+
+    public void initializeThread(Map<String, String> labels) {
+        this.labels = labels;
+        this.threadInitialized = true;
+    }
+
+    EncodedMetric getEncoded() {
+        return encoded;
+    }
+
+    void setEncoded(EncodedMetric encoded) {
+        this.encoded = encoded;
+    }
+}
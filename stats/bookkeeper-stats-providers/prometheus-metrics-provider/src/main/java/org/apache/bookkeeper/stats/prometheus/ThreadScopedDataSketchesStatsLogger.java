@@ -33,8 +33,8 @@ public class ThreadScopedDataSketchesStatsLogger implements OpStatsLogger {
 
     private static Logger logger = LoggerFactory.getLogger(ThreadScopedDataSketchesStatsLogger.class);
 
-    private ThreadLocal<DataSketchesOpStatsLogger> statsLoggers;
-    private DataSketchesOpStatsLogger defaultStatsLogger;
+    private ThreadLocal<SummaryOpStatsLogger> statsLoggers;
+    private SummaryOpStatsLogger defaultStatsLogger;
     private Map<String, String> originalLabels;
     private ScopeContext scopeContext;
     private PrometheusMetricsProvider provider;
@@ -45,7 +45,7 @@ public class ThreadScopedDataSketchesStatsLogger implements OpStatsLogger {
         this.provider = provider;
         this.scopeContext = scopeContext;
         this.originalLabels = labels;
-        this.defaultStatsLogger = new DataSketchesOpStatsLogger(labels);
+        this.defaultStatsLogger = provider.newOpStatsLogger(labels);
 
         Map<String, String> defaultLabels = new HashMap<>(labels);
         defaultLabels.put("threadPool", "?");
@@ -53,7 +53,7 @@ public class ThreadScopedDataSketchesStatsLogger implements OpStatsLogger {
         this.defaultStatsLogger.initializeThread(defaultLabels);
 
         this.statsLoggers = ThreadLocal.withInitial(() -> {
-            return new DataSketchesOpStatsLogger(labels);
+            return provider.newOpStatsLogger(labels);
         });
     }
 
@@ -89,8 +89,8 @@ public class ThreadScopedDataSketchesStatsLogger implements OpStatsLogger {
         throw new UnsupportedOperationException();
     }
 
-    private DataSketchesOpStatsLogger getStatsLogger() {
-        DataSketchesOpStatsLogger statsLogger = statsLoggers.get();
+    private SummaryOpStatsLogger getStatsLogger() {
+        SummaryOpStatsLogger statsLogger = statsLoggers.get();
 
         // Lazy registration
         // Update the stats logger with the thread labels then add to the provider
@@ -102,7 +102,7 @@ public class ThreadScopedDataSketchesStatsLogger implements OpStatsLogger {
                 logger.warn("Thread {} was not registered in the thread registry. Using default stats logger {}.",
                         Thread.currentThread(), defaultStatsLogger);
                 statsLoggers.set(defaultStatsLogger);
-                DataSketchesOpStatsLogger previous = provider.opStats
+                SummaryOpStatsLogger previous = provider.opStats
                         .put(new ScopeContext(scopeContext.getScope(), originalLabels), defaultStatsLogger);
                 // If we overwrite a logger, metrics will not be collected correctly
                 if (previous != null && previous != defaultStatsLogger) {
@@ -118,7 +118,7 @@ public class ThreadScopedDataSketchesStatsLogger implements OpStatsLogger {
                 threadScopedlabels.put("thread", String.valueOf(tpt.getOrdinal()));
 
                 statsLogger.initializeThread(threadScopedlabels);
-                DataSketchesOpStatsLogger previous = provider.opStats
+                SummaryOpStatsLogger previous = provider.opStats
                         .put(new ScopeContext(scopeContext.getScope(), threadScopedlabels), statsLogger);
                 // If we overwrite a logger, metrics will not be collected correctly
                 if (previous != null && previous != statsLogger) {
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats.prometheus;
+
+import static org.apache.bookkeeper.stats.prometheus.HistogramOpStatsLogger.MAX_VALUE;
+import static org.apache.bookkeeper.stats.prometheus.HistogramOpStatsLogger.NUM_BUCKETS;
+import static org.apache.bookkeeper.stats.prometheus.HistogramOpStatsLogger.SUB_BUCKETS;
+import static org.apache.bookkeeper.stats.prometheus.HistogramOpStatsLogger.bucketIndex;
+import static org.apache.bookkeeper.stats.prometheus.HistogramOpStatsLogger.bucketValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.util.concurrent.FastThreadLocalThread;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class HistogramOpStatsLoggerTest {
+
+    private static final double MAX_RELATIVE_ERROR = 1.0 / SUB_BUCKETS;
+
+    private final HistogramOpStatsLogger logger = new HistogramOpStatsLogger(Collections.emptyMap());
+
+    private static void assertQuantile(double expected, double actual) {
+        // the rank of a quantile may be rounded to the next value, which is 1 away in these tests
+        assertTrue(Math.abs(actual - expected) <= (expected + 1) * MAX_RELATIVE_ERROR + 1,
+                "expected " + expected + " got " + actual);
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        // the small values have a bucket each
+        for (int value = 0; value < SUB_BUCKETS; value++) {
+            assertEquals(value, bucketIndex(value));
+            assertEquals(value, bucketValue(value), 0.0);
+        }
+        assertEquals(0, bucketIndex(-1));
+        assertEquals(0, bucketIndex(Long.MIN_VALUE));
+
+        // every power of two starts a new bucket, and every bucket has the same number of values in a power of two
+        for (int bits = 6; bits <= HistogramOpStatsLogger.MAX_VALUE_BITS; bits++) {
+            long lowest = 1L << (bits - 1);
+            long highest = (1L << bits) - 1;
+            assertEquals(bucketIndex(lowest - 1) + 1, bucketIndex(lowest), "2^" + (bits - 1));
+            assertEquals(bucketIndex(lowest) + SUB_BUCKETS / 2 - 1, bucketIndex(highest), "2^" + bits + " - 1");
+        }
+
+        // the value of a bucket is within its range
+        for (int index = 0; index < NUM_BUCKETS; index++) {
+            assertEquals(index, bucketIndex((long) bucketValue(index)), "bucket " + index);
+            if (index > 0) {
+                assertTrue(bucketValue(index) > bucketValue(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testRelativeErrorBound() {
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < 1_000_000; i++) {
+            // spread over all the orders of magnitude
+            long value = random.nextLong() >>> (Long.SIZE - HistogramOpStatsLogger.MAX_VALUE_BITS
+                    + random.nextInt(HistogramOpStatsLogger.MAX_VALUE_BITS));
+            double error = Math.abs(bucketValue(bucketIndex(value)) - value);
+            assertTrue(error <= Math.max(0.5, value * MAX_RELATIVE_ERROR), "value " + value);
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        assertTrue(Double.isNaN(logger.getQuantileValue(true, 0.5)));
+        for (int i = 1; i <= 1000; i++) {
+            logger.registerSuccessfulEvent(i, TimeUnit.MILLISECONDS);
+            logger.registerFailedValue(i * 10);
+        }
+        // nothing is published before the rotation
+        assertTrue(Double.isNaN(logger.getQuantileValue(true, 0.5)));
+        logger.rotateLatencyCollection();
+
+        assertQuantile(1, logger.getQuantileValue(true, 0.0));
+        assertQuantile(500, logger.getQuantileValue(true, 0.5));
+        assertQuantile(990, logger.getQuantileValue(true, 0.99));
+        assertQuantile(1000, logger.getQuantileValue(true, 1.0));
+        assertQuantile(5000, logger.getQuantileValue(false, 0.5));
+        assertEquals(1000, logger.getCount(true));
+        assertEquals(1000, logger.getCount(false));
+        assertEquals(500500, logger.getSum(true));
+        assertEquals(5005000, logger.getSum(false));
+
+        // the quantiles are the ones of the values recorded since the previous rotation
+        logger.registerSuccessfulEvent(2, TimeUnit.SECONDS);
+        logger.rotateLatencyCollection();
+        assertQuantile(2000, logger.getQuantileValue(true, 0.0));
+        assertQuantile(2000, logger.getQuantileValue(true, 1.0));
+        assertEquals(1001, logger.getCount(true));
+        logger.rotateLatencyCollection();
+        assertTrue(Double.isNaN(logger.getQuantileValue(true, 0.5)));
+    }
+
+    @Test
+    public void testMaxValueClamping() {
+        logger.registerSuccessfulValue(Long.MAX_VALUE);
+        logger.registerSuccessfulValue(MAX_VALUE);
+        logger.registerSuccessfulEvent(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        logger.registerSuccessfulEvent(-1, TimeUnit.MILLISECONDS);
+        logger.rotateLatencyCollection();
+
+        double max = bucketValue(NUM_BUCKETS - 1) / 1000;
+        assertEquals(max, logger.getQuantileValue(true, 1.0), 0.0);
+        assertEquals(max, logger.getQuantileValue(true, 0.5), 0.0);
+        // negative latencies are recorded in the first bucket
+        assertEquals(0.0, logger.getQuantileValue(true, 0.0), 0.0);
+        assertEquals(4, logger.getCount(true));
+    }
+
+    private void recordOnThread(Thread thread) throws InterruptedException {
+        thread.start();
+        thread.join();
+    }
+
+    @Test
+    public void testThreadExitingBetweenRotations() throws Exception {
+        // a plain thread, whose buckets are retired by the rotation
+        recordOnThread(new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                logger.registerSuccessfulEvent(10, TimeUnit.MILLISECONDS);
+            }
+        }));
+        logger.rotateLatencyCollection();
+        assertQuantile(10, logger.getQuantileValue(true, 0.0));
+        assertQuantile(10, logger.getQuantileValue(true, 1.0));
+
+        // a netty thread, which retires its buckets when exiting
+        recordOnThread(new FastThreadLocalThread(() -> {
+            for (int i = 0; i < 50; i++) {
+                logger.registerSuccessfulEvent(20, TimeUnit.MILLISECONDS);
+            }
+        }));
+        logger.registerSuccessfulEvent(20, TimeUnit.MILLISECONDS);
+        logger.rotateLatencyCollection();
+        // the values of the first thread are neither lost nor counted again
+        assertQuantile(20, logger.getQuantileValue(true, 0.0));
+        assertQuantile(20, logger.getQuantileValue(true, 1.0));
+        assertEquals(151, logger.getCount(true));
+
+        logger.rotateLatencyCollection();
+        assertTrue(Double.isNaN(logger.getQuantileValue(true, 0.5)));
+
+        recordOnThread(new Thread(() -> logger.registerSuccessfulEvent(30, TimeUnit.MILLISECONDS)));
+        logger.rotateLatencyCollection();
+        assertQuantile(30, logger.getQuantileValue(true, 0.5));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.bookkeeper.stats.prometheus;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.prometheus.client.CollectorRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.jupiter.api.Test;
+
+public class PrometheusTextFormatTest {
+
+    // the metrics below, as written by the Writer based format, before the names and labels were cached
+    private static final String OLD_FORMAT = String.join("\n",
+            "# TYPE jvm_test_pool_bytes gauge",
+            "jvm_test_pool_bytes{pool=\"heap\"} 2.5",
+            "# TYPE bookie_ADD_ENTRY counter",
+            "bookie_ADD_ENTRY 42",
+            "# TYPE bookie_entries_count gauge",
+            "bookie_entries_count 519",
+            "# TYPE bookie_free_ratio gauge",
+            "bookie_free_ratio{dir=\"ledgers-1\"} 0.25",
+            "# TYPE bookie_third gauge",
+            "bookie_third 0.3333333333333333",
+            "# TYPE bookie_integral gauge",
+            "bookie_integral 3.0",
+            "# TYPE bookie_large gauge",
+            "bookie_large 1.5E15",
+            "# TYPE bookie_small gauge",
+            "bookie_small 1.0E-4",
+            "# TYPE bookie_read summary",
+            "bookie_read{success=\"false\",quantile=\"0.5\", dir=\"ledgers-1\"} NaN",
+            "bookie_read{success=\"false\",quantile=\"0.75\", dir=\"ledgers-1\"} NaN",
+            "bookie_read{success=\"false\",quantile=\"0.95\", dir=\"ledgers-1\"} NaN",
+            "bookie_read{success=\"false\",quantile=\"0.99\", dir=\"ledgers-1\"} NaN",
+            "bookie_read{success=\"false\",quantile=\"0.999\", dir=\"ledgers-1\"} NaN",
+            "bookie_read{success=\"false\",quantile=\"0.9999\", dir=\"ledgers-1\"} NaN",
+            "bookie_read{success=\"false\",quantile=\"1.0\", dir=\"ledgers-1\"} NaN",
+            "bookie_read_count{success=\"false\", dir=\"ledgers-1\"} 0",
+            "bookie_read_sum{success=\"false\", dir=\"ledgers-1\"} 0.0",
+            "bookie_read{success=\"true\",quantile=\"0.5\", dir=\"ledgers-1\"} 1.5",
+            "bookie_read{success=\"true\",quantile=\"0.75\", dir=\"ledgers-1\"} 1.5",
+            "bookie_read{success=\"true\",quantile=\"0.95\", dir=\"ledgers-1\"} 1.5",
+            "bookie_read{success=\"true\",quantile=\"0.99\", dir=\"ledgers-1\"} 1.5",
+            "bookie_read{success=\"true\",quantile=\"0.999\", dir=\"ledgers-1\"} 1.5",
+            "bookie_read{success=\"true\",quantile=\"0.9999\", dir=\"ledgers-1\"} 1.5",
+            "bookie_read{success=\"true\",quantile=\"1.0\", dir=\"ledgers-1\"} 1.5",
+            "bookie_read_count{success=\"true\", dir=\"ledgers-1\"} 1",
+            "bookie_read_sum{success=\"true\", dir=\"ledgers-1\"} 1.0",
+            "");
+
+    private static <T extends Number> Gauge<T> gauge(T value) {
+        return new Gauge<T>() {
+            @Override
+            public T getDefaultValue() {
+                return value;
+            }
+
+            @Override
+            public T getSample() {
+                return value;
+            }
+        };
+    }
+
+    /**
+     * @return the value of each sample line, keyed by its name and labels, and the TYPE lines keyed by themselves
+     */
+    private static Map<String, String> parse(String text) {
+        Map<String, String> lines = new HashMap<>();
+        for (String line : text.split("\n")) {
+            if (line.startsWith("#")) {
+                assertEquals(null, lines.put(line, ""), line);
+            } else {
+                int idx = line.lastIndexOf(' ');
+                assertEquals(null, lines.put(line.substring(0, idx), line.substring(idx + 1)), line);
+            }
+        }
+        return lines;
+    }
+
+    private static void assertSameMetrics(String expected, String actual) {
+        Map<String, String> expectedLines = parse(expected);
+        Map<String, String> actualLines = parse(actual);
+        assertEquals(expectedLines.keySet(), actualLines.keySet());
+        expectedLines.forEach((key, value) -> {
+            if (!value.isEmpty()) {
+                // the doubles are rounded to 6 fraction digits
+                double expectedValue = Double.parseDouble(value);
+                double actualValue = Double.parseDouble(actualLines.get(key));
+                double delta = Double.isNaN(expectedValue) ? 0 : Math.abs(expectedValue) * 1e-6 + 1e-6;
+                assertEquals(expectedValue, actualValue, delta, key);
+            }
+        });
+    }
+
+    @Test
+    public void testSameMetricsAsOldFormat() throws Exception {
+        CollectorRegistry registry = new CollectorRegistry();
+        io.prometheus.client.Gauge.build("jvm_test_pool_bytes", "-").labelNames("pool").register(registry)
+                .labels("heap").set(2.5);
+        PrometheusMetricsProvider provider = new PrometheusMetricsProvider(registry);
+        StatsLogger stats = provider.getStatsLogger("bookie");
+        StatsLogger dirStats = stats.scopeLabel("dir", "ledgers-1");
+
+        stats.getCounter("ADD_ENTRY").addCount(42);
+        stats.registerGauge("entries_count", gauge(519));
+        dirStats.registerGauge("free_ratio", gauge(0.25));
+        stats.registerGauge("third", gauge(1.0 / 3));
+        stats.registerGauge("integral", gauge(3.0));
+        stats.registerGauge("large", gauge(1.5e15));
+        stats.registerGauge("small", gauge(1e-4));
+        dirStats.getOpStatsLogger("read").registerSuccessfulEvent(1500, TimeUnit.MICROSECONDS);
+        provider.rotateLatencyCollection();
+
+        // the names and the labels are cached by the first scrape, the second one uses them
+        for (int i = 0; i < 2; i++) {
+            StringWriter writer = new StringWriter();
+            provider.writeAllMetrics(writer);
+            assertSameMetrics(OLD_FORMAT, writer.toString());
+        }
+    }
+
+    @Test
+    public void testLabelValuesEscaped() throws Exception {
+        PrometheusMetricsProvider provider = new PrometheusMetricsProvider(new CollectorRegistry());
+        provider.getStatsLogger("").scopeLabel("path", "a\"b\\c\nd").getCounter("counter").inc();
+
+        StringWriter writer = new StringWriter();
+        provider.writeAllMetrics(writer);
+        assertEquals("# TYPE counter counter\ncounter{path=\"a\\\"b\\\\c\\nd\"} 1\n", writer.toString());
+    }
+
+    private static String format(Number n) {
+        ByteBuf buffer = Unpooled.buffer();
+        new SimpleTextOutputStream(buffer).write(n);
+        return buffer.toString(UTF_8);
+    }
+
+    @Test
+    public void testNumberFormat() {
+        assertEquals("0", format(0L));
+        assertEquals("-42", format(-42));
+        assertEquals(Long.toString(Long.MAX_VALUE), format(Long.MAX_VALUE));
+        assertEquals(Long.toString(Long.MIN_VALUE), format(Long.MIN_VALUE));
+        assertEquals("3", format(3.0));
+        assertEquals("0.5", format(0.5));
+        assertEquals("-2.25", format(-2.25));
+        assertEquals("0.0105", format(0.0105));
+        // rounded to 6 fraction digits
+        assertEquals("0.333333", format(1.0 / 3));
+        assertEquals("0.666667", format(2.0 / 3));
+        assertEquals("1", format(1.0000001));
+        // too small or too large for 6 fraction digits
+        assertEquals("1.0E-4", format(1e-4));
+        assertEquals("1.5E15", format(1.5e15));
+        assertEquals("NaN", format(Double.NaN));
+        assertEquals("+Inf", format(Double.POSITIVE_INFINITY));
+        assertEquals("-Inf", format(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void testWriterAndStreamWrittenInChunks() throws Exception {
+        PrometheusMetricsProvider provider = new PrometheusMetricsProvider(new CollectorRegistry());
+        StatsLogger stats = provider.getStatsLogger("bookie").scopeLabel("name", "\u00e9t\u00e9");
+        for (int i = 0; i < 10_000; i++) {
+            stats.getCounter("counter_with_a_long_enough_name_" + i).addCount(i);
+        }
+        ByteBuf buffer = Unpooled.buffer();
+        provider.writeAllMetrics(buffer);
+        String expected = buffer.toString(UTF_8);
+        assertTrue(expected.length() > 4 * PrometheusMetricsProvider.WRITE_CHUNK_SIZE);
+
+        AtomicInteger writes = new AtomicInteger();
+        StringWriter writer = new StringWriter() {
+            @Override
+            public void write(String str) {
+                assertTrue(str.length() < 2 * PrometheusMetricsProvider.WRITE_CHUNK_SIZE);
+                writes.incrementAndGet();
+                super.write(str);
+            }
+        };
+        provider.writeAllMetrics(writer);
+        assertEquals(expected, writer.toString());
+        assertTrue(writes.get() > 1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        provider.writeAllMetrics(out);
+        assertEquals(expected, new String(out.toByteArray(), UTF_8));
+    }
+}